@@ -25,6 +25,7 @@ import java.net.DatagramSocket;
 import java.net.InetAddress;
 import java.net.Socket;
 import java.net.SocketException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.StringTokenizer;
@@ -48,9 +49,15 @@ import javax.swing.JLabel;
 import javax.swing.JPanel;
 import javax.swing.SwingUtilities;
 
+import com.fortizva.packets.AbsSendTime;
 import com.fortizva.packets.CommonValues;
 import com.fortizva.packets.FECpacket;
+import com.fortizva.packets.FecDecoder;
 import com.fortizva.packets.RTPpacket;
+import com.fortizva.packets.RsDecoder;
+import com.fortizva.packets.RsRepairPacket;
+import com.fortizva.packets.ReceiverReport;
+import com.fortizva.packets.RtpView;
 
 /**
  * BufferBar class
@@ -66,7 +73,7 @@ class BufferBar extends JPanel {
 	/**
 	 * TreeMap to store the states of the buffer frames. Ordered and indexed by frame number.
 	 */
-    private TreeMap<Integer, FrameStatus> bufferStates;
+    private TreeMap<Long, FrameStatus> bufferStates;
     private static final int NUM_FRAMES_DISPLAYED = 60;
     private final Object bufferLock = new Object(); // Lock for buffer states
 
@@ -78,7 +85,7 @@ class BufferBar extends JPanel {
 	 * Initializes the panel with a preferred size. Repaints the panel.
 	 * @param states Initial buffer states.
 	 */
-    public void setBufferStates(TreeMap<Integer, FrameStatus> states) {
+    public void setBufferStates(TreeMap<Long, FrameStatus> states) {
     	synchronized (bufferLock) {
     		this.bufferStates = states;
         }
@@ -89,7 +96,7 @@ class BufferBar extends JPanel {
      * Returns the current buffer states.
      * @return TreeMap of frame numbers and their statuses.
      */
-    public TreeMap<Integer, FrameStatus> getBufferStates() {
+    public TreeMap<Long, FrameStatus> getBufferStates() {
     	synchronized (bufferLock) {
     		return bufferStates;
 		}
@@ -109,7 +116,7 @@ class BufferBar extends JPanel {
      * @param frame Frame number to update.
      * @param state State to set for the frame.
      */
-    public void putBufferState(int frame, FrameStatus state) {
+    public void putBufferState(long frame, FrameStatus state) {
     	synchronized(bufferLock) {
 			if (bufferStates == null) {
 				bufferStates = new TreeMap<>();
@@ -126,7 +133,7 @@ class BufferBar extends JPanel {
 	 * @param frame Frame number to check.
 	 * @return The status of the frame, or EMPTY if not set.
 	 */
-    public FrameStatus getFrameStatus(int frame) {
+    public FrameStatus getFrameStatus(long frame) {
     	synchronized (bufferLock) {
     		return (bufferStates!=null) ? bufferStates.getOrDefault(frame, FrameStatus.EMPTY) : FrameStatus.EMPTY;
     	}
@@ -139,12 +146,12 @@ class BufferBar extends JPanel {
      * @param status Status to set for the frames between startFrame (inclusive) and endFrame (exclusive).
      * @param exceptions Optional FrameStatus exceptions. If a frame is already set to one of these statuses, it will not be overwritten.
      */
-    public void fillBetweenFrames(int startFrame, int endFrame, FrameStatus status, FrameStatus... exceptions) {
+    public void fillBetweenFrames(long startFrame, long endFrame, FrameStatus status, FrameStatus... exceptions) {
 		synchronized (bufferLock) {
 	    	if (bufferStates == null) {
 				bufferStates = new TreeMap<>();
 			}
-			for (int i = startFrame; i <= endFrame; i++) {
+			for (long i = startFrame; i <= endFrame; i++) {
 				if(bufferStates.containsKey(i)) {
 					// If the frame is already set, check if it is in exceptions
 					boolean isException = false;
@@ -177,13 +184,13 @@ class BufferBar extends JPanel {
                     int index = (x - xOffset) / width;
 
                     // Obtener solo los últimos NUM_FRAMES_DISPLAYED frames
-                    List<Integer> keys = new ArrayList<>(bufferStates.keySet());
+                    List<Long> keys = new ArrayList<>(bufferStates.keySet());
                     if (keys.size() > NUM_FRAMES_DISPLAYED) {
                         keys = keys.subList(keys.size() - NUM_FRAMES_DISPLAYED, keys.size());
                     }
 
                     if (index >= 0 && index < keys.size()) {
-                        int seqNum = keys.get(index);
+                        long seqNum = keys.get(index);
                         FrameStatus status = bufferStates.get(seqNum);
                         setToolTipText("<html>Sequence #: " + seqNum + "<br>Status: " + status+"</html>");
                     } else {
@@ -260,7 +267,7 @@ class ColorIcon implements Icon {
 }
 
 /**
- * Usage: java Client &lthostname&gt &ltRTSP listening port&gt &ltVideo file path&gt [-vV]
+ * Usage: java Client &lthostname&gt &ltRTSP listening port&gt &ltVideo file path&gt [-vV] [-t=Audio track]
  * <br>
  * Parameters:
  * <ul>
@@ -269,6 +276,7 @@ class ColorIcon implements Icon {
  * <li>Video file path</li> <dd>Path to the video file on the server</dd>
  * <li>-v</li> <dd>Enable verbose mode for detailed logging</dd>
  * <li>-V</li> <dd>Enable super verbose mode for extensive debugging output</dd>
+ * <li>-t=track</li> <dd>Select the audio track of the video file (default is 0)</dd>
  * </ul>
  */
 public class Client {
@@ -319,6 +327,12 @@ public class Client {
 	// ----------------
 	DatagramPacket rcvdp; // UDP packet received from the server
 	DatagramSocket RTPsocket; // socket to be used to send and receive UDP packets
+	InetAddress reportAddr; // Source address of the video packets, receiver reports are sent back to it
+	int reportPort; // Source port of the video packets
+	long reportedHighestNb = 0; // Last video packet number (extended) received at the previous report
+	int reportedPackets = 0; // Video packets received at the previous report
+	int reportedBytes = 0; // Video bytes received at the previous report
+	long lastReportTime = 0L; // Time of the previous report in milliseconds since epoch
 
 	// RTP packet buffer
 	final static int BUFFER_TIMEOUT = 60; // Timeout for the buffer
@@ -328,6 +342,7 @@ public class Client {
 	PriorityBlockingQueue<RTPpacket> protectionBuffer; // FEC buffer used to store protected packets
 
 	byte[] buf; // buffer used to store data received from the server
+	PacketPool packetPool; // Reusable packets for the buffers above, released once played or no longer protected
 
 	// RTSP variables
 	// ----------------
@@ -342,6 +357,7 @@ public class Client {
 	static BufferedReader RTSPBufferedReader;
 	static BufferedWriter RTSPBufferedWriter;
 	static String VideoFileName; // video file to request to the server
+	static int audioTrack = 0; // audio track to request to the server
 	int RTSPSeqNb = 0; // Sequence number of RTSP messages within the session
 	int RTSPid = 0; // ID of the RTSP session (given by the RTSP Server)
 
@@ -482,6 +498,11 @@ public class Client {
 		        videoBufferBar.repaint(); // Repaint the buffer bar
 		    }
 		}, 0, 200); // every 500ms			
+		statsTimer.scheduleAtFixedRate(new TimerTask() {
+			public void run() {
+				sendReceiverReport();
+			}
+		}, CommonValues.REPORT_PERIOD, CommonValues.REPORT_PERIOD);
 	}
 	
 	// ------------------------------------
@@ -526,6 +547,8 @@ public class Client {
 	s += String.format("      <b>Packet loss:</b> %d%%<br>\n", audioStats.packetLoss);
 	s += String.format("      <b>Packet delay (ms):</b> %d<br>\n", audioStats.packetDelay);
 	s += String.format("      <b>Jitter (ms):</b> %+d<br>\n", audioStats.jitter);
+	if (audioStats.lastSendTime >= 0)
+		s += String.format("      <b>Delay variation (ms):</b> %+.2f (avg %.2f)<br>\n", audioStats.delayVariation, audioStats.smoothedDelayVariation);
 	s += "    </div>\n" +
 	     "  </td>\n" +
 	     "  <td valign=\"top\" style=\"min-width:250px;\">\n" +
@@ -545,6 +568,8 @@ public class Client {
 	s += String.format("      <b>Packet loss:</b> %d%%<br>\n", videoStats.packetLoss);
 	s += String.format("      <b>Packet delay (ms):</b> %d<br>\n", videoStats.packetDelay);
 	s += String.format("      <b>Jitter (ms):</b> %+d<br>\n", videoStats.jitter);
+	if (videoStats.lastSendTime >= 0)
+		s += String.format("      <b>Delay variation (ms):</b> %+.2f (avg %.2f)<br>\n", videoStats.delayVariation, videoStats.smoothedDelayVariation);
 	s += String.format("      <b>Current FPS:</b> %.2f<br>\n", videoStats.currentFps);
 	s += "      <b>Frames since update #:</b> " + videoStats.framesSinceUpdate + "<br>\n";
 	s += "      <b>Last FPS update time:</b> " + videoStats.lastFpsUpdateTime + "<br>\n";
@@ -568,32 +593,33 @@ public class Client {
 
 	
 	private void updateStats(StreamStats stats, RTPpacket rtp_packet) {
+		long seq = rtp_packet.getExtendedSequenceNumber(); // Does not wrap around
 		// Initialize stats if this is the first packet
 		if(stats.receivedPackets == 0) {
-			stats.initialPacketNb = rtp_packet.getSequenceNumber();
+			stats.initialPacketNb = seq;
 		}
 		
 		// Update packet loss taking into account initial and last packet numbers.
-		if (rtp_packet.getSequenceNumber() > stats.lastReceivedPacketNb + 1 && stats.initialPacketNb != rtp_packet.getSequenceNumber()) {
-			int calculatedLostPackets = rtp_packet.getSequenceNumber() - stats.lastReceivedPacketNb - 1;
+		if (seq > stats.lastReceivedPacketNb + 1 && stats.initialPacketNb != seq) {
+			int calculatedLostPackets = (int) (seq - stats.lastReceivedPacketNb - 1);
 			stats.lostPackets += calculatedLostPackets;
 			if(calculatedLostPackets > 0) {
 				if (verbose) {
 					System.out.println("[UpdateStats] Lost " + calculatedLostPackets + " packets between " + stats.lastReceivedPacketNb
-							+ " and " + rtp_packet.getSequenceNumber());
+							+ " and " + seq);
 				}
 				if (rtp_packet.getPayloadType() == CommonValues.MJPEG_TYPE) {
 					// Update buffer state for lost packets
-					videoBufferBar.fillBetweenFrames(stats.lastReceivedPacketNb + 1, rtp_packet.getSequenceNumber()-1, BufferBar.FrameStatus.LOST, BufferBar.FrameStatus.RECOVERED, BufferBar.FrameStatus.LATE);
+					videoBufferBar.fillBetweenFrames(stats.lastReceivedPacketNb + 1, seq-1, BufferBar.FrameStatus.LOST, BufferBar.FrameStatus.RECOVERED, BufferBar.FrameStatus.LATE);
 				}
-			stats.packetLoss = (stats.lostPackets * 100) / (rtp_packet.getSequenceNumber() - stats.initialPacketNb + 1);
+			stats.packetLoss = (int) ((stats.lostPackets * 100L) / (seq - stats.initialPacketNb + 1));
 			}
-		} else if(rtp_packet.getSequenceNumber() < stats.lastReceivedPacketNb) {
+		} else if(seq < stats.lastReceivedPacketNb) {
 			// Out of order packet
 			stats.lostPackets--; // Decrease lost packets count as we received the packet already counted as lost
-			videoBufferBar.putBufferState(rtp_packet.getSequenceNumber(), BufferBar.FrameStatus.RECEIVED); // Mark as received
+			videoBufferBar.putBufferState(seq, BufferBar.FrameStatus.RECEIVED); // Mark as received
 			if (verbose) {
-				System.out.println("[UpdateStats] Out of order packet received: " + rtp_packet.getSequenceNumber() + " (last: " + stats.lastReceivedPacketNb + ")");
+				System.out.println("[UpdateStats] Out of order packet received: " + seq + " (last: " + stats.lastReceivedPacketNb + ")");
 			}
 		}
 		
@@ -604,19 +630,76 @@ public class Client {
 		stats.lastPacketTime = System.currentTimeMillis();
 		
 		stats.jitter = stats.lastPacketDelay - stats.packetDelay;
+		stats.smoothedJitter += (Math.abs(stats.jitter) - stats.smoothedJitter) / 16d;
 		
 		// Update received bytes and packets
 		stats.receivedBytes += rtp_packet.getSize();
 		stats.receivedPackets++;
-		if(rtp_packet.getSequenceNumber() >= stats.lastReceivedPacketNb) // Only update last packet number if in order
-			stats.lastReceivedPacketNb = rtp_packet.getSequenceNumber();
+		if(seq >= stats.lastReceivedPacketNb) // Only update last packet number if in order
+			stats.lastReceivedPacketNb = seq;
+	}
+
+	/**
+	 * Updates the one-way delay variation of a stream from the abs-send-time header extension
+	 * element of a packet, if it has one. The spacing of two packets at the server is compared
+	 * with their spacing at arrival, so both clocks do not need to be synchronized.
+	 *
+	 * @param stats   stats of the stream
+	 * @param view    view of the received packet
+	 * @param buffer  buffer holding the packet
+	 * @param arrival arrival time of the packet in nanoseconds (System.nanoTime())
+	 */
+	private void updateDelayVariation(StreamStats stats, RtpView view, ByteBuffer buffer, long arrival) {
+		int at = view.getExtensionElementOffset(CommonValues.ABS_SEND_TIME_ID);
+		if (at < 0)
+			return;
+		int sendTime = AbsSendTime.get(buffer, at);
+		if (stats.lastSendTime >= 0) {
+			stats.delayVariation = ((arrival - stats.lastArrivalNanos) - AbsSendTime.deltaNanos(sendTime, stats.lastSendTime)) / 1e6;
+			stats.smoothedDelayVariation += (Math.abs(stats.delayVariation) - stats.smoothedDelayVariation) / 16d;
+		}
+		stats.lastSendTime = sendTime;
+		stats.lastArrivalNanos = arrival;
+	}
+
+	/**
+	 * Sends the video reception stats of the last report period back to the server,
+	 * which uses them to adapt the stream.
+	 */
+	private void sendReceiverReport() {
+		if (state != PLAYING || reportAddr == null)
+			return;
+		long now = System.currentTimeMillis();
+		int expected = (int) (videoStats.lastReceivedPacketNb - reportedHighestNb);
+		int received = videoStats.receivedPackets - reportedPackets;
+		double fractionLost = (expected > 0) ? (double) (expected - received) / expected : 0;
+		// Bits per millisecond are kbit/s
+		int rate = (lastReportTime == 0) ? 0 : (int) ((videoStats.receivedBytes - reportedBytes) * 8L / Math.max(now - lastReportTime, 1));
+		// The delay variation measured from the send times is preferred over the arrival jitter
+		double jitter = (videoStats.lastSendTime >= 0) ? videoStats.smoothedDelayVariation : videoStats.smoothedJitter;
+		ReceiverReport report = new ReceiverReport(fractionLost, videoStats.lostPackets, (int) videoStats.lastReceivedPacketNb,
+				(int) Math.round(jitter), rate);
+
+		reportedHighestNb = videoStats.lastReceivedPacketNb;
+		reportedPackets = videoStats.receivedPackets;
+		reportedBytes = videoStats.receivedBytes;
+		lastReportTime = now;
+		try {
+			byte[] report_bits = report.getPacket();
+			RTPsocket.send(new DatagramPacket(report_bits, report_bits.length, reportAddr, reportPort));
+			if (superVerbose)
+				System.out.println("[ReceiverReport] Sent: " + report);
+		} catch (IOException e) {
+			if (verbose)
+				System.out.println("[ReceiverReport] Exception caught: " + e);
+		}
 	}
 
 	/**
 	 * Main method to start the client application.
 	 * 
 	 * @param argv Command line arguments:
-	 * 	[Server hostname] [Server RTSP port] [Video file requested] [-v (Verbose mode)] [-V (Super verbose mode)]
+	 * 	[Server hostname] [Server RTSP port] [Video file requested] [-v (Verbose mode)] [-V (Super verbose mode)] [-t=number (Audio track)]
 	 */
 	public static void main(String argv[]) throws Exception {
 		// Create a Client object
@@ -644,6 +727,16 @@ public class Client {
 					// Super verbose mode enables all debugging messages, including simple verbose ones
 					verbose = true;
 					System.out.println("Super verbose mode: ACTIVE  -- Prepare for a lot of debug messages!");
+				} else if(arg.startsWith("-t=")) {
+					try {
+						audioTrack = Integer.parseInt(arg.substring(3));
+						if (audioTrack < 0) {
+							System.out.println("Audio track must be 0 or greater. Using track 0.");
+							audioTrack = 0;
+						}
+					} catch (NumberFormatException e) {
+						System.out.println("Invalid audio track. Using track 0.");
+					}
 				} else {
 					System.out.println("Unknown argument: \"" + arg + "\". Ignoring it.");
 				}
@@ -653,6 +746,9 @@ public class Client {
 		// Initialize soundcard
 		theClient.audio_initialization();
 
+		// Packets are leased with room for the largest datagram, leaks are only tracked when debugging
+		theClient.packetPool = new PacketPool(PacketPool.DEFAULT_CAPACITY, theClient.buf.length, superVerbose);
+
 		// Establish a TCP connection with the server to exchange RTSP messages
 		// ------------------		
 		theClient.RTSPsocket = new Socket(ServerIPAddr, RTSP_server_port);
@@ -841,62 +937,95 @@ public class Client {
 		public void run() {
 			// Keep listening to the RTP socket until the state is INIT or the thread is
 			// interrupted (End of program)
+			// The datagram and its view are reused, packets kept in a buffer are copied into pooled packets
+			rcvdp = new DatagramPacket(buf, buf.length);
+			ByteBuffer rcvBuffer = ByteBuffer.wrap(buf);
+			RtpView view = new RtpView();
 			while (state != Client.INIT && !Thread.currentThread().isInterrupted()) {
 				// If player is paused ignore timeouts and keep waiting for the state to change
 				if (state == Client.PLAYING) {
-					// Construct a DatagramPacket to receive data from the UDP socket
-					rcvdp = new DatagramPacket(buf, buf.length);
+					rcvdp.setLength(buf.length);
 					try {
 						RTPsocket.receive(rcvdp); // Block until a packet is received
-						// create an RTPpacket object from the DP
-						RTPpacket rtp_packet = new RTPpacket(rcvdp.getData(), rcvdp.getLength());
+						long arrival = System.nanoTime();
+						// read the header fields in place
+						view.wrap(rcvBuffer.clear().limit(rcvdp.getLength()));
+						if (!view.isValid()) {
+							if (verbose)
+								System.out.println("[RTPSocketListener] Ignoring invalid packet of " + rcvdp.getLength() + " bytes");
+							continue;
+						}
+						int payloadType = view.getPayloadType();
 						// print important header fields of the RTP packet received:
 						if (superVerbose) {
-							System.out.println("[RTPSocketListener] Got RTP packet with SeqNum # " + rtp_packet.getSequenceNumber()
+							System.out.println("[RTPSocketListener] Got RTP packet with SeqNum # " + view.getSequenceNumber()
 									+ " TimeStamp "
-									+ rtp_packet.getTimeStamp() + " ms, of type " + rtp_packet.getPayloadType());
-
-							// print header bitstream:
-							rtp_packet.printHeader();
+									+ view.getTimeStamp() + " ms, of type " + payloadType);
 						}
 						
 						// Check if the packet is audio or video
-						if (rtp_packet.getPayloadType() == CommonValues.RAW_TYPE) {
+						if (payloadType == CommonValues.RAW_TYPE) {
+							long seq = audioStats.sequenceTracker.extend(view.getSequenceNumber());
+							if (seq < 0) {
+								if (verbose)
+									System.out.println("[RTPSocketListener] Ignoring audio packet out of sequence: " + view.getSequenceNumber());
+								continue;
+							}
+							RTPpacket rtp_packet = packetPool.lease(view); // Released once played
+							rtp_packet.setExtendedSequenceNumber(seq);
 							audioBuffer.offer(rtp_packet);
+							updateDelayVariation(audioStats, view, rcvBuffer, arrival);
 							
 							// -----------------------------
 							// Update audio stats
 							// -----------------------------
 							updateStats(audioStats, rtp_packet);
 							
-						} else if (rtp_packet.getPayloadType() == CommonValues.MJPEG_TYPE) {
+						} else if (payloadType == CommonValues.MJPEG_TYPE) {
+							long seq = videoStats.sequenceTracker.extend(view.getSequenceNumber());
+							if (seq < 0) {
+								if (verbose)
+									System.out.println("[RTPSocketListener] Ignoring video packet out of sequence: " + view.getSequenceNumber());
+								continue;
+							}
+							RTPpacket rtp_packet = packetPool.lease(view); // Released once played
+							rtp_packet.setExtendedSequenceNumber(seq);
+							packetPool.retain(rtp_packet); // Released once removed from the FEC buffer
 							videoBuffer.offer(rtp_packet);
 							protectionBuffer.offer(rtp_packet); // Add to FEC buffer as well
+							reportAddr = rcvdp.getAddress(); // Reports go back to the video sender
+							reportPort = rcvdp.getPort();
 							
 							if (protectionBuffer.size() > CommonValues.MAX_FEC_GROUP_SIZE * 3) {
-								protectionBuffer.poll(); // Remove oldest packet if buffer exceeds size
+								packetPool.release(protectionBuffer.poll()); // Remove oldest packet if buffer exceeds size
 							}
 							
 							// -----------------------------
 							// Update video stats
 							// -----------------------------
 							updateStats(videoStats, rtp_packet);
-							videoBufferBar.putBufferState(rtp_packet.getSequenceNumber(), BufferBar.FrameStatus.RECEIVED);
+							updateDelayVariation(videoStats, view, rcvBuffer, arrival);
+							videoBufferBar.putBufferState(seq, BufferBar.FrameStatus.RECEIVED);
 							
 							
-						} else if (rtp_packet.getPayloadType() == CommonValues.FEC_PTYPE) {
+						} else if (payloadType == CommonValues.FEC_PTYPE || payloadType == CommonValues.RS_FEC_PTYPE) {
 							// FEC packet handling
 							if(verbose)
-								System.out.println("[RTPSocketListener] Received FEC packet with SeqNum # " + rtp_packet.getSequenceNumber());
-							// Create FECpacket object from the received packet
-							FECpacket fec_packet = new FECpacket(rtp_packet.getPayload());
+								System.out.println("[RTPSocketListener] Received FEC packet with SeqNum # " + view.getSequenceNumber());
+							// Create FECpacket object from the payload of the received packet
+							byte[] fecBytes = new byte[view.getPayloadLength()];
+							view.getPayload().get(fecBytes);
+							FECpacket fec_packet = (payloadType == CommonValues.RS_FEC_PTYPE) ? new RsRepairPacket(fecBytes)
+									: new FECpacket(fecBytes);
+							// The SN base belongs to the video sequence numbers
+							fec_packet.setExtendedBaseSequenceNumber(videoStats.sequenceTracker.unwrap(fec_packet.getBaseSequenceNumber()));
 							
 							// Add the FEC packet to the queue for processing
 							fecQueue.offer(fec_packet);
 							
 						} else {
-							System.out.println("Unknown payload type: " + rtp_packet.getPayloadType() + " - SequenceNumber: "
-									+ rtp_packet.getSequenceNumber());
+							System.out.println("Unknown payload type: " + payloadType + " - SequenceNumber: "
+									+ view.getSequenceNumber());
 						}
 
 					} catch (InterruptedIOException iioe) {
@@ -914,7 +1043,20 @@ public class Client {
 		}
 	}
 
-	class FECListener implements Runnable {
+	/**
+	 * FECListener class
+	 * <br>
+	 * Thread to recover lost video packets from the FEC packets. FEC packets that miss more
+	 * than one packet are kept pending by a {@link FecDecoder}, so row and column FEC (2D
+	 * parity) are applied repeatedly until nothing more can be recovered. Interleaved groups
+	 * are decoded the same way, their packets are found from the mask. Reed-Solomon repair
+	 * packets go to a {@link RsDecoder}, which recovers as many packets per group as repair
+	 * packets were received.
+	 */
+	class FECListener implements Runnable, FecDecoder.PacketWindow {
+		private final FecDecoder fecDecoder = new FecDecoder(CommonValues.MAX_FEC_GROUP_SIZE * 2);
+		private final RsDecoder rsDecoder = new RsDecoder(CommonValues.MAX_FEC_GROUP_SIZE * 2);
+
 	    public void run() {
 	        while (running) {
 	        	// We don't need to check for pause here, as the FEC thread should always be running.
@@ -926,79 +1068,36 @@ public class Client {
 			                System.out.println("[FECListener] Processing FEC packet with BaseSeqNum # " + fec_packet.getBaseSequenceNumber());
 			            }
 			            
-			            // Look for missing packets in the protection buffer using FEC packet's base sequence number and mask
-						int baseSeqNum = fec_packet.getBaseSequenceNumber(); // Initial sequence number of the protected packets
-						int maskLength = fec_packet.getMaskLength(); // Total number of protected packets
-						
-						int pp = 0; // Index for protected packets array
-						boolean found = false; // Flag to indicate if a packet was found
-						int lostSeqNum = -1; // Sequence number of the last checked lost packet
-						RTPpacket[] protectedPackets = new RTPpacket[maskLength]; // Array to store protected packets found in the buffer
-						RTPpacket lostPacket = null;
-						
-						
-						// Iterate through the FECpacket's protected packets sequence numbers and look for them in the protection buffer
-						int[] protectedSequenceNb = fec_packet.getProtectedSequenceNumbers();
-						int seqNum = 0; // Sequence number of the packet being checked
-
-						for(int i = 0; i < protectedSequenceNb.length; i++) {
-							seqNum = protectedSequenceNb[i]; // Get the sequence number from the FEC packet
-							found = false; // Reset found flag for each sequence number
-							// Check if the packet is in the protection buffer
-							for (RTPpacket packet : protectionBuffer) {
-								if (packet.getSequenceNumber() == seqNum) {
-									protectedPackets[pp] = packet; // Store the found packet
-									pp++; // Increment the index for protected packets
-									found = true; // Mark that we found the packet
-									break; // Exit the inner loop (no need to check further)
-								}
-							}
-							if (!found) {
-								// If we reached the end of the loop and did not find any packet, it means we have lost packets
-								lostSeqNum = seqNum; // Store the sequence number of the lost packet
-							}
+			            // Recover what this FEC packet and the pending ones can recover
+						int recovered;
+						if (fec_packet instanceof RsRepairPacket) {
+							recovered = rsDecoder.add((RsRepairPacket) fec_packet, this);
+							if (verbose && rsDecoder.getPendingCount() > 0)
+								System.out.println("[FECListener] " + rsDecoder.getPendingCount() + " Reed-Solomon groups waiting for more packets");
+						} else {
+							recovered = fecDecoder.add(fec_packet, this);
+							if (verbose && fecDecoder.getPendingCount() > 0)
+								System.out.println("[FECListener] " + fecDecoder.getPendingCount() + " FEC packets waiting for more packets");
 						}
+						videoStats.recoveredPackets += recovered; // Increment recovered packets count
 						
-						// Now that the protection buffer has been searched, we can get the number of missing packets using the array length
-						if (pp < maskLength) {
-							if(maskLength-pp == 1) {
-								// If we found exactly one packet missing, we can recover it
-								lostPacket = fec_packet.recoverPacket(protectedPackets, lostSeqNum-baseSeqNum); // (lostSeqNum - baseSeqNum) is the index of the lost packet in the protected packets array
-								videoBuffer.offer(lostPacket); // Add the recovered packet to the video buffer (it should be ordered by sequence number automatically)
-								
-								// Update video buffer state
-								videoBufferBar.putBufferState(lostPacket.getSequenceNumber(), BufferBar.FrameStatus.RECOVERED);
-								
-								if (verbose) {
-									System.out.println("[FECListener] Recovered lost packet with SeqNum # " + lostPacket.getSequenceNumber());
-								}
-								
-								/* Remove the FEC group packets from the protection buffer
-								 * Also remove packets that belong to older FEC groups
-								 * This is done to avoid keeping old packets in the buffer that are no longer needed.
-								 */
-								for (int i = 0; i < protectedPackets.length; i++) {
-									if (protectedPackets[i] != null) {
-										protectionBuffer.remove(protectedPackets[i]);
-									}
-								}
-								
-								while (protectionBuffer.size() > 0 && 
-										(protectionBuffer.peek().getSequenceNumber() < baseSeqNum - CommonValues.MAX_FEC_GROUP_SIZE * 3)) {
-									// Remove packets that are older than the current FEC group
-									RTPpacket oldPacket = protectionBuffer.poll();
-									if (verbose) {
-										System.out.println("[FECListener] Removing old packet with SeqNum # " + oldPacket.getSequenceNumber());
-									}
-								}
-								
-								videoStats.recoveredPackets++; // Increment lost packets count
-								
-							} else {
-								// If we found more than one packet missing, we cannot recover them
-								if(verbose)
-									System.out.println("[FECListener] Warning: More than one packet lost, FEC cannot recover them. Lost packets: " + (maskLength - pp));
+						/* Remove packets that are older than the protection window of the current FEC packet.
+						 * Packets are not removed once their group is recovered, as they may belong to
+						 * a column group too.
+						 */
+						long baseSeqNum = fec_packet.getExtendedBaseSequenceNumber();
+						while (protectionBuffer.size() > 0 && 
+								(protectionBuffer.peek().getExtendedSequenceNumber() < baseSeqNum - CommonValues.MAX_FEC_GROUP_SIZE * 3)) {
+							RTPpacket oldPacket = protectionBuffer.poll();
+							if (verbose) {
+								System.out.println("[FECListener] Removing old packet with SeqNum # " + oldPacket.getSequenceNumber());
 							}
+							packetPool.release(oldPacket);
+						}
+						RTPpacket oldest = protectionBuffer.peek();
+						if (oldest != null) {
+							fecDecoder.discardBefore(oldest.getExtendedSequenceNumber());
+							rsDecoder.discardBefore(oldest.getExtendedSequenceNumber());
 						}
 		            }
 	            } catch (InterruptedException ie) {
@@ -1010,6 +1109,40 @@ public class Client {
 	            }
 	        }
 	    }
+
+		@Override
+		public RTPpacket acquire(long seqNum) {
+			for (RTPpacket packet : protectionBuffer) {
+				// The packet is retained so it is not reused while it is being read. The iterator
+				// is a snapshot, so the packet may have been reused since: check it again.
+				if (packet.getExtendedSequenceNumber() == seqNum && packetPool.retain(packet)) {
+					if (packet.getExtendedSequenceNumber() != seqNum) {
+						packetPool.release(packet);
+						continue;
+					}
+					return packet;
+				}
+			}
+			return null;
+		}
+
+		@Override
+		public void release(RTPpacket packet) {
+			packetPool.release(packet);
+		}
+
+		@Override
+		public void recovered(RTPpacket lostPacket) {
+			videoBuffer.offer(lostPacket); // Add the recovered packet to the video buffer (it should be ordered by sequence number automatically)
+			protectionBuffer.offer(lostPacket); // Other FEC groups may need it
+			
+			// Update video buffer state
+			videoBufferBar.putBufferState(lostPacket.getExtendedSequenceNumber(), BufferBar.FrameStatus.RECOVERED);
+			
+			if (verbose) {
+				System.out.println("[FECListener] Recovered lost packet with SeqNum # " + lostPacket.getSequenceNumber());
+			}
+		}
 	}
 
 	
@@ -1037,13 +1170,13 @@ public class Client {
 					RTPpacket rtp_packet = videoBuffer.peek(); // Non-blocking call to get the next packet
 					if (rtp_packet != null) {
 						// Check if the packet is the expected one or if the expected packet number is -1 (initial state)
-						if (rtp_packet.getSequenceNumber() == videoStats.expectedPacketNb || videoStats.expectedPacketNb == -1) {
+						if (rtp_packet.getExtendedSequenceNumber() == videoStats.expectedPacketNb || videoStats.expectedPacketNb == -1) {
 							// Remove the packet from the buffer if it is the expected one
 							videoBuffer.remove(rtp_packet);
 							
 							if (videoStats.expectedPacketNb == -1) {
 								// If this is the first packet, set the initial packet number
-								videoStats.initialPacketNb = rtp_packet.getSequenceNumber();
+								videoStats.initialPacketNb = rtp_packet.getExtendedSequenceNumber();
 							}
 							
 							// Update buffer size stats (synchronized)
@@ -1052,16 +1185,16 @@ public class Client {
 							}
 							
 							// get the payload bitstream from the RTPpacket object
+							// (the packet is never modified, so its payload is not copied)
 							int payload_length = rtp_packet.getPayloadLength();
-							byte[] payload = new byte[payload_length];
-							payload = rtp_packet.getPayload();
+							byte[] payload = rtp_packet.payload;
 							
 							// get an Image object from the payload bitstream
 							Toolkit toolkit = Toolkit.getDefaultToolkit();
 							Image image = toolkit.createImage(payload, 0, payload_length);
 							
 							// Update video-specific stats
-							videoStats.lastPlayedPacketNb = rtp_packet.getSequenceNumber(); // Update last played packet number
+							videoStats.lastPlayedPacketNb = rtp_packet.getExtendedSequenceNumber(); // Update last played packet number
 							videoStats.framesSinceUpdate++;
 							// Update FPS calculation
 							long now = System.currentTimeMillis();
@@ -1071,20 +1204,26 @@ public class Client {
 								videoStats.lastFpsUpdateTime = now;							
 							}
 							// display the image as an ImageIcon object
+							// (the image is decoded from the payload here, so the packet is released afterwards)
+							final RTPpacket played = rtp_packet;
 							SwingUtilities.invokeLater(() -> {
 								icon = new ImageIcon(image);
 								iconLabel.setIcon(icon);
+								packetPool.release(played);
 							});
 							
-						} else if(rtp_packet.getSequenceNumber() < videoStats.expectedPacketNb) {
+						} else if(rtp_packet.getExtendedSequenceNumber() < videoStats.expectedPacketNb) {
 							// If the packet is older than the expected packet, print a warning and discard it
-							videoBuffer.remove(rtp_packet); // Remove the packet from the buffer
+							// (the packet may be reused once released, so its number is read first)
+							long lateSeqNum = rtp_packet.getExtendedSequenceNumber();
+							if (videoBuffer.remove(rtp_packet)) // Remove the packet from the buffer
+								packetPool.release(rtp_packet);
 							if(verbose)
-								System.out.println("[VideoTimerListener] Warning: Received an old video packet with SeqNum # " + rtp_packet.getSequenceNumber() +
+								System.out.println("[VideoTimerListener] Warning: Received an old video packet with SeqNum # " + lateSeqNum +
 									" - Last played packet SeqNum # " + videoStats.lastPlayedPacketNb+ ". Skipping frame...");
 							videoStats.latePackets++; // Increment late packet count
 							// Update buffer state for late packets
-							videoBufferBar.putBufferState(rtp_packet.getSequenceNumber(), BufferBar.FrameStatus.LATE);
+							videoBufferBar.putBufferState(lateSeqNum, BufferBar.FrameStatus.LATE);
 						}
 						// If packet time has not yet arrived, we simply wait for the next frame period and check again
 					}
@@ -1122,29 +1261,32 @@ public class Client {
 					RTPpacket rtp_packet = audioBuffer.peek(); // Non-blocking call to get the next packet
 					
 					if (rtp_packet != null) {		
-							if(rtp_packet.getSequenceNumber() == audioStats.expectedPacketNb || audioStats.expectedPacketNb == -1) {
+							if(rtp_packet.getExtendedSequenceNumber() == audioStats.expectedPacketNb || audioStats.expectedPacketNb == -1) {
 								// Remove the packet from the buffer if it is the expected one
 								audioBuffer.remove(rtp_packet);
 								
 								if (audioStats.expectedPacketNb == -1) {
 									// If this is the first packet, set the initial packet number
-									audioStats.initialPacketNb = rtp_packet.getSequenceNumber();
+									audioStats.initialPacketNb = rtp_packet.getExtendedSequenceNumber();
 								}
 																
 								// get the payload bitstream from the RTPpacket object
 								int payload_length = rtp_packet.getPayloadLength();
-								byte[] payload = new byte[payload_length];
-								payload = rtp_packet.getPayload();
+								byte[] payload = rtp_packet.payload; // Not modified, no copy needed
 		
-								audioStats.lastPlayedPacketNb = rtp_packet.getSequenceNumber(); // Update last received packet number
+								audioStats.lastPlayedPacketNb = rtp_packet.getExtendedSequenceNumber(); // Update last received packet number
 								// write the data to the speaker
 								speaker.write(payload, 0, payload_length);
+								packetPool.release(rtp_packet);
 									
-							} else if(rtp_packet.getSequenceNumber() < audioStats.expectedPacketNb) {
+							} else if(rtp_packet.getExtendedSequenceNumber() < audioStats.expectedPacketNb) {
 								// If the packet is older than the expected packet, print a warning and discard it
-								audioBuffer.remove(rtp_packet); // Remove the packet from the buffer
+								// (the packet may be reused once released, so its number is read first)
+								long lateSeqNum = rtp_packet.getExtendedSequenceNumber();
+								if (audioBuffer.remove(rtp_packet)) // Remove the packet from the buffer
+									packetPool.release(rtp_packet);
 								if(verbose)
-									System.out.println("[AudioTimerListener] Warning: Received an old audio packet with SeqNum # " + rtp_packet.getSequenceNumber() +
+									System.out.println("[AudioTimerListener] Warning: Received an old audio packet with SeqNum # " + lateSeqNum +
 										" - Last played packet SeqNum # " + audioStats.lastPlayedPacketNb+ ". Skipping frame...");
 								audioStats.latePackets++; // Increment late packet count
 							}
@@ -1211,6 +1353,9 @@ public class Client {
 			String request_line = VideoFileName + " RTSP/1.0";
 			switch (request_type) {
 				case "SETUP":
+					// The audio track is only selected once, when the session is set up
+					if (audioTrack != 0)
+						request_line = VideoFileName + CommonValues.TRACK_ID + audioTrack + " RTSP/1.0";
 					request_line = "SETUP " + request_line;
 					break;
 				case "PLAY":
@@ -1298,6 +1443,11 @@ public class Client {
 				RTSPBufferedWriter.close();
 			}
 			// Clear buffers
+			if (verbose && packetPool != null) {
+				System.out.println("[CleanExit] Packet pool: " + packetPool.getCreated() + " packets created, "
+						+ packetPool.getReused() + " leases reused, " + packetPool.getOutstanding() + " outstanding, "
+						+ packetPool.getLeaks() + " leaks");
+			}
 			if (videoBuffer != null) {
 				videoBuffer.clear();
 			}
@@ -0,0 +1,194 @@
+package com.fortizva.rtp;
+
+import java.lang.ref.Cleaner;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.fortizva.packets.RTPpacket;
+import com.fortizva.packets.RtpView;
+
+/**
+ * PacketPool class keeps a bounded set of reusable {@link RTPpacket} objects for the
+ * receive path, so received packets do not create garbage once the pool is warm.
+ * <br>
+ * {@link #lease(RtpView)} fills a pooled packet with a received packet and hands it out with
+ * one reference. Every holder that keeps the packet beyond the lease (e.g. a second queue)
+ * takes another reference with {@link #retain(RTPpacket)}, and every holder gives its
+ * reference back with {@link #release(RTPpacket)} once it is done with the payload. The packet
+ * goes back to the pool when the last reference is released. Packets that were not leased
+ * from a pool (e.g. packets recovered by FEC) are ignored by both methods.
+ * <br>
+ * When the pool is empty a new packet is created, so the receiver never waits. When it is
+ * full, released packets are left to the garbage collector. In debug mode, a packet that is
+ * collected while it still has references is reported as a leak along with the stack trace
+ * of its lease.
+ */
+public class PacketPool {
+
+	/** Default number of idle packets kept by the pool. */
+	public static final int DEFAULT_CAPACITY = 256;
+
+	private static final Cleaner CLEANER = Cleaner.create();
+
+	/**
+	 * State of a pooled packet, kept apart from the packet so the leak check can read it
+	 * after the packet is collected.
+	 */
+	static final class Tracker implements Runnable {
+		final AtomicInteger refs = new AtomicInteger();
+		final AtomicLong leaks;
+		volatile Throwable leasedAt; // Only recorded in debug mode
+
+		Tracker(AtomicLong leaks) {
+			this.leaks = leaks;
+		}
+
+		@Override
+		public void run() {
+			// Called by the cleaner once the packet is unreachable
+			if (refs.get() > 0) {
+				leaks.incrementAndGet();
+				System.out.println("[PacketPool] Leak: packet collected with " + refs.get() + " references. Leased at:");
+				if (leasedAt != null)
+					leasedAt.printStackTrace(System.out);
+			}
+		}
+	}
+
+	/**
+	 * Packet leased from a pool.
+	 */
+	static final class PooledPacket extends RTPpacket {
+		final PacketPool pool;
+		final Tracker tracker;
+
+		PooledPacket(PacketPool pool, int capacity) {
+			super(capacity);
+			this.pool = pool;
+			this.tracker = new Tracker(pool.leaks);
+			if (pool.debug)
+				CLEANER.register(this, tracker);
+		}
+	}
+
+	private final ArrayBlockingQueue<PooledPacket> idle;
+	private final int packetSize;
+	private final boolean debug;
+
+	// Metrics
+	private final AtomicLong created = new AtomicLong();
+	private final AtomicLong reused = new AtomicLong();
+	private final AtomicLong outstanding = new AtomicLong();
+	private final AtomicLong leaks = new AtomicLong();
+
+	/**
+	 * @param capacity   maximum number of idle packets kept by the pool
+	 * @param packetSize initial payload capacity of new packets in bytes
+	 * @param debug      true to record the lease stack traces and report leaks
+	 */
+	public PacketPool(int capacity, int packetSize, boolean debug) {
+		this.idle = new ArrayBlockingQueue<>(Math.max(capacity, 1));
+		this.packetSize = packetSize;
+		this.debug = debug;
+	}
+
+	/**
+	 * Copies a received packet into a pooled packet.
+	 *
+	 * @param view view of the received packet, which must be valid
+	 * @return the packet, holding one reference
+	 */
+	public RTPpacket lease(RtpView view) {
+		PooledPacket p = idle.poll();
+		if (p == null) {
+			p = new PooledPacket(this, packetSize);
+			created.incrementAndGet();
+		} else {
+			reused.incrementAndGet();
+		}
+		p.set(view);
+		if (debug)
+			p.tracker.leasedAt = new Throwable("Packet " + p.getSequenceNumber() + " leased");
+		p.tracker.refs.set(1);
+		outstanding.incrementAndGet();
+		return p;
+	}
+
+	/**
+	 * Takes another reference to a leased packet.
+	 *
+	 * @param packet the packet
+	 * @return false if the packet was already released by every holder and must not be used
+	 */
+	public boolean retain(RTPpacket packet) {
+		if (!(packet instanceof PooledPacket))
+			return true;
+		AtomicInteger refs = ((PooledPacket) packet).tracker.refs;
+		for (;;) {
+			int r = refs.get();
+			if (r <= 0)
+				return false;
+			if (refs.compareAndSet(r, r + 1))
+				return true;
+		}
+	}
+
+	/**
+	 * Gives back a reference to a leased packet, returning it to its pool if it was the last one.
+	 *
+	 * @param packet the packet (null is ignored)
+	 */
+	public void release(RTPpacket packet) {
+		if (!(packet instanceof PooledPacket))
+			return;
+		PooledPacket p = (PooledPacket) packet;
+		int r = p.tracker.refs.decrementAndGet();
+		if (r > 0)
+			return;
+		if (r < 0) {
+			p.tracker.refs.incrementAndGet();
+			System.out.println("[PacketPool] Warning: packet " + p.getSequenceNumber() + " released more times than leased");
+			return;
+		}
+		p.tracker.leasedAt = null;
+		outstanding.decrementAndGet();
+		if (p.pool == this)
+			idle.offer(p); // Dropped if the pool is full
+	}
+
+	/**
+	 * @return number of packets created by the pool
+	 */
+	public long getCreated() {
+		return created.get();
+	}
+
+	/**
+	 * @return number of leases served by an idle packet
+	 */
+	public long getReused() {
+		return reused.get();
+	}
+
+	/**
+	 * @return number of leased packets not released yet
+	 */
+	public long getOutstanding() {
+		return outstanding.get();
+	}
+
+	/**
+	 * @return number of idle packets
+	 */
+	public int getIdle() {
+		return idle.size();
+	}
+
+	/**
+	 * @return number of packets collected while leased (only detected in debug mode)
+	 */
+	public long getLeaks() {
+		return leaks.get();
+	}
+}
@@ -1,5 +1,7 @@
 package com.fortizva.rtp;
 
+import com.fortizva.packets.SequenceTracker;
+
 /**
  * StreamStats class holds statistics for a media stream, including
  * received bytes, packet loss, delay, jitter, and video-specific metrics.
@@ -14,12 +16,14 @@ public class StreamStats {
     public int receivedBytes = 0;
     /** Total number of packets received in the stream. */
     public int receivedPackets = 0;
+    /** Extends the sequence numbers of the stream, packet numbers below are extended sequence numbers. */
+    public final SequenceTracker sequenceTracker = new SequenceTracker();
     /** Initial packet number received in the stream. */
-    public int initialPacketNb = 0;
+    public long initialPacketNb = 0;
     /** Last packet number received in the stream. */
-    public int lastReceivedPacketNb = 0;
+    public long lastReceivedPacketNb = 0;
     /** Last played packet number in the stream. */
-    public int lastPlayedPacketNb = -1;
+    public long lastPlayedPacketNb = -1;
     /** Total number of packets lost in the stream. */
     public int lostPackets = 0;
     /** Packet loss percentage. */
@@ -32,12 +36,22 @@ public class StreamStats {
     public long lastPacketDelay = 0L;
     /** Jitter in milliseconds. */
     public long jitter = 0L;
+    /** Jitter smoothed as in RFC 3550 (J += (|D| - J) / 16), in milliseconds. */
+    public double smoothedJitter = 0.0;
+    /** abs-send-time of the last packet that carried it, -1 if none was received. */
+    public int lastSendTime = -1;
+    /** Arrival time of that packet in nanoseconds (System.nanoTime()). */
+    public long lastArrivalNanos = 0L;
+    /** One-way delay variation between the last two packets (arrival spacing - send spacing), in milliseconds. */
+    public double delayVariation = 0.0;
+    /** One-way delay variation smoothed as the jitter, in milliseconds. */
+    public double smoothedDelayVariation = 0.0;
     /** Size of the buffer in packets. */
     public int bufferSize = 0;
     /** Number of recovered packets that were received late. */
     public int latePackets = 0;
     /** Sequence number expected by the player. Forces the player to play at a specific frequency. */
-    public int expectedPacketNb = -1;
+    public long expectedPacketNb = -1;
     
     // Used for video streams only
     /** [Video] Current frames per second (FPS). */
@@ -0,0 +1,274 @@
+package com.fortizva.media;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * AdaptiveReader class reads the video frames of a clip from one of several renditions,
+ * which can be switched at any frame.
+ * <br>
+ * Renditions are the aligned files written by SimpleCodec's RenditionLadder: the clip itself
+ * is rendition 0 (highest quality) and rendition k is stored next to it with ".r&ltk&gt" before
+ * the extension. All of them have the same frame count, so every frame is read from the
+ * rendition selected at that moment through its index ({@link MappedCodec#seekFrame(int)}).
+ * Since MJPEG frames are independent, no reference frame is needed after a switch.
+ * <br>
+ * When a clip has no such files, lower renditions can be transcoded on the fly instead by a
+ * {@link FrameTranscoder}: frames of the selected profile are submitted
+ * {@link #TRANSCODE_AHEAD} frames ahead of the one being read, so they are usually ready when
+ * the sender needs them.
+ * <br>
+ * Audio is read from rendition 0, renditions only differ in their video.
+ */
+public class AdaptiveReader implements MediaReader {
+
+	static final int TRANSCODE_AHEAD = 12; // Frames submitted to the transcoder ahead of the one being read
+
+	private final MappedCodec[] renditions; // Files of the renditions (only the clip when transcoding)
+	private final FrameTranscoder transcoder; // null if every rendition is a file
+	private final FrameTranscoder.Profile[] profiles; // Profiles of the transcoded renditions, which follow the files
+	private final int[] bitrates; // Average video bitrate of each rendition in kbit/s
+	private final long[] framesRead; // Frames read from each rendition
+	private final long[] bytesRead; // Video bytes read from each rendition
+	private volatile int current = 0; // Rendition read by nextFrame()
+	private int frame_nb = 0; // Frame of the next frame or chunk
+	private boolean nextFrameIsAudio = false;
+
+	// Transcodes submitted ahead of the reader, in frame order starting at frame_nb
+	private final ArrayDeque<CompletableFuture<ByteBuffer>> pending = new ArrayDeque<>();
+	private int pendingRendition = -1; // Rendition of the pending transcodes
+	private int submitted = 0; // Next frame to submit to the transcoder
+
+	/**
+	 * @param renditions readers of every rendition, from the highest to the lowest quality
+	 * @throws IllegalArgumentException if the renditions do not have the same number of frames
+	 */
+	public AdaptiveReader(MappedCodec[] renditions) {
+		this(renditions, null, new FrameTranscoder.Profile[0]);
+	}
+
+	/**
+	 * Reads a clip whose lower renditions are transcoded on the fly.
+	 *
+	 * @param clip       reader of the clip (rendition 0)
+	 * @param transcoder transcoder of the lower renditions
+	 * @param profiles   profiles of renditions 1 and above, from the highest to the lowest quality
+	 */
+	public AdaptiveReader(MappedCodec clip, FrameTranscoder transcoder, FrameTranscoder.Profile[] profiles) {
+		this(new MappedCodec[] { clip }, transcoder, profiles);
+	}
+
+	private AdaptiveReader(MappedCodec[] renditions, FrameTranscoder transcoder, FrameTranscoder.Profile[] profiles) {
+		this.renditions = renditions;
+		this.transcoder = transcoder;
+		this.profiles = profiles;
+		int count = renditions.length + profiles.length;
+		bitrates = new int[count];
+		framesRead = new long[count];
+		bytesRead = new long[count];
+		for (int k = 0; k < renditions.length; k++) {
+			if (renditions[k].getNumFrames() != renditions[0].getNumFrames())
+				throw new IllegalArgumentException("Rendition " + k + " has " + renditions[k].getNumFrames() + " frames instead of "
+						+ renditions[0].getNumFrames());
+			bitrates[k] = averageBitrate(renditions[k]);
+		}
+		// Until frames are transcoded, the size of a JPEG is assumed to follow its number of pixels
+		for (int p = 0; p < profiles.length; p++)
+			bitrates[renditions.length + p] = Math.round(bitrates[0] * profiles[p].getScale() * profiles[p].getScale());
+	}
+
+	/**
+	 * Name of the file of rendition k, as written by RenditionLadder.
+	 *
+	 * @param filename path of the clip (rendition 0)
+	 * @param k        rendition number
+	 * @return the path of the rendition
+	 */
+	public static String renditionName(String filename, int k) {
+		if (k == 0)
+			return filename;
+		Path base = Paths.get(filename);
+		String name = base.getFileName().toString();
+		int dot = name.lastIndexOf('.');
+		String renamed = (dot > 0) ? name.substring(0, dot) + ".r" + k + name.substring(dot) : name + ".r" + k;
+		return base.resolveSibling(renamed).toString();
+	}
+
+	/**
+	 * Opens the renditions found next to a clip. Renditions that are not aligned with the
+	 * clip are reported and ignored, along with the following ones.
+	 *
+	 * @param clip reader of the clip (rendition 0)
+	 * @return the readers of every rendition, starting with the clip
+	 */
+	public static MappedCodec[] openRenditions(MappedCodec clip) {
+		ArrayList<MappedCodec> found = new ArrayList<>();
+		found.add(clip);
+		for (int k = 1;; k++) {
+			String name = renditionName(clip.filename, k);
+			if (!Files.isRegularFile(Paths.get(name)))
+				break;
+			try {
+				MappedCodec rendition = new MappedCodec(name);
+				if (rendition.getNumFrames() != clip.getNumFrames()) {
+					System.out.println("Rendition " + name + " has " + rendition.getNumFrames() + " frames instead of "
+							+ clip.getNumFrames() + ". Ignoring it.");
+					rendition.close();
+					break;
+				}
+				found.add(rendition);
+			} catch (IOException e) {
+				System.out.println("Error opening rendition " + name + ": " + e);
+				break;
+			}
+		}
+		return found.toArray(new MappedCodec[0]);
+	}
+
+	/**
+	 * @return average video bitrate of a file in kbit/s
+	 */
+	static int averageBitrate(MappedCodec codec) {
+		FrameIndex index = codec.getIndex();
+		int frames = index.getFrameCount();
+		if (frames == 0)
+			return 0;
+		long bytes = 0;
+		for (int i = 0; i < frames; i++)
+			bytes += index.getVideoLength(i);
+		return (int) (bytes * 8 * Math.max(codec.getFPS(), 1) / frames / 1000);
+	}
+
+	@Override
+	public ByteBuffer nextFrame() throws IOException {
+		if (nextFrameIsAudio)
+			frame_nb++;
+		if (frame_nb >= renditions[0].getNumFrames())
+			return null;
+		int k = current;
+		ByteBuffer frame;
+		if (k < renditions.length) {
+			MappedCodec rendition = renditions[k];
+			rendition.seekFrame(frame_nb);
+			frame = rendition.nextFrame();
+			pendingRendition = -1; // Pending transcodes no longer start at the current frame
+			pending.clear();
+		} else {
+			frame = nextTranscodedFrame(k);
+		}
+		framesRead[k]++;
+		bytesRead[k] += frame.remaining();
+		nextFrameIsAudio = true;
+		return frame;
+	}
+
+	/**
+	 * Returns the current frame transcoded for rendition k, submitting the following ones.
+	 */
+	private ByteBuffer nextTranscodedFrame(int k) throws IOException {
+		MappedCodec clip = renditions[0];
+		if (pendingRendition != k) {
+			// The transcodes of the previous rendition are left to finish in the cache
+			pending.clear();
+			pendingRendition = k;
+			submitted = frame_nb;
+		}
+		FrameTranscoder.Profile profile = profiles[k - renditions.length];
+		int end = Math.min(frame_nb + TRANSCODE_AHEAD, clip.getNumFrames());
+		for (; submitted < end; submitted++) {
+			final int n = submitted;
+			pending.add(transcoder.submit(clip.filename, clip.mtime, n, profile, () -> clip.frameAt(n)));
+		}
+		return transcoder.await(pending.poll());
+	}
+
+	@Override
+	public ByteBuffer nextChunk() throws IOException {
+		if (frame_nb >= renditions[0].getNumFrames())
+			return null;
+		renditions[0].seekFrame(frame_nb);
+		ByteBuffer chunk = renditions[0].nextChunk();
+		frame_nb++;
+		nextFrameIsAudio = false;
+		return chunk;
+	}
+
+	/**
+	 * Selects the rendition of the next frames.
+	 *
+	 * @param k rendition number (0 is the highest quality)
+	 */
+	public void setRendition(int k) {
+		if (k < 0 || k >= bitrates.length)
+			throw new IndexOutOfBoundsException("Rendition " + k + " out of [0, " + bitrates.length + ")");
+		current = k;
+	}
+
+	/**
+	 * @return the rendition of the next frames
+	 */
+	public int getRendition() {
+		return current;
+	}
+
+	/**
+	 * @return number of renditions
+	 */
+	public int getRenditionCount() {
+		return bitrates.length;
+	}
+
+	/**
+	 * @param k rendition number
+	 * @return average video bitrate of the rendition in kbit/s
+	 */
+	public int getBitrate(int k) {
+		if (k >= renditions.length && framesRead[k] > 0) // Measured on the transcoded frames
+			return (int) (bytesRead[k] * 8 * Math.max(renditions[0].getFPS(), 1) / framesRead[k] / 1000);
+		return bitrates[k];
+	}
+
+	/**
+	 * @return true if the lower renditions are transcoded on the fly
+	 */
+	public boolean isTranscoding() {
+		return transcoder != null;
+	}
+
+	/**
+	 * @return frame of the next frame or chunk
+	 */
+	public int getFrameNumber() {
+		return frame_nb;
+	}
+
+	/**
+	 * @param k rendition number
+	 * @return media time read from the rendition, in ms
+	 */
+	public long getTimeInRendition(int k) {
+		return framesRead[k] * 1000 / Math.max(renditions[0].getFPS(), 1);
+	}
+
+	@Override
+	public MediaHeader getHeader() {
+		return renditions[0].getHeader();
+	}
+
+	@Override
+	public boolean isNextFrameAudio() {
+		return nextFrameIsAudio;
+	}
+
+	@Override
+	public void close() throws IOException {
+		for (MappedCodec rendition : renditions)
+			rendition.close();
+	}
+}
@@ -4,10 +4,19 @@ package com.fortizva.media;
 import java.io.*;
 import java.nio.ByteBuffer;
 
-public class Codec {
+/**
+ * Codec class reads SimpleCodec container files through a {@link FileInputStream}.
+ * <br>
+ * See {@link MappedCodec} for a memory-mapped reader of the same files.
+ */
+public class Codec implements MediaReader {
 
 	FileInputStream fis; // video file
 	int frame_nb; // current frame nb
+	long position; // file offset of the next byte to read
+	long recordEnd; // file offset of the record following the current one
+	long timestamp; // timestamp of the current record in milliseconds
+	int audioTrack = 0; // audio track returned by getnextchunk()
 
 	byte Version;
 	byte fps;
@@ -18,6 +27,8 @@ public class Codec {
 	int SamplingRate;
 	byte bitDepth;
 	byte channelCount;
+	MediaHeader header;
+	FrameIndex index;
 
 	private boolean nextFrameIsAudio = false; // Flag to indicate if the next frame is audio data
 
@@ -30,56 +41,101 @@ public class Codec {
 		fis = new FileInputStream(filename);
 		frame_nb = 0;
 		this.readHeader();
+		// Trust the frame index (loaded from the sidecar file when valid) over the header
+		index = FrameIndex.open(filename, header);
+		numFrames = index.getFrameCount();
 		this.nextFrameIsAudio = false; // Initialize the flag to false
 
 	}
 
 	public void readHeader() throws Exception {
 
-		byte[] _Version = new byte[1];
-		byte[] _fps = new byte[1];
-		byte[] _numFrames = new byte[4];
-		byte[] _width = new byte[4];
-		byte[] _heigh = new byte[4];
-		byte[] _nAudioTracks = new byte[1];
-		byte[] _SamplingRate = new byte[4];
-		byte[] _bitDepth = new byte[1];
-		byte[] _channelCount = new byte[1];
-
-		fis.read(_Version, 0, 1);
-		Version = _Version[0];
-
-		fis.read(_fps, 0, 1);
-		fps = _fps[0];
-
-		fis.read(_numFrames, 0, 4);
-		numFrames = this.ByteArraytoInt(_numFrames);
-
-		fis.read(_width, 0, 4);
-		width = this.ByteArraytoInt(_width);
-
-		fis.read(_heigh, 0, 4);
-		heigh = this.ByteArraytoInt(_heigh);
-
-		fis.read(_nAudioTracks, 0, 1);
-		nAudioTracks = _nAudioTracks[0];
+		// Read the whole header with a single call and parse it from memory
+		byte[] _header = new byte[MediaHeader.HEADER_SIZE + MediaHeader.V2_EXTENSION_SIZE];
+		readBytes(_header, MediaHeader.HEADER_SIZE);
+		if (_header[0] >= MediaHeader.VERSION_2) {
+			// Version 2 header carries the index offset and the record alignment
+			ByteBuffer ext = ByteBuffer.wrap(_header, MediaHeader.HEADER_SIZE, MediaHeader.V2_EXTENSION_SIZE);
+			readBytes(ext.array(), ext.position(), MediaHeader.V2_EXTENSION_SIZE);
+		}
+		header = MediaHeader.read(ByteBuffer.wrap(_header));
+		skipTo(header.getRecordsOffset());
+
+		Version = header.Version;
+		fps = header.fps;
+		numFrames = header.numFrames;
+		width = header.width;
+		heigh = header.heigh;
+		nAudioTracks = header.nAudioTracks;
+		SamplingRate = header.SamplingRate;
+		bitDepth = header.bitDepth;
+		channelCount = header.channelCount;
 
-		fis.read(_SamplingRate, 0, 4);
-		SamplingRate = this.ByteArraytoInt(_SamplingRate);
+	}
 
-		fis.read(_bitDepth, 0, 1);
-		bitDepth = _bitDepth[0];
+	/**
+	 * Reads the given number of bytes at the beginning of the array.
+	 */
+	private void readBytes(byte[] b, int length) throws IOException {
+		readBytes(b, 0, length);
+	}
 
-		fis.read(_channelCount, 0, 1);
-		channelCount = _channelCount[0];
+	/**
+	 * Reads the given number of bytes into the array, failing on a truncated file.
+	 */
+	private void readBytes(byte[] b, int offset, int length) throws IOException {
+		int read = fis.readNBytes(b, offset, length);
+		position += read;
+		if (read < length)
+			throw new EOFException("Truncated file at offset " + position);
+	}
 
+	/**
+	 * Skips bytes until the given file offset is reached.
+	 */
+	private void skipTo(long offset) throws IOException {
+		while (position < offset) {
+			long skipped = fis.skip(offset - position);
+			if (skipped <= 0)
+				throw new EOFException("Truncated file at offset " + position);
+			position += skipped;
+		}
 	}
 
-	private int ByteArraytoInt(byte[] i) {
-		ByteBuffer bb = ByteBuffer.allocate(Integer.BYTES);
-		bb.put(i);
-		bb.rewind();
-		return bb.getInt();
+	/**
+	 * Reads the prefix of the next record and returns the length of its video frame.
+	 * The prefix format is picked from the header version, 5 ASCII decimal digits for
+	 * version 1 files and a binary length followed by the frame timestamp for version 2.
+	 * 
+	 * @return the length of the video frame in bytes
+	 * @throws IOException if an error occurs while reading the file
+	 */
+	private int readVideoLength() throws IOException {
+		int length = 0;
+		long prefixEnd;
+		if (Version >= MediaHeader.VERSION_2) {
+			byte[] prefix = new byte[MediaHeader.V2_RECORD_HEADER_SIZE];
+			readBytes(prefix, MediaHeader.V2_RECORD_HEADER_SIZE);
+			ByteBuffer bb = ByteBuffer.wrap(prefix);
+			length = bb.getInt();
+			timestamp = bb.getLong();
+			prefixEnd = position;
+			recordEnd = MediaHeader.align(prefixEnd + length + header.getAudioDataSize(), header.getAlignment());
+		} else {
+			String length_string;
+			byte[] frame_length = new byte[5];
+
+			// read current frame length
+			readBytes(frame_length, 5);
+
+			// transform frame_length to integer
+			length_string = new String(frame_length);
+			length = Integer.parseInt(length_string);
+			timestamp = frame_nb * 1000L / fps;
+			prefixEnd = position;
+			recordEnd = prefixEnd + length + header.getAudioDataSize();
+		}
+		return length;
 	}
 
 	/**
@@ -96,19 +152,12 @@ public class Codec {
 			skipAudioData();
 		}
 		
-		int length = 0;
-		String length_string;
-		byte[] frame_length = new byte[5];
-
-		// read current frame length
-		fis.read(frame_length, 0, 5);
-
-		// transform frame_length to integer
-		length_string = new String(frame_length);
-		length = Integer.parseInt(length_string);
+		int length = readVideoLength();
+		readBytes(frame, length);
+		frame_nb++;
 		
 		nextFrameIsAudio = true; // Set the flag for the next frame
-		return (fis.read(frame, 0, length));
+		return length;
 	}
 
 	/**
@@ -123,17 +172,52 @@ public class Codec {
 		if (!nextFrameIsAudio) {
 			// If it is video data, skip to audio data
 			skipVideoData();
+			frame_nb++;
 		}
 
 		// Be ware!!! [sampleRate * (bitDepth / 8) * channelCount (Bps)]/10 (1 packet in
 		// 0,1 sec)
-		int length = (int) (this.SamplingRate * (this.bitDepth / 8.0) * this.channelCount / this.fps);
+		int length = header.getAudioChunkSize();
 
+		// Skip the audio tracks before the selected one
+		skipTo(position + header.getTrackOffset(audioTrack));
 		// returns the length of data copied in buffer
-		int count = fis.read(frame, 0, length);
+		readBytes(frame, length);
+		// Skip any other audio track and the alignment padding
+		skipTo(recordEnd);
 
 		nextFrameIsAudio = false; // Reset the flag for the next frame
-		return (count);
+		return (length);
+	}
+
+	@Override
+	public ByteBuffer nextFrame() throws IOException {
+		if (frame_nb >= numFrames)
+			return null;
+		try {
+			byte[] frame = new byte[index.getVideoLength(frame_nb)];
+			int length = getnextframe(frame);
+			return ByteBuffer.wrap(frame, 0, length);
+		} catch (IOException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new IOException(e);
+		}
+	}
+
+	@Override
+	public ByteBuffer nextChunk() throws IOException {
+		if (frame_nb >= numFrames && !nextFrameIsAudio)
+			return null;
+		try {
+			byte[] chunk = new byte[header.getAudioChunkSize()];
+			int length = getnextchunk(chunk);
+			return ByteBuffer.wrap(chunk, 0, length);
+		} catch (IOException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new IOException(e);
+		}
 	}
 
 	/**
@@ -142,10 +226,8 @@ public class Codec {
 	 * @throws IOException
 	 */
 	private void skipAudioData() throws IOException {
-		// Calculate the size of the audio data for one frame
-		int audioDataSize = (int) (this.SamplingRate * (this.bitDepth / 8.0) * this.channelCount / this.fps);
-		// Skip the audio data
-		fis.skip(audioDataSize);
+		// The end of the record was computed when its video length was read
+		skipTo(recordEnd);
 	}
 
 	/**
@@ -155,19 +237,36 @@ public class Codec {
 	 */
 	private void skipVideoData() throws IOException {
 		// Calculate the size of the video data for one frame
-		int length = 0;
-		String length_string;
-		byte[] frame_length = new byte[5];
+		int length = readVideoLength();
+
+		// Skip the video data
+		skipTo(position + length);
+	}
 
-		// read current frame length
-		fis.read(frame_length, 0, 5);
+	/**
+	 * Selects the audio track returned by {@link #getnextchunk(byte[])}.
+	 *
+	 * @param track audio track number (starting at 0)
+	 */
+	public void setAudioTrack(int track) {
+		if (track < 0 || track >= header.getTrackCount())
+			throw new IndexOutOfBoundsException("Audio track " + track + " out of [0, " + header.getTrackCount() + ")");
+		audioTrack = track;
+	}
 
-		// transform frame_length to integer
-		length_string = new String(frame_length);
-		length = Integer.parseInt(length_string);
+	/**
+	 * @return media timestamp in milliseconds of the last record whose length was read
+	 */
+	public long getFrameTimestamp() {
+		return timestamp;
+	}
 
-		// Skip the video data
-		fis.skip(length);
+	/**
+	 * @return the container header
+	 */
+	@Override
+	public MediaHeader getHeader() {
+		return header;
 	}
 
 	/**
@@ -185,7 +284,7 @@ public class Codec {
 	}
 
 	/**
-	 * @return the numFrames
+	 * @return the number of frames found in the file
 	 */
 	public int getNumFrames() {
 		return numFrames;
@@ -236,10 +335,12 @@ public class Codec {
 	/**
 	 * @return the nextFrameIsAudio
 	 */
+	@Override
 	public boolean isNextFrameAudio() {
 		return nextFrameIsAudio;
 	}
 
+	@Override
 	public void close() throws IOException {
 		if (fis != null) {
 			fis.close();
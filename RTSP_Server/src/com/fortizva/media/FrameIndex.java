@@ -0,0 +1,282 @@
+package com.fortizva.media;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * FrameIndex class holds the position of every record of a container file so any frame
+ * can be reached without reading the ones before it.
+ * <br>
+ * Each entry is made of 4 longs: video frame offset, video frame length, audio chunk offset and
+ * frame timestamp in milliseconds.
+ * <br>
+ * Version 2 files embed the index themselves, so it is just memory-mapped from the media file.
+ * Otherwise the index is built by scanning the file the first time it is opened and then persisted
+ * next to it as a sidecar file ({@link #SIDECAR_SUFFIX}). Later opens validate the sidecar against
+ * the size and modification time of the media file and memory-map it.
+ * <pre>
+ * Sidecar layout (big-endian):
+ * +-------+----------+-----------+-------+----------+---------------------------+
+ * | magic | fileSize | fileMtime | count | reserved | count * 4 longs (entries) |
+ * |   8   |    8     |     8     |   4   |    4     |                           |
+ * +-------+----------+-----------+-------+----------+---------------------------+
+ * </pre>
+ */
+public class FrameIndex {
+
+	public static final String SIDECAR_SUFFIX = ".idx";
+	static final long MAGIC = 0x5254535049445832L; // "RTSPIDX2"
+	static final int SIDECAR_HEADER_SIZE = 32;
+	static final int ENTRY_LONGS = 4; // video offset, video length, audio offset, timestamp
+
+	private final LongBuffer entries; // Either a wrapped long[] or a view of the mapped sidecar
+	private final int count; // Number of frames in the index
+	private final long fileSize; // Size of the indexed media file
+
+	FrameIndex(LongBuffer entries, int count, long fileSize) {
+		this.entries = entries;
+		this.count = count;
+		this.fileSize = fileSize;
+	}
+
+	/**
+	 * Opens the index of a media file. The index embedded in version 2 files is used when
+	 * present, then the sidecar file when it is still valid, otherwise the index is built and
+	 * persisted.
+	 *
+	 * @param filename path of the media file
+	 * @param header   header of the media file
+	 * @return the frame index
+	 * @throws IOException if the media file can not be opened or scanned
+	 */
+	public static FrameIndex open(String filename, MediaHeader header) throws IOException {
+		try (FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ)) {
+			return open(filename, header, channel); // Mappings stay valid after the channel is closed
+		}
+	}
+
+	/**
+	 * Opens the index of a media file through a channel opened by the caller.
+	 *
+	 * @param filename path of the media file
+	 * @param header   header of the media file
+	 * @param channel  channel of the media file, used to scan it when no valid index exists
+	 * @return the frame index
+	 * @throws IOException if the media file can not be scanned
+	 */
+	static FrameIndex open(String filename, MediaHeader header, FileChannel channel) throws IOException {
+		Path media = Paths.get(filename);
+		Path sidecar = Paths.get(filename + SIDECAR_SUFFIX);
+		long size = channel.size();
+		long mtime = Files.getLastModifiedTime(media).toMillis();
+
+		if (header.getIndexOffset() > 0) {
+			FrameIndex embedded = loadEmbedded(header, channel);
+			if (embedded != null)
+				return embedded;
+		}
+		FrameIndex index = load(sidecar, size, mtime);
+		if (index == null) {
+			index = build(header, channel);
+			try {
+				index.write(sidecar, mtime);
+			} catch (IOException e) {
+				// Read-only media directory, the index is just rebuilt on the next open
+			}
+		}
+		return index;
+	}
+
+	/**
+	 * Builds the index by walking the records of the file. Only the length prefix of each
+	 * frame is read, the parser is picked from the header version.
+	 *
+	 * @param header  header of the media file
+	 * @param channel channel of the media file
+	 * @return the frame index
+	 * @throws IOException if an error occurs while reading the file
+	 */
+	static FrameIndex build(MediaHeader header, FileChannel channel) throws IOException {
+		boolean v2 = header.getVersion() >= MediaHeader.VERSION_2;
+		int audioSize = header.getAudioDataSize();
+		int prefixSize = v2 ? MediaHeader.V2_RECORD_HEADER_SIZE : MappedCodec.FRAME_LENGTH_DIGITS;
+		long fileSize = channel.size();
+		// The embedded index, if any, marks the end of the records
+		long size = (header.getIndexOffset() > 0) ? header.getIndexOffset() : fileSize;
+		long[] e = new long[ENTRY_LONGS * Math.max(header.getNumFrames(), 16)];
+		ByteBuffer prefix = ByteBuffer.allocate(prefixSize);
+		int n = 0;
+		long pos = header.getRecordsOffset();
+		while (pos + prefixSize <= size) {
+			long videoOffset = pos + prefixSize;
+			long videoLength;
+			long timestamp;
+			readAt(channel, prefix.clear(), pos);
+			if (v2) {
+				videoLength = prefix.getInt(0) & 0xFFFFFFFFL;
+				timestamp = prefix.getLong(4);
+			} else {
+				videoLength = parseFrameLength(prefix, pos);
+				timestamp = n * 1000L / Math.max(header.getFPS(), 1);
+			}
+			videoLength = Math.min(videoLength, size - videoOffset); // Truncated last frame
+			if (ENTRY_LONGS * (n + 1) > e.length)
+				e = Arrays.copyOf(e, e.length * 2);
+			e[ENTRY_LONGS * n] = videoOffset;
+			e[ENTRY_LONGS * n + 1] = videoLength;
+			e[ENTRY_LONGS * n + 2] = videoOffset + videoLength;
+			e[ENTRY_LONGS * n + 3] = timestamp;
+			n++;
+			pos = videoOffset + videoLength + audioSize;
+			if (v2)
+				pos = MediaHeader.align(pos, header.getAlignment());
+		}
+		return new FrameIndex(LongBuffer.wrap(e, 0, ENTRY_LONGS * n).slice(), n, fileSize);
+	}
+
+	/**
+	 * Fills a buffer with the bytes of the file at the given offset.
+	 */
+	private static void readAt(FileChannel channel, ByteBuffer bb, long offset) throws IOException {
+		while (bb.hasRemaining()) {
+			if (channel.read(bb, offset + bb.position()) < 0)
+				throw new EOFException("Unexpected end of file at offset " + (offset + bb.position()));
+		}
+	}
+
+	/**
+	 * Parses the 5 digits ASCII length of a version 1 video frame.
+	 */
+	private static int parseFrameLength(ByteBuffer digits, long offset) throws IOException {
+		int length = 0;
+		for (int i = 0; i < MappedCodec.FRAME_LENGTH_DIGITS; i++) {
+			int d = digits.get(i) - '0';
+			if (d < 0 || d > 9)
+				throw new IOException("Invalid frame length at offset " + offset);
+			length = length * 10 + d;
+		}
+		return length;
+	}
+
+	/**
+	 * Maps the index embedded in a version 2 file.
+	 *
+	 * @return the mapped index, or null if it does not fit in the file
+	 */
+	static FrameIndex loadEmbedded(MediaHeader header, FileChannel channel) throws IOException {
+		long offset = header.getIndexOffset();
+		long fileSize = channel.size();
+		if (offset + MediaHeader.V2_INDEX_HEADER_SIZE > fileSize)
+			return null;
+		ByteBuffer indexHeader = ByteBuffer.allocate(MediaHeader.V2_INDEX_HEADER_SIZE);
+		readAt(channel, indexHeader, offset);
+		int n = indexHeader.getInt(0);
+		long length = (long) n * ENTRY_LONGS * Long.BYTES;
+		if (n < 0 || offset + MediaHeader.V2_INDEX_HEADER_SIZE + length > fileSize)
+			return null;
+		MappedByteBuffer bb = channel.map(MapMode.READ_ONLY, offset + MediaHeader.V2_INDEX_HEADER_SIZE, length);
+		return new FrameIndex(bb.asLongBuffer(), n, fileSize);
+	}
+
+	/**
+	 * Maps the sidecar file if it exists and matches the media file.
+	 *
+	 * @return the mapped index, or null if the sidecar is missing or stale
+	 */
+	static FrameIndex load(Path sidecar, long size, long mtime) {
+		if (!Files.isRegularFile(sidecar))
+			return null;
+		try (FileChannel ch = FileChannel.open(sidecar, StandardOpenOption.READ)) {
+			if (ch.size() < SIDECAR_HEADER_SIZE)
+				return null;
+			MappedByteBuffer bb = ch.map(MapMode.READ_ONLY, 0, ch.size());
+			if (bb.getLong(0) != MAGIC || bb.getLong(8) != size || bb.getLong(16) != mtime)
+				return null;
+			int n = bb.getInt(24);
+			if (n < 0 || ch.size() != SIDECAR_HEADER_SIZE + (long) n * ENTRY_LONGS * Long.BYTES)
+				return null;
+			// The mapping stays valid after the channel is closed
+			return new FrameIndex(bb.position(SIDECAR_HEADER_SIZE).slice().asLongBuffer(), n, size);
+		} catch (IOException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Persists the index atomically as a sidecar file.
+	 */
+	void write(Path sidecar, long mtime) throws IOException {
+		ByteBuffer bb = ByteBuffer.allocate(SIDECAR_HEADER_SIZE + count * ENTRY_LONGS * Long.BYTES);
+		bb.putLong(MAGIC).putLong(fileSize).putLong(mtime).putInt(count).putInt(0);
+		bb.asLongBuffer().put(entries.duplicate().rewind());
+		bb.rewind(); // The long view does not move the byte buffer position
+		Path tmp = Files.createTempFile(sidecar.toAbsolutePath().getParent(), sidecar.getFileName().toString(), ".tmp");
+		try {
+			try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+				while (bb.hasRemaining())
+					ch.write(bb);
+			}
+			Files.move(tmp, sidecar, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			Files.deleteIfExists(tmp); // Do not leave a temporary file next to the media on every open
+			throw e;
+		}
+	}
+
+	/**
+	 * @return the number of frames in the file
+	 */
+	public int getFrameCount() {
+		return count;
+	}
+
+	/**
+	 * @param frame frame number (starting at 0)
+	 * @return file offset of the video frame data
+	 */
+	public long getVideoOffset(int frame) {
+		return entries.get(ENTRY_LONGS * frame);
+	}
+
+	/**
+	 * @param frame frame number (starting at 0)
+	 * @return length in bytes of the video frame data
+	 */
+	public int getVideoLength(int frame) {
+		return (int) entries.get(ENTRY_LONGS * frame + 1);
+	}
+
+	/**
+	 * @param frame frame number (starting at 0)
+	 * @return file offset of the audio chunk stored after the video frame
+	 */
+	public long getAudioOffset(int frame) {
+		return entries.get(ENTRY_LONGS * frame + 2);
+	}
+
+	/**
+	 * @param frame frame number (starting at 0)
+	 * @return media timestamp of the frame in milliseconds
+	 */
+	public long getTimestamp(int frame) {
+		return entries.get(ENTRY_LONGS * frame + 3);
+	}
+
+	/**
+	 * @return the size of the indexed media file
+	 */
+	public long getFileSize() {
+		return fileSize;
+	}
+}
@@ -0,0 +1,378 @@
+package com.fortizva.media;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+
+/**
+ * FrameTranscoder class downscales and recompresses JPEG frames on a pool of worker threads,
+ * for clips that have no pre-built lower quality renditions.
+ * <br>
+ * Results are kept in a process-wide cache keyed by file path, file modification time, frame
+ * number and {@link Profile}, so every session streaming the same file with the same profile
+ * shares the transcoding work. A frame submitted while it is still being transcoded gets the
+ * pending result instead of a second transcode. The least recently used results are evicted
+ * when the total size exceeds the byte budget.
+ */
+public class FrameTranscoder {
+
+	/** Default byte budget, can be overridden with the "rtsp.transcode.bytes" system property. */
+	public static final long DEFAULT_BUDGET = 64L * 1024 * 1024;
+
+	private static final FrameTranscoder INSTANCE = new FrameTranscoder(Long.getLong("rtsp.transcode.bytes", DEFAULT_BUDGET),
+			Runtime.getRuntime().availableProcessors());
+
+	private static final ThreadLocal<ImageWriter> WRITER = ThreadLocal
+			.withInitial(() -> ImageIO.getImageWritersByFormatName("jpeg").next());
+
+	/**
+	 * Output scale and JPEG quality of transcoded frames.
+	 */
+	public static final class Profile {
+		final float quality;
+		final float scale;
+
+		/**
+		 * @param quality JPEG quality (0 to 1)
+		 * @param scale   size of the output relative to the input (0 to 1]
+		 */
+		public Profile(float quality, float scale) {
+			if (quality < 0 || quality > 1 || scale <= 0 || scale > 1)
+				throw new IllegalArgumentException("Quality must be in [0, 1] and scale in (0, 1]");
+			this.quality = quality;
+			this.scale = scale;
+		}
+
+		/**
+		 * Parses a profile written as "quality:scale" (e.g. "0.5:0.5").
+		 *
+		 * @param s the profile
+		 * @return the parsed profile
+		 * @throws IllegalArgumentException if the profile is not valid
+		 */
+		public static Profile parse(String s) {
+			String[] parts = s.split(":");
+			if (parts.length != 2)
+				throw new IllegalArgumentException("Profile must be quality:scale: " + s);
+			return new Profile(Float.parseFloat(parts[0]), Float.parseFloat(parts[1]));
+		}
+
+		/**
+		 * @return size of the output relative to the input
+		 */
+		public float getScale() {
+			return scale;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Profile))
+				return false;
+			Profile p = (Profile) o;
+			return quality == p.quality && scale == p.scale;
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(quality, scale);
+		}
+
+		@Override
+		public String toString() {
+			return quality + ":" + scale;
+		}
+	}
+
+	/**
+	 * Key of a cache entry.
+	 */
+	static final class Key {
+		final String path;
+		final long mtime;
+		final int frame;
+		final Profile profile;
+
+		Key(String path, long mtime, int frame, Profile profile) {
+			this.path = path;
+			this.mtime = mtime;
+			this.frame = frame;
+			this.profile = profile;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Key))
+				return false;
+			Key k = (Key) o;
+			return frame == k.frame && mtime == k.mtime && profile.equals(k.profile) && path.equals(k.path);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(path, mtime, frame, profile);
+		}
+	}
+
+	/**
+	 * Cache entry, its size is known once the transcode is done.
+	 */
+	static final class Entry {
+		final CompletableFuture<ByteBuffer> result = new CompletableFuture<>();
+		int size = 0;
+	}
+
+	// Access ordered map, iteration starts at the least recently used entry
+	private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(1024, 0.75f, true);
+	private final ExecutorService workers;
+	private final int nWorkers;
+	private volatile long budget; // Maximum number of cached bytes
+	private long usedBytes = 0; // Cached bytes of the finished entries (guarded by this)
+
+	// Metrics
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong transcoded = new AtomicLong();
+	private final AtomicLong failures = new AtomicLong(); // Frames sent as they were because they could not be decoded
+	private final AtomicLong latencyNanos = new AtomicLong(); // Total time from submission to result
+	private final AtomicLong maxLatencyNanos = new AtomicLong();
+	private final AtomicLong lateFrames = new AtomicLong(); // Frames requested before their transcode was done
+
+	FrameTranscoder(long budget, int nWorkers) {
+		this.budget = budget;
+		this.nWorkers = Math.max(nWorkers, 1);
+		AtomicInteger threadNb = new AtomicInteger();
+		workers = Executors.newFixedThreadPool(this.nWorkers, r -> {
+			Thread t = new Thread(r, "FrameTranscoder-" + threadNb.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		});
+	}
+
+	/**
+	 * @return the process-wide transcoder
+	 */
+	public static FrameTranscoder getInstance() {
+		return INSTANCE;
+	}
+
+	/**
+	 * Returns the transcoded frame, scheduling its transcode on a miss. The source frame is
+	 * only loaded on a miss, on the calling thread.
+	 *
+	 * @param path    path of the media file
+	 * @param mtime   modification time of the media file
+	 * @param frame   frame number
+	 * @param profile output profile
+	 * @param loader  loads the source frame on a miss
+	 * @return future completed with a read-only buffer holding the transcoded frame
+	 * @throws IOException if the loader fails
+	 */
+	public CompletableFuture<ByteBuffer> submit(String path, long mtime, int frame, Profile profile, MediaCache.Loader loader)
+			throws IOException {
+		Key key = new Key(path, mtime, frame, profile);
+		Entry entry;
+		synchronized (this) {
+			entry = entries.get(key);
+			if (entry == null && budget > 0) {
+				entry = new Entry();
+				entries.put(key, entry);
+			} else if (entry != null) {
+				hits.incrementAndGet();
+				return entry.result.thenApply(ByteBuffer::duplicate);
+			}
+		}
+		misses.incrementAndGet();
+		if (entry == null)
+			entry = new Entry(); // Caching disabled, transcode anyway
+
+		final Entry e = entry;
+		try {
+			ByteBuffer source = loader.load();
+			long submitted = System.nanoTime();
+			workers.execute(() -> {
+				ByteBuffer out = transcode(source, profile);
+				long latency = System.nanoTime() - submitted;
+				latencyNanos.addAndGet(latency);
+				maxLatencyNanos.accumulateAndGet(latency, Math::max);
+				transcoded.incrementAndGet();
+				synchronized (this) {
+					if (entries.get(key) == e) {
+						e.size = out.capacity();
+						usedBytes += e.size;
+						evict();
+					}
+				}
+				e.result.complete(out);
+			});
+		} catch (IOException | RuntimeException ex) {
+			synchronized (this) {
+				entries.remove(key, e);
+			}
+			e.result.completeExceptionally(ex);
+			throw ex;
+		}
+		return e.result.thenApply(ByteBuffer::duplicate);
+	}
+
+	/**
+	 * Waits for a transcoded frame, counting it as late if it was not ready yet.
+	 *
+	 * @param result future returned by {@link #submit}
+	 * @return the transcoded frame
+	 * @throws IOException if the source frame could not be loaded or the wait was interrupted
+	 */
+	public ByteBuffer await(CompletableFuture<ByteBuffer> result) throws IOException {
+		if (!result.isDone())
+			lateFrames.incrementAndGet();
+		try {
+			return result.get();
+		} catch (ExecutionException e) {
+			throw new IOException("Transcode failed", e.getCause());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while waiting for a transcoded frame");
+		}
+	}
+
+	/**
+	 * Decodes a JPEG frame and encodes it again with the given profile.
+	 *
+	 * @return read-only buffer with the transcoded frame, or with the source frame if it can
+	 *         not be decoded
+	 */
+	ByteBuffer transcode(ByteBuffer jpeg, Profile profile) {
+		byte[] src = new byte[jpeg.remaining()];
+		jpeg.duplicate().get(src);
+		try {
+			BufferedImage image = ImageIO.read(new ByteArrayInputStream(src));
+			if (image != null) {
+				int w = Math.max(1, Math.round(image.getWidth() * profile.scale));
+				int h = Math.max(1, Math.round(image.getHeight() * profile.scale));
+				BufferedImage scaled = new BufferedImage(w, h, BufferedImage.TYPE_3BYTE_BGR);
+				Graphics2D g = scaled.createGraphics();
+				g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+				g.drawImage(image, 0, 0, w, h, null);
+				g.dispose();
+
+				ImageWriter writer = WRITER.get();
+				ImageWriteParam param = writer.getDefaultWriteParam();
+				param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+				param.setCompressionQuality(profile.quality);
+				ByteArrayOutputStream out = new ByteArrayOutputStream(src.length);
+				try (MemoryCacheImageOutputStream ios = new MemoryCacheImageOutputStream(out)) {
+					writer.setOutput(ios);
+					writer.write(null, new IIOImage(scaled, null, null), param);
+				} finally {
+					writer.reset();
+				}
+				return ByteBuffer.wrap(out.toByteArray()).asReadOnlyBuffer();
+			}
+		} catch (IOException | RuntimeException e) {
+			// Sent as it is below
+		}
+		failures.incrementAndGet();
+		return ByteBuffer.wrap(src).asReadOnlyBuffer();
+	}
+
+	/**
+	 * Evicts least recently used finished entries until the cache fits in its budget.
+	 */
+	private void evict() {
+		Iterator<Map.Entry<Key, Entry>> it = entries.entrySet().iterator();
+		while (usedBytes > budget && it.hasNext()) {
+			Entry e = it.next().getValue();
+			if (!e.result.isDone())
+				continue; // Pending transcodes are not counted yet
+			usedBytes -= e.size;
+			it.remove();
+		}
+	}
+
+	/**
+	 * Changes the byte budget, evicting entries if needed. A budget of 0 disables caching.
+	 *
+	 * @param budget maximum number of cached bytes
+	 */
+	public synchronized void setBudget(long budget) {
+		this.budget = budget;
+		evict();
+	}
+
+	/**
+	 * @return number of worker threads
+	 */
+	public int getWorkers() {
+		return nWorkers;
+	}
+
+	/**
+	 * @return number of cached bytes
+	 */
+	public synchronized long getUsedBytes() {
+		return usedBytes;
+	}
+
+	/**
+	 * @return hit ratio between 0 and 1
+	 */
+	public double getHitRatio() {
+		long h = hits.get(), total = h + misses.get();
+		return (total == 0) ? 0.0 : (double) h / total;
+	}
+
+	/**
+	 * @return number of frames transcoded
+	 */
+	public long getTranscoded() {
+		return transcoded.get();
+	}
+
+	/**
+	 * @return number of frames that could not be decoded and were sent as they were
+	 */
+	public long getFailures() {
+		return failures.get();
+	}
+
+	/**
+	 * @return average time in ms from the submission of a frame to its result
+	 */
+	public double getAverageLatency() {
+		long n = transcoded.get();
+		return (n == 0) ? 0.0 : latencyNanos.get() / 1e6 / n;
+	}
+
+	/**
+	 * @return maximum time in ms from the submission of a frame to its result
+	 */
+	public double getMaxLatency() {
+		return maxLatencyNanos.get() / 1e6;
+	}
+
+	/**
+	 * @return number of frames requested before their transcode was done
+	 */
+	public long getLateFrames() {
+		return lateFrames.get();
+	}
+}
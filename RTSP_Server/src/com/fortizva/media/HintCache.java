@@ -0,0 +1,188 @@
+package com.fortizva.media;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.fortizva.packets.CommonValues;
+import com.fortizva.packets.FECpacket;
+import com.fortizva.packets.HeaderCodec;
+import com.fortizva.packets.RTPpacket;
+
+/**
+ * HintCache class is a process-wide cache of the FEC payloads of stored files, so the XOR of
+ * each group of frames is computed once and shared by every session streaming the file.
+ * <br>
+ * A hint is the payload of the FEC packet protecting a group of consecutive frames, built by
+ * {@link FECpacket} with the session-specific fields (SN base and TS recovery) set to 0. The
+ * sender stamps them into a copy of the FEC headers (14 bytes, or 18 for groups needing the
+ * long mask) and sends it along with the rest of the hint, which is never copied. Video payloads need no hint, they
+ * are the frames themselves.
+ * <br>
+ * Entries are keyed by file path, file modification time, first frame and frame count of the
+ * group, so a rewritten file or a different FEC group size never serves stale data. The least
+ * recently used entries are evicted when the total size exceeds the byte budget.
+ */
+public class HintCache {
+
+	/** Default byte budget, can be overridden with the "rtsp.hints.bytes" system property. */
+	public static final long DEFAULT_BUDGET = 64L * 1024 * 1024;
+
+	/** Maximum size of the FEC header and FEC level header, the part of a hint stamped by the sender. */
+	public static final int FEC_HEADERS_SIZE = CommonValues.FEC_HEADER_SIZE + CommonValues.FEC_LONG_LEVEL_HEADER_SIZE;
+
+	static final int SN_BASE_OFFSET = 2; // Offset of the SN base field in the FEC header
+	static final int TS_RECOVERY_OFFSET = 4; // Offset of the TS recovery field in the FEC header
+
+	private static final HintCache INSTANCE = new HintCache(Long.getLong("rtsp.hints.bytes", DEFAULT_BUDGET));
+
+	/**
+	 * Key of a cache entry.
+	 */
+	static final class Key {
+		final String path;
+		final long mtime;
+		final int first;
+		final int count;
+
+		Key(String path, long mtime, int first, int count) {
+			this.path = path;
+			this.mtime = mtime;
+			this.first = first;
+			this.count = count;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Key))
+				return false;
+			Key k = (Key) o;
+			return first == k.first && count == k.count && mtime == k.mtime && path.equals(k.path);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(path, mtime, first, count);
+		}
+	}
+
+	// Access ordered map, iteration starts at the least recently used entry
+	private final LinkedHashMap<Key, ByteBuffer> entries = new LinkedHashMap<>(1024, 0.75f, true);
+	private volatile long budget; // Maximum number of cached bytes
+	private long usedBytes = 0; // Cached bytes (guarded by this)
+
+	// Metrics
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+
+	HintCache(long budget) {
+		this.budget = budget;
+	}
+
+	/**
+	 * @return the process-wide cache
+	 */
+	public static HintCache getInstance() {
+		return INSTANCE;
+	}
+
+	/**
+	 * Returns the FEC hint of a group of frames, building it on a miss.
+	 *
+	 * @param codec reader of the file, only used on a miss (its position is not modified)
+	 * @param first first frame of the group
+	 * @param count number of frames of the group
+	 * @return read-only buffer with the FEC payload, SN base and TS recovery set to 0
+	 * @throws IOException if the frames can not be read
+	 */
+	public ByteBuffer getFecHint(MappedCodec codec, int first, int count) throws IOException {
+		Key key = new Key(codec.filename, codec.mtime, first, count);
+		ByteBuffer cached;
+		synchronized (this) {
+			cached = entries.get(key);
+		}
+		if (cached != null) {
+			hits.incrementAndGet();
+			return cached.duplicate();
+		}
+		misses.incrementAndGet();
+
+		// Built outside the lock, two sessions missing the same group just build it twice
+		RTPpacket[] group = new RTPpacket[count];
+		for (int i = 0; i < count; i++)
+			group[i] = new RTPpacket(CommonValues.MJPEG_TYPE, i, 0, codec.frameAt(first + i)); // Consecutive from SN base 0
+		ByteBuffer hint = ByteBuffer.wrap(new FECpacket(group).getFecPacket()).asReadOnlyBuffer();
+		if (hint.capacity() > budget)
+			return hint; // Too big to be cached
+		synchronized (this) {
+			ByteBuffer previous = entries.put(key, hint);
+			if (previous != null)
+				usedBytes -= previous.capacity();
+			usedBytes += hint.capacity();
+			evict();
+		}
+		return hint.duplicate();
+	}
+
+	/**
+	 * Copies the FEC headers of a hint and stamps the session-specific fields into them.
+	 *
+	 * @param hint             hint returned by {@link #getFecHint}
+	 * @param headers          buffer of {@link #FEC_HEADERS_SIZE} bytes or more receiving the headers
+	 * @param baseSequenceNumber sequence number of the first packet of the group
+	 * @param timestampRecovery  XOR of the timestamps of the packets of the group
+	 * @return the headers, ready to be written before {@link #payloadOf(ByteBuffer)}
+	 */
+	public static ByteBuffer stampFecHeaders(ByteBuffer hint, ByteBuffer headers, int baseSequenceNumber, int timestampRecovery) {
+		headers.clear();
+		headers.put(hint.duplicate().limit(hint.position() + headersSize(hint)));
+		headers.putShort(SN_BASE_OFFSET, (short) baseSequenceNumber);
+		headers.putInt(TS_RECOVERY_OFFSET, timestampRecovery);
+		return headers.flip();
+	}
+
+	/**
+	 * @param hint hint returned by {@link #getFecHint}
+	 * @return the XOR payload of the hint, after its headers
+	 */
+	public static ByteBuffer payloadOf(ByteBuffer hint) {
+		return hint.duplicate().position(hint.position() + headersSize(hint));
+	}
+
+	/**
+	 * @return size of the FEC headers of a hint, which depends on its L bit
+	 */
+	private static int headersSize(ByteBuffer hint) {
+		return HeaderCodec.fecHeadersSize(hint.get(hint.position()));
+	}
+
+	/**
+	 * Evicts least recently used entries until the cache fits in its budget.
+	 */
+	private void evict() {
+		Iterator<Map.Entry<Key, ByteBuffer>> it = entries.entrySet().iterator();
+		while (usedBytes > budget && it.hasNext()) {
+			usedBytes -= it.next().getValue().capacity();
+			it.remove();
+		}
+	}
+
+	/**
+	 * @return number of cached bytes
+	 */
+	public synchronized long getUsedBytes() {
+		return usedBytes;
+	}
+
+	/**
+	 * @return hit ratio between 0 and 1
+	 */
+	public double getHitRatio() {
+		long h = hits.get(), total = h + misses.get();
+		return (total == 0) ? 0.0 : (double) h / total;
+	}
+}
@@ -0,0 +1,349 @@
+package com.fortizva.media;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * LiveSource class reads a SimpleCodec container while it is being produced and publishes
+ * its records to subscribers as soon as they are complete.
+ * <br>
+ * The container can be read from stdin ({@link #STDIN}), from a named pipe or from a regular
+ * file that is still being written, which is tailed with a {@link TailInputStream}. A single
+ * ingest thread parses the records (version 1 or 2, no index needed) and hands them to every
+ * {@link Subscription}. Each subscription has its own bounded queue, the oldest record is
+ * dropped when a slow subscriber lets it fill up, so the source never waits for a subscriber.
+ */
+public class LiveSource implements Runnable, Closeable {
+
+	public static final String PREFIX = "live:"; // Prefix of the names of live sources
+	public static final String STDIN = "-"; // Name of the standard input
+
+	/**
+	 * Record of the container: video frame and audio data of every track.
+	 */
+	static final class Record {
+		final byte[] video;
+		final byte[] audio;
+		final long timestamp; // media timestamp in milliseconds
+		final long ingestTime; // System.nanoTime() when the record was complete
+
+		Record(byte[] video, byte[] audio, long timestamp, long ingestTime) {
+			this.video = video;
+			this.audio = audio;
+			this.timestamp = timestamp;
+			this.ingestTime = ingestTime;
+		}
+	}
+
+	private static final Record END = new Record(null, null, 0, 0); // End of stream marker
+
+	private final InputStream source;
+	private final DataInputStream in;
+	private final MediaHeader header;
+	private final int queueSize;
+	private final CopyOnWriteArrayList<Subscription> subscribers = new CopyOnWriteArrayList<>();
+	private final Thread thread;
+	private long position; // stream offset of the next byte to read
+	private volatile boolean closed = false;
+
+	// Metrics
+	private final AtomicLong ingestedFrames = new AtomicLong();
+
+	/**
+	 * Opens a live source and reads its container header, blocking until it is available.
+	 *
+	 * @param name      {@link #STDIN}, or the path of a named pipe or a growing file
+	 * @param queueSize number of records each subscriber can hold
+	 * @return the live source, call {@link #start()} to start publishing records
+	 * @throws IOException if the source can not be opened or the header is truncated
+	 */
+	public static LiveSource open(String name, int queueSize) throws IOException {
+		if (name.equals(STDIN))
+			return new LiveSource(System.in, queueSize);
+		Path path = Paths.get(name);
+		// Regular files may still be growing, pipes just block until the writer sends more data
+		InputStream source = Files.isRegularFile(path) ? new TailInputStream(path) : new FileInputStream(name);
+		return new LiveSource(source, queueSize);
+	}
+
+	LiveSource(InputStream source, int queueSize) throws IOException {
+		this.source = source;
+		this.in = new DataInputStream(new BufferedInputStream(source));
+		this.queueSize = Math.max(queueSize, 1);
+		byte[] h = new byte[MediaHeader.HEADER_SIZE + MediaHeader.V2_EXTENSION_SIZE];
+		readFully(h, 0, MediaHeader.HEADER_SIZE);
+		if (h[0] >= MediaHeader.VERSION_2)
+			readFully(h, MediaHeader.HEADER_SIZE, MediaHeader.V2_EXTENSION_SIZE);
+		header = MediaHeader.read(ByteBuffer.wrap(h));
+		skipTo(header.getRecordsOffset());
+		if (source instanceof TailInputStream) {
+			// Reads at the end of the file stop blocking once the writer patched the header
+			TailInputStream tail = (TailInputStream) source;
+			tail.setEndCheck(() -> isComplete(tail));
+		}
+		thread = new Thread(this, "LiveSource");
+		thread.setDaemon(true);
+	}
+
+	/**
+	 * Starts publishing records to the subscribers.
+	 */
+	public void start() {
+		thread.start();
+	}
+
+	@Override
+	public void run() {
+		try {
+			Record record;
+			while ((record = readRecord()) != null) {
+				ingestedFrames.incrementAndGet();
+				for (Subscription s : subscribers)
+					s.publish(record);
+			}
+		} catch (IOException e) {
+			if (!closed)
+				System.out.println("[LiveSource] Error reading the live source: " + e);
+		}
+		for (Subscription s : subscribers)
+			s.publish(END);
+	}
+
+	/**
+	 * A tailed file is complete once its writer patched the header on closing it: the index
+	 * offset for version 2 files, numFrames for version 1 files.
+	 */
+	private boolean isComplete(TailInputStream tail) {
+		try {
+			if (header.getVersion() >= MediaHeader.VERSION_2)
+				return tail.readLongAt(MediaHeader.HEADER_SIZE) != 0;
+			return tail.readIntAt(MediaHeader.NUM_FRAMES_OFFSET) != 0;
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Reads the next complete record, blocking until all of its bytes are available.
+	 *
+	 * @return the record, or null at the end of the stream
+	 * @throws IOException if an error occurs while reading the source
+	 */
+	private Record readRecord() throws IOException {
+		boolean v2 = header.getVersion() >= MediaHeader.VERSION_2;
+		// A version 2 stream ends where the writer put its index, tailed files get it patched at the end
+		if (v2) {
+			long indexOffset = header.getIndexOffset();
+			if (indexOffset == 0 && source instanceof TailInputStream)
+				indexOffset = ((TailInputStream) source).readLongAt(MediaHeader.HEADER_SIZE);
+			if (indexOffset > 0 && position >= indexOffset)
+				return null;
+		} else {
+			// A version 1 stream ends after numFrames records, tailed files get it patched at the end
+			int numFrames = header.getNumFrames();
+			if (numFrames == 0 && source instanceof TailInputStream)
+				numFrames = ((TailInputStream) source).readIntAt(MediaHeader.NUM_FRAMES_OFFSET);
+			if (numFrames > 0 && ingestedFrames.get() >= numFrames)
+				return null;
+		}
+		int length;
+		long timestamp;
+		try {
+			if (v2) {
+				length = in.readInt();
+				timestamp = in.readLong();
+				position += MediaHeader.V2_RECORD_HEADER_SIZE;
+			} else {
+				byte[] digits = new byte[MappedCodec.FRAME_LENGTH_DIGITS];
+				readFully(digits, 0, digits.length);
+				length = Integer.parseInt(new String(digits));
+				timestamp = ingestedFrames.get() * 1000L / Math.max(header.getFPS(), 1);
+			}
+		} catch (EOFException e) {
+			return null; // Writer closed the stream between records
+		}
+		byte[] video = new byte[length];
+		readFully(video, 0, length);
+		byte[] audio = new byte[header.getAudioDataSize()];
+		readFully(audio, 0, audio.length);
+		if (v2)
+			skipTo(MediaHeader.align(position, header.getAlignment()));
+		return new Record(video, audio, timestamp, System.nanoTime());
+	}
+
+	private void readFully(byte[] b, int offset, int length) throws IOException {
+		in.readFully(b, offset, length);
+		position += length;
+	}
+
+	private void skipTo(long offset) throws IOException {
+		while (position < offset) {
+			in.readByte();
+			position++;
+		}
+	}
+
+	/**
+	 * Adds a subscriber, which receives the records ingested from now on.
+	 *
+	 * @return the new subscription
+	 */
+	public Subscription subscribe() {
+		Subscription s = new Subscription();
+		subscribers.add(s);
+		return s;
+	}
+
+	/**
+	 * @return the container header of the stream
+	 */
+	public MediaHeader getHeader() {
+		return header;
+	}
+
+	/**
+	 * @return number of records read from the source
+	 */
+	public long getIngestedFrames() {
+		return ingestedFrames.get();
+	}
+
+	/**
+	 * Stops the ingest thread and releases the source.
+	 */
+	@Override
+	public void close() throws IOException {
+		closed = true;
+		thread.interrupt();
+		source.close();
+	}
+
+	/**
+	 * Subscription class is the reader of a {@link LiveSource} used by one sender.
+	 * <br>
+	 * It follows the {@link MediaReader} contract, reads block until the next record has been
+	 * ingested and return null once the source has ended.
+	 */
+	public class Subscription implements MediaReader {
+
+		private final ArrayBlockingQueue<Record> queue = new ArrayBlockingQueue<>(queueSize);
+		private Record current; // Record of the last frame returned
+		private boolean nextFrameIsAudio = false; // Flag to indicate if the next frame is audio data
+		private boolean ended = false;
+		private int audioTrack = 0; // audio track returned by nextChunk()
+		private final AtomicLong dropped = new AtomicLong();
+
+		/**
+		 * Queues a record, dropping the oldest one if the queue is full.
+		 */
+		void publish(Record record) {
+			while (!queue.offer(record)) {
+				if (queue.poll() != null)
+					dropped.incrementAndGet();
+			}
+		}
+
+		/**
+		 * Takes the next record, blocking until it is available.
+		 */
+		private Record take() throws IOException {
+			if (ended)
+				return null;
+			try {
+				Record record = queue.take();
+				if (record == END) {
+					ended = true;
+					return null;
+				}
+				return record;
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted while waiting for the live source");
+			}
+		}
+
+		@Override
+		public ByteBuffer nextFrame() throws IOException {
+			Record record = take();
+			if (record == null)
+				return null;
+			current = record;
+			nextFrameIsAudio = true; // Set the flag for the next frame
+			return ByteBuffer.wrap(record.video);
+		}
+
+		@Override
+		public ByteBuffer nextChunk() throws IOException {
+			// The audio of the last frame comes next, otherwise its video data is skipped
+			Record record = nextFrameIsAudio ? current : take();
+			if (record == null)
+				return null;
+			current = record;
+			nextFrameIsAudio = false; // Reset the flag for the next frame
+			return ByteBuffer.wrap(record.audio, header.getTrackOffset(audioTrack), header.getAudioChunkSize());
+		}
+
+		/**
+		 * Selects the audio track returned by {@link #nextChunk()}.
+		 *
+		 * @param track audio track number (starting at 0)
+		 */
+		public void setAudioTrack(int track) {
+			if (track < 0 || track >= header.getTrackCount())
+				throw new IndexOutOfBoundsException("Audio track " + track + " out of [0, " + header.getTrackCount() + ")");
+			audioTrack = track;
+		}
+
+		/**
+		 * @return System.nanoTime() at which the last returned record was ingested
+		 */
+		public long getIngestTime() {
+			return (current == null) ? 0 : current.ingestTime;
+		}
+
+		/**
+		 * @return media timestamp in milliseconds of the last returned record
+		 */
+		public long getFrameTimestamp() {
+			return (current == null) ? 0 : current.timestamp;
+		}
+
+		/**
+		 * @return number of records dropped because this subscriber fell behind
+		 */
+		public long getDropped() {
+			return dropped.get();
+		}
+
+		@Override
+		public MediaHeader getHeader() {
+			return header;
+		}
+
+		@Override
+		public boolean isNextFrameAudio() {
+			return nextFrameIsAudio;
+		}
+
+		/**
+		 * Removes the subscription from the source.
+		 */
+		@Override
+		public void close() {
+			subscribers.remove(this);
+		}
+	}
+}
@@ -0,0 +1,256 @@
+package com.fortizva.media;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * MappedCodec class reads SimpleCodec container files through a memory mapping.
+ * <br>
+ * Frames and audio chunks are returned as read-only {@link ByteBuffer} slices of the
+ * mapping, so no data is copied until the caller decides to. Files bigger than
+ * {@link #MAX_WINDOW_SIZE} are mapped in consecutive windows, a new window is mapped
+ * starting at the record being read whenever it does not fit in the current one.
+ * <br>
+ * Records are located through the file {@link FrameIndex}, so {@link #seekFrame(int)}
+ * jumps to any frame in constant time.
+ * <br>
+ * When a {@link MediaCache} is set, records are served from it so readers of the same file
+ * share a single copy of the data.
+ * <br>
+ * Only the selected audio track ({@link #setAudioTrack(int)}) is read, the other tracks of
+ * each record are never touched.
+ */
+public class MappedCodec implements MediaReader {
+
+	static final long MAX_WINDOW_SIZE = 1L << 30; // Size of each mapped window (1 GB)
+	static final int FRAME_LENGTH_DIGITS = 5; // Frame lengths are stored as 5 ASCII decimal digits
+
+	String filename; // path of the video file
+	long mtime; // modification time of the video file
+	FileChannel channel; // video file
+	long fileSize; // size of the video file in bytes
+	MappedByteBuffer window; // currently mapped region of the file
+	long windowStart; // file offset of the first byte of the window
+	int frame_nb; // current frame nb (record of the next frame or chunk)
+	int audioTrack = 0; // audio track returned by nextChunk()
+
+	MediaHeader header;
+	FrameIndex index;
+	MediaCache cache; // Shared cache, null to read from the mapping directly
+
+	private boolean nextFrameIsAudio = false; // Flag to indicate if the next frame is audio data
+
+	/**
+	 * Opens and maps the given container file.
+	 *
+	 * @param filename path of the container file
+	 * @throws IOException if the file can not be opened or its header is truncated
+	 */
+	public MappedCodec(String filename) throws IOException {
+		this.filename = filename;
+		mtime = Files.getLastModifiedTime(Paths.get(filename)).toMillis();
+		channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ);
+		fileSize = channel.size();
+		frame_nb = 0;
+		try {
+			int headerSize = MediaHeader.HEADER_SIZE;
+			if (fileSize > 0 && region(0, 1).get(0) >= MediaHeader.VERSION_2)
+				headerSize += MediaHeader.V2_EXTENSION_SIZE;
+			if (fileSize < headerSize)
+				throw new IOException("Truncated header");
+			header = MediaHeader.read(region(0, headerSize));
+			index = FrameIndex.open(filename, header, channel);
+		} catch (IOException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Returns a read-only slice of the file, mapping a new window if the requested
+	 * region is not inside the current one.
+	 *
+	 * @param offset file offset of the first byte
+	 * @param length number of bytes
+	 * @return read-only buffer over the requested region
+	 * @throws IOException if the region is beyond the end of the file
+	 */
+	ByteBuffer region(long offset, int length) throws IOException {
+		if (offset + length > fileSize)
+			throw new EOFException("Region [" + offset + ", " + (offset + length) + ") beyond file size " + fileSize);
+		if (window == null || offset < windowStart || offset + length > windowStart + window.capacity()) {
+			long size = Math.min(fileSize - offset, Math.max(MAX_WINDOW_SIZE, length));
+			window = channel.map(MapMode.READ_ONLY, offset, size);
+			windowStart = offset;
+		}
+		return window.slice((int) (offset - windowStart), length);
+	}
+
+	@Override
+	public ByteBuffer nextFrame() throws IOException {
+		// Check if the next frame is audio data
+		if (nextFrameIsAudio) {
+			// If it is audio data, skip to video data
+			frame_nb++;
+		}
+		if (frame_nb >= index.getFrameCount())
+			return null;
+
+		ByteBuffer frame = frameAt(frame_nb);
+		nextFrameIsAudio = true; // Set the flag for the next frame
+		return frame;
+	}
+
+	/**
+	 * Returns the video of a frame without moving the reader.
+	 *
+	 * @param n frame number
+	 * @return read-only buffer holding the frame data
+	 * @throws IOException if the frame is beyond the end of the file
+	 */
+	ByteBuffer frameAt(int n) throws IOException {
+		return (cache == null) ? region(index.getVideoOffset(n), index.getVideoLength(n))
+				: cache.get(filename, mtime, MediaCache.VIDEO, n, () -> region(index.getVideoOffset(n), index.getVideoLength(n)));
+	}
+
+	@Override
+	public ByteBuffer nextChunk() throws IOException {
+		// If the next frame is video data it is skipped, the index points at the audio directly
+		if (frame_nb >= index.getFrameCount())
+			return null;
+		long offset = index.getAudioOffset(frame_nb) + header.getTrackOffset(audioTrack);
+		int length = (int) Math.min(header.getAudioChunkSize(), fileSize - offset);
+		if (length <= 0)
+			return null;
+
+		ByteBuffer chunk = (cache == null) ? region(offset, length)
+				: cache.get(filename, mtime, MediaCache.AUDIO + audioTrack, frame_nb, () -> region(offset, length));
+		frame_nb++;
+		nextFrameIsAudio = false; // Reset the flag for the next frame
+		return chunk;
+	}
+
+	/**
+	 * @return media timestamp in milliseconds of the last frame returned by {@link #nextFrame()}
+	 */
+	public long getFrameTimestamp() {
+		return index.getTimestamp(Math.min(frame_nb, index.getFrameCount() - 1));
+	}
+
+	/**
+	 * Moves the reader to the beginning of the given frame (video first, then audio).
+	 *
+	 * @param frame frame number (starting at 0)
+	 */
+	public void seekFrame(int frame) {
+		if (frame < 0 || frame > index.getFrameCount())
+			throw new IndexOutOfBoundsException("Frame " + frame + " out of [0, " + index.getFrameCount() + "]");
+		frame_nb = frame;
+		nextFrameIsAudio = false;
+	}
+
+	/**
+	 * Copies the next frame into the given array. Kept for compatibility with {@link Codec}.
+	 *
+	 * @param frame byte array to store the frame data
+	 * @return the number of bytes copied, -1 at the end of the file
+	 * @throws IOException if an error occurs while reading the file
+	 */
+	public int getnextframe(byte[] frame) throws IOException {
+		ByteBuffer bb = nextFrame();
+		if (bb == null)
+			return -1;
+		int length = bb.remaining();
+		bb.get(frame, 0, length);
+		return length;
+	}
+
+	/**
+	 * Copies the next audio chunk into the given array. Kept for compatibility with {@link Codec}.
+	 *
+	 * @param frame byte array to store the audio data
+	 * @return the number of bytes copied, -1 at the end of the file
+	 * @throws IOException if an error occurs while reading the file
+	 */
+	public int getnextchunk(byte[] frame) throws IOException {
+		ByteBuffer bb = nextChunk();
+		if (bb == null)
+			return -1;
+		int length = bb.remaining();
+		bb.get(frame, 0, length);
+		return length;
+	}
+
+	@Override
+	public MediaHeader getHeader() {
+		return header;
+	}
+
+	/**
+	 * @return the fps
+	 */
+	public byte getFPS() {
+		return header.getFPS();
+	}
+
+	/**
+	 * @return the number of frames found in the file (not the header value)
+	 */
+	public int getNumFrames() {
+		return index.getFrameCount();
+	}
+
+	/**
+	 * Serves the records from the given shared cache.
+	 *
+	 * @param cache the cache, null to read from the mapping directly
+	 */
+	public void setCache(MediaCache cache) {
+		this.cache = cache;
+	}
+
+	/**
+	 * Selects the audio track returned by {@link #nextChunk()}.
+	 *
+	 * @param track audio track number (starting at 0)
+	 */
+	public void setAudioTrack(int track) {
+		if (track < 0 || track >= header.getTrackCount())
+			throw new IndexOutOfBoundsException("Audio track " + track + " out of [0, " + header.getTrackCount() + ")");
+		audioTrack = track;
+	}
+
+	/**
+	 * @return the selected audio track
+	 */
+	public int getAudioTrack() {
+		return audioTrack;
+	}
+
+	/**
+	 * @return the frame index of the file
+	 */
+	public FrameIndex getIndex() {
+		return index;
+	}
+
+	@Override
+	public boolean isNextFrameAudio() {
+		return nextFrameIsAudio;
+	}
+
+	@Override
+	public void close() throws IOException {
+		window = null;
+		if (channel != null) {
+			channel.close();
+		}
+	}
+}
@@ -0,0 +1,202 @@
+package com.fortizva.media;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * MediaCache class is a process-wide cache of video frames and audio chunks shared by every
+ * reader of the same files.
+ * <br>
+ * Entries are keyed by file path, file modification time, record kind and frame number, so a
+ * rewritten file never serves stale data. Data is copied once into direct (off-heap) buffers
+ * and readers receive read-only duplicates of them. The least recently used entries are
+ * evicted when the total size exceeds the byte budget.
+ */
+public class MediaCache {
+
+	/** Default byte budget, can be overridden with the "rtsp.cache.bytes" system property. */
+	public static final long DEFAULT_BUDGET = 256L * 1024 * 1024;
+
+	public static final int VIDEO = 0; // Record kind of video frames
+	public static final int AUDIO = 1; // Record kind of audio chunks, AUDIO + n for audio track n
+
+	private static final MediaCache INSTANCE = new MediaCache(Long.getLong("rtsp.cache.bytes", DEFAULT_BUDGET));
+
+	/**
+	 * Loads the data of an entry on a cache miss.
+	 */
+	public interface Loader {
+		ByteBuffer load() throws IOException;
+	}
+
+	/**
+	 * Key of a cache entry.
+	 */
+	static final class Key {
+		final String path;
+		final long mtime;
+		final int kind;
+		final int frame;
+
+		Key(String path, long mtime, int kind, int frame) {
+			this.path = path;
+			this.mtime = mtime;
+			this.kind = kind;
+			this.frame = frame;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Key))
+				return false;
+			Key k = (Key) o;
+			return frame == k.frame && kind == k.kind && mtime == k.mtime && path.equals(k.path);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(path, mtime, kind, frame);
+		}
+	}
+
+	// Access ordered map, iteration starts at the least recently used entry
+	private final LinkedHashMap<Key, ByteBuffer> entries = new LinkedHashMap<>(1024, 0.75f, true);
+	private volatile long budget; // Maximum number of cached bytes
+	private long usedBytes = 0; // Cached bytes (guarded by this)
+
+	// Metrics
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+	private final AtomicLong loadedBytes = new AtomicLong(); // Bytes read from the files on misses
+
+	MediaCache(long budget) {
+		this.budget = budget;
+	}
+
+	/**
+	 * @return the process-wide cache
+	 */
+	public static MediaCache getInstance() {
+		return INSTANCE;
+	}
+
+	/**
+	 * Returns the cached data of an entry, loading it on a miss.
+	 *
+	 * @param path   path of the media file
+	 * @param mtime  modification time of the media file
+	 * @param kind   {@link #VIDEO} or {@link #AUDIO} plus the audio track number
+	 * @param frame  frame number
+	 * @param loader loads the data from the file on a miss
+	 * @return read-only buffer with the data, shared with other readers
+	 * @throws IOException if the loader fails
+	 */
+	public ByteBuffer get(String path, long mtime, int kind, int frame, Loader loader) throws IOException {
+		Key key = new Key(path, mtime, kind, frame);
+		ByteBuffer cached;
+		synchronized (this) {
+			cached = entries.get(key);
+		}
+		if (cached != null) {
+			hits.incrementAndGet();
+			return cached.duplicate();
+		}
+		misses.incrementAndGet();
+
+		// Load outside the lock, two readers missing the same entry just load it twice
+		ByteBuffer source = loader.load();
+		loadedBytes.addAndGet(source.remaining());
+		if (source.remaining() > budget)
+			return source; // Too big to be cached
+
+		ByteBuffer copy = ByteBuffer.allocateDirect(source.remaining());
+		copy.put(source.duplicate()).flip();
+		ByteBuffer shared = copy.asReadOnlyBuffer();
+		synchronized (this) {
+			ByteBuffer previous = entries.put(key, shared);
+			if (previous != null)
+				usedBytes -= previous.capacity();
+			usedBytes += shared.capacity();
+			evict();
+		}
+		return shared.duplicate();
+	}
+
+	/**
+	 * Evicts least recently used entries until the cache fits in its budget.
+	 */
+	private void evict() {
+		Iterator<Map.Entry<Key, ByteBuffer>> it = entries.entrySet().iterator();
+		while (usedBytes > budget && it.hasNext()) {
+			usedBytes -= it.next().getValue().capacity();
+			it.remove();
+			evictions.incrementAndGet();
+		}
+	}
+
+	/**
+	 * Changes the byte budget, evicting entries if needed. A budget of 0 disables caching.
+	 *
+	 * @param budget maximum number of cached bytes
+	 */
+	public synchronized void setBudget(long budget) {
+		this.budget = budget;
+		evict();
+	}
+
+	/**
+	 * @return maximum number of cached bytes
+	 */
+	public long getBudget() {
+		return budget;
+	}
+
+	/**
+	 * @return number of cached bytes
+	 */
+	public synchronized long getUsedBytes() {
+		return usedBytes;
+	}
+
+	/**
+	 * @return number of lookups served from the cache
+	 */
+	public long getHits() {
+		return hits.get();
+	}
+
+	/**
+	 * @return number of lookups that had to read the file
+	 */
+	public long getMisses() {
+		return misses.get();
+	}
+
+	/**
+	 * @return number of entries evicted to honour the budget
+	 */
+	public long getEvictions() {
+		return evictions.get();
+	}
+
+	/**
+	 * @return number of bytes read from the files on misses
+	 */
+	public long getLoadedBytes() {
+		return loadedBytes.get();
+	}
+
+	/**
+	 * @return hit ratio between 0 and 1
+	 */
+	public double getHitRatio() {
+		long h = hits.get(), total = h + misses.get();
+		return (total == 0) ? 0.0 : (double) h / total;
+	}
+}
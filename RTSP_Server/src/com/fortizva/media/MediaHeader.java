@@ -0,0 +1,236 @@
+package com.fortizva.media;
+
+import java.nio.ByteBuffer;
+
+/**
+ * MediaHeader class holds the fixed header found at the beginning of every
+ * SimpleCodec container file.
+ * <pre>
+ * +---------+-----+-----------+-------+-------+--------------+--------------+----------+--------------+
+ * | Version | fps | numFrames | width | heigh | nAudioTracks | SamplingRate | bitDepth | channelCount |
+ * |  1 byte |  1  |     4     |   4   |   4   |      1       |      4       |    1     |      1       |
+ * +---------+-----+-----------+-------+-------+--------------+--------------+----------+--------------+
+ * </pre>
+ * All multi-byte fields are stored in big-endian order.
+ * <br>
+ * Version 2 files extend the header with the offset of the embedded frame index and the
+ * alignment of every record, and records start at the first aligned offset after it:
+ * <pre>
+ * +-----------------+-------------+-----------+---------+
+ * | v1 fields       | indexOffset | alignment | padding |
+ * |    21 bytes     |      8      |     4     |         |
+ * +-----------------+-------------+-----------+---------+
+ * </pre>
+ * Version 2 records are laid out as:
+ * <pre>
+ * +-------------+-----------+------------+------------------------------+---------+
+ * | videoLength | timestamp | video data | audio data (nAudioTracks *   | padding |
+ * |      4      |  8 (ms)   |            | chunk size)                  |         |
+ * +-------------+-----------+------------+------------------------------+---------+
+ * </pre>
+ * The embedded index (see {@link FrameIndex}) is stored at indexOffset as a frame count
+ * (4 bytes), 4 reserved bytes and {@link FrameIndex#ENTRY_LONGS} longs per frame.
+ */
+public class MediaHeader {
+
+	/** Size of the version 1 header in bytes. */
+	public static final int HEADER_SIZE = 21;
+	/** Size of the fields added to the header by version 2. */
+	public static final int V2_EXTENSION_SIZE = 12;
+	/** Size of the record header (length and timestamp) of version 2 files. */
+	public static final int V2_RECORD_HEADER_SIZE = 12;
+	/** Size of the embedded index header (frame count and reserved bytes) of version 2 files. */
+	public static final int V2_INDEX_HEADER_SIZE = 8;
+	/** Offset of numFrames in the header, patched by the writer when it closes the file. */
+	public static final int NUM_FRAMES_OFFSET = 2;
+
+	public static final byte VERSION_1 = 1; // 5 digits ASCII frame lengths
+	public static final byte VERSION_2 = 2; // Binary lengths, timestamps, embedded index and alignment
+
+	byte Version;
+	byte fps;
+	int numFrames;
+	int width;
+	int heigh;
+	byte nAudioTracks;
+	int SamplingRate;
+	byte bitDepth;
+	byte channelCount;
+	long indexOffset; // [v2] Offset of the embedded index, 0 if the file has none
+	int alignment = 1; // [v2] Alignment of every record in bytes
+
+	/**
+	 * Parses the header from the current position of the given buffer.
+	 * The buffer position is advanced past the header.
+	 *
+	 * @param bb buffer holding at least {@link #HEADER_SIZE} bytes, plus
+	 *           {@link #V2_EXTENSION_SIZE} for version 2 files
+	 * @return the parsed header
+	 */
+	public static MediaHeader read(ByteBuffer bb) {
+		MediaHeader h = new MediaHeader();
+		h.Version = bb.get();
+		h.fps = bb.get();
+		h.numFrames = bb.getInt();
+		h.width = bb.getInt();
+		h.heigh = bb.getInt();
+		h.nAudioTracks = bb.get();
+		h.SamplingRate = bb.getInt();
+		h.bitDepth = bb.get();
+		h.channelCount = bb.get();
+		if (h.Version >= VERSION_2)
+			h.readExtension(bb);
+		return h;
+	}
+
+	/**
+	 * Parses the version 2 fields from the current position of the given buffer.
+	 *
+	 * @param bb buffer holding at least {@link #V2_EXTENSION_SIZE} bytes
+	 */
+	void readExtension(ByteBuffer bb) {
+		indexOffset = bb.getLong();
+		alignment = Math.max(bb.getInt(), 1);
+	}
+
+	/**
+	 * @return the file offset of the first record
+	 */
+	public long getRecordsOffset() {
+		if (Version >= VERSION_2)
+			return align(HEADER_SIZE + V2_EXTENSION_SIZE, alignment);
+		return HEADER_SIZE;
+	}
+
+	/**
+	 * Rounds the given offset up to the next multiple of the alignment.
+	 *
+	 * @param offset    file offset
+	 * @param alignment alignment in bytes
+	 * @return the aligned offset
+	 */
+	public static long align(long offset, int alignment) {
+		return (offset + alignment - 1) / alignment * alignment;
+	}
+
+	/**
+	 * Size in bytes of the audio chunk stored after each video frame.
+	 * [sampleRate * (bitDepth / 8) * channelCount (Bps)] / fps
+	 *
+	 * @return the audio chunk size in bytes
+	 */
+	public int getAudioChunkSize() {
+		return (int) (SamplingRate * (bitDepth / 8.0) * channelCount / fps);
+	}
+
+	/**
+	 * Size in bytes of the audio data stored after each video frame. Version 1 files always
+	 * store a single chunk, version 2 files store one chunk per audio track.
+	 *
+	 * @return the audio data size in bytes
+	 */
+	public int getAudioDataSize() {
+		if (Version >= VERSION_2)
+			return nAudioTracks * getAudioChunkSize();
+		return getAudioChunkSize();
+	}
+
+	/**
+	 * Number of audio tracks stored in every record. Version 1 files always store a single
+	 * track whatever the header says.
+	 *
+	 * @return the number of audio tracks that can be read
+	 */
+	public int getTrackCount() {
+		if (Version >= VERSION_2)
+			return Math.max(nAudioTracks, 1);
+		return 1;
+	}
+
+	/**
+	 * Offset of the given audio track from the beginning of the audio data of a record.
+	 *
+	 * @param track audio track number (starting at 0)
+	 * @return the offset in bytes
+	 */
+	public int getTrackOffset(int track) {
+		return track * getAudioChunkSize();
+	}
+
+	/**
+	 * @return the version
+	 */
+	public byte getVersion() {
+		return Version;
+	}
+
+	/**
+	 * @return the fps
+	 */
+	public byte getFPS() {
+		return fps;
+	}
+
+	/**
+	 * @return the numFrames
+	 */
+	public int getNumFrames() {
+		return numFrames;
+	}
+
+	/**
+	 * @return the width
+	 */
+	public int getWidth() {
+		return width;
+	}
+
+	/**
+	 * @return the heigh
+	 */
+	public int getHeigh() {
+		return heigh;
+	}
+
+	/**
+	 * @return the nAudioTracks
+	 */
+	public byte getnAudioTracks() {
+		return nAudioTracks;
+	}
+
+	/**
+	 * @return the samplingRate
+	 */
+	public int getSamplingRate() {
+		return SamplingRate;
+	}
+
+	/**
+	 * @return the bitDepth
+	 */
+	public byte getBitDepth() {
+		return bitDepth;
+	}
+
+	/**
+	 * @return the offset of the embedded index, 0 if the file has none
+	 */
+	public long getIndexOffset() {
+		return indexOffset;
+	}
+
+	/**
+	 * @return the record alignment in bytes
+	 */
+	public int getAlignment() {
+		return alignment;
+	}
+
+	/**
+	 * @return the channelCount
+	 */
+	public byte getChannelCount() {
+		return channelCount;
+	}
+}
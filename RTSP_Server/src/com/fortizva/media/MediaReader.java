@@ -0,0 +1,48 @@
+package com.fortizva.media;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Common interface for the readers of SimpleCodec container files.
+ * <br>
+ * Video frames and audio chunks are interleaved in the file, a reader keeps
+ * track of which one comes next and skips the other kind when needed.
+ */
+public interface MediaReader extends Closeable {
+
+	/**
+	 * Returns the next video frame (skipping audio data if necessary).
+	 *
+	 * @return buffer holding the frame data, or null at the end of the file
+	 * @throws IOException if an error occurs while reading the file
+	 */
+	ByteBuffer nextFrame() throws IOException;
+
+	/**
+	 * Returns the next audio chunk (skipping video data if necessary).
+	 *
+	 * @return buffer holding the audio data, or null at the end of the file
+	 * @throws IOException if an error occurs while reading the file
+	 */
+	ByteBuffer nextChunk() throws IOException;
+
+	/**
+	 * @return the container header
+	 */
+	MediaHeader getHeader();
+
+	/**
+	 * @return true if the next record in the file is audio data
+	 */
+	boolean isNextFrameAudio();
+
+	/**
+	 * Releases the underlying file.
+	 *
+	 * @throws IOException if an error occurs while closing the file
+	 */
+	@Override
+	void close() throws IOException;
+}
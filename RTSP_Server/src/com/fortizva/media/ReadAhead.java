@@ -0,0 +1,126 @@
+package com.fortizva.media;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * ReadAhead class keeps a window of upcoming video frames or audio chunks loaded ahead of
+ * the sender.
+ * <br>
+ * A background thread reads records from a {@link MediaReader}, touches every page of them so
+ * they are resident in memory, and queues them in a bounded ring. The sender takes records
+ * from the ring, only waiting for the disk when the ring runs empty (an underrun).
+ */
+public class ReadAhead implements Runnable {
+
+	private static final int PAGE_SIZE = 4096; // Stride used to fault in the pages of a record
+	private static final ByteBuffer END = ByteBuffer.allocate(0); // End of stream marker
+
+	private final MediaReader reader;
+	private final boolean video; // Read video frames (true) or audio chunks (false)
+	private final ArrayBlockingQueue<ByteBuffer> ring;
+	private final Thread thread;
+	private volatile IOException error; // Error raised by the reader, reported to the sender
+	private volatile boolean finished = false; // Flag set once the end marker has been taken
+
+	// Metrics
+	private final AtomicLong underruns = new AtomicLong();
+	private final AtomicLong prefetched = new AtomicLong();
+
+	/**
+	 * Creates and starts the read-ahead stage of a reader.
+	 *
+	 * @param reader   reader to take the records from, not to be used by anyone else
+	 * @param video    true to read video frames, false to read audio chunks
+	 * @param windowMs read-ahead window in milliseconds of media
+	 */
+	public ReadAhead(MediaReader reader, boolean video, int windowMs) {
+		this.reader = reader;
+		this.video = video;
+		int depth = Math.max(1, windowMs * reader.getHeader().getFPS() / 1000);
+		this.ring = new ArrayBlockingQueue<>(depth);
+		this.thread = new Thread(this, video ? "ReadAhead-video" : "ReadAhead-audio");
+		this.thread.setDaemon(true);
+		this.thread.start();
+	}
+
+	@Override
+	public void run() {
+		try {
+			while (!Thread.currentThread().isInterrupted()) {
+				ByteBuffer record = video ? reader.nextFrame() : reader.nextChunk();
+				if (record == null)
+					break;
+				// Fault in the pages now so the sender does not stall on them later
+				for (int i = record.position(); i < record.limit(); i += PAGE_SIZE)
+					record.get(i);
+				ring.put(record); // Blocks while the window is full
+				prefetched.incrementAndGet();
+			}
+		} catch (IOException e) {
+			error = e;
+		} catch (InterruptedException e) {
+			return; // Closed
+		}
+		try {
+			ring.put(END);
+		} catch (InterruptedException e) {
+			// Closed
+		}
+	}
+
+	/**
+	 * Returns the next record, waiting for the reader only on an underrun.
+	 *
+	 * @return the next record, or null at the end of the stream
+	 * @throws IOException if the reader failed
+	 * @throws InterruptedException if interrupted while waiting on an underrun
+	 */
+	public ByteBuffer next() throws IOException, InterruptedException {
+		if (finished)
+			return null;
+		ByteBuffer record = ring.poll();
+		if (record == null) {
+			underruns.incrementAndGet();
+			record = ring.take();
+		}
+		if (record == END) {
+			finished = true;
+			if (error != null)
+				throw error;
+			return null;
+		}
+		return record;
+	}
+
+	/**
+	 * @return number of records ready to be sent
+	 */
+	public int getDepth() {
+		return ring.size();
+	}
+
+	/**
+	 * @return number of times the sender found the window empty
+	 */
+	public long getUnderruns() {
+		return underruns.get();
+	}
+
+	/**
+	 * @return number of records read ahead so far
+	 */
+	public long getPrefetched() {
+		return prefetched.get();
+	}
+
+	/**
+	 * Stops the background thread.
+	 */
+	public void close() {
+		thread.interrupt();
+		ring.clear();
+	}
+}
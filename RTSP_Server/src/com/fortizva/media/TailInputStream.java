@@ -0,0 +1,135 @@
+package com.fortizva.media;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+/**
+ * TailInputStream class reads a file that is still being written.
+ * <br>
+ * Reads at the end of the file block until the file grows instead of returning -1. The
+ * thread sleeps on a {@link WatchService} registered on the parent directory and is woken
+ * up by the modification events of the writer, so there is no busy polling. Once the end
+ * check ({@link #setEndCheck(BooleanSupplier)}) reports that the writer is done, reads at the
+ * end of the file return -1.
+ */
+class TailInputStream extends InputStream {
+
+	private static final long WATCH_TIMEOUT_MS = 1000; // Safety net for file systems that miss modification events
+
+	private final FileChannel channel;
+	private final WatchService watcher;
+	private volatile boolean closed = false;
+	private volatile BooleanSupplier complete = () -> false; // True once the writer closed the file
+
+	/**
+	 * Opens the given file for tailing.
+	 *
+	 * @param file path of the file
+	 * @throws IOException if the file can not be opened or watched
+	 */
+	TailInputStream(Path file) throws IOException {
+		channel = FileChannel.open(file, StandardOpenOption.READ);
+		watcher = file.getFileSystem().newWatchService();
+		file.toAbsolutePath().getParent().register(watcher, StandardWatchEventKinds.ENTRY_MODIFY);
+	}
+
+	@Override
+	public int read() throws IOException {
+		byte[] b = new byte[1];
+		return (read(b, 0, 1) < 0) ? -1 : (b[0] & 0xFF);
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (len == 0)
+			return 0;
+		while (!closed) {
+			// Checked before reading, so the data written before the end was marked is read first
+			boolean done = complete.getAsBoolean();
+			int n = channel.read(ByteBuffer.wrap(b, off, len));
+			if (n > 0)
+				return n;
+			if (done)
+				return -1;
+			awaitChange();
+		}
+		return -1;
+	}
+
+	/**
+	 * Sets how the end of the file is detected, e.g. a header field patched by the writer
+	 * when it closes the file.
+	 *
+	 * @param complete returns true once the file is complete
+	 */
+	void setEndCheck(BooleanSupplier complete) {
+		this.complete = complete;
+	}
+
+	/**
+	 * Blocks until the directory of the file reports a modification.
+	 */
+	private void awaitChange() throws IOException {
+		try {
+			WatchKey key = watcher.poll(WATCH_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+			if (key != null) {
+				key.pollEvents();
+				key.reset();
+			}
+		} catch (InterruptedException e) {
+			throw new InterruptedIOException("Interrupted while waiting for data");
+		} catch (ClosedWatchServiceException e) {
+			closed = true;
+		}
+	}
+
+	/**
+	 * Reads a long at the given file offset without moving the stream position.
+	 *
+	 * @param offset file offset
+	 * @return the long value, 0 if the file is shorter
+	 * @throws IOException if an error occurs while reading the file
+	 */
+	long readLongAt(long offset) throws IOException {
+		ByteBuffer bb = ByteBuffer.allocate(Long.BYTES);
+		while (bb.hasRemaining()) {
+			if (channel.read(bb, offset + bb.position()) < 0)
+				return 0;
+		}
+		return bb.getLong(0);
+	}
+
+	/**
+	 * Reads an int at the given file offset without moving the stream position.
+	 *
+	 * @param offset file offset
+	 * @return the int value, 0 if the file is shorter
+	 * @throws IOException if an error occurs while reading the file
+	 */
+	int readIntAt(long offset) throws IOException {
+		ByteBuffer bb = ByteBuffer.allocate(Integer.BYTES);
+		while (bb.hasRemaining()) {
+			if (channel.read(bb, offset + bb.position()) < 0)
+				return 0;
+		}
+		return bb.getInt(0);
+	}
+
+	@Override
+	public void close() throws IOException {
+		closed = true;
+		watcher.close();
+		channel.close();
+	}
+}
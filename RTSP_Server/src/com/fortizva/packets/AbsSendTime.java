@@ -0,0 +1,104 @@
+package com.fortizva.packets;
+
+import java.nio.ByteBuffer;
+
+/**
+ * AbsSendTime class encodes the abs-send-time RTP header extension element, which carries the
+ * time a packet was handed to the socket by the sender.
+ * <br>
+ * The value is a 24-bit 6.18 fixed point number of seconds (about 3.8 us of resolution,
+ * wrapping every 64 s). Only differences between two values are meaningful, so the receiver
+ * can compare the spacing of two packets at the sender with their spacing at arrival (the
+ * one-way delay variation) without synchronized clocks.
+ * <br>
+ * There is no SDP negotiation, so the element always uses the ID
+ * {@link CommonValues#ABS_SEND_TIME_ID}.
+ */
+public final class AbsSendTime {
+
+	/** URI of the extension (RFC 8285 extmap). */
+	public static final String URI = "http://www.webrtc.org/experiments/rtp-hdrext/abs-send-time";
+	/** Size of the element data in bytes. */
+	public static final int SIZE = 3;
+
+	private static final long WRAP = 1L << 24; // Values wrap every 64 s
+
+	private AbsSendTime() {
+	}
+
+	/**
+	 * @param nanos time in nanoseconds (e.g. {@link System#nanoTime()})
+	 * @return the 24-bit abs-send-time value of the time
+	 */
+	public static int fromNanos(long nanos) {
+		// 2^18 units per second, computed without overflowing for any nanoTime value
+		long seconds = Math.floorDiv(nanos, 1_000_000_000L);
+		long fraction = Math.floorMod(nanos, 1_000_000_000L);
+		return (int) (((seconds << 18) + (fraction << 18) / 1_000_000_000L) & (WRAP - 1));
+	}
+
+	/**
+	 * @param later   abs-send-time value of the later packet
+	 * @param earlier abs-send-time value of the earlier packet
+	 * @return time elapsed between the two values in nanoseconds, assuming it is less than 32 s
+	 */
+	public static long deltaNanos(int later, int earlier) {
+		long delta = (later - earlier) & (WRAP - 1);
+		if (delta >= WRAP / 2)
+			delta -= WRAP; // Earlier value was actually later (reordering)
+		return delta * 1_000_000_000L >> 18;
+	}
+
+	/**
+	 * @return a header extension holding an abs-send-time element set to 0, to be stamped at send time
+	 */
+	public static RtpHeaderExtension newExtension() {
+		return new RtpHeaderExtension().add(CommonValues.ABS_SEND_TIME_ID, new byte[SIZE]);
+	}
+
+	/**
+	 * Writes a value into the element data.
+	 *
+	 * @param b     array holding the element
+	 * @param off   offset of the element data
+	 * @param value abs-send-time value
+	 */
+	public static void put(byte[] b, int off, int value) {
+		b[off] = (byte) (value >>> 16);
+		b[off + 1] = (byte) (value >>> 8);
+		b[off + 2] = (byte) value;
+	}
+
+	public static void put(ByteBuffer buf, int off, int value) {
+		buf.put(off, (byte) (value >>> 16));
+		buf.put(off + 1, (byte) (value >>> 8));
+		buf.put(off + 2, (byte) value);
+	}
+
+	/**
+	 * @param buf buffer holding the element
+	 * @param off absolute offset of the element data
+	 * @return the abs-send-time value
+	 */
+	public static int get(ByteBuffer buf, int off) {
+		return (buf.get(off) & 0xFF) << 16 | (buf.get(off + 1) & 0xFF) << 8 | (buf.get(off + 2) & 0xFF);
+	}
+
+	/**
+	 * Stamps the current time into the abs-send-time element of a packet, if it has one.
+	 *
+	 * @param packet array holding the RTP packet
+	 * @param length size of the packet in bytes
+	 * @return true if the packet had an abs-send-time element
+	 */
+	public static boolean stamp(byte[] packet, int length) {
+		if (length < CommonValues.RTP_HEADER_SIZE || HeaderCodec.rtpExtension(packet, 0) == 0)
+			return false;
+		int at = RtpHeaderExtension.find(ByteBuffer.wrap(packet), CommonValues.RTP_HEADER_SIZE + 4 * HeaderCodec.rtpCC(packet, 0),
+				length, CommonValues.ABS_SEND_TIME_ID);
+		if (at < 0)
+			return false;
+		put(packet, at, fromNanos(System.nanoTime()));
+		return true;
+	}
+}
@@ -1,5 +1,9 @@
 package com.fortizva.packets;
 
+/**
+ * @deprecated allocates for every field, use {@link HeaderCodec} instead.
+ */
+@Deprecated
 public class BinaryField {
 	public int field, length;
 
@@ -11,17 +11,25 @@ public class CommonValues {
 	public static final int RTP_CC = 0; // Contributing sources count
 	public static final int RTP_MARKER = 0; // Marker bit
 	public static final int RTP_SSRC = 0; // Synchronization source identifier
+	public static final int ABS_SEND_TIME_ID = 3; // Header extension element ID of abs-send-time (see AbsSendTime.java)
 	
 	// Header and FEC sizes
 	public static final int RTP_HEADER_SIZE = 12; // Size of the RTP header in bytes
 	public static final int FEC_HEADER_SIZE = 10; // Size of the FEC header in bytes
 	public static final int FEC_LEVEL_HEADER_SIZE = 4;
+	public static final int FEC_LONG_LEVEL_HEADER_SIZE = 8; // FEC level header with the 48-bit long mask (L = 1)
+	public static final int RS_HEADER_SIZE = 2; // Size of the Reed-Solomon header (repair index and count) after the FEC level header
 	
 	// FEC packet constants
 	public static final int FEC_PTYPE = 116; // Payload type for FEC packets
+	public static final int RS_FEC_PTYPE = 117; // Payload type for Reed-Solomon repair packets (see RsEncoder.java)
 	public static final int FEC_E = 0; // FEC packet extension flag
-	public static final int FEC_L = 0; // FEC packet long-mask
-	public static final int MAX_FEC_GROUP_SIZE = 16; // Maximum size of a FEC group
+	public static final int FEC_L = 0; // FEC packet long-mask (only set for groups spanning more than 16 packets)
+	public static final int MAX_FEC_GROUP_SIZE = 48; // Maximum size of a FEC group (long mask)
+
+	// Feedback constants
+	public static final int RR_PTYPE = 201; // Packet type of receiver reports (as in RTCP)
+	public static final int REPORT_PERIOD = 1000; // Period of the receiver reports sent by the client, in ms
 
 	// Timers
 	public static final int STREAMING_FRAME_PERIOD = 30; // Frame period of the video to stream, in ms
@@ -35,5 +43,6 @@ public class CommonValues {
 
 	// Misc
 	public static final String CRLF = "\r\n";
+	public static final String TRACK_ID = "/trackID="; // Suffix of the SETUP URL selecting the audio track
 	
 }
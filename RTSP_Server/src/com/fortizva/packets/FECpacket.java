@@ -67,7 +67,7 @@ public class FECpacket implements Comparable<FECpacket> {
 	 * +-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+
 	 * |       Protection Length       |             mask              |
 	 * +-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+
-	 * |              mask cont. (present only when L = 1)             | (if L = 1, not used in this implementation)
+	 * |              mask cont. (present only when L = 1)             |
 	 * +-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+
 	 * |                     FEC Payload (XOR)                         |
 	 * |                              ...                              |
@@ -80,8 +80,9 @@ public class FECpacket implements Comparable<FECpacket> {
 	 *
 	 * The mask field in the FEC level header indicates which packets are
 	 * associated with the FEC packet at the current level.  It is either 16
-	 * or 48 bits depending on the value of the L bit (In this case is always
-	 * 16 bits).
+	 * or 48 bits depending on the value of the L bit (In this implementation
+	 * L is only set when the protected packets span more than 16 sequence numbers,
+	 * so groups of up to 16 packets keep the short headers).
 	 * 
 	 * If bit i in the mask is set to 1, then the media packet with sequence
 	 * number N + i is associated with this FEC packet, where N is the SN Base field in the
@@ -108,28 +109,46 @@ public class FECpacket implements Comparable<FECpacket> {
 	private byte[] flags = new byte[2]; // Flags field combining E, L, P, X, CC, M, and PT recovery fields
 	private int ptRecovery; // Payload Type recovery field (PT recovery)
 	private int baseSequenceNumber; // Base sequence number of the first RTP packet protected by this FEC packet
+	private long extendedBaseSequenceNumber; // Base sequence number extended with the wraparound count, used to order and match packets
 	private int maskLength; // Number of RTP packets protected by this FEC packet
-	private byte[] protectionMask = new byte[2]; // Default size of the protection mask is 2 bytes (16 bits) (No long mask used in this implementation)
+	private byte[] protectionMask; // Protection mask, 2 bytes (16 bits) or 6 bytes (48 bits) when the L bit is set
+	private int headersSize; // Size of the FEC header and FEC level header (14 bytes, or 18 with the long mask)
 	private int lengthRecovery; // Length recovery field (16 bits) to determine the length of the recovered packets
 	private int protectionLength; // Protection length field (16 bits) to determine the length of the FEC payload
 	private int timestampRecovery; // Timestamp recovery field (32 bits) to determine the timestamp of the recovered packets
 	
 	// FEC Payload
-	private byte[] fecPacketBytes; // FEC payload containing the FEC header and XOR of the RTP packets
-	private byte[] xorPayload; // XOR of the payloads of the RTP packets
+	private byte[] fecPacketBytes; // FEC payload containing the FEC header and XOR of the RTP packets (after the headers)
 	
 	/** * Constructor to create a FEC packet from an array of RTP packets.
 	 * @param rtpPackets Ordered array of RTP packets to be protected by this FEC packet. (First packet must have the lowest sequence number)
+	 * 		The packets do not need to be consecutive, but must fall within the 48 sequence numbers following the first one.
+	 * @throws IllegalArgumentException if a packet does not fit in the mask or is repeated
 	 */
 	public FECpacket(RTPpacket[] rtpPackets) {
 		
+		// We asume that the first RTP packet has the lowest sequence number (aka base sequence number)
+		baseSequenceNumber = rtpPackets[0].getSequenceNumber();
+		extendedBaseSequenceNumber = rtpPackets[0].getExtendedSequenceNumber();
+		
+		// Offset of every packet from the SN base, the long mask is only used when an offset does not fit in 16 bits
+		int[] offsets = new int[rtpPackets.length];
+		boolean longMask = false;
+		for (int i = 0; i < rtpPackets.length; i++) {
+			offsets[i] = (rtpPackets[i].getSequenceNumber() - baseSequenceNumber) & 0xFFFF; // Offsets wrap around as the sequence number
+			if (offsets[i] >= 48)
+				throw new IllegalArgumentException("Sequence number " + rtpPackets[i].getSequenceNumber()
+						+ " does not fit in the FEC group starting at " + baseSequenceNumber);
+			longMask |= offsets[i] >= 16;
+		}
+		
 		/* First flags have the same values for all FEC packets so we can set them here
 		 * E bit (Extension flag) is set to 0 as per RFC 5109
-		 * L bit (Long mask) is set to 0 as we assume the mask length is 16 bits
+		 * L bit (Long mask) is set to 1 only if the mask needs more than 16 bits
 		 * P, X, CC, and M fields are not used in this implementation but should be calculated based on the RTP packets.
 		 */
 		
-		flags[0] = (byte) 0b00000000; // Initialize flags to 0 as these flags are not used in this implementation
+		flags[0] = (byte) (longMask ? HeaderCodec.FEC_L_BIT : 0); // Other flags are not used in this implementation
 		/*
 		 *  Second bytes of flags would be equals to the M, and PT recovery fields.
 		 *  The PT Field is calculated by applying the protection operation to the RTP packets' payload types.
@@ -142,30 +161,24 @@ public class FECpacket implements Comparable<FECpacket> {
 		flags[1] &= 0b01111111; // Set the M bit to 0 (most significant bit)
 		ptRecovery = (int) flags[1];
 		
-		// We asume that the first RTP packet has the lowest sequence number (aka base sequence number)
-		baseSequenceNumber = rtpPackets[0].getSequenceNumber();
-		
 		// Determine the number of RTP packets to be protected by this FEC packet
 		maskLength = rtpPackets.length; 
 		
 		
 		/* Protection Mask
-		 * Build a maskLength bit array of 1s indicating which RTP packets are protected
-		 * In this implementation, we assume that all packets are protected, consecutive and ordered
-		 * If maskLength's last byte is not fully filled, it will be padded with zeroes at the end.
+		 * Build a 16 or 48 bit array with a 1 for the offset of every protected RTP packet.
+		 * Packets do not need to be consecutive, unprotected offsets are left as zeroes.
 		 */
-		int j = 0;
-		for (int i = 0; i < maskLength; i++) {
-			if (i % 8 == 0 && i != 0) {
-				j++;
-			}
-			/* Left bitwise shift the value 1 "i%8" times (0-7 times) starting from the leftmost bit (7)
-			 * to the rightmost bit (0).
-			 * The bigger the i value, the more right the bit will be set to 1.
-			 * The operator |= means "bitwise OR" which sets the bit to 1 if it is not already set, 
-			 * so it does not overwrite the previous bits.
+		protectionMask = new byte[longMask ? 6 : 2];
+		for (int offset : offsets) {
+			/* Left bitwise shift the value 1 "offset%8" times (0-7 times) starting from the leftmost bit (7)
+			 * to the rightmost bit (0) of the byte "offset/8".
+			 * The bigger the offset, the more right the bit will be set to 1.
 			 */
-			protectionMask[j] |= (1 << (7 - (i % 8))); // Set the bit in the protection mask to 1
+			int bit = 1 << (7 - (offset % 8));
+			if ((protectionMask[offset / 8] & bit) != 0)
+				throw new IllegalArgumentException("Sequence number " + ((baseSequenceNumber + offset) & 0xFFFF) + " is repeated");
+			protectionMask[offset / 8] |= bit; // Set the bit in the protection mask to 1
 		}
 		
 		// Get largest RTP packet size and calculate length_recovery field as an XOR of all RTP packets' payload sizes
@@ -196,79 +209,33 @@ public class FECpacket implements Comparable<FECpacket> {
 		// Initialize FEC Packet bytes array
 		// Calculate total FEC size (without RTP header) to insert it as an RTP payload
 		// Main FEC Header
-		// If the L bit is set to 1, we would add 3 more bytes for the mask continuation (48 bits) (Not used in this implementation)
-		packetFECSize = CommonValues.FEC_HEADER_SIZE + CommonValues.FEC_LEVEL_HEADER_SIZE; // Headers size
-		packetFECSize += protectionLength;// Add the size of the XOR payload (size of the largest RTP packet payload)
+		// If the L bit is set to 1, the level header has 4 more bytes for the mask continuation (48 bits)
+		headersSize = HeaderCodec.fecHeadersSize(flags[0]); // Headers size
+		packetFECSize = headersSize + protectionLength;// Add the size of the XOR payload (size of the largest RTP packet payload)
 
 		fecPacketBytes = new byte[packetFECSize];
 		
 		// Prepare FEC packet
-		// Flags
-		fecPacketBytes[0] = flags[0]; // E, L, P, X, CC, M bits
-		fecPacketBytes[1] = flags[1]; // PT recovery field
-		
-		// Fill the Base Sequence Number
-		this.baseSequenceNumber = rtpPackets[0].getSequenceNumber();
-		byte[] basesequencebytes = BinaryField.binarySplitter(this.baseSequenceNumber);
-		for (int i = 0; i < Math.min(basesequencebytes.length, 2); i++) {
-			// Fill Base Sequence Number in reverse order so the beginning is zeroes
-			fecPacketBytes[2+1-i] = basesequencebytes[(basesequencebytes.length - 1) - i];
-		}
-
-		// Fill the TimeStamp recovery field
-		byte[] timestampBytes = BinaryField.binarySplitter(timestampRecovery);
-		for (int i = 0; i < Math.min(timestampBytes.length, 4); i++) {
-			fecPacketBytes[4 + 3 - i] = timestampBytes[(timestampBytes.length - 1) - i];
-		}
-
-		// Fill the Length recovery field
-		byte[] lengthRecoveryBytes = BinaryField.binarySplitter(lengthRecovery);
-		for (int i = 0; i < Math.min(lengthRecoveryBytes.length, 2); i++) {
-			fecPacketBytes[8 + 1 - i] = lengthRecoveryBytes[(lengthRecoveryBytes.length - 1) - i];
-		}
-		// Fill the Protection Length field
-		byte[] protectionLengthBytes = BinaryField.binarySplitter(protectionLength);
-		for (int i = 0; i < Math.min(protectionLengthBytes.length, 2); i++) {
-			fecPacketBytes[10 + 1 - i] = protectionLengthBytes[(protectionLengthBytes.length - 1) - i];
+		// Flags: E, L, P, X, CC, M bits and PT recovery field, then the Base Sequence Number,
+		// TimeStamp recovery, Length recovery, Protection Length and Protection Mask fields
+		int mask = (protectionMask[0] & 0xFF) << 8 | (protectionMask[1] & 0xFF);
+		if (longMask) {
+			// The mask continuation fills the next 4 bytes
+			long mask48 = (long) mask << 32 | (HeaderCodec.getInt(protectionMask, 2) & 0xFFFFFFFFL);
+			HeaderCodec.writeFecHeadersLongMask(fecPacketBytes, 0, flags[0], flags[1], baseSequenceNumber, timestampRecovery,
+					lengthRecovery, protectionLength, mask48);
+		} else {
+			HeaderCodec.writeFecHeaders(fecPacketBytes, 0, flags[0], flags[1], baseSequenceNumber, timestampRecovery,
+					lengthRecovery, protectionLength, mask);
 		}
 		
-		// Fill the Protection Mask field
-		fecPacketBytes[12] = protectionMask[0]; // First byte of the protection mask
-		fecPacketBytes[13] = protectionMask[1]; // Second byte of the protection mask
-		
-		// If the L bit was set to 1, we would fill the next 3 bytes with the mask continuation (not used in this implementation)
-		
 		// XOR the payloads of the RTP packets
-		/* As the packets may have different sizes, we need to handle that
-		 * by filling the packet with zeros to match the largest size.
-		 */		
-		xorPayload = new byte[protectionLength]; // Initialize XOR payload with the size of the largest RTP packet
-		byte currentByte;
-		byte[] currentPayload; // Current RTP packet payload
-		boolean firstPacket = true; // Flag to check if it's the first packet to initialize the XOR payload
-		// Iterate through each RTP packet and perform XOR operation on payloads
+		/* As the packets may have different sizes, shorter payloads are treated as if they were padded
+		 * with zeros to the largest size: only their own bytes are XORed into the zeroed accumulator.
+		 * The accumulator is the FEC packet itself, after the headers, so the payloads are not copied.
+		 */
 		for (RTPpacket rtpPacket : rtpPackets) {
-			if(firstPacket) {
-				currentPayload = rtpPacket.getPayload(); // Get the first packet payload to initialize the XOR payload
-				// Copy the first packet payload to the XOR payload
-				System.arraycopy(currentPayload, 0, xorPayload, 0, currentPayload.length);
-			} else {
-				currentPayload = new byte[rtpPacket.getPayloadLength()];
-				currentPayload = rtpPacket.getPayload();
-				for (int i = 0; i < xorPayload.length; i++) {
-					currentByte = (i < currentPayload.length) ? currentPayload[i] : 0; // Fill with 0 if index exceeds payload length
-					xorPayload[i] ^= currentByte; // XOR operation with subsequent packets
-					
-				}
-			}
-			firstPacket = false; // Set the flag to false after the first packet
-		}
-		
-		// Fill the FEC payload with the XOR result
-		// Total header length of the FEC packet (FEC header + FEC level header);
-		int totalHeaderLength = CommonValues.FEC_HEADER_SIZE+CommonValues.FEC_LEVEL_HEADER_SIZE; 
-		for (int i = 0; i < xorPayload.length; i++) {
-			fecPacketBytes[totalHeaderLength + i] = xorPayload[i]; // Start filling after the protection mask
+			XorKernel.xorInto(fecPacketBytes, headersSize, rtpPacket.payload, 0, rtpPacket.getPayloadLength());
 		}
 	}
 	
@@ -276,6 +243,9 @@ public class FECpacket implements Comparable<FECpacket> {
 	 * FECpacket constructor that parses the FECpacket object from byte[]
 	 * */
 	public FECpacket(byte[] fecPacketBytes) {
+		if (fecPacketBytes.length < CommonValues.FEC_HEADER_SIZE + CommonValues.FEC_LEVEL_HEADER_SIZE
+				|| fecPacketBytes.length < HeaderCodec.fecHeadersSize(fecPacketBytes[0]))
+			throw new IllegalArgumentException("FEC packet shorter than its headers");
 		this.fecPacketBytes = fecPacketBytes.clone();
 		// Flags
 		flags[0] = fecPacketBytes[0];
@@ -283,40 +253,31 @@ public class FECpacket implements Comparable<FECpacket> {
 		ptRecovery = flags[1] & 0x7F; // PT recovery is lower 7 bits
 		
 		// Base Sequence Number (2 bytes: bytes 2 and 3)
-		baseSequenceNumber = ((fecPacketBytes[2] & 0xFF) << 8) | (fecPacketBytes[3] & 0xFF);
+		baseSequenceNumber = HeaderCodec.fecBaseSequenceNumber(fecPacketBytes, 0);
+		extendedBaseSequenceNumber = baseSequenceNumber;
 		
 		// Timestamp Recovery (4 bytes: bytes 4-7)
-		timestampRecovery = ((fecPacketBytes[4] & 0xFF) << 24) |
-		                    ((fecPacketBytes[5] & 0xFF) << 16) |
-		                    ((fecPacketBytes[6] & 0xFF) << 8) |
-		                    (fecPacketBytes[7] & 0xFF);
+		timestampRecovery = HeaderCodec.fecTimestampRecovery(fecPacketBytes, 0);
 		
 		// Length Recovery (2 bytes: bytes 8-9)
-		lengthRecovery = ((fecPacketBytes[8] & 0xFF) << 8) | (fecPacketBytes[9] & 0xFF);
+		lengthRecovery = HeaderCodec.fecLengthRecovery(fecPacketBytes, 0);
 		
 		// Protection Length (2 bytes: bytes 10-11)
-		protectionLength = ((fecPacketBytes[10] & 0xFF) << 8) | (fecPacketBytes[11] & 0xFF);
+		protectionLength = HeaderCodec.fecProtectionLength(fecPacketBytes, 0);
 		
-		// Protection Mask (2 bytes: bytes 12-13)
-		protectionMask[0] = fecPacketBytes[12];
-		protectionMask[1] = fecPacketBytes[13];
+		// Protection Mask (2 bytes: bytes 12-13, or 6 bytes: bytes 12-17 when the L bit is set)
+		headersSize = HeaderCodec.fecHeadersSize(flags[0]);
+		protectionMask = Arrays.copyOfRange(fecPacketBytes, 12, headersSize);
 		
 		// Mask length (number of RTP packets protected by this FEC packet, parsed as a bitmask)
 		maskLength = 0;
-		for (int i = 0; i < 8; i++) {
-		    if ((protectionMask[0] & (1 << (7 - i))) != 0) {
-		        maskLength++;
-		    }
-		}
-		for (int i = 0; i < 8; i++) {
-		    if ((protectionMask[1] & (1 << (7 - i))) != 0) {
-		        maskLength++;
-		    }
+		for (byte maskByte : protectionMask) {
+		    maskLength += Integer.bitCount(maskByte & 0xFF);
 		}
 		
-		// XOR Payload (starts at byte 14, length = protectionLength)
-		xorPayload = new byte[protectionLength];
-		System.arraycopy(fecPacketBytes, 14, xorPayload, 0, protectionLength);
+		// XOR Payload (starts after the headers, length = protectionLength), read in place from fecPacketBytes
+		if (protectionLength > fecPacketBytes.length - headersSize)
+			throw new IllegalArgumentException("FEC payload shorter than its protection length");
 		
 		// FEC packet size (excluding RTP header)
 		    packetFECSize = fecPacketBytes.length;
@@ -335,8 +296,8 @@ public class FECpacket implements Comparable<FECpacket> {
 	    int recoveredTs = timestampRecovery; // Initialize with FEC value for later XOR
 	    int recoveredLen = lengthRecovery; // Initialize with FEC value for later XOR
 	    
-	    // Sequence number of lost packet
-	    recoveredSeq += lostIndex;
+	    // Sequence number of lost packet (16 bits on the wire, the offset may cross a wraparound)
+	    recoveredSeq = (recoveredSeq + lostIndex) & 0xFFFF;
 	
 	    // XOR all available packets' fields
 	    for (int i = 0, j = 0; i < maskLength-1; i++) { // maskLength-1 because we are recovering one packet
@@ -346,30 +307,19 @@ public class FECpacket implements Comparable<FECpacket> {
 		        j++;
 	    }
 	
-	    // Recover payload
-	    byte[] fecPayload = getXorPayload();
+	    // Recover payload: XOR the received payloads into a copy of the FEC payload
+	    byte[] recoveredPayload = Arrays.copyOfRange(fecPacketBytes, headersSize, headersSize + protectionLength);
 	
-	    // Initialize the recovered payload with the FEC payload
-	    byte[] recoveredPayload = new byte[protectionLength];
-	    System.arraycopy(fecPayload, 0, recoveredPayload, 0, protectionLength);
-	
-	    for (int i = 0, j = 0; i < maskLength-1; i++) { // maskLength-1 because we are recovering one packet
-		        byte[] p = new byte[protectionLength];
-		        byte[] origPayload = receivedPackets[j].getPayload();
-
-		        System.arraycopy(origPayload, 0, p, 0, origPayload.length);
-		        for (int k = 0; k < protectionLength; k++) {
-		            recoveredPayload[k] ^= p[k];
-		        }
-		        j++;
+	    for (int i = 0; i < maskLength-1; i++) { // maskLength-1 because we are recovering one packet
+		        RTPpacket received = receivedPackets[i];
+		        // Shorter payloads are zero padded, which leaves the rest of the accumulator unchanged
+		        XorKernel.xorInto(recoveredPayload, 0, received.payload, 0, Math.min(received.getPayloadLength(), protectionLength));
 	    }
 	
-	    // Truncate payload to recoveredLen
-	    byte[] finalPayload = new byte[recoveredLen];
-	    System.arraycopy(recoveredPayload, 0, finalPayload, 0, recoveredLen);
-	
-	    // Build and return the recovered RTPpacket
-	    return new RTPpacket(recoveredPT, recoveredSeq, recoveredTs, finalPayload, recoveredLen);
+	    // Build and return the recovered RTPpacket (only the first recoveredLen bytes are taken)
+	    RTPpacket recovered = new RTPpacket(recoveredPT, recoveredSeq, recoveredTs, recoveredPayload, recoveredLen);
+	    recovered.setExtendedSequenceNumber(extendedBaseSequenceNumber + lostIndex);
+	    return recovered;
 	}
 	
 	
@@ -422,6 +372,24 @@ public class FECpacket implements Comparable<FECpacket> {
 		return baseSequenceNumber;
 	}
 	
+	/**
+	 * Returns the base sequence number extended with the wraparound count. It equals the base
+	 * sequence number unless set by the receiver with {@link #setExtendedBaseSequenceNumber(long)}.
+	 * @return Extended base sequence number.
+	 */
+	public long getExtendedBaseSequenceNumber() {
+		return extendedBaseSequenceNumber;
+	}
+	
+	/**
+	 * Sets the extended base sequence number (see {@link SequenceTracker#unwrap(int)}).
+	 * Must be set before the packet is added to an ordered structure.
+	 * @param extendedBaseSequenceNumber Extended base sequence number.
+	 */
+	public void setExtendedBaseSequenceNumber(long extendedBaseSequenceNumber) {
+		this.extendedBaseSequenceNumber = extendedBaseSequenceNumber;
+	}
+	
 	/*
 	 * Returns the protection length field.
 	 * @return Protection length field in bytes.
@@ -435,7 +403,7 @@ public class FECpacket implements Comparable<FECpacket> {
 	 * @return FEC payload as a byte array.
 	 */
 	public byte[] getXorPayload() {
-		return xorPayload.clone();
+		return Arrays.copyOfRange(fecPacketBytes, headersSize, headersSize + protectionLength);
 	}
 	
 	/**
@@ -446,39 +414,59 @@ public class FECpacket implements Comparable<FECpacket> {
 		return fecPacketBytes.clone();
 	}
 	
+	/**
+	 * Returns the FEC packet bytes without copying them, for subclasses and decoders of this package.
+	 * @return FEC packet bytes.
+	 */
+	byte[] packetBytes() {
+		return fecPacketBytes;
+	}
+	
 	/**
 	 * Returns an array with all the calculated sequence numbers of the RTP packets protected by this FEC packet.
 	 * Only marked bits in the protection mask are considered.
-	 * @return Array of protected sequence numbers, -1 for unprotected packets.
+	 * @return Array of protected 16-bit sequence numbers, -1 for unprotected packets.
 	 */
 	public int[] getProtectedSequenceNumbers() {
 		int[] protectedSeqNumbers = new int[maskLength]; // Array to hold protected sequence numbers, we initialize it with -1s
 		Arrays.fill(protectedSeqNumbers, -1); // Fill with -1 to indicate unprotected packets
 		
 		int p = 0; // Index for protected sequence numbers
-		for (int i = 0; i < 16; i++) { // 16 bits in the protection mask
+		for (int i = 0; i < protectionMask.length * 8; i++) { // 16 or 48 bits in the protection mask
 			if ((protectionMask[i / 8] & (1 << (7 - (i % 8)))) != 0) {
-				protectedSeqNumbers[p++] = baseSequenceNumber + i;
+				protectedSeqNumbers[p++] = (baseSequenceNumber + i) & 0xFFFF; // Offsets wrap around as the sequence number
 			}
 		}
 		return protectedSeqNumbers;
 	}
 	
 	/**
-	 * Compares this FEC packet with another FEC packet based on their base sequence numbers.
+	 * Returns an array with the extended sequence numbers of the RTP packets protected by this FEC packet,
+	 * which can be matched with {@link RTPpacket#getExtendedSequenceNumber()} across a wraparound.
+	 * @return Array of protected extended sequence numbers, -1 for unprotected packets.
+	 */
+	public long[] getExtendedProtectedSequenceNumbers() {
+		long[] protectedSeqNumbers = new long[maskLength];
+		Arrays.fill(protectedSeqNumbers, -1);
+		
+		int p = 0;
+		for (int i = 0; i < protectionMask.length * 8; i++) {
+			if ((protectionMask[i / 8] & (1 << (7 - (i % 8)))) != 0) {
+				protectedSeqNumbers[p++] = extendedBaseSequenceNumber + i;
+			}
+		}
+		return protectedSeqNumbers;
+	}
+	
+	/**
+	 * Compares this FEC packet with another FEC packet based on their extended base sequence numbers.
 	 * @param p The FEC packet to compare with.
 	 * @return A negative integer, zero, or a positive integer as this packet's base sequence number
 	 * 		is less than, equal to, or greater than the specified packet's base sequence number.
 	 */
 	@Override
 	public int compareTo(FECpacket p) {
-		// Compare FEC packets based on their sequence number
-		if (this.baseSequenceNumber < p.baseSequenceNumber) {
-			return -1;
-		} else if (this.baseSequenceNumber > p.baseSequenceNumber) {
-			return 1;
-		} else {
-			return 0; // They are equal
-		}
+		// Compare FEC packets based on their extended base sequence number
+		return Long.compare(this.extendedBaseSequenceNumber, p.extendedBaseSequenceNumber);
 	}
 }
@@ -0,0 +1,140 @@
+package com.fortizva.packets;
+
+import java.util.ArrayList;
+
+/**
+ * FecDecoder class recovers lost RTP packets from FEC packets whose protected packets may
+ * overlap, such as the row and column parity of a 2D parity matrix (SMPTE 2022-1 style): rows
+ * protect L consecutive packets, and columns protect D packets spaced by L.
+ * <br>
+ * A FEC packet can recover a packet only when it is the single one missing from its group.
+ * FEC packets missing more packets are kept pending, and every packet recovered may complete
+ * another group, so recovery is repeated over the pending FEC packets until nothing more can
+ * be recovered. Two adjacent losses in a row are then recovered by their columns, and a
+ * burst of up to L losses is recovered by the columns.
+ * <br>
+ * The received packets are looked up in a {@link PacketWindow}, so the decoder does not keep
+ * any RTP packet. FEC packets must have their extended SN base set
+ * ({@link FECpacket#setExtendedBaseSequenceNumber(long)}). One decoder is used by one thread.
+ */
+public class FecDecoder {
+
+	/**
+	 * Window of received packets the decoder reads the protected packets from.
+	 */
+	public interface PacketWindow {
+		/**
+		 * @param extendedSequenceNumber extended sequence number of the packet
+		 * @return the packet, which must stay valid until it is released, or null if it was not received
+		 */
+		RTPpacket acquire(long extendedSequenceNumber);
+
+		/**
+		 * Gives back a packet returned by {@link #acquire(long)}.
+		 */
+		void release(RTPpacket packet);
+
+		/**
+		 * Receives a recovered packet, which must be returned by {@link #acquire(long)} from then on.
+		 */
+		void recovered(RTPpacket packet);
+	}
+
+	private final int maxPending;
+	private final ArrayList<FECpacket> pending = new ArrayList<>(); // FEC packets missing more than one packet, by arrival
+	private long recoveredPackets = 0;
+
+	/**
+	 * @param maxPending maximum number of FEC packets kept pending, the oldest ones are dropped first
+	 */
+	public FecDecoder(int maxPending) {
+		this.maxPending = Math.max(maxPending, 1);
+	}
+
+	/**
+	 * Adds a received FEC packet and recovers every packet that can be recovered with it and
+	 * the pending FEC packets.
+	 *
+	 * @param fec    the FEC packet
+	 * @param window the received packets
+	 * @return number of packets recovered
+	 */
+	public int add(FECpacket fec, PacketWindow window) {
+		pending.add(fec);
+		if (pending.size() > maxPending)
+			pending.remove(0);
+
+		int recovered = 0;
+		boolean progress = true;
+		while (progress) {
+			progress = false;
+			for (int i = 0; i < pending.size();) {
+				int lost = recover(pending.get(i), window);
+				if (lost == 1) {
+					recovered++;
+					progress = true; // The recovered packet may complete another group
+				}
+				if (lost <= 1)
+					pending.remove(i); // Nothing left to recover in this group
+				else
+					i++;
+			}
+		}
+		recoveredPackets += recovered;
+		return recovered;
+	}
+
+	/**
+	 * Drops the pending FEC packets protecting packets older than a sequence number, as those
+	 * packets are no longer in the window.
+	 *
+	 * @param extendedSequenceNumber oldest extended sequence number in the window
+	 */
+	public void discardBefore(long extendedSequenceNumber) {
+		pending.removeIf(fec -> fec.getExtendedBaseSequenceNumber() < extendedSequenceNumber);
+	}
+
+	/**
+	 * @return number of FEC packets waiting for more packets
+	 */
+	public int getPendingCount() {
+		return pending.size();
+	}
+
+	/**
+	 * @return number of packets recovered since the decoder was created
+	 */
+	public long getRecoveredPackets() {
+		return recoveredPackets;
+	}
+
+	/**
+	 * Recovers the lost packet of a FEC group if it is the only one missing.
+	 *
+	 * @return number of packets of the group missing before the recovery
+	 */
+	private int recover(FECpacket fec, PacketWindow window) {
+		long[] protectedSequenceNb = fec.getExtendedProtectedSequenceNumbers();
+		RTPpacket[] found = new RTPpacket[protectedSequenceNb.length];
+		int count = 0;
+		int lost = 0;
+		long lostSeqNum = -1;
+		for (long seqNum : protectedSequenceNb) {
+			RTPpacket packet = window.acquire(seqNum);
+			if (packet != null) {
+				found[count++] = packet;
+			} else {
+				lost++;
+				lostSeqNum = seqNum;
+			}
+		}
+		try {
+			if (lost == 1)
+				window.recovered(fec.recoverPacket(found, (int) (lostSeqNum - fec.getExtendedBaseSequenceNumber())));
+		} finally {
+			for (int i = 0; i < count; i++)
+				window.release(found[i]);
+		}
+		return lost;
+	}
+}
@@ -0,0 +1,199 @@
+package com.fortizva.packets;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * FecEncoder class builds the FEC packet of a group incrementally: every RTP packet is folded
+ * into running XOR accumulators (payload, length, timestamp and payload type) and its bit is
+ * set in the protection mask as it is sent.
+ * <br>
+ * The packets are not retained, so the memory used is the size of the largest payload of a
+ * group instead of the whole group, and the FEC packet is ready as soon as the group closes.
+ * The result is the same FEC packet built by {@link FECpacket#FECpacket(RTPpacket[])}.
+ * <br>
+ * The first packet added to a group sets its SN base. Later packets must follow it within
+ * the 48 packets covered by the long mask, but do not need to be consecutive. The L bit and
+ * the 48-bit mask are only used when a packet falls beyond the first 16, so smaller groups
+ * keep the short headers.
+ */
+public class FecEncoder {
+
+	// Room for the headers with the long mask, the payload always starts after it and the
+	// short headers are written right before the payload
+	static final int HEADERS_SIZE = CommonValues.FEC_HEADER_SIZE + CommonValues.FEC_LONG_LEVEL_HEADER_SIZE;
+	/** Number of packets covered by the protection mask (long mask). */
+	public static final int MASK_BITS = 48;
+
+	private byte[] packet; // FEC headers followed by the XOR accumulator of the payloads
+	private int count = 0; // Packets added to the current group
+	private int baseSequenceNumber;
+	private int ptRecovery;
+	private int timestampRecovery;
+	private int lengthRecovery;
+	private int protectionLength; // Largest payload of the group
+	private long mask; // 48-bit mask, the most significant bit is SN base
+
+	/**
+	 * Creates an encoder with room for 1500 byte payloads, grown as needed.
+	 */
+	public FecEncoder() {
+		this(1500);
+	}
+
+	/**
+	 * @param capacity initial payload capacity in bytes, grown as needed
+	 */
+	public FecEncoder(int capacity) {
+		packet = new byte[HEADERS_SIZE + capacity];
+	}
+
+	/**
+	 * Folds a packet into the current group.
+	 *
+	 * @param rtpPacket packet to protect
+	 * @throws IllegalArgumentException if the packet does not fit in the mask of the group
+	 */
+	public void add(RTPpacket rtpPacket) {
+		add(rtpPacket.getPayloadType(), rtpPacket.getSequenceNumber(), rtpPacket.getTimeStamp(), rtpPacket.payload, 0,
+				rtpPacket.getPayloadLength());
+	}
+
+	/**
+	 * Folds a packet into the current group.
+	 *
+	 * @param payloadType    payload type of the packet
+	 * @param sequenceNumber sequence number of the packet
+	 * @param timestamp      timestamp of the packet
+	 * @param payload        array holding the payload
+	 * @param off            offset of the payload in the array
+	 * @param length         size of the payload in bytes
+	 * @throws IllegalArgumentException if the packet does not fit in the mask of the group
+	 */
+	public void add(int payloadType, int sequenceNumber, int timestamp, byte[] payload, int off, int length) {
+		fold(payloadType, sequenceNumber, timestamp, length);
+		// Shorter payloads are zero padded, which leaves the rest of the accumulator unchanged
+		XorKernel.xorInto(packet, HEADERS_SIZE, payload, off, length);
+	}
+
+	/**
+	 * Folds a packet whose payload is the remaining bytes of a buffer (e.g. a slice of a mapped
+	 * file) into the current group. The buffer position is not modified.
+	 *
+	 * @param payloadType    payload type of the packet
+	 * @param sequenceNumber sequence number of the packet
+	 * @param timestamp      timestamp of the packet
+	 * @param payload        payload of the packet
+	 * @throws IllegalArgumentException if the packet does not fit in the mask of the group
+	 */
+	public void add(int payloadType, int sequenceNumber, int timestamp, ByteBuffer payload) {
+		fold(payloadType, sequenceNumber, timestamp, payload.remaining());
+		XorKernel.xorInto(packet, HEADERS_SIZE, payload);
+	}
+
+	/**
+	 * Folds the header fields of a packet into the current group and makes room for its payload.
+	 */
+	private void fold(int payloadType, int sequenceNumber, int timestamp, int length) {
+		if (count == 0)
+			baseSequenceNumber = sequenceNumber & 0xFFFF;
+		int offset = (sequenceNumber - baseSequenceNumber) & 0xFFFF; // Wraps around as the sequence number
+		if (offset >= MASK_BITS || (mask & bit(offset)) != 0)
+			throw new IllegalArgumentException("Sequence number " + sequenceNumber + " does not fit in the FEC group starting at "
+					+ baseSequenceNumber);
+		if (HEADERS_SIZE + length > packet.length)
+			packet = Arrays.copyOf(packet, HEADERS_SIZE + Math.max(length, 2 * (packet.length - HEADERS_SIZE)));
+
+		mask |= bit(offset);
+		ptRecovery ^= payloadType;
+		timestampRecovery ^= timestamp;
+		lengthRecovery ^= length;
+		protectionLength = Math.max(protectionLength, length);
+		count++;
+	}
+
+	/**
+	 * @return number of packets in the current group
+	 */
+	public int getCount() {
+		return count;
+	}
+
+	/**
+	 * @return size in bytes of the FEC packet of the current group
+	 */
+	public int getFecPacketSize() {
+		return headersSize(mask) + protectionLength;
+	}
+
+	/**
+	 * @param mask 48-bit mask of a group
+	 * @return size of the FEC header and FEC level header of the group, with the short mask
+	 *         if all the packets fall within the first 16
+	 */
+	static int headersSize(long mask) {
+		return CommonValues.FEC_HEADER_SIZE
+				+ (isLongMask(mask) ? CommonValues.FEC_LONG_LEVEL_HEADER_SIZE : CommonValues.FEC_LEVEL_HEADER_SIZE);
+	}
+
+	/**
+	 * @return true if a 48-bit mask has bits beyond the first 16
+	 */
+	static boolean isLongMask(long mask) {
+		return (mask & 0xFFFFFFFFL) != 0;
+	}
+
+	/**
+	 * Writes the FEC headers of a group right before its payload, which starts at {@link #HEADERS_SIZE}.
+	 *
+	 * @return offset of the headers in the array
+	 */
+	static int writeHeaders(byte[] packet, int ptRecovery, int baseSequenceNumber, int timestampRecovery, int lengthRecovery,
+			int protectionLength, long mask) {
+		int start = HEADERS_SIZE - headersSize(mask);
+		// E, P, X and CC recovery are not used
+		if (isLongMask(mask))
+			HeaderCodec.writeFecHeadersLongMask(packet, start, 0, ptRecovery, baseSequenceNumber, timestampRecovery,
+					lengthRecovery, protectionLength, mask);
+		else
+			HeaderCodec.writeFecHeaders(packet, start, 0, ptRecovery, baseSequenceNumber, timestampRecovery, lengthRecovery,
+					protectionLength, (int) (mask >>> 32));
+		return start;
+	}
+
+	/**
+	 * Writes the FEC headers of the current group.
+	 *
+	 * @return a read-only view of the FEC packet (headers and XOR payload), valid until the
+	 *         next call to {@link #add(RTPpacket)} or {@link #reset()}
+	 * @throws IllegalStateException if the group is empty
+	 */
+	public ByteBuffer finish() {
+		if (count == 0)
+			throw new IllegalStateException("No packets in the FEC group");
+		// The M bit of the PT recovery byte is 0
+		int start = writeHeaders(packet, ptRecovery & 0x7F, baseSequenceNumber, timestampRecovery, lengthRecovery,
+				protectionLength, mask);
+		return ByteBuffer.wrap(packet, start, getFecPacketSize()).slice().asReadOnlyBuffer();
+	}
+
+	/**
+	 * Starts a new group, clearing the accumulators.
+	 */
+	public void reset() {
+		Arrays.fill(packet, 0, HEADERS_SIZE + protectionLength, (byte) 0);
+		count = 0;
+		ptRecovery = 0;
+		timestampRecovery = 0;
+		lengthRecovery = 0;
+		protectionLength = 0;
+		mask = 0;
+	}
+
+	/**
+	 * @return the mask bit of a packet, the most significant bit being the SN base
+	 */
+	static long bit(int offset) {
+		return 1L << (MASK_BITS - 1 - offset);
+	}
+}
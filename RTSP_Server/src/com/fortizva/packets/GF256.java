@@ -0,0 +1,178 @@
+package com.fortizva.packets;
+
+import java.nio.ByteBuffer;
+
+/**
+ * GF256 class implements the arithmetic of the Galois field GF(2^8) used by the Reed-Solomon
+ * FEC mode (see {@link RsEncoder}).
+ * <br>
+ * Elements are bytes (0 to 255). Addition and subtraction are XOR. Multiplication and division
+ * use precomputed logarithm and exponential tables of the generator 2 over the polynomial
+ * x^8 + x^4 + x^3 + x^2 + 1 (0x11D). Payloads are multiplied through the full 256 x 256
+ * multiplication table: every coefficient gets its own 256 byte row, so multiplying a byte is
+ * a single lookup without branches.
+ */
+public final class GF256 {
+
+	private static final int POLYNOMIAL = 0x11D;
+	private static final int[] EXP = new int[512]; // Doubled so the sum of two logarithms needs no modulo
+	private static final int[] LOG = new int[256];
+	private static final byte[][] MUL = new byte[256][256]; // MUL[c][x] = c * x
+
+	static {
+		int x = 1;
+		for (int i = 0; i < 255; i++) {
+			EXP[i] = x;
+			LOG[x] = i;
+			x <<= 1;
+			if (x >= 256)
+				x ^= POLYNOMIAL;
+		}
+		for (int i = 255; i < EXP.length; i++)
+			EXP[i] = EXP[i - 255];
+		for (int c = 1; c < 256; c++) {
+			for (int v = 1; v < 256; v++)
+				MUL[c][v] = (byte) EXP[LOG[c] + LOG[v]];
+		}
+	}
+
+	private GF256() {
+	}
+
+	/**
+	 * @return a * b
+	 */
+	public static int mul(int a, int b) {
+		return MUL[a & 0xFF][b & 0xFF] & 0xFF;
+	}
+
+	/**
+	 * @return a / b
+	 * @throws ArithmeticException if b is 0
+	 */
+	public static int div(int a, int b) {
+		if ((b & 0xFF) == 0)
+			throw new ArithmeticException("Division by zero in GF(2^8)");
+		if ((a & 0xFF) == 0)
+			return 0;
+		return EXP[LOG[a & 0xFF] + 255 - LOG[b & 0xFF]];
+	}
+
+	/**
+	 * @return 1 / a
+	 * @throws ArithmeticException if a is 0
+	 */
+	public static int inv(int a) {
+		return div(1, a);
+	}
+
+	/**
+	 * Multiplies every byte of a value by a coefficient, as the bytes of a header field
+	 * (length, timestamp) are protected like payload bytes.
+	 *
+	 * @return the value with every byte multiplied by c
+	 */
+	public static int mulBytes(int c, int value) {
+		byte[] row = MUL[c & 0xFF];
+		return (row[value >>> 24] & 0xFF) << 24 | (row[(value >>> 16) & 0xFF] & 0xFF) << 16
+				| (row[(value >>> 8) & 0xFF] & 0xFF) << 8 | (row[value & 0xFF] & 0xFF);
+	}
+
+	/**
+	 * Adds the bytes of src multiplied by a coefficient to dst (dst[dstOff + i] ^= c * src[srcOff + i]).
+	 * A coefficient of 1 is a plain XOR.
+	 *
+	 * @param dst    accumulator
+	 * @param dstOff offset of the first byte in the accumulator
+	 * @param src    source array
+	 * @param srcOff offset of the first byte in the source
+	 * @param length number of bytes
+	 * @param c      coefficient
+	 */
+	public static void mulAddInto(byte[] dst, int dstOff, byte[] src, int srcOff, int length, int c) {
+		c &= 0xFF;
+		if (c == 0)
+			return;
+		if (c == 1) {
+			XorKernel.xorInto(dst, dstOff, src, srcOff, length);
+			return;
+		}
+		byte[] row = MUL[c];
+		for (int i = 0; i < length; i++)
+			dst[dstOff + i] ^= row[src[srcOff + i] & 0xFF];
+	}
+
+	/**
+	 * Adds the remaining bytes of a buffer multiplied by a coefficient to dst. The buffer
+	 * position is not modified.
+	 *
+	 * @param dst    accumulator
+	 * @param dstOff offset of the first byte in the accumulator
+	 * @param src    source buffer
+	 * @param c      coefficient
+	 */
+	public static void mulAddInto(byte[] dst, int dstOff, ByteBuffer src, int c) {
+		if (src.hasArray()) {
+			mulAddInto(dst, dstOff, src.array(), src.arrayOffset() + src.position(), src.remaining(), c);
+			return;
+		}
+		c &= 0xFF;
+		if (c == 0)
+			return;
+		if (c == 1) {
+			XorKernel.xorInto(dst, dstOff, src);
+			return;
+		}
+		byte[] row = MUL[c];
+		int base = src.position();
+		int length = src.remaining();
+		for (int i = 0; i < length; i++)
+			dst[dstOff + i] ^= row[src.get(base + i) & 0xFF];
+	}
+
+	/**
+	 * Inverts a square matrix by Gauss-Jordan elimination.
+	 *
+	 * @param matrix matrix of field elements, left unchanged
+	 * @return the inverse matrix
+	 * @throws ArithmeticException if the matrix is singular
+	 */
+	public static int[][] invert(int[][] matrix) {
+		int n = matrix.length;
+		int[][] a = new int[n][];
+		int[][] inverse = new int[n][n];
+		for (int i = 0; i < n; i++) {
+			a[i] = matrix[i].clone();
+			inverse[i][i] = 1;
+		}
+		for (int col = 0; col < n; col++) {
+			int pivot = col;
+			while (pivot < n && a[pivot][col] == 0)
+				pivot++;
+			if (pivot == n)
+				throw new ArithmeticException("Singular matrix");
+			int[] swap = a[col];
+			a[col] = a[pivot];
+			a[pivot] = swap;
+			swap = inverse[col];
+			inverse[col] = inverse[pivot];
+			inverse[pivot] = swap;
+
+			int scale = inv(a[col][col]);
+			for (int j = 0; j < n; j++) {
+				a[col][j] = mul(a[col][j], scale);
+				inverse[col][j] = mul(inverse[col][j], scale);
+			}
+			for (int row = 0; row < n; row++) {
+				int factor = a[row][col];
+				if (row == col || factor == 0)
+					continue;
+				for (int j = 0; j < n; j++) {
+					a[row][j] ^= mul(factor, a[col][j]);
+					inverse[row][j] ^= mul(factor, inverse[col][j]);
+				}
+			}
+		}
+		return inverse;
+	}
+}
@@ -0,0 +1,272 @@
+package com.fortizva.packets;
+
+import java.nio.ByteBuffer;
+
+/**
+ * HeaderCodec class writes and reads the fixed fields of RTP and FEC headers with big-endian
+ * shifts, directly into and from a byte array or a ByteBuffer.
+ * <br>
+ * Nothing is allocated, so headers can be built and parsed for every packet without creating
+ * garbage. Layouts are the ones described in {@link RTPpacket} (RTP header) and
+ * {@link FECpacket} (FEC header and FEC level header). Values are truncated to the size of
+ * their field. ByteBuffer methods use absolute positions, the buffer position is not modified.
+ */
+public final class HeaderCodec {
+
+	// Offsets of the FEC header fields
+	static final int FEC_SN_BASE = 2;
+	static final int FEC_TS_RECOVERY = 4;
+	static final int FEC_LENGTH_RECOVERY = 8;
+	static final int FEC_PROTECTION_LENGTH = 10; // First field of the FEC level header
+	static final int FEC_MASK = 12;
+	static final int FEC_L_BIT = 0x40; // L bit in the first byte of the FEC header
+
+	private HeaderCodec() {
+	}
+
+	// --------------------------
+	// Big-endian primitives
+	// --------------------------
+
+	public static void putShort(byte[] b, int off, int v) {
+		b[off] = (byte) (v >>> 8);
+		b[off + 1] = (byte) v;
+	}
+
+	public static void putInt(byte[] b, int off, int v) {
+		b[off] = (byte) (v >>> 24);
+		b[off + 1] = (byte) (v >>> 16);
+		b[off + 2] = (byte) (v >>> 8);
+		b[off + 3] = (byte) v;
+	}
+
+	/**
+	 * @return the unsigned 16-bit value at the offset
+	 */
+	public static int getShort(byte[] b, int off) {
+		return (b[off] & 0xFF) << 8 | (b[off + 1] & 0xFF);
+	}
+
+	public static int getInt(byte[] b, int off) {
+		return (b[off] & 0xFF) << 24 | (b[off + 1] & 0xFF) << 16 | (b[off + 2] & 0xFF) << 8 | (b[off + 3] & 0xFF);
+	}
+
+	// --------------------------
+	// RTP header
+	// --------------------------
+
+	/**
+	 * @return the first byte of an RTP header (V, P, X and CC)
+	 */
+	public static byte rtpByte0(int padding, int extension, int cc) {
+		return (byte) (CommonValues.RTP_VERSION << 6 | (padding & 1) << 5 | (extension & 1) << 4 | (cc & 0x0F));
+	}
+
+	/**
+	 * @return the second byte of an RTP header (M and PT)
+	 */
+	public static byte rtpByte1(int marker, int payloadType) {
+		return (byte) ((marker & 1) << 7 | (payloadType & 0x7F));
+	}
+
+	/**
+	 * Writes an RTP header with the default P, X, CC and M values of {@link CommonValues}.
+	 *
+	 * @param b              destination array
+	 * @param off            offset of the header in the array
+	 * @param payloadType    payload type
+	 * @param sequenceNumber sequence number (only the lower 16 bits are written)
+	 * @param timestamp      timestamp
+	 * @param ssrc           synchronization source identifier
+	 */
+	public static void writeRtpHeader(byte[] b, int off, int payloadType, int sequenceNumber, int timestamp, int ssrc) {
+		writeRtpHeader(b, off, CommonValues.RTP_PADDING, CommonValues.RTP_EXTENSION, CommonValues.RTP_CC,
+				CommonValues.RTP_MARKER, payloadType, sequenceNumber, timestamp, ssrc);
+	}
+
+	/**
+	 * Writes an RTP header.
+	 *
+	 * @param b   destination array
+	 * @param off offset of the header in the array
+	 */
+	public static void writeRtpHeader(byte[] b, int off, int padding, int extension, int cc, int marker, int payloadType,
+			int sequenceNumber, int timestamp, int ssrc) {
+		b[off] = rtpByte0(padding, extension, cc);
+		b[off + 1] = rtpByte1(marker, payloadType);
+		putShort(b, off + 2, sequenceNumber);
+		putInt(b, off + 4, timestamp);
+		putInt(b, off + 8, ssrc);
+	}
+
+	/**
+	 * Writes an RTP header with the default P, X, CC and M values of {@link CommonValues}.
+	 *
+	 * @param buf destination buffer
+	 * @param off absolute position of the header in the buffer
+	 */
+	public static void writeRtpHeader(ByteBuffer buf, int off, int payloadType, int sequenceNumber, int timestamp, int ssrc) {
+		buf.put(off, rtpByte0(CommonValues.RTP_PADDING, CommonValues.RTP_EXTENSION, CommonValues.RTP_CC));
+		buf.put(off + 1, rtpByte1(CommonValues.RTP_MARKER, payloadType));
+		buf.putShort(off + 2, (short) sequenceNumber);
+		buf.putInt(off + 4, timestamp);
+		buf.putInt(off + 8, ssrc);
+	}
+
+	public static int rtpVersion(byte[] b, int off) {
+		return (b[off] & 0xFF) >>> 6;
+	}
+
+	public static int rtpPadding(byte[] b, int off) {
+		return (b[off] >>> 5) & 1;
+	}
+
+	public static int rtpExtension(byte[] b, int off) {
+		return (b[off] >>> 4) & 1;
+	}
+
+	public static int rtpCC(byte[] b, int off) {
+		return b[off] & 0x0F;
+	}
+
+	public static int rtpMarker(byte[] b, int off) {
+		return (b[off + 1] & 0xFF) >>> 7;
+	}
+
+	public static int rtpPayloadType(byte[] b, int off) {
+		return b[off + 1] & 0x7F;
+	}
+
+	public static int rtpSequenceNumber(byte[] b, int off) {
+		return getShort(b, off + 2);
+	}
+
+	public static int rtpTimestamp(byte[] b, int off) {
+		return getInt(b, off + 4);
+	}
+
+	public static int rtpSsrc(byte[] b, int off) {
+		return getInt(b, off + 8);
+	}
+
+	/**
+	 * @param b      array holding the packet
+	 * @param off    offset of the packet in the array
+	 * @param length size of the packet in bytes
+	 * @return size of the header including the CSRC list and the header extension, or -1 if
+	 *         it does not fit in the packet
+	 */
+	public static int rtpHeaderLength(byte[] b, int off, int length) {
+		if (length < CommonValues.RTP_HEADER_SIZE)
+			return -1;
+		int header = CommonValues.RTP_HEADER_SIZE + 4 * rtpCC(b, off);
+		if (rtpExtension(b, off) == 1) {
+			if (header + 4 > length)
+				return -1;
+			header += 4 + 4 * getShort(b, off + header + 2); // Extension header plus its words
+		}
+		return (header <= length) ? header : -1;
+	}
+
+	// --------------------------
+	// FEC header and FEC level header
+	// --------------------------
+
+	/**
+	 * Writes a FEC header (RFC 5109) with a 16-bit mask FEC level header after it.
+	 *
+	 * @param b                  destination array
+	 * @param off                offset of the FEC header in the array
+	 * @param flags              first byte of the header (E, L, P, X and CC recovery)
+	 * @param ptRecovery         M and PT recovery byte
+	 * @param baseSequenceNumber SN base
+	 * @param timestampRecovery  TS recovery
+	 * @param lengthRecovery     length recovery
+	 * @param protectionLength   protection length
+	 * @param mask               16-bit protection mask, the most significant bit is SN base
+	 */
+	public static void writeFecHeaders(byte[] b, int off, int flags, int ptRecovery, int baseSequenceNumber,
+			int timestampRecovery, int lengthRecovery, int protectionLength, int mask) {
+		b[off] = (byte) flags;
+		b[off + 1] = (byte) ptRecovery;
+		putShort(b, off + FEC_SN_BASE, baseSequenceNumber);
+		putInt(b, off + FEC_TS_RECOVERY, timestampRecovery);
+		putShort(b, off + FEC_LENGTH_RECOVERY, lengthRecovery);
+		putShort(b, off + FEC_PROTECTION_LENGTH, protectionLength);
+		putShort(b, off + FEC_MASK, mask);
+	}
+
+	/**
+	 * Writes a FEC header (RFC 5109) with the L bit set and a 48-bit mask FEC level header after it.
+	 *
+	 * @param b                  destination array
+	 * @param off                offset of the FEC header in the array
+	 * @param flags              first byte of the header (E, P, X and CC recovery, L is set)
+	 * @param ptRecovery         M and PT recovery byte
+	 * @param baseSequenceNumber SN base
+	 * @param timestampRecovery  TS recovery
+	 * @param lengthRecovery     length recovery
+	 * @param protectionLength   protection length
+	 * @param mask               48-bit protection mask, bit 47 is SN base
+	 */
+	public static void writeFecHeadersLongMask(byte[] b, int off, int flags, int ptRecovery, int baseSequenceNumber,
+			int timestampRecovery, int lengthRecovery, int protectionLength, long mask) {
+		writeFecHeaders(b, off, flags | FEC_L_BIT, ptRecovery, baseSequenceNumber, timestampRecovery, lengthRecovery,
+				protectionLength, (int) (mask >>> 32));
+		putInt(b, off + FEC_MASK + 2, (int) mask);
+	}
+
+	/**
+	 * @return true if the FEC header has the L bit set (48-bit mask)
+	 */
+	public static boolean fecLongMask(byte[] b, int off) {
+		return (b[off] & FEC_L_BIT) != 0;
+	}
+
+	/**
+	 * @param flags first byte of the FEC header
+	 * @return size of the FEC header and FEC level header, which depends on the L bit
+	 */
+	public static int fecHeadersSize(byte flags) {
+		return CommonValues.FEC_HEADER_SIZE
+				+ (((flags & FEC_L_BIT) != 0) ? CommonValues.FEC_LONG_LEVEL_HEADER_SIZE : CommonValues.FEC_LEVEL_HEADER_SIZE);
+	}
+
+	public static int fecPtRecovery(byte[] b, int off) {
+		return b[off + 1] & 0x7F;
+	}
+
+	public static int fecBaseSequenceNumber(byte[] b, int off) {
+		return getShort(b, off + FEC_SN_BASE);
+	}
+
+	public static int fecTimestampRecovery(byte[] b, int off) {
+		return getInt(b, off + FEC_TS_RECOVERY);
+	}
+
+	public static int fecLengthRecovery(byte[] b, int off) {
+		return getShort(b, off + FEC_LENGTH_RECOVERY);
+	}
+
+	public static int fecProtectionLength(byte[] b, int off) {
+		return getShort(b, off + FEC_PROTECTION_LENGTH);
+	}
+
+	/**
+	 * @return the first 16 bits of the protection mask of the FEC level header
+	 */
+	public static int fecMask(byte[] b, int off) {
+		return getShort(b, off + FEC_MASK);
+	}
+
+	/**
+	 * @return the protection mask as 48 bits (bit 47 is SN base), the last 32 bits being 0
+	 *         when the L bit is not set
+	 */
+	public static long fecMask48(byte[] b, int off) {
+		long mask = (long) getShort(b, off + FEC_MASK) << 32;
+		if (fecLongMask(b, off))
+			mask |= getInt(b, off + FEC_MASK + 2) & 0xFFFFFFFFL;
+		return mask;
+	}
+}
@@ -0,0 +1,143 @@
+package com.fortizva.packets;
+
+import java.nio.ByteBuffer;
+import java.util.function.Consumer;
+
+/**
+ * InterleavedFecEncoder class builds the FEC packets of D interleaved groups in parallel:
+ * packet i of the stream belongs to group i mod D, so every group protects L packets spaced
+ * by D. A burst of up to D consecutive lost packets then costs each group a single packet,
+ * which XOR parity recovers, at the cost of waiting (L - 1) * D + 1 packets for a group to
+ * close instead of L.
+ * <br>
+ * The packets are folded into one {@link FecEncoder} per group as they are sent. Groups close
+ * one after the other once the first L - 1 rows of the D x L block have been sent, and the
+ * next block starts when the last group closes. The same layout gives the column FEC of 2D
+ * parity, with D the row length and L the number of rows.
+ * <br>
+ * A group spans (L - 1) * D + 1 sequence numbers, which must fit in the 48 packets of the
+ * long mask (see {@link #maxGroupSize(int)}).
+ */
+public class InterleavedFecEncoder {
+
+	private final FecEncoder[] groups;
+	private final int groupSize;
+	private int position = 0; // Position of the next packet in the block of D x L packets
+	private FecEncoder finished; // Group whose FEC packet was returned last, reset on the next call
+
+	/**
+	 * @param depth     number of interleaved groups (D)
+	 * @param groupSize packets per group (L)
+	 * @throws IllegalArgumentException if depth or groupSize is below 1, or a group does not fit in the mask
+	 */
+	public InterleavedFecEncoder(int depth, int groupSize) {
+		if (depth < 1 || groupSize < 1 || groupSize > maxGroupSize(depth))
+			throw new IllegalArgumentException("Invalid interleaving: depth " + depth + ", group size " + groupSize);
+		this.groupSize = groupSize;
+		groups = new FecEncoder[depth];
+		for (int i = 0; i < depth; i++)
+			groups[i] = new FecEncoder();
+	}
+
+	/**
+	 * Largest group whose packets, spaced by depth, fit in the mask.
+	 *
+	 * @param depth number of interleaved groups
+	 * @return maximum packets per group
+	 */
+	public static int maxGroupSize(int depth) {
+		return (FecEncoder.MASK_BITS - 1) / Math.max(depth, 1) + 1;
+	}
+
+	/**
+	 * Largest depth for which groups of a given size fit in the mask.
+	 *
+	 * @param groupSize packets per group
+	 * @return maximum number of interleaved groups
+	 */
+	public static int maxDepth(int groupSize) {
+		return (groupSize <= 1) ? FecEncoder.MASK_BITS : (FecEncoder.MASK_BITS - 1) / (groupSize - 1);
+	}
+
+	/**
+	 * @return number of interleaved groups
+	 */
+	public int getDepth() {
+		return groups.length;
+	}
+
+	/**
+	 * @return packets per group
+	 */
+	public int getGroupSize() {
+		return groupSize;
+	}
+
+	/**
+	 * Folds a packet into its group.
+	 *
+	 * @param rtpPacket packet to protect
+	 * @return the FEC packet of the group if the packet closed it, null otherwise. The buffer is
+	 *         a read-only view valid until the next call.
+	 */
+	public ByteBuffer add(RTPpacket rtpPacket) {
+		resetFinished();
+		FecEncoder group = groups[position];
+		group.add(rtpPacket);
+		return next(group);
+	}
+
+	/**
+	 * Folds a packet whose payload is the remaining bytes of a buffer into its group. The
+	 * buffer position is not modified.
+	 *
+	 * @param payloadType    payload type of the packet
+	 * @param sequenceNumber sequence number of the packet
+	 * @param timestamp      timestamp of the packet
+	 * @param payload        payload of the packet
+	 * @return the FEC packet of the group if the packet closed it, null otherwise. The buffer is
+	 *         a read-only view valid until the next call.
+	 */
+	public ByteBuffer add(int payloadType, int sequenceNumber, int timestamp, ByteBuffer payload) {
+		resetFinished();
+		FecEncoder group = groups[position];
+		group.add(payloadType, sequenceNumber, timestamp, payload);
+		return next(group);
+	}
+
+	/**
+	 * Closes the groups that are not full yet (e.g. at the end of the stream) and starts a new
+	 * block.
+	 *
+	 * @param sender receives the FEC packet of every group holding packets, each buffer is
+	 *               valid during the call only
+	 */
+	public void flush(Consumer<ByteBuffer> sender) {
+		resetFinished();
+		for (FecEncoder group : groups) {
+			if (group.getCount() > 0) {
+				sender.accept(group.finish());
+				group.reset();
+			}
+		}
+		position = 0;
+	}
+
+	/**
+	 * Moves to the next group, and finishes the current one if it is full.
+	 */
+	private ByteBuffer next(FecEncoder group) {
+		position = (position + 1) % groups.length;
+		if (group.getCount() < groupSize)
+			return null;
+		finished = group;
+		return group.finish();
+	}
+
+	private void resetFinished() {
+		if (finished != null) {
+			finished.reset();
+			finished = null;
+		}
+	}
+}
@@ -1,5 +1,6 @@
 package com.fortizva.packets;
 
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 
 /**
@@ -18,11 +19,16 @@ import java.util.Arrays;
  * +-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+
  * |           synchronization source (SSRC) identifier            |
  * +-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+
- * |            contributing source (CSRC) identifiers             | // Not used
+ * |            contributing source (CSRC) identifiers             | // CC entries
+ * |                             ....                              |
+ * +-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+
+ * |      defined by profile       |           length              | // If X = 1
  * +-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+
+ * |                        header extension                       |
  * |                             ....                              |
  * +-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+
  *</pre>
+ * The header extension follows RFC 8285, see {@link RtpHeaderExtension}.
  */
 public class RTPpacket implements Comparable<RTPpacket> {
 
@@ -40,8 +46,13 @@ public class RTPpacket implements Comparable<RTPpacket> {
 	public int TimeStamp;
 	public int Ssrc;
 
+	// Sequence number extended with the wraparound count (see SequenceTracker), used to order packets
+	private long extendedSequenceNumber;
+
 	// Bitstream of the RTP header
 	public byte[] header;
+	// size of the RTP header, including the CSRC list and the header extension
+	public int header_size;
 
 	// size of the RTP payload
 	public int payload_size;
@@ -58,60 +69,67 @@ public class RTPpacket implements Comparable<RTPpacket> {
 	 * @param data_length The length of the payload data
 	 */
 	public RTPpacket(int PType, int Framenb, int Time, byte[] data, int data_length) {
+		this(PType, Framenb, Time, ByteBuffer.wrap(data, 0, data_length));
+	}
+
+	/**
+	 * Constructs an RTP packet with the specified parameters, taking the payload from
+	 * the remaining bytes of a buffer (e.g. a slice of a mapped file).
+	 * The buffer position is not modified.
+	 * 
+	 * @param PType      The payload type of the RTP packet
+	 * @param Framenb    The sequence number of the RTP packet
+	 * @param Time       The timestamp of the RTP packet
+	 * @param data       The payload data as a buffer
+	 */
+	public RTPpacket(int PType, int Framenb, int Time, ByteBuffer data) {
+		this(PType, Framenb, Time, null, null, data);
+	}
+
+	/**
+	 * Constructs an RTP packet with a CSRC list and a header extension, taking the payload
+	 * from the remaining bytes of a buffer. The buffer position is not modified.
+	 * 
+	 * @param PType      The payload type of the RTP packet
+	 * @param Framenb    The sequence number of the RTP packet
+	 * @param Time       The timestamp of the RTP packet
+	 * @param csrc       The contributing sources (up to 15), or null for none
+	 * @param extension  The header extension, or null for none
+	 * @param data       The payload data as a buffer
+	 */
+	public RTPpacket(int PType, int Framenb, int Time, int[] csrc, RtpHeaderExtension extension, ByteBuffer data) {
+		if (csrc != null && csrc.length > 15)
+			throw new IllegalArgumentException("At most 15 CSRC identifiers fit in an RTP header");
 		// fill by default header fields:
 		Version = CommonValues.RTP_VERSION;
 		Padding = CommonValues.RTP_PADDING;
-		Extension = CommonValues.RTP_EXTENSION;
-		CC = CommonValues.RTP_CC;
+		Extension = (extension != null) ? 1 : CommonValues.RTP_EXTENSION;
+		CC = (csrc != null) ? csrc.length : CommonValues.RTP_CC;
 		Marker = CommonValues.RTP_MARKER;
 		Ssrc = CommonValues.RTP_SSRC;
 
 		// fill changing header fields:
 		SequenceNumber = Framenb;
+		extendedSequenceNumber = Framenb;
 		TimeStamp = Time;
 		PayloadType = PType;
 
 		// build the header bistream:
 		// --------------------------
-		header = new byte[HEADER_SIZE];
+		header_size = HEADER_SIZE + 4 * CC + ((extension != null) ? extension.getSize() : 0);
+		header = new byte[header_size];
+		HeaderCodec.writeRtpHeader(header, 0, Padding, Extension, CC, Marker, PayloadType, SequenceNumber, TimeStamp, Ssrc);
+		for (int i = 0; i < CC; i++)
+			HeaderCodec.putInt(header, HEADER_SIZE + 4 * i, csrc[i]);
+		if (extension != null)
+			extension.write(header, HEADER_SIZE + 4 * CC);
 
-		// Fill the header array of byte with RTP header fields
-		// HEADER_SIZE = 12 -> 3bytes * 4
-
-		header [0] = BinaryField.binaryBuilder(header[0],
-             	new BinaryField(Version, 2),
-				new BinaryField(Padding, 1),
-				new BinaryField(Extension, 1),
-				new BinaryField(CC, 4));
-		header [1] = BinaryField.binaryBuilder(header[1],
-		new BinaryField(Marker, 1),
-		new BinaryField(PayloadType, 7));
-		
-		// Sequence number
-		byte[] sequencebytes = BinaryField.binarySplitter(SequenceNumber);
-		for(int i = 0; i < Math.min(sequencebytes.length, 2); i++) {
-			header[2+1-i] = sequencebytes[(sequencebytes.length-1) - i];
-		}
-		
-		// TimeStamp
-		byte[] timestampbytes = BinaryField.binarySplitter(TimeStamp);
-		for(int i = 0; i < Math.min(timestampbytes.length, 4); i++) {
-			header[4+3-i] = timestampbytes[(timestampbytes.length-1) - i];
-		}
-		
-		// SSRC
-		byte[] ssrcbytes = BinaryField.binarySplitter(Ssrc);
-		for(int i = 0; i < Math.min(ssrcbytes.length, 4); i++) {
-			header[8+3-i] = ssrcbytes[(ssrcbytes.length-1) - i];
-		}
 		// fill the payload bitstream:
-		payload_size = data_length;
-		payload = new byte[data_length];
+		payload_size = data.remaining();
+		payload = new byte[payload_size];
 
 		// fill payload array of byte from data (given in parameter of the constructor)
-		for(int i = 0; i < data_length; i++) {
-			payload[i] = data[i];
-		}
+		data.duplicate().get(payload);
 
 		//printheader();
 	}
@@ -123,36 +141,82 @@ public class RTPpacket implements Comparable<RTPpacket> {
 	 * @param packet_size  The size of the RTP packet in bytes
 	 */
 	public RTPpacket(byte[] packet, int packet_size) {
-		// Fill default fields:
-		Version = 2;
-		Padding = 0;
-		Extension = 0;
-		CC = 0;
-		Marker = 0;
-		Ssrc = 0;
-
 		// Check if total packet size is lower than the header size
-		if (packet_size >= HEADER_SIZE) {
-			// Get the header bitstream:
-			header = new byte[HEADER_SIZE];
-			for (int i = 0; i < HEADER_SIZE; i++)
-				header[i] = packet[i];
+		header_size = HeaderCodec.rtpHeaderLength(packet, 0, packet_size);
+		if (header_size >= HEADER_SIZE) {
+			// Get the header bitstream (with the CSRC list and the header extension):
+			header = Arrays.copyOf(packet, header_size);
 
 			// Get the payload bitstream:
-			payload_size = packet_size - HEADER_SIZE;
-			payload = new byte[payload_size];
-			for (int i = HEADER_SIZE; i < packet_size; i++)
-				payload[i - HEADER_SIZE] = packet[i];
-
-			// Interpret the changing fields of the header:
-			// unsigned_int() is used to ensure that byte values are treated as unsigned integers
-			PayloadType = header[1] & 127;
-			SequenceNumber = unsigned_int(header[3]) + 256 * unsigned_int(header[2]);
-			TimeStamp = unsigned_int(header[7]) + 256 * unsigned_int(header[6]) + 65536 * unsigned_int(header[5])
-					+ 16777216 * unsigned_int(header[4]);
+			payload_size = packet_size - header_size;
+			payload = Arrays.copyOfRange(packet, header_size, packet_size);
+
+			// Interpret the fields of the header:
+			Version = HeaderCodec.rtpVersion(header, 0);
+			Padding = HeaderCodec.rtpPadding(header, 0);
+			Extension = HeaderCodec.rtpExtension(header, 0);
+			CC = HeaderCodec.rtpCC(header, 0);
+			Marker = HeaderCodec.rtpMarker(header, 0);
+			PayloadType = HeaderCodec.rtpPayloadType(header, 0);
+			SequenceNumber = HeaderCodec.rtpSequenceNumber(header, 0);
+			extendedSequenceNumber = SequenceNumber;
+			TimeStamp = HeaderCodec.rtpTimestamp(header, 0);
+			Ssrc = HeaderCodec.rtpSsrc(header, 0);
+		} else {
+			Version = CommonValues.RTP_VERSION; // Too short to be parsed
+			header_size = 0;
 		}
 	}
 
+	/**
+	 * Constructs an RTP packet from a view of a received packet, copying its header and its
+	 * payload once so the packet outlives the receive buffer.
+	 * 
+	 * @param view The view of the RTP packet, which must be valid ({@link RtpView#isValid()})
+	 */
+	public RTPpacket(RtpView view) {
+		set(view);
+	}
+
+	/**
+	 * Constructs an empty RTP packet, to be filled with {@link #set(RtpView)}.
+	 * 
+	 * @param capacity The initial payload capacity in bytes
+	 */
+	protected RTPpacket(int capacity) {
+		header = new byte[HEADER_SIZE];
+		payload = new byte[capacity];
+	}
+
+	/**
+	 * Refills this packet from a view of a received packet, reusing its header and payload
+	 * arrays when they are big enough.
+	 * 
+	 * @param view The view of the RTP packet, which must be valid ({@link RtpView#isValid()})
+	 */
+	public void set(RtpView view) {
+		Version = view.getVersion();
+		Padding = view.getPadding();
+		Extension = view.getExtension();
+		CC = view.getCC();
+		Marker = view.getMarker();
+		PayloadType = view.getPayloadType();
+		SequenceNumber = view.getSequenceNumber();
+		extendedSequenceNumber = SequenceNumber;
+		TimeStamp = view.getTimeStamp();
+		Ssrc = view.getSsrc();
+
+		header_size = view.getHeaderLength();
+		if (header == null || header.length < header_size)
+			header = new byte[Math.max(header_size, HEADER_SIZE)];
+		view.getPacket().get(header, 0, header_size);
+		ByteBuffer data = view.getPayload();
+		payload_size = data.remaining();
+		if (payload == null || payload.length < payload_size)
+			payload = new byte[payload_size];
+		data.get(payload, 0, payload_size);
+	}
+
 	/**
 	 * Returns a copy of the RTP packet header as a byte array.
 	 * 
@@ -163,6 +227,15 @@ public class RTPpacket implements Comparable<RTPpacket> {
 		return Arrays.copyOf(payload, payload_size);
 	}
 
+	/**
+	 * Returns the payload of the RTP packet without copying it.
+	 * 
+	 * @return A read-only buffer over the payload
+	 */
+	public ByteBuffer getPayloadBuffer() {
+		return ByteBuffer.wrap(payload, 0, payload_size).asReadOnlyBuffer();
+	}
+
 	/**
 	 * Returns the size of the RTP packet payload.
 	 * 
@@ -179,7 +252,7 @@ public class RTPpacket implements Comparable<RTPpacket> {
 	 * @return The total length of the RTP packet
 	 */
 	public int getSize() {
-		return (payload_size + HEADER_SIZE);
+		return (payload_size + header_size);
 	}
 
 	/**
@@ -190,11 +263,43 @@ public class RTPpacket implements Comparable<RTPpacket> {
 	public byte[] getPacket() {
 		// Return a copy of the complete RTP packet directly
 		byte[] packet = new byte[getSize()];
-		System.arraycopy(header, 0, packet, 0, HEADER_SIZE);
-		System.arraycopy(payload, 0, packet, HEADER_SIZE, payload_size); // Copy payload after header
+		System.arraycopy(header, 0, packet, 0, header_size);
+		System.arraycopy(payload, 0, packet, header_size, payload_size); // Copy payload after header
 		return packet;
 	}
 	
+	/**
+	 * Returns the size of the RTP header, including the CSRC list and the header extension.
+	 * 
+	 * @return The size of the header in bytes
+	 */
+	public int getHeaderLength() {
+		return header_size;
+	}
+
+	/**
+	 * Returns a contributing source of the RTP packet.
+	 * 
+	 * @param i The index of the contributing source (0 to CC - 1)
+	 * @return the CSRC identifier
+	 */
+	public int getCsrc(int i) {
+		if (i < 0 || i >= CC)
+			throw new IndexOutOfBoundsException("CSRC " + i + " out of [0, " + CC + ")");
+		return HeaderCodec.getInt(header, HEADER_SIZE + 4 * i);
+	}
+
+	/**
+	 * Returns the header extension of the RTP packet, parsed from the header.
+	 * 
+	 * @return the header extension, or null if the packet has none
+	 */
+	public RtpHeaderExtension getHeaderExtension() {
+		if (Extension == 0)
+			return null;
+		return RtpHeaderExtension.parse(header, HEADER_SIZE + 4 * CC, header_size);
+	}
+
 	/**
 	 * Returns the timestamp of the RTP packet
 	 * 
@@ -213,6 +318,26 @@ public class RTPpacket implements Comparable<RTPpacket> {
 		return (SequenceNumber);
 	}
 
+	/**
+	 * Returns the extended sequence number of the RTP packet, which does not wrap around.
+	 * It equals the sequence number unless set by the receiver with {@link #setExtendedSequenceNumber(long)}.
+	 * 
+	 * @return the extended sequence number
+	 */
+	public long getExtendedSequenceNumber() {
+		return (extendedSequenceNumber);
+	}
+
+	/**
+	 * Sets the extended sequence number of the RTP packet (see {@link SequenceTracker}).
+	 * Must be set before the packet is added to an ordered structure.
+	 * 
+	 * @param extendedSequenceNumber the extended sequence number
+	 */
+	public void setExtendedSequenceNumber(long extendedSequenceNumber) {
+		this.extendedSequenceNumber = extendedSequenceNumber;
+	}
+
 	/**
 	 * Returns the payload type of the RTP packet
 	 * 
@@ -233,20 +358,8 @@ public class RTPpacket implements Comparable<RTPpacket> {
 	}
 
 	/**
-	 *  Return the unsigned value of 8-bit integer number
-	 *  This function ensures that the byte value is an unsigned integer
-	 *  @param nb the signed integer to convert
-	 *  @return the unsigned value of the integer
-	 */
-	static int unsigned_int(int nb) {
-		if (nb >= 0)
-			return (nb);
-		else
-			return (256 + nb);
-	}
-
-	/**
-	 * Compares this RTP packet with another RTP packet based on their sequence numbers.
+	 * Compares this RTP packet with another RTP packet based on their extended sequence numbers,
+	 * so the order is kept when the 16-bit sequence number wraps around.
 	 * 
 	 * @param p The RTP packet to compare with
 	 * @return A negative integer, zero, or a positive integer as this packet's sequence number
@@ -254,14 +367,8 @@ public class RTPpacket implements Comparable<RTPpacket> {
 	 */
 	@Override
 	public int compareTo(RTPpacket p) {
-		// Compare RTP packets based on their sequence number
-		if (this.SequenceNumber < p.SequenceNumber) {
-			return -1;
-		} else if (this.SequenceNumber > p.SequenceNumber) {
-			return 1;
-		} else {
-			return 0; // They are equal
-		}
+		// Compare RTP packets based on their extended sequence number
+		return Long.compare(this.extendedSequenceNumber, p.extendedSequenceNumber);
 	}
 
 }
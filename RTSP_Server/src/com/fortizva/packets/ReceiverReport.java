@@ -0,0 +1,148 @@
+package com.fortizva.packets;
+
+import java.nio.ByteBuffer;
+
+/**
+ * ReceiverReport class represents the reception statistics the client sends back to the
+ * server periodically, so the server can adapt the stream to the network conditions.
+ * <br>
+ * The layout follows an RTCP receiver report (RFC 3550) with a single report block, where
+ * the last field carries the rate at which the client received the media during the last
+ * report period instead of the sender report timestamps.
+ * <pre>
+ *  0                   1                   2                   3		(Bits)
+ *  0 1 2 3 4 5 6 7 8 9 0 1 2 3 4 5 6 7 8 9 0 1 2 3 4 5 6 7 8 9 0 1
+ * +-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+
+ * |V=2|P|   RC    |   PT=RR=201   |             length            |
+ * +-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+
+ * |                     SSRC of packet sender                     |
+ * +-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+
+ * | fraction lost |       cumulative number of packets lost       |
+ * +-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+
+ * |           extended highest sequence number received           |
+ * +-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+
+ * |                   interarrival jitter (ms)                    |
+ * +-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+
+ * |                    receive rate (kbit/s)                      |
+ * +-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+
+ * </pre>
+ */
+public class ReceiverReport {
+
+	// Size of the report in bytes
+	public static final int SIZE = 24;
+
+	private int fractionLost; // Packets lost during the last period, as a fraction of 256
+	private int cumulativeLost; // Packets lost since the beginning of the stream
+	private int highestSequenceNumber; // Highest sequence number received
+	private int jitter; // Interarrival jitter in ms
+	private int receiveRate; // Rate received during the last period in kbit/s
+
+	/**
+	 * Constructs a receiver report with the given statistics.
+	 *
+	 * @param fractionLost          Fraction of packets lost during the last period (0 to 1)
+	 * @param cumulativeLost        Packets lost since the beginning of the stream
+	 * @param highestSequenceNumber Highest sequence number received
+	 * @param jitter                Interarrival jitter in ms
+	 * @param receiveRate           Rate received during the last period in kbit/s
+	 */
+	public ReceiverReport(double fractionLost, int cumulativeLost, int highestSequenceNumber, int jitter, int receiveRate) {
+		this.fractionLost = (int) Math.round(Math.max(0, Math.min(1, fractionLost)) * 255);
+		this.cumulativeLost = Math.max(0, Math.min(cumulativeLost, 0xFFFFFF));
+		this.highestSequenceNumber = highestSequenceNumber;
+		this.jitter = Math.max(0, jitter);
+		this.receiveRate = Math.max(0, receiveRate);
+	}
+
+	/**
+	 * Constructs a receiver report from its bitstream.
+	 *
+	 * @param packet      The byte array containing the report
+	 * @param packet_size The size of the report in bytes
+	 * @throws IllegalArgumentException if the bytes are not a receiver report
+	 */
+	public ReceiverReport(byte[] packet, int packet_size) {
+		if (!isReceiverReport(packet, packet_size))
+			throw new IllegalArgumentException("Not a receiver report");
+		ByteBuffer bb = ByteBuffer.wrap(packet, 0, SIZE);
+		bb.position(8);
+		int lost = bb.getInt();
+		fractionLost = lost >>> 24;
+		cumulativeLost = lost & 0xFFFFFF;
+		highestSequenceNumber = bb.getInt();
+		jitter = bb.getInt();
+		receiveRate = bb.getInt();
+	}
+
+	/**
+	 * Checks the version, packet type and size of a received datagram.
+	 *
+	 * @param packet      The byte array containing the datagram
+	 * @param packet_size The size of the datagram in bytes
+	 * @return true if the datagram holds a receiver report
+	 */
+	public static boolean isReceiverReport(byte[] packet, int packet_size) {
+		return packet_size >= SIZE && (packet[0] & 0xC0) >>> 6 == CommonValues.RTP_VERSION
+				&& (packet[1] & 0xFF) == CommonValues.RR_PTYPE;
+	}
+
+	/**
+	 * Returns the bitstream of the report.
+	 *
+	 * @return A byte array containing the report
+	 */
+	public byte[] getPacket() {
+		ByteBuffer bb = ByteBuffer.allocate(SIZE);
+		bb.put((byte) (CommonValues.RTP_VERSION << 6)); // No padding, no report blocks counted
+		bb.put((byte) CommonValues.RR_PTYPE);
+		bb.putShort((short) (SIZE / 4 - 1)); // Length in 32 bits words minus one
+		bb.putInt(CommonValues.RTP_SSRC);
+		bb.putInt(fractionLost << 24 | cumulativeLost);
+		bb.putInt(highestSequenceNumber);
+		bb.putInt(jitter);
+		bb.putInt(receiveRate);
+		return bb.array();
+	}
+
+	/**
+	 * @return Fraction of packets lost during the last period (0 to 1)
+	 */
+	public double getFractionLost() {
+		return fractionLost / 255d;
+	}
+
+	/**
+	 * @return Packets lost since the beginning of the stream
+	 */
+	public int getCumulativeLost() {
+		return cumulativeLost;
+	}
+
+	/**
+	 * @return Highest sequence number received
+	 */
+	public int getHighestSequenceNumber() {
+		return highestSequenceNumber;
+	}
+
+	/**
+	 * @return Interarrival jitter in ms
+	 */
+	public int getJitter() {
+		return jitter;
+	}
+
+	/**
+	 * @return Rate received during the last period in kbit/s
+	 */
+	public int getReceiveRate() {
+		return receiveRate;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("loss %.1f%% (total %d), highest #%d, jitter %d ms, %d kbit/s", getFractionLost() * 100,
+				cumulativeLost, highestSequenceNumber, jitter, receiveRate);
+	}
+}
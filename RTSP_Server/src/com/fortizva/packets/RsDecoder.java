@@ -0,0 +1,178 @@
+package com.fortizva.packets;
+
+import java.util.ArrayList;
+import java.util.TreeMap;
+
+/**
+ * RsDecoder class recovers lost RTP packets from the Reed-Solomon repair packets of their
+ * group (see {@link RsEncoder}). A group missing e packets is recovered as soon as e of its
+ * repair packets have been received, whichever they are, so up to k losses per group can be
+ * recovered with k repair packets.
+ * <br>
+ * Decoding subtracts the received packets from the repair packets (which leaves the sum of
+ * the lost packets multiplied by their coefficients), inverts the e x e Cauchy submatrix of the
+ * lost packets and multiplies the result by the inverse. The matrix is small (at most the
+ * number of repair packets), so its inversion is negligible next to the payload operations.
+ * <br>
+ * The received packets are looked up in a {@link FecDecoder.PacketWindow}, as for XOR FEC.
+ * Repair packets must have their extended SN base set
+ * ({@link FECpacket#setExtendedBaseSequenceNumber(long)}). One decoder is used by one thread.
+ */
+public class RsDecoder {
+
+	/**
+	 * Repair packets received for a group.
+	 */
+	private static class Block {
+		final ArrayList<RsRepairPacket> repairs = new ArrayList<>();
+		boolean done = false; // Nothing left to recover, later repair packets are ignored
+	}
+
+	private final int maxPending;
+	private final TreeMap<Long, Block> blocks = new TreeMap<>(); // Groups by extended SN base
+	private long recoveredPackets = 0;
+
+	/**
+	 * @param maxPending maximum number of groups kept, the oldest ones are dropped first
+	 */
+	public RsDecoder(int maxPending) {
+		this.maxPending = Math.max(maxPending, 1);
+	}
+
+	/**
+	 * Adds a received repair packet and recovers the lost packets of its group if enough
+	 * repair packets have been received.
+	 *
+	 * @param repair the repair packet
+	 * @param window the received packets
+	 * @return number of packets recovered
+	 */
+	public int add(RsRepairPacket repair, FecDecoder.PacketWindow window) {
+		Block block = blocks.computeIfAbsent(repair.getExtendedBaseSequenceNumber(), base -> new Block());
+		if (blocks.size() > maxPending)
+			blocks.pollFirstEntry();
+		if (block.done)
+			return 0;
+		for (RsRepairPacket received : block.repairs) {
+			if (received.getRepairIndex() == repair.getRepairIndex())
+				return 0; // Duplicate
+		}
+		block.repairs.add(repair);
+
+		int recovered = decode(block, window);
+		recoveredPackets += recovered;
+		return recovered;
+	}
+
+	/**
+	 * Drops the groups starting before a sequence number, as their packets are no longer in
+	 * the window.
+	 *
+	 * @param extendedSequenceNumber oldest extended sequence number in the window
+	 */
+	public void discardBefore(long extendedSequenceNumber) {
+		blocks.headMap(extendedSequenceNumber).clear();
+	}
+
+	/**
+	 * @return number of groups waiting for more repair packets
+	 */
+	public int getPendingCount() {
+		int pending = 0;
+		for (Block block : blocks.values()) {
+			if (!block.done)
+				pending++;
+		}
+		return pending;
+	}
+
+	/**
+	 * @return number of packets recovered since the decoder was created
+	 */
+	public long getRecoveredPackets() {
+		return recoveredPackets;
+	}
+
+	/**
+	 * Recovers the lost packets of a group if it has as many repair packets as lost packets.
+	 *
+	 * @return number of packets recovered
+	 */
+	private int decode(Block block, FecDecoder.PacketWindow window) {
+		RsRepairPacket first = block.repairs.get(0);
+		long base = first.getExtendedBaseSequenceNumber();
+		long[] protectedSequenceNb = first.getExtendedProtectedSequenceNumbers();
+		RTPpacket[] found = new RTPpacket[protectedSequenceNb.length];
+		int[] lostOffsets = new int[protectedSequenceNb.length];
+		int lost = 0;
+		try {
+			for (int i = 0; i < protectedSequenceNb.length; i++) {
+				found[i] = window.acquire(protectedSequenceNb[i]);
+				if (found[i] == null)
+					lostOffsets[lost++] = (int) (protectedSequenceNb[i] - base);
+			}
+			if (lost == 0)
+				block.done = true;
+			if (lost == 0 || lost > block.repairs.size())
+				return 0;
+
+			// Syndromes: the repair packets minus the received packets
+			int length = first.getProtectionLength();
+			byte[][] payloads = new byte[lost][];
+			int[] pt = new int[lost];
+			int[] ts = new int[lost];
+			int[] len = new int[lost];
+			for (int r = 0; r < lost; r++) {
+				RsRepairPacket repair = block.repairs.get(r);
+				payloads[r] = new byte[length];
+				System.arraycopy(repair.packetBytes(), repair.getPayloadOffset(), payloads[r], 0,
+						Math.min(length, repair.getProtectionLength()));
+				pt[r] = repair.getCodedPtRecovery();
+				ts[r] = repair.getTimestampRecovery();
+				len[r] = repair.getLengthRecovery();
+				for (int i = 0; i < found.length; i++) {
+					RTPpacket packet = found[i];
+					if (packet == null)
+						continue;
+					int c = RsEncoder.coefficient(repair.getRepairIndex(), (int) (protectedSequenceNb[i] - base));
+					GF256.mulAddInto(payloads[r], 0, packet.payload, 0, Math.min(packet.getPayloadLength(), length), c);
+					pt[r] ^= GF256.mul(c, packet.getPayloadType());
+					ts[r] ^= GF256.mulBytes(c, packet.getTimeStamp());
+					len[r] ^= GF256.mulBytes(c, packet.getPayloadLength());
+				}
+			}
+
+			// Solve the lost packets with the inverse of their coefficients
+			int[][] coefficients = new int[lost][lost];
+			for (int r = 0; r < lost; r++) {
+				for (int l = 0; l < lost; l++)
+					coefficients[r][l] = RsEncoder.coefficient(block.repairs.get(r).getRepairIndex(), lostOffsets[l]);
+			}
+			int[][] inverse = GF256.invert(coefficients);
+			for (int l = 0; l < lost; l++) {
+				byte[] payload = new byte[length];
+				int recoveredPT = 0;
+				int recoveredTs = 0;
+				int recoveredLen = 0;
+				for (int r = 0; r < lost; r++) {
+					int c = inverse[l][r];
+					GF256.mulAddInto(payload, 0, payloads[r], 0, length, c);
+					recoveredPT ^= GF256.mul(c, pt[r]);
+					recoveredTs ^= GF256.mulBytes(c, ts[r]);
+					recoveredLen ^= GF256.mulBytes(c, len[r]);
+				}
+				RTPpacket recovered = new RTPpacket(recoveredPT & 0x7F, (first.getBaseSequenceNumber() + lostOffsets[l]) & 0xFFFF,
+						recoveredTs, payload, Math.min(recoveredLen, length));
+				recovered.setExtendedSequenceNumber(base + lostOffsets[l]);
+				window.recovered(recovered);
+			}
+			block.done = true;
+			return lost;
+		} finally {
+			for (RTPpacket packet : found) {
+				if (packet != null)
+					window.release(packet);
+			}
+		}
+	}
+}
@@ -0,0 +1,209 @@
+package com.fortizva.packets;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * RsEncoder class builds the k repair packets of a Reed-Solomon FEC group incrementally, as the
+ * RTP packets of the group are sent. Unlike XOR parity, which recovers a single lost packet per
+ * group, any k packets lost from a group of n packets can be recovered with its k repair
+ * packets (see {@link RsDecoder}).
+ * <br>
+ * The code is systematic: the media packets are sent unchanged, and repair packet i is the sum
+ * over GF(2^8) of the protected packets multiplied by the coefficients of row i of a Cauchy
+ * matrix, C[i][j] = 1 / (x_i + y_j) with x_i = 255 - i and y_j the offset of the packet in the
+ * mask. Every square submatrix of a Cauchy matrix can be inverted, so any combination of k
+ * losses can be solved. Each packet is folded with one multiplication table row per repair
+ * packet (see {@link GF256#mulAddInto(byte[], int, byte[], int, int, int)}) and is not retained.
+ * <br>
+ * Repair packets have the headers of an XOR FEC packet ({@link FECpacket}), with the PT, TS
+ * and length recovery fields coded like the payload (every byte multiplied by the coefficient
+ * of the packet) instead of XORed, followed by the Reed-Solomon header:
+ *
+ * <pre>
+ * +-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+
+ * | repair index  | repair count  |
+ * +-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+
+ * </pre>
+ *
+ * The PT recovery field takes the whole byte, as the coded value may use the M bit. Repair
+ * packets are sent with the {@link CommonValues#RS_FEC_PTYPE} payload type.
+ */
+public class RsEncoder {
+
+	// The Reed-Solomon header always follows the room for the FEC headers with the long mask
+	static final int HEADERS_SIZE = FecEncoder.HEADERS_SIZE + CommonValues.RS_HEADER_SIZE;
+	/** Maximum number of repair packets per group. */
+	public static final int MAX_REPAIR_PACKETS = 16;
+
+	private final byte[][] repairs; // Headers followed by the coded payload, one per repair packet
+	private final int[] ptRecovery;
+	private final int[] timestampRecovery;
+	private final int[] lengthRecovery;
+	private int count = 0; // Packets added to the current group
+	private int baseSequenceNumber;
+	private int protectionLength; // Largest payload of the group
+	private long mask; // 48-bit mask, the most significant bit is SN base
+
+	/**
+	 * Creates an encoder with room for 1500 byte payloads, grown as needed.
+	 *
+	 * @param repairCount number of repair packets per group (k)
+	 */
+	public RsEncoder(int repairCount) {
+		this(repairCount, 1500);
+	}
+
+	/**
+	 * @param repairCount number of repair packets per group (k)
+	 * @param capacity    initial payload capacity in bytes, grown as needed
+	 * @throws IllegalArgumentException if repairCount is not between 1 and {@link #MAX_REPAIR_PACKETS}
+	 */
+	public RsEncoder(int repairCount, int capacity) {
+		if (repairCount < 1 || repairCount > MAX_REPAIR_PACKETS)
+			throw new IllegalArgumentException("Repair packets must be between 1 and " + MAX_REPAIR_PACKETS + ": " + repairCount);
+		repairs = new byte[repairCount][HEADERS_SIZE + capacity];
+		ptRecovery = new int[repairCount];
+		timestampRecovery = new int[repairCount];
+		lengthRecovery = new int[repairCount];
+	}
+
+	/**
+	 * Coefficient of a protected packet in a repair packet.
+	 *
+	 * @param repairIndex index of the repair packet (row of the Cauchy matrix)
+	 * @param offset      offset of the packet from the SN base (column of the Cauchy matrix)
+	 * @return the coefficient, never 0
+	 */
+	static int coefficient(int repairIndex, int offset) {
+		return GF256.inv((255 - repairIndex) ^ offset);
+	}
+
+	/**
+	 * Folds a packet into the current group.
+	 *
+	 * @param rtpPacket packet to protect
+	 * @throws IllegalArgumentException if the packet does not fit in the mask of the group
+	 */
+	public void add(RTPpacket rtpPacket) {
+		add(rtpPacket.getPayloadType(), rtpPacket.getSequenceNumber(), rtpPacket.getTimeStamp(), rtpPacket.payload, 0,
+				rtpPacket.getPayloadLength());
+	}
+
+	/**
+	 * Folds a packet into the current group.
+	 *
+	 * @param payloadType    payload type of the packet
+	 * @param sequenceNumber sequence number of the packet
+	 * @param timestamp      timestamp of the packet
+	 * @param payload        array holding the payload
+	 * @param off            offset of the payload in the array
+	 * @param length         size of the payload in bytes
+	 * @throws IllegalArgumentException if the packet does not fit in the mask of the group
+	 */
+	public void add(int payloadType, int sequenceNumber, int timestamp, byte[] payload, int off, int length) {
+		int offset = fold(payloadType, sequenceNumber, timestamp, length);
+		for (int i = 0; i < repairs.length; i++)
+			GF256.mulAddInto(repairs[i], HEADERS_SIZE, payload, off, length, coefficient(i, offset));
+	}
+
+	/**
+	 * Folds a packet whose payload is the remaining bytes of a buffer (e.g. a slice of a mapped
+	 * file) into the current group. The buffer position is not modified.
+	 *
+	 * @param payloadType    payload type of the packet
+	 * @param sequenceNumber sequence number of the packet
+	 * @param timestamp      timestamp of the packet
+	 * @param payload        payload of the packet
+	 * @throws IllegalArgumentException if the packet does not fit in the mask of the group
+	 */
+	public void add(int payloadType, int sequenceNumber, int timestamp, ByteBuffer payload) {
+		int offset = fold(payloadType, sequenceNumber, timestamp, payload.remaining());
+		for (int i = 0; i < repairs.length; i++)
+			GF256.mulAddInto(repairs[i], HEADERS_SIZE, payload, coefficient(i, offset));
+	}
+
+	/**
+	 * Folds the header fields of a packet into the current group and makes room for its payload.
+	 *
+	 * @return offset of the packet from the SN base
+	 */
+	private int fold(int payloadType, int sequenceNumber, int timestamp, int length) {
+		if (count == 0)
+			baseSequenceNumber = sequenceNumber & 0xFFFF;
+		int offset = (sequenceNumber - baseSequenceNumber) & 0xFFFF; // Wraps around as the sequence number
+		if (offset >= FecEncoder.MASK_BITS || (mask & FecEncoder.bit(offset)) != 0)
+			throw new IllegalArgumentException("Sequence number " + sequenceNumber + " does not fit in the FEC group starting at "
+					+ baseSequenceNumber);
+		if (HEADERS_SIZE + length > repairs[0].length) {
+			int capacity = Math.max(length, 2 * (repairs[0].length - HEADERS_SIZE));
+			for (int i = 0; i < repairs.length; i++)
+				repairs[i] = Arrays.copyOf(repairs[i], HEADERS_SIZE + capacity);
+		}
+
+		mask |= FecEncoder.bit(offset);
+		for (int i = 0; i < repairs.length; i++) {
+			int c = coefficient(i, offset);
+			ptRecovery[i] ^= GF256.mul(c, payloadType & 0x7F);
+			timestampRecovery[i] ^= GF256.mulBytes(c, timestamp);
+			lengthRecovery[i] ^= GF256.mulBytes(c, length & 0xFFFF);
+		}
+		protectionLength = Math.max(protectionLength, length);
+		count++;
+		return offset;
+	}
+
+	/**
+	 * @return number of packets in the current group
+	 */
+	public int getCount() {
+		return count;
+	}
+
+	/**
+	 * @return number of repair packets per group
+	 */
+	public int getRepairCount() {
+		return repairs.length;
+	}
+
+	/**
+	 * @return size in bytes of each repair packet of the current group
+	 */
+	public int getFecPacketSize() {
+		return FecEncoder.headersSize(mask) + CommonValues.RS_HEADER_SIZE + protectionLength;
+	}
+
+	/**
+	 * Writes the headers of a repair packet of the current group.
+	 *
+	 * @param repairIndex index of the repair packet, from 0 to {@link #getRepairCount()} - 1
+	 * @return a read-only view of the repair packet (headers and coded payload), valid until
+	 *         the next call to {@link #add(RTPpacket)} or {@link #reset()}
+	 * @throws IllegalStateException if the group is empty
+	 */
+	public ByteBuffer finish(int repairIndex) {
+		if (count == 0)
+			throw new IllegalStateException("No packets in the FEC group");
+		byte[] packet = repairs[repairIndex];
+		int start = FecEncoder.writeHeaders(packet, ptRecovery[repairIndex], baseSequenceNumber, timestampRecovery[repairIndex],
+				lengthRecovery[repairIndex], protectionLength, mask);
+		packet[FecEncoder.HEADERS_SIZE] = (byte) repairIndex;
+		packet[FecEncoder.HEADERS_SIZE + 1] = (byte) repairs.length;
+		return ByteBuffer.wrap(packet, start, getFecPacketSize()).slice().asReadOnlyBuffer();
+	}
+
+	/**
+	 * Starts a new group, clearing the accumulators.
+	 */
+	public void reset() {
+		for (byte[] packet : repairs)
+			Arrays.fill(packet, 0, HEADERS_SIZE + protectionLength, (byte) 0);
+		Arrays.fill(ptRecovery, 0);
+		Arrays.fill(timestampRecovery, 0);
+		Arrays.fill(lengthRecovery, 0);
+		count = 0;
+		protectionLength = 0;
+		mask = 0;
+	}
+}
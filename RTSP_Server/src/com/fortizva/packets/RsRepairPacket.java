@@ -0,0 +1,100 @@
+package com.fortizva.packets;
+
+import java.util.Arrays;
+
+/**
+ * RsRepairPacket class parses a Reed-Solomon repair packet built by {@link RsEncoder}.
+ * <br>
+ * Repair packets share the FEC header and FEC level header of {@link FECpacket}, so the SN
+ * base, the mask and the protected sequence numbers are read the same way, and repair packets
+ * are queued and ordered with the XOR FEC packets. The recovery fields are coded over GF(2^8)
+ * instead of XORed, so the packets are recovered by {@link RsDecoder}, not by
+ * {@link #recoverPacket(RTPpacket[], int)}.
+ */
+public class RsRepairPacket extends FECpacket {
+
+	private final int repairIndex; // Row of the Cauchy matrix used to code this packet
+	private final int repairCount; // Repair packets sent for the group
+	private final int ptRecovery; // Whole byte, the coded value may use the M bit
+	private final int timestampRecovery;
+	private final int lengthRecovery;
+	private final int protectionLength;
+	private final int payloadOffset; // Offset of the coded payload, after the Reed-Solomon header
+
+	/**
+	 * Parses a repair packet from the payload of an RTP packet.
+	 *
+	 * @param repairPacketBytes repair packet (headers and coded payload)
+	 * @throws IllegalArgumentException if the packet is shorter than its headers and protection length
+	 */
+	public RsRepairPacket(byte[] repairPacketBytes) {
+		super(repairPacketBytes);
+		byte[] bytes = packetBytes();
+		int fecHeadersSize = HeaderCodec.fecHeadersSize(bytes[0]);
+		payloadOffset = fecHeadersSize + CommonValues.RS_HEADER_SIZE;
+		protectionLength = HeaderCodec.fecProtectionLength(bytes, 0);
+		if (protectionLength > bytes.length - payloadOffset)
+			throw new IllegalArgumentException("Repair payload shorter than its protection length");
+		ptRecovery = bytes[1] & 0xFF;
+		timestampRecovery = HeaderCodec.fecTimestampRecovery(bytes, 0);
+		lengthRecovery = HeaderCodec.fecLengthRecovery(bytes, 0);
+		repairIndex = bytes[fecHeadersSize] & 0xFF;
+		repairCount = bytes[fecHeadersSize + 1] & 0xFF;
+		if (repairIndex >= RsEncoder.MAX_REPAIR_PACKETS)
+			throw new IllegalArgumentException("Invalid repair index: " + repairIndex);
+	}
+
+	/**
+	 * Returns the index of this repair packet in its group.
+	 * @return Repair index, from 0 to the repair count - 1.
+	 */
+	public int getRepairIndex() {
+		return repairIndex;
+	}
+
+	/**
+	 * Returns the number of repair packets sent for the group.
+	 * @return Repair count.
+	 */
+	public int getRepairCount() {
+		return repairCount;
+	}
+
+	int getCodedPtRecovery() {
+		return ptRecovery;
+	}
+
+	int getTimestampRecovery() {
+		return timestampRecovery;
+	}
+
+	int getLengthRecovery() {
+		return lengthRecovery;
+	}
+
+	int getProtectionLength() {
+		return protectionLength;
+	}
+
+	int getPayloadOffset() {
+		return payloadOffset;
+	}
+
+	/**
+	 * Returns the coded payload, after the Reed-Solomon header.
+	 * @return Repair payload as a byte array.
+	 */
+	@Override
+	public byte[] getXorPayload() {
+		return Arrays.copyOfRange(packetBytes(), payloadOffset, payloadOffset + protectionLength);
+	}
+
+	/**
+	 * Repair packets are decoded with the other repair packets of their group by {@link RsDecoder}.
+	 * @throws UnsupportedOperationException always
+	 */
+	@Override
+	public RTPpacket recoverPacket(RTPpacket[] receivedPackets, int lostIndex) {
+		throw new UnsupportedOperationException("Reed-Solomon repair packets are recovered by RsDecoder");
+	}
+}
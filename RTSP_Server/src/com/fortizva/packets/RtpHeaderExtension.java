@@ -0,0 +1,220 @@
+package com.fortizva.packets;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * RtpHeaderExtension class represents the header extension of an RTP packet, holding a list
+ * of elements as defined in RFC 8285 (A General Mechanism for RTP Header Extensions).
+ * <pre>
+ * One-byte header (profile 0xBEDE, element IDs 1 to 14, 1 to 16 bytes of data):
+ *  0                   1                   2                   3
+ *  0 1 2 3 4 5 6 7 8 9 0 1 2 3 4 5 6 7 8 9 0 1 2 3 4 5 6 7 8 9 0 1
+ * +-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+
+ * |       0xBE    |    0xDE       |           length              |
+ * +-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+
+ * |  ID   |  L=n-1|     data (n bytes)    ...     |  padding (0)  |
+ * +-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+
+ *
+ * Two-byte header (profile 0x100 + 4 application bits, IDs 1 to 255, 0 to 255 bytes of data):
+ * +-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+
+ * |         0x100         |appbits|           length              |
+ * +-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+
+ * |      ID       |   n (length)  |  data (n bytes)   ...         |
+ * +-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+
+ * </pre>
+ * The length field counts the 32-bit words after the extension header. The two-byte form is
+ * only used when an element does not fit in the one-byte form.
+ */
+public class RtpHeaderExtension {
+
+	/** Profile of the one-byte header form. */
+	public static final int ONE_BYTE_PROFILE = 0xBEDE;
+	/** Profile of the two-byte header form, with its application bits set to 0. */
+	public static final int TWO_BYTE_PROFILE = 0x1000;
+
+	static final int HEADER_SIZE = 4; // Profile and length fields
+
+	private int count = 0;
+	private int[] ids = new int[4];
+	private byte[][] values = new byte[4][];
+
+	/**
+	 * Adds an element. An element with the same ID is replaced.
+	 *
+	 * @param id   element ID (1 to 255)
+	 * @param data element data (0 to 255 bytes)
+	 * @return this extension
+	 * @throws IllegalArgumentException if the ID or the data size is out of range
+	 */
+	public RtpHeaderExtension add(int id, byte[] data) {
+		if (id < 1 || id > 255 || data.length > 255)
+			throw new IllegalArgumentException("Invalid header extension element: ID " + id + ", " + data.length + " bytes");
+		for (int i = 0; i < count; i++) {
+			if (ids[i] == id) {
+				values[i] = data.clone();
+				return this;
+			}
+		}
+		if (count == ids.length) {
+			ids = Arrays.copyOf(ids, count * 2);
+			values = Arrays.copyOf(values, count * 2);
+		}
+		ids[count] = id;
+		values[count++] = data.clone();
+		return this;
+	}
+
+	/**
+	 * @param id element ID
+	 * @return a copy of the data of the element, or null if there is no such element
+	 */
+	public byte[] get(int id) {
+		for (int i = 0; i < count; i++) {
+			if (ids[i] == id)
+				return values[i].clone();
+		}
+		return null;
+	}
+
+	/**
+	 * @return number of elements
+	 */
+	public int getCount() {
+		return count;
+	}
+
+	/**
+	 * @return true if the elements need the two-byte header form
+	 */
+	public boolean isTwoByte() {
+		for (int i = 0; i < count; i++) {
+			if (ids[i] > 14 || values[i].length == 0 || values[i].length > 16)
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * @return size of the extension in bytes, including its header and padding
+	 */
+	public int getSize() {
+		int elementHeader = isTwoByte() ? 2 : 1;
+		int size = 0;
+		for (int i = 0; i < count; i++)
+			size += elementHeader + values[i].length;
+		return HEADER_SIZE + (size + 3) / 4 * 4;
+	}
+
+	/**
+	 * Writes the extension, padded to a multiple of 32 bits.
+	 *
+	 * @param b   destination array
+	 * @param off offset of the extension in the array
+	 * @return number of bytes written
+	 */
+	public int write(byte[] b, int off) {
+		boolean twoByte = isTwoByte();
+		int size = getSize();
+		HeaderCodec.putShort(b, off, twoByte ? TWO_BYTE_PROFILE : ONE_BYTE_PROFILE);
+		HeaderCodec.putShort(b, off + 2, (size - HEADER_SIZE) / 4);
+		int p = off + HEADER_SIZE;
+		for (int i = 0; i < count; i++) {
+			if (twoByte) {
+				b[p++] = (byte) ids[i];
+				b[p++] = (byte) values[i].length;
+			} else {
+				b[p++] = (byte) (ids[i] << 4 | (values[i].length - 1));
+			}
+			System.arraycopy(values[i], 0, b, p, values[i].length);
+			p += values[i].length;
+		}
+		Arrays.fill(b, p, off + size, (byte) 0);
+		return size;
+	}
+
+	/**
+	 * Parses the extension of an RTP packet. Extensions that do not follow RFC 8285 are
+	 * returned without elements.
+	 *
+	 * @param b   array holding the packet
+	 * @param off offset of the extension (after the CSRC list)
+	 * @param end offset of the end of the packet
+	 * @return the parsed extension
+	 * @throws IllegalArgumentException if the extension does not fit in the packet
+	 */
+	public static RtpHeaderExtension parse(byte[] b, int off, int end) {
+		if (off + HEADER_SIZE > end || off + HEADER_SIZE + 4 * HeaderCodec.getShort(b, off + 2) > end)
+			throw new IllegalArgumentException("Header extension does not fit in the packet");
+		RtpHeaderExtension ext = new RtpHeaderExtension();
+		int limit = off + HEADER_SIZE + 4 * HeaderCodec.getShort(b, off + 2);
+		int profile = HeaderCodec.getShort(b, off);
+		boolean twoByte = (profile & 0xFFF0) == TWO_BYTE_PROFILE;
+		if (profile != ONE_BYTE_PROFILE && !twoByte)
+			return ext;
+		for (int p = off + HEADER_SIZE; p < limit;) {
+			int id = twoByte ? b[p] & 0xFF : (b[p] & 0xFF) >>> 4;
+			if (id == 0) { // Padding
+				p++;
+				continue;
+			}
+			if (!twoByte && id == 15)
+				break; // Reserved, stop parsing
+			int headerSize = twoByte ? 2 : 1;
+			if (p + headerSize > limit)
+				break;
+			int length = twoByte ? b[p + 1] & 0xFF : (b[p] & 0x0F) + 1;
+			if (p + headerSize + length > limit)
+				throw new IllegalArgumentException("Header extension element " + id + " does not fit in the extension");
+			ext.add(id, Arrays.copyOfRange(b, p + headerSize, p + headerSize + length));
+			p += headerSize + length;
+		}
+		return ext;
+	}
+
+	/**
+	 * Finds an element in the extension of an RTP packet, without allocating.
+	 *
+	 * @param buf buffer holding the packet
+	 * @param off absolute offset of the extension (after the CSRC list)
+	 * @param end absolute offset of the end of the packet
+	 * @param id  element ID
+	 * @return absolute offset of the element data, or -1 if there is no such element
+	 */
+	public static int find(ByteBuffer buf, int off, int end, int id) {
+		if (off + HEADER_SIZE > end)
+			return -1;
+		int limit = Math.min(extensionEnd(buf, off), end);
+		int profile = buf.getShort(off) & 0xFFFF;
+		boolean twoByte = (profile & 0xFFF0) == TWO_BYTE_PROFILE;
+		if (profile != ONE_BYTE_PROFILE && !twoByte)
+			return -1;
+		for (int p = off + HEADER_SIZE; p < limit;) {
+			int first = buf.get(p) & 0xFF;
+			int elementId = twoByte ? first : first >>> 4;
+			if (elementId == 0) { // Padding
+				p++;
+				continue;
+			}
+			if (!twoByte && elementId == 15)
+				return -1;
+			int headerSize = twoByte ? 2 : 1;
+			if (p + headerSize > limit)
+				return -1;
+			int length = twoByte ? buf.get(p + 1) & 0xFF : (first & 0x0F) + 1;
+			if (p + headerSize + length > limit)
+				return -1;
+			if (elementId == id)
+				return p + headerSize;
+			p += headerSize + length;
+		}
+		return -1;
+	}
+
+	/**
+	 * @return absolute offset of the end of the extension starting at off
+	 */
+	static int extensionEnd(ByteBuffer buf, int off) {
+		return off + HEADER_SIZE + 4 * (buf.getShort(off + 2) & 0xFFFF);
+	}
+}
@@ -0,0 +1,59 @@
+package com.fortizva.packets;
+
+import java.nio.ByteBuffer;
+
+/**
+ * RtpHeaderTemplate class holds a pre-built RTP header for a payload type, so sending a
+ * packet only has to stamp its sequence number and timestamp. The synchronization source is
+ * {@link CommonValues#RTP_SSRC}, like every packet built by {@link RTPpacket}.
+ * <br>
+ * The header is sent along with the payload through a gathering write, without building an
+ * {@link RTPpacket} or copying the payload. Its layout is the one written by {@link RTPpacket}.
+ * If the header extension has an abs-send-time element, it is stamped along with the other
+ * fields, so the template must be stamped right before the write.
+ * A template is reused for every packet and must not be shared between threads.
+ */
+public class RtpHeaderTemplate {
+
+	private final ByteBuffer header;
+	private final int absSendTimeOffset; // Offset of the abs-send-time data, -1 if there is none
+
+	/**
+	 * @param payloadType payload type of the packets
+	 */
+	public RtpHeaderTemplate(int payloadType) {
+		this(payloadType, null);
+	}
+
+	/**
+	 * @param payloadType payload type of the packets
+	 * @param extension   header extension of the packets, or null for none
+	 */
+	public RtpHeaderTemplate(int payloadType, RtpHeaderExtension extension) {
+		byte[] bits = new byte[CommonValues.RTP_HEADER_SIZE + ((extension != null) ? extension.getSize() : 0)];
+		HeaderCodec.writeRtpHeader(bits, 0, CommonValues.RTP_PADDING, (extension != null) ? 1 : CommonValues.RTP_EXTENSION,
+				CommonValues.RTP_CC, CommonValues.RTP_MARKER, payloadType, 0, 0, CommonValues.RTP_SSRC);
+		if (extension != null)
+			extension.write(bits, CommonValues.RTP_HEADER_SIZE);
+		header = ByteBuffer.wrap(bits);
+		absSendTimeOffset = (extension != null)
+				? RtpHeaderExtension.find(header, CommonValues.RTP_HEADER_SIZE, bits.length, CommonValues.ABS_SEND_TIME_ID)
+				: -1;
+	}
+
+	/**
+	 * Stamps the fields of a packet into the header.
+	 *
+	 * @param sequenceNumber sequence number (only the lower 16 bits are sent)
+	 * @param timestamp      timestamp
+	 * @return the header, ready to be written (valid until the next call)
+	 */
+	public ByteBuffer stamp(int sequenceNumber, int timestamp) {
+		header.putShort(2, (short) sequenceNumber);
+		header.putInt(4, timestamp);
+		if (absSendTimeOffset >= 0)
+			AbsSendTime.put(header, absSendTimeOffset, AbsSendTime.fromNanos(System.nanoTime()));
+		header.clear();
+		return header;
+	}
+}
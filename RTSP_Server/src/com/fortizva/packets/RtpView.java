@@ -0,0 +1,157 @@
+package com.fortizva.packets;
+
+import java.nio.ByteBuffer;
+
+/**
+ * RtpView class reads the fields of an RTP packet directly from the buffer it was received
+ * in, without copying it.
+ * <br>
+ * A view is a flyweight: {@link #wrap(ByteBuffer)} points it at a new packet, and header
+ * fields are read at their fixed offsets (see {@link RTPpacket} for the layout) only when
+ * asked for. The payload is returned as a slice of the same buffer, so it is only valid
+ * until the buffer is reused. Use {@link RTPpacket#RTPpacket(RtpView)} to keep a copy.
+ */
+public class RtpView {
+
+	private ByteBuffer buf; // Buffer holding the packet
+	private int offset; // Position of the first byte of the packet in buf
+	private int length; // Size of the packet in bytes
+
+	/**
+	 * Creates an empty view, {@link #wrap(ByteBuffer)} must be called before reading it.
+	 */
+	public RtpView() {
+	}
+
+	/**
+	 * Creates a view over the remaining bytes of a buffer.
+	 *
+	 * @param packet buffer holding the packet
+	 */
+	public RtpView(ByteBuffer packet) {
+		wrap(packet);
+	}
+
+	/**
+	 * Points the view at the remaining bytes of a buffer. The buffer position and limit are
+	 * not modified, but they must not change while the view is in use.
+	 *
+	 * @param packet buffer holding the packet
+	 * @return this view
+	 */
+	public RtpView wrap(ByteBuffer packet) {
+		buf = packet;
+		offset = packet.position();
+		length = packet.remaining();
+		return this;
+	}
+
+	/**
+	 * @return true if the packet is long enough for its header and has the RTP version. As
+	 *         in {@link HeaderCodec#rtpHeaderLength}, an X bit without room for the extension
+	 *         header makes the packet invalid.
+	 */
+	public boolean isValid() {
+		if (length < CommonValues.RTP_HEADER_SIZE || getVersion() != CommonValues.RTP_VERSION)
+			return false;
+		if (getExtension() == 1 && CommonValues.RTP_HEADER_SIZE + 4 * getCC() + 4 > length)
+			return false; // No room for the extension header
+		return getHeaderLength() <= length;
+	}
+
+	public int getVersion() {
+		return (buf.get(offset) & 0xFF) >>> 6;
+	}
+
+	public int getPadding() {
+		return (buf.get(offset) >>> 5) & 1;
+	}
+
+	public int getExtension() {
+		return (buf.get(offset) >>> 4) & 1;
+	}
+
+	public int getCC() {
+		return buf.get(offset) & 0x0F;
+	}
+
+	public int getMarker() {
+		return (buf.get(offset + 1) & 0xFF) >>> 7;
+	}
+
+	public int getPayloadType() {
+		return buf.get(offset + 1) & 0x7F;
+	}
+
+	public int getSequenceNumber() {
+		return buf.getShort(offset + 2) & 0xFFFF;
+	}
+
+	public int getTimeStamp() {
+		return buf.getInt(offset + 4);
+	}
+
+	public int getSsrc() {
+		return buf.getInt(offset + 8);
+	}
+
+	/**
+	 * @param i index of the contributing source (0 to CC - 1)
+	 * @return the CSRC identifier
+	 */
+	public int getCsrc(int i) {
+		if (i < 0 || i >= getCC())
+			throw new IndexOutOfBoundsException("CSRC " + i + " out of [0, " + getCC() + ")");
+		return buf.getInt(offset + CommonValues.RTP_HEADER_SIZE + 4 * i);
+	}
+
+	/**
+	 * Finds an element of the header extension (RFC 8285) without allocating.
+	 *
+	 * @param id element ID
+	 * @return absolute position of the element data in the buffer, or -1 if there is no such element
+	 */
+	public int getExtensionElementOffset(int id) {
+		if (getExtension() == 0)
+			return -1;
+		return RtpHeaderExtension.find(buf, offset + CommonValues.RTP_HEADER_SIZE + 4 * getCC(), offset + length, id);
+	}
+
+	/**
+	 * @return size of the header in bytes, including the CSRC list and the header extension
+	 */
+	public int getHeaderLength() {
+		int header = CommonValues.RTP_HEADER_SIZE + 4 * getCC();
+		if (getExtension() == 1 && header + 4 <= length)
+			header += 4 + 4 * (buf.getShort(offset + header + 2) & 0xFFFF); // Extension header plus its words
+		return header;
+	}
+
+	/**
+	 * @return size of the packet in bytes
+	 */
+	public int getSize() {
+		return length;
+	}
+
+	/**
+	 * @return size of the payload in bytes
+	 */
+	public int getPayloadLength() {
+		return length - getHeaderLength();
+	}
+
+	/**
+	 * @return slice of the buffer holding the payload, valid until the buffer is reused
+	 */
+	public ByteBuffer getPayload() {
+		return buf.slice(offset + getHeaderLength(), getPayloadLength());
+	}
+
+	/**
+	 * @return slice of the buffer holding the whole packet, valid until the buffer is reused
+	 */
+	public ByteBuffer getPacket() {
+		return buf.slice(offset, length);
+	}
+}
@@ -0,0 +1,123 @@
+package com.fortizva.packets;
+
+/**
+ * SequenceTracker class extends the 16-bit sequence numbers of an RTP stream to a counter that
+ * does not wrap around, as described in RFC 3550 (appendix A.1): the extended sequence number
+ * is the number of times the sequence number wrapped (cycles) times 2^16 plus the sequence number.
+ * <br>
+ * Packets are ordered, matched and counted with their extended sequence number, so a stream
+ * keeps working after 65536 packets. A packet is considered to follow the highest sequence
+ * number seen so far if it is less than {@link #MAX_DROPOUT} packets ahead of it, and to be
+ * reordered or duplicated if it is less than {@link #MAX_MISORDER} packets behind it. Any
+ * other jump is only accepted when the next packet confirms it (e.g. the sender restarted its
+ * sequence numbers), and the extended sequence number keeps growing after it.
+ * <br>
+ * One tracker is kept per stream and is only used by the thread receiving it.
+ */
+public class SequenceTracker {
+
+	/** Largest gap (lost packets) accepted between two packets. */
+	public static final int MAX_DROPOUT = 3000;
+	/** Largest distance accepted behind the highest sequence number (reordered packets). */
+	public static final int MAX_MISORDER = 100;
+
+	static final int SEQ_MOD = 1 << 16;
+	static final int SEQ_MASK = SEQ_MOD - 1;
+
+	private boolean initialized = false;
+	private int maxSeq; // Highest sequence number seen
+	private long cycles; // Count of sequence number wraps, times 2^16
+	private int badSeq = -1; // Sequence number expected after an unconfirmed jump
+
+	/**
+	 * Extends the sequence number of a received packet and updates the highest sequence number.
+	 *
+	 * @param seq sequence number of the packet (only the lower 16 bits are used)
+	 * @return the extended sequence number of the packet, or -1 if the packet jumped too far
+	 *         from the stream and must be dropped until the jump is confirmed
+	 */
+	public long extend(int seq) {
+		seq &= SEQ_MASK;
+		if (!initialized) {
+			initialized = true;
+			maxSeq = seq;
+			cycles = 0;
+			badSeq = -1;
+			return seq;
+		}
+		int delta = (seq - maxSeq) & SEQ_MASK;
+		if (delta < MAX_DROPOUT) {
+			// In order, with a permissible gap
+			if (seq < maxSeq)
+				cycles += SEQ_MOD; // Sequence number wrapped
+			maxSeq = seq;
+			badSeq = -1;
+			return cycles + seq;
+		}
+		if (delta <= SEQ_MOD - MAX_MISORDER) {
+			// Very large jump, accepted only if the next packet follows it
+			if (seq != badSeq) {
+				badSeq = (seq + 1) & SEQ_MASK;
+				return -1;
+			}
+			if (seq < maxSeq)
+				cycles += SEQ_MOD; // Keep the extended sequence numbers growing
+			maxSeq = seq;
+			badSeq = -1;
+			return cycles + seq;
+		}
+		// Duplicate or reordered packet, possibly from the previous cycle
+		return nearest(seq, cycles + maxSeq);
+	}
+
+	/**
+	 * Extends a sequence number of the stream without updating the tracker, choosing the
+	 * extended value closest to the highest sequence number seen (e.g. the SN base of a FEC packet).
+	 *
+	 * @param seq sequence number (only the lower 16 bits are used)
+	 * @return the extended sequence number
+	 */
+	public long unwrap(int seq) {
+		if (!initialized)
+			return seq & SEQ_MASK;
+		return nearest(seq, cycles + maxSeq);
+	}
+
+	/**
+	 * @return the highest extended sequence number seen, or -1 if no packet was tracked
+	 */
+	public long getHighest() {
+		return initialized ? cycles + maxSeq : -1;
+	}
+
+	/**
+	 * @return number of times the sequence number wrapped around
+	 */
+	public long getCycles() {
+		return cycles / SEQ_MOD;
+	}
+
+	/**
+	 * Forgets the stream, the next packet starts a new one.
+	 */
+	public void reset() {
+		initialized = false;
+		maxSeq = 0;
+		cycles = 0;
+		badSeq = -1;
+	}
+
+	/**
+	 * @param seq       sequence number (only the lower 16 bits are used)
+	 * @param reference extended sequence number
+	 * @return the extended sequence number of seq closest to the reference (never negative)
+	 */
+	public static long nearest(int seq, long reference) {
+		long extended = (reference & ~(long) SEQ_MASK) | (seq & SEQ_MASK);
+		if (extended - reference > SEQ_MOD / 2)
+			extended -= SEQ_MOD;
+		else if (reference - extended > SEQ_MOD / 2)
+			extended += SEQ_MOD;
+		return (extended < 0) ? extended + SEQ_MOD : extended;
+	}
+}
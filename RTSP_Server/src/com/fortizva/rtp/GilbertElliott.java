@@ -0,0 +1,75 @@
+package com.fortizva.rtp;
+
+import java.util.Random;
+
+/**
+ * GilbertElliott class simulates bursty packet loss with a two-state Markov chain, as seen on
+ * WiFi links where losses come in runs.
+ * <br>
+ * In the good state packets are lost with probability {@code lossGood} and in the bad state
+ * with probability {@code lossBad}. After each packet the chain moves from good to bad with
+ * probability {@code p} and from bad to good with probability {@code r}, so bad periods last
+ * 1 / r packets on average and the chain spends p / (p + r) of the time in the bad state.
+ */
+public class GilbertElliott {
+
+	private final double p; // Good to bad transition probability
+	private final double r; // Bad to good transition probability
+	private final double lossGood;
+	private final double lossBad;
+	private final Random random;
+	private boolean bad = false;
+
+	/**
+	 * @param p        probability of moving from the good to the bad state
+	 * @param r        probability of moving from the bad to the good state
+	 * @param lossGood loss probability in the good state
+	 * @param lossBad  loss probability in the bad state
+	 * @param random   source of randomness
+	 */
+	public GilbertElliott(double p, double r, double lossGood, double lossBad, Random random) {
+		if (p < 0 || p > 1 || r <= 0 || r > 1)
+			throw new IllegalArgumentException("Invalid transition probabilities: p=" + p + ", r=" + r);
+		this.p = p;
+		this.r = r;
+		this.lossGood = lossGood;
+		this.lossBad = lossBad;
+		this.random = random;
+	}
+
+	/**
+	 * Builds the simple Gilbert model (no loss in the good state, every packet lost in the bad
+	 * state) with a given average loss and average burst length. Bursts of 1 packet or less
+	 * give independent losses.
+	 *
+	 * @param loss       average loss fraction (0 to 1)
+	 * @param meanBurst  average number of consecutive losses
+	 * @param random     source of randomness
+	 * @return the loss model
+	 */
+	public static GilbertElliott ofMeanLoss(double loss, double meanBurst, Random random) {
+		if (meanBurst <= 1 || loss >= 1)
+			return new GilbertElliott(0, 1, loss, loss, random); // Never leaves the good state
+		double r = 1 / meanBurst;
+		return new GilbertElliott(Math.min(loss * r / (1 - loss), 1), r, 0, 1, random);
+	}
+
+	/**
+	 * Draws the fate of the next packet.
+	 *
+	 * @return true if the packet is lost
+	 */
+	public boolean lose() {
+		boolean lost = random.nextDouble() < (bad ? lossBad : lossGood);
+		bad = bad ? random.nextDouble() >= r : random.nextDouble() < p;
+		return lost;
+	}
+
+	/**
+	 * @return average loss fraction of the model
+	 */
+	public double getMeanLoss() {
+		double badShare = p / (p + r);
+		return badShare * lossBad + (1 - badShare) * lossGood;
+	}
+}
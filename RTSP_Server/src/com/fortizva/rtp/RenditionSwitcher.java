@@ -0,0 +1,161 @@
+package com.fortizva.rtp;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.fortizva.media.AdaptiveReader;
+import com.fortizva.packets.ReceiverReport;
+
+/**
+ * RenditionSwitcher class chooses the rendition streamed to the client from its receiver
+ * reports.
+ * <br>
+ * The stream switches down as soon as a report shows congestion: a loss above
+ * {@link #LOSS_DOWN} or a jitter growing well over its usual value. It jumps to the highest
+ * rendition whose bitrate fits in the rate the client received, and at least one step down.
+ * <br>
+ * Switching up is slower to avoid oscillating: it needs {@link #GOOD_REPORTS_UP} consecutive
+ * reports with a loss below {@link #LOSS_UP} and no jitter growth, and at least the hold time
+ * since the last switch. Each time a switch up is followed by a switch down within the hold
+ * time, the hold time is doubled (up to {@link #MAX_HOLD_UP}).
+ */
+public class RenditionSwitcher {
+
+	static final double LOSS_DOWN = 0.05; // Loss fraction that makes the stream switch down
+	static final double LOSS_UP = 0.01; // Loss fraction below which a report counts as good
+	static final double JITTER_GROWTH = 2.0; // Jitter over this many times its baseline means queues are growing
+	static final int JITTER_MARGIN = 5; // Jitter in ms tolerated over the baseline
+	static final double RATE_MARGIN = 0.85; // Fraction of the received rate a lower rendition must fit in
+	static final int GOOD_REPORTS_UP = 5; // Consecutive good reports needed to switch up
+	static final long HOLD_UP = 10000; // Initial time in ms after a switch before switching up
+	static final long MAX_HOLD_UP = 80000; // Maximum time in ms after a switch before switching up
+	static final int MAX_EVENTS = 20; // Switch events kept for the stats
+
+	private final AdaptiveReader reader;
+	private double jitterBaseline = -1; // Average jitter of the good reports, -1 until the first one
+	private int goodReports = 0; // Consecutive good reports
+	private int ignoredReports = 0; // Reports to ignore, they still describe the previous rendition
+	private long lastSwitch; // Time of the last switch in ms
+	private boolean lastSwitchUp = false;
+	private long holdUp = HOLD_UP; // Current time in ms after a switch before switching up
+	private int upSwitches = 0;
+	private int downSwitches = 0;
+	private final ArrayList<String> events = new ArrayList<>();
+
+	/**
+	 * @param reader reader of the renditions of the session
+	 */
+	public RenditionSwitcher(AdaptiveReader reader) {
+		this.reader = reader;
+		lastSwitch = System.currentTimeMillis();
+	}
+
+	/**
+	 * Updates the rendition with a new receiver report.
+	 *
+	 * @param report report received from the client
+	 * @return true if the rendition was switched
+	 */
+	public synchronized boolean onReport(ReceiverReport report) {
+		if (ignoredReports > 0) {
+			ignoredReports--;
+			return false;
+		}
+		int current = reader.getRendition();
+		long now = System.currentTimeMillis();
+		double loss = report.getFractionLost();
+		boolean jitterGrowing = jitterBaseline >= 0
+				&& report.getJitter() > jitterBaseline * JITTER_GROWTH + JITTER_MARGIN;
+
+		if (loss > LOSS_DOWN || jitterGrowing) {
+			goodReports = 0;
+			if (current == reader.getRenditionCount() - 1)
+				return false; // Already at the lowest rendition
+			// Highest rendition that fits in the received rate, one step down at least
+			int target = current + 1;
+			if (loss > LOSS_DOWN && report.getReceiveRate() > 0)
+				while (target < reader.getRenditionCount() - 1
+						&& reader.getBitrate(target) > report.getReceiveRate() * RATE_MARGIN)
+					target++;
+			// A switch up that did not hold makes the next one wait longer
+			if (lastSwitchUp && now - lastSwitch < holdUp)
+				holdUp = Math.min(holdUp * 2, MAX_HOLD_UP);
+			switchTo(target, now, report, jitterGrowing ? "jitter growing" : "high loss");
+			return true;
+		}
+
+		// Good or acceptable report
+		if (loss < LOSS_UP) {
+			goodReports++;
+			jitterBaseline = (jitterBaseline < 0) ? report.getJitter() : 0.9 * jitterBaseline + 0.1 * report.getJitter();
+		} else {
+			goodReports = 0;
+		}
+		if (current > 0 && goodReports >= GOOD_REPORTS_UP && now - lastSwitch >= holdUp) {
+			switchTo(current - 1, now, report, "stable");
+			return true;
+		}
+		// A rendition that held for long enough resets the hold time
+		if (now - lastSwitch >= MAX_HOLD_UP)
+			holdUp = HOLD_UP;
+		return false;
+	}
+
+	private void switchTo(int target, long now, ReceiverReport report, String reason) {
+		int from = reader.getRendition();
+		reader.setRendition(target);
+		lastSwitchUp = target < from;
+		if (lastSwitchUp)
+			upSwitches++;
+		else
+			downSwitches++;
+		lastSwitch = now;
+		goodReports = 0;
+		ignoredReports = 1;
+		String event = String.format("r%d -> r%d at frame #%d (%s: %s)", from, target, reader.getFrameNumber(), reason, report);
+		events.add(event);
+		if (events.size() > MAX_EVENTS)
+			events.remove(0);
+	}
+
+	/**
+	 * @return number of switches to a higher quality rendition
+	 */
+	public synchronized int getUpSwitches() {
+		return upSwitches;
+	}
+
+	/**
+	 * @return number of switches to a lower quality rendition
+	 */
+	public synchronized int getDownSwitches() {
+		return downSwitches;
+	}
+
+	/**
+	 * @return the last switch events, oldest first
+	 */
+	public synchronized List<String> getEvents() {
+		return new ArrayList<>(events);
+	}
+
+	/**
+	 * @return the last switch event, null if the rendition was never switched
+	 */
+	public synchronized String getLastEvent() {
+		return events.isEmpty() ? null : events.get(events.size() - 1);
+	}
+
+	/**
+	 * @return summary of the media time streamed from each rendition
+	 */
+	public String getTimeSummary() {
+		StringBuilder sb = new StringBuilder();
+		for (int k = 0; k < reader.getRenditionCount(); k++) {
+			if (k > 0)
+				sb.append(", ");
+			sb.append(String.format("r%d (%d kbit/s): %.1f s", k, reader.getBitrate(k), reader.getTimeInRendition(k) / 1000d));
+		}
+		return sb.toString();
+	}
+}
@@ -14,10 +14,15 @@ import java.io.OutputStreamWriter;
 import java.net.DatagramPacket;
 import java.net.DatagramSocket;
 import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.PortUnreachableException;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
 import java.util.LinkedList;
 import java.util.Queue;
+import java.util.Random;
 import java.util.StringTokenizer;
 
 import javax.swing.BorderFactory;
@@ -31,22 +36,55 @@ import javax.swing.JSpinner;
 import javax.swing.SpinnerNumberModel;
 import javax.swing.SwingUtilities;
 
-import com.fortizva.media.Codec;
+import com.fortizva.media.AdaptiveReader;
+import com.fortizva.media.FrameTranscoder;
+import com.fortizva.media.HintCache;
+import com.fortizva.media.MappedCodec;
+import com.fortizva.media.LiveSource;
+import com.fortizva.media.MediaCache;
+import com.fortizva.media.MediaHeader;
+import com.fortizva.media.MediaReader;
+import com.fortizva.media.ReadAhead;
+import com.fortizva.packets.AbsSendTime;
 import com.fortizva.packets.CommonValues;
-import com.fortizva.packets.FECpacket;
+import com.fortizva.packets.FecEncoder;
+import com.fortizva.packets.InterleavedFecEncoder;
 import com.fortizva.packets.RTPpacket;
+import com.fortizva.packets.RsEncoder;
+import com.fortizva.packets.ReceiverReport;
+import com.fortizva.packets.RtpHeaderExtension;
+import com.fortizva.packets.RtpHeaderTemplate;
 
 /**
- * Usage: java Server &ltRTSP listening port&gt [-v] [-f=FEC group size] [-s=Simulated packet loss]
+ * Usage: java Server &ltRTSP listening port&gt [-v] [-f=FEC group size] [-d=FEC column rows] [-i=FEC interleaving depth] [-r=Reed-Solomon repair packets] [-s=Simulated packet loss] [-b=Loss burst length] [-c=Cache size] [-p=Read-ahead window] [-x=Transcode profiles]
  * <br>
  * Parameters:
  * <ul>
  * <li>&ltRTSP listening port&gt</li> <dd>Port number for RTSP connection (e.g., 1025)</dd>
  * <li>-v</li> <dd>Enable verbose mode for debugging output</dd>
- * <li>-f=groupSize</li> <dd>Set FEC group size (between 2 and 16, default is enabled with a value of 5)</dd>
+ * <li>-f=groupSize</li> <dd>Set FEC group size (between 2 and 48, default is enabled with a value of 5)</dd>
+ * <li>-d=rows</li> <dd>Add column FEC over this many rows of FEC groups (2D parity, default is disabled with a value of 0)</dd>
+ * <li>-i=depth</li> <dd>Interleave this many FEC groups, packet i belonging to group i mod depth, so bursts of up to depth packets are recovered (default is disabled with a value of 1)</dd>
+ * <li>-r=repairPackets</li> <dd>Send this many Reed-Solomon repair packets per FEC group instead of XOR parity (between 1 and 16, default is disabled with a value of 0)</dd>
  * <li>-s=packetLoss</li> <dd>Set simulated packet loss percentage (between 1 and 100, default is disabled with a value of 5)</dd>
+ * <li>-b=burstLength</li> <dd>Set the average length of the simulated loss bursts (Gilbert-Elliott model, default is 1: independent losses)</dd>
+ * <li>-c=cacheSize</li> <dd>Set the shared media cache size in MB (default is 256)</dd>
+ * <li>-p=readAhead</li> <dd>Set the read-ahead window in milliseconds of media (default is 500)</dd>
+ * <li>-x=quality:scale,...</li> <dd>Transcode lower renditions on the fly for files without pre-built ones (disabled by default)</dd>
  * </ul>
- * Disables FEC or simulated packet loss by setting their values to 0.
+ * Disables FEC, simulated packet loss, the cache or the read-ahead by setting their values to 0.
+ * <br>
+ * Files requested as "live:&ltpath&gt" are streamed while they are being written, &ltpath&gt can
+ * be a growing file, a named pipe or "-" for the standard input (see {@link LiveSource}).
+ * <br>
+ * When lower quality renditions of the requested file are found next to it (&ltname&gt.r1.&ltext&gt,
+ * &ltname&gt.r2.&ltext&gt...), the rendition is switched from the receiver reports of the client
+ * (see {@link RenditionSwitcher}). Files without them can get lower renditions transcoded on the fly
+ * with the -x option (see {@link FrameTranscoder}).
+ * <br>
+ * Stored files without renditions are sent from their hints: video packets are a header
+ * template stamped with the session fields plus the mapped frame, and FEC packets reuse the
+ * XOR payloads of the shared {@link HintCache}, both sent with gathering writes.
  */
 public class Server extends JFrame {
 
@@ -57,7 +95,14 @@ public class Server extends JFrame {
 	boolean verbose = false;
 	final static int DEFAULT_PORT = 1025; // Default RTSP port
 	final static int DEFAULT_FEC_GROUP_SIZE = 5; // Default FEC group size
+	final static int MAX_FEC_ROWS = 8; // Maximum rows of the 2D parity matrix (columns span at most 48 packets)
+	final static int MAX_FEC_DEPTH = 16; // Maximum interleaving depth (groups span at most 48 packets)
 	final static int DEFAULT_PACKET_LOSS = 5; // Default simulated packet loss percentage
+	final static int DEFAULT_CACHE_SIZE = 256; // Default shared media cache size in MB
+	int cacheSize = DEFAULT_CACHE_SIZE; // Shared media cache size in MB (0 disables it)
+	final static int DEFAULT_READ_AHEAD = 500; // Default read-ahead window in milliseconds
+	int readAheadWindow = DEFAULT_READ_AHEAD; // Read-ahead window in milliseconds (0 disables it)
+	FrameTranscoder.Profile[] transcodeProfiles = null; // Profiles of the renditions transcoded on the fly (null disables it)
 	
 	
 	// RTP variables:
@@ -65,6 +110,8 @@ public class Server extends JFrame {
 	DatagramSocket VideoSocket; // socket to send video frames
 	DatagramSocket AudioSocket; // socket to send audio frames
 	DatagramSocket FecSocket; // socket to send FEC packets
+	DatagramChannel VideoChannel; // channel of VideoSocket, for gathering writes
+	DatagramChannel FecChannel; // channel of FecSocket, for gathering writes
 	DatagramPacket vsenddp; // UDP packet containing the video frames
 	DatagramPacket asenddp; // UDP packet containing the audio frames
 	DatagramPacket fecSendDP; // UDP packet containing the FEC packets
@@ -80,34 +127,70 @@ public class Server extends JFrame {
 	private JLabel lblLastFrame;
 	private JLabel lblLastChunk;
 	private JLabel lblSimLost;
+	private JLabel lblCache;
+	private JLabel lblReadAhead;
+	private JLabel lblLatency;
+	private JLabel lblRendition;
+	private JLabel lblTranscode;
 	private JCheckBox chkFEC;
 	private JCheckBox chkSimLoss;
 	private JSpinner spnFECGroup;
+	private JSpinner spnFECRows;
+	private JSpinner spnFECDepth;
+	private JSpinner spnRSRepair;
 	private JSpinner spnPacketLoss;
+	private JSpinner spnBurstLength;
 
 	// Video & audio variables
 	// ----------------
-	Codec videoCodec;
-	Codec audioCodec;
+	MediaReader videoCodec;
+	MediaReader audioCodec;
+	LiveSource liveSource; // Source of live streams (null when streaming a file)
+	LiveSource.Subscription liveVideo; // Video subscription of the live source
+	final static int LIVE_QUEUE_SIZE = 50; // Records each live subscriber can fall behind before dropping
+	long liveLatencySum = 0; // Sum of the ingest-to-send latencies of live frames, in ms
+	int liveFramesSent = 0; // Number of live frames whose latency was measured
+	ReadAhead videoReadAhead; // Frames loaded ahead of the video sender (null if disabled)
+	ReadAhead audioReadAhead; // Chunks loaded ahead of the audio sender (null if disabled)
+	AdaptiveReader adaptiveVideo; // Video renditions of the file (null if it has none)
+	RenditionSwitcher switcher; // Chooses the rendition from the client reports (null if the file has no renditions)
+	Thread feedbackThread; // Thread to receive the client reports
 
 	// Video variables:
 	// ----------------
 	Thread videoThread; // Thread to handle video processing
 	int imagenb = 0; // image nb of the image currently transmitted
-	int videoSkips = 0; // Number of video skips (non-video frames)	
 	int VIDEO_LENGTH; // length of the video in frames
-	byte[] vBuf; // buffer used to store the images to send to the client
+
+	// Header extension of the media packets, its abs-send-time element is stamped right before sending
+	final RtpHeaderExtension sendTimeExtension = AbsSendTime.newExtension();
 
 	// Audio variables
 	Thread audioThread; // Thread to handle audio processing
 	int audionb = 0; // audio chunk nb of the audio currently transmitted
-	int audioSkips = 0; // Number of audio skips (non-audio frames)
-	byte[] aBuf; // buffer used to store the chunks to send to the client
 	
 	// FEC variables
 	// ----------------
 	int fecnb = 0; // FEC packet number
-	private LinkedList<RTPpacket> protectedPackets; // List to store RTP packets for FEC
+	private FecEncoder fecEncoder; // Folds the video packets of the current FEC group as they are sent
+	private InterleavedFecEncoder fecColumns; // Column FEC of the 2D parity matrix (null when disabled)
+	private InterleavedFecEncoder fecInterleaver; // Interleaved FEC groups (null when disabled)
+	private RsEncoder rsEncoder; // Reed-Solomon repair packets of the current FEC group (null until used)
+	private GilbertElliott lossModel; // Simulated video packet loss
+	private int lossModelLoss, lossModelBurst; // Settings the loss model was built with
+
+	// Hints (stored files without renditions only)
+	// ----------------
+	HintCache hintCache; // FEC payloads shared by every session (null if hints are not used)
+	MappedCodec hintReader; // Reader used to build the missing hints
+	RtpHeaderTemplate videoHeader = new RtpHeaderTemplate(CommonValues.MJPEG_TYPE, AbsSendTime.newExtension());
+	RtpHeaderTemplate fecHeader = new RtpHeaderTemplate(CommonValues.FEC_PTYPE);
+	RtpHeaderTemplate rsHeader = new RtpHeaderTemplate(CommonValues.RS_FEC_PTYPE);
+	ByteBuffer fecHeaders = ByteBuffer.allocate(HintCache.FEC_HEADERS_SIZE); // Stamped FEC headers of the current packet
+	int fecGroupStart = 0; // First frame of the current FEC group
+	int fecGroupCount = 0; // Frames in the current FEC group
+	int fecBaseSeq = 0; // Sequence number of the first packet of the current FEC group
+	int fecTsXor = 0; // XOR of the timestamps of the packets of the current FEC group
 
 	// Thread handling
 	private volatile boolean running = false; // Flag to control the running state of the threads
@@ -132,6 +215,7 @@ public class Server extends JFrame {
 	static BufferedReader RTSPBufferedReader;
 	static BufferedWriter RTSPBufferedWriter;
 	static String VideoFileName; // video file requested from the client
+	static int audioTrack = 0; // audio track requested from the client
 	static int RTSP_ID = 123456; // ID of the RTSP session
 	int RTSPSeqNb = 0; // Sequence number of RTSP messages within the session
 
@@ -146,9 +230,6 @@ public class Server extends JFrame {
 
 		// init Frame
 		super("Server");
-		// allocate memory for the sending buffers
-		vBuf = new byte[15000]; // buffer for video frames
-		aBuf = new byte[15000]; // buffer for audio frames
 
 		// Handler to close the main window
 		addWindowListener(new WindowAdapter() {
@@ -179,12 +260,30 @@ public class Server extends JFrame {
 		lblLastChunk = new JLabel("Last audio chunk: #0");
 		lblSimLost = new JLabel("Simulated lost packets: 0");
 		lblSimLost.setVisible(false);
+		lblCache = new JLabel("Cache hits: 0%");
+		lblReadAhead = new JLabel("Read-ahead: 0 frames (underruns: 0)");
+		lblLatency = new JLabel("Live latency: 0 ms");
+		lblLatency.setVisible(false);
+		lblRendition = new JLabel("Rendition: r0");
+		lblRendition.setVisible(false);
+		lblTranscode = new JLabel("Transcode: 0 frames");
+		lblTranscode.setVisible(false);
 
 		statsPanel.add(lblLastFrame);
 		statsPanel.add(Box.createVerticalStrut(5));
 		statsPanel.add(lblLastChunk);
 		statsPanel.add(Box.createVerticalStrut(5));
 		statsPanel.add(lblSimLost);
+		statsPanel.add(Box.createVerticalStrut(5));
+		statsPanel.add(lblCache);
+		statsPanel.add(Box.createVerticalStrut(5));
+		statsPanel.add(lblReadAhead);
+		statsPanel.add(Box.createVerticalStrut(5));
+		statsPanel.add(lblLatency);
+		statsPanel.add(Box.createVerticalStrut(5));
+		statsPanel.add(lblRendition);
+		statsPanel.add(Box.createVerticalStrut(5));
+		statsPanel.add(lblTranscode);
 
 		// Settings Panel (Right side)
 		settingsPanel = new JPanel();
@@ -203,15 +302,53 @@ public class Server extends JFrame {
 		JPanel FECPanel = new JPanel();
 		FECPanel.setLayout(new BoxLayout(FECPanel, BoxLayout.X_AXIS));
 		FECPanel.setAlignmentX(Component.LEFT_ALIGNMENT);
-		spnFECGroup = new JSpinner(new SpinnerNumberModel(5, 2, 16, 1));
-		JLabel lblFECGroup = new JLabel("FEC Group Size (max 16):");
+		spnFECGroup = new JSpinner(new SpinnerNumberModel(5, 2, CommonValues.MAX_FEC_GROUP_SIZE, 1));
+		JLabel lblFECGroup = new JLabel("FEC Group Size (max " + CommonValues.MAX_FEC_GROUP_SIZE + "):");
 		lblFECGroup.setFont(lblFECGroup.getFont().deriveFont(Font.ITALIC, 12f));
 		spnFECGroup.setEnabled(chkFEC.isSelected());
 		spnFECGroup.setMaximumSize(new Dimension(60, 20));
-		chkFEC.addActionListener(e -> spnFECGroup.setEnabled(chkFEC.isSelected()));
+
+		JPanel FECRowsPanel = new JPanel();
+		FECRowsPanel.setLayout(new BoxLayout(FECRowsPanel, BoxLayout.X_AXIS));
+		FECRowsPanel.setAlignmentX(Component.LEFT_ALIGNMENT);
+		spnFECRows = new JSpinner(new SpinnerNumberModel(0, 0, MAX_FEC_ROWS, 1));
+		JLabel lblFECRows = new JLabel("Column FEC rows (0 = off):");
+		lblFECRows.setFont(lblFECRows.getFont().deriveFont(Font.ITALIC, 12f));
+		spnFECRows.setEnabled(chkFEC.isSelected());
+		spnFECRows.setMaximumSize(new Dimension(60, 20));
+
+		JPanel FECDepthPanel = new JPanel();
+		FECDepthPanel.setLayout(new BoxLayout(FECDepthPanel, BoxLayout.X_AXIS));
+		FECDepthPanel.setAlignmentX(Component.LEFT_ALIGNMENT);
+		spnFECDepth = new JSpinner(new SpinnerNumberModel(1, 1, MAX_FEC_DEPTH, 1));
+		JLabel lblFECDepth = new JLabel("Interleaving depth (1 = off):");
+		lblFECDepth.setFont(lblFECDepth.getFont().deriveFont(Font.ITALIC, 12f));
+		spnFECDepth.setEnabled(chkFEC.isSelected());
+		spnFECDepth.setMaximumSize(new Dimension(60, 20));
+
+		JPanel RSPanel = new JPanel();
+		RSPanel.setLayout(new BoxLayout(RSPanel, BoxLayout.X_AXIS));
+		RSPanel.setAlignmentX(Component.LEFT_ALIGNMENT);
+		spnRSRepair = new JSpinner(new SpinnerNumberModel(0, 0, RsEncoder.MAX_REPAIR_PACKETS, 1));
+		JLabel lblRSRepair = new JLabel("Reed-Solomon repairs (0 = XOR):");
+		lblRSRepair.setFont(lblRSRepair.getFont().deriveFont(Font.ITALIC, 12f));
+		spnRSRepair.setEnabled(chkFEC.isSelected());
+		spnRSRepair.setMaximumSize(new Dimension(60, 20));
+		chkFEC.addActionListener(e -> {
+			spnFECGroup.setEnabled(chkFEC.isSelected());
+			spnFECRows.setEnabled(chkFEC.isSelected());
+			spnFECDepth.setEnabled(chkFEC.isSelected());
+			spnRSRepair.setEnabled(chkFEC.isSelected());
+		});
 
 		FECPanel.add(lblFECGroup);
 		FECPanel.add(spnFECGroup);
+		FECRowsPanel.add(lblFECRows);
+		FECRowsPanel.add(spnFECRows);
+		FECDepthPanel.add(lblFECDepth);
+		FECDepthPanel.add(spnFECDepth);
+		RSPanel.add(lblRSRepair);
+		RSPanel.add(spnRSRepair);
 
 		JPanel simLossPanel = new JPanel();
 		simLossPanel.setLayout(new BoxLayout(simLossPanel, BoxLayout.X_AXIS));
@@ -223,19 +360,35 @@ public class Server extends JFrame {
 		spnPacketLoss.setEnabled(chkSimLoss.isSelected());
 		spnPacketLoss.setMaximumSize(new Dimension(60, 20));
 
+		JPanel burstPanel = new JPanel();
+		burstPanel.setLayout(new BoxLayout(burstPanel, BoxLayout.X_AXIS));
+		burstPanel.setAlignmentX(Component.LEFT_ALIGNMENT);
+		spnBurstLength = new JSpinner(new SpinnerNumberModel(1, 1, 20, 1));
+		JLabel lblBurstLength = new JLabel("Mean burst length:");
+		lblBurstLength.setFont(lblBurstLength.getFont().deriveFont(Font.PLAIN, 12f));
+		spnBurstLength.setEnabled(chkSimLoss.isSelected());
+		spnBurstLength.setMaximumSize(new Dimension(60, 20));
+
 		chkSimLoss.addActionListener(e -> {
 		    spnPacketLoss.setEnabled(chkSimLoss.isSelected());
+		    spnBurstLength.setEnabled(chkSimLoss.isSelected());
 		    lblSimLost.setVisible(chkSimLoss.isSelected());
 		});
 
 		simLossPanel.add(lblPacketLoss);
 		simLossPanel.add(spnPacketLoss);
+		burstPanel.add(lblBurstLength);
+		burstPanel.add(spnBurstLength);
 
 		settingsPanel.add(chkFEC);
 		settingsPanel.add(FECPanel);
+		settingsPanel.add(FECRowsPanel);
+		settingsPanel.add(FECDepthPanel);
+		settingsPanel.add(RSPanel);
 		settingsPanel.add(Box.createVerticalStrut(10));
 		settingsPanel.add(chkSimLoss);
 		settingsPanel.add(simLossPanel);
+		settingsPanel.add(burstPanel);
 
 		// Add panels to the main panel
 		mainPanel.add(statsPanel, BorderLayout.CENTER);
@@ -249,7 +402,7 @@ public class Server extends JFrame {
 	/**
 	 * Main method to start the media server.
 	 * 
-	 * @param argv Command line arguments: &ltRTSP listening port&gt [-v for verbose mode] [-f=number for FEC group size] [-s=number for simulated packet loss]
+	 * @param argv Command line arguments: &ltRTSP listening port&gt [-v for verbose mode] [-f=number for FEC group size] [-d=number for FEC column rows] [-i=number for FEC interleaving depth] [-r=number for Reed-Solomon repair packets] [-s=number for simulated packet loss] [-b=number for loss burst length]
 	 */
 	public static void main(String argv[]) throws Exception {
 		// create a Server object
@@ -259,17 +412,28 @@ public class Server extends JFrame {
 		 * argv[0] = RTSP listening port
 		 * -v : verbose mode
 		 * -f=number : FEC group size (Enabled with a value of 5 by default)
+		 * -d=number : Rows of FEC groups protected by column FEC, 2D parity (0 by default, disabled)
+		 * -i=number : FEC interleaving depth, packet i belongs to FEC group i mod depth (1 by default, disabled)
+		 * -r=number : Reed-Solomon repair packets per FEC group, replacing XOR parity (0 by default, disabled)
 		 * -s=number : Simulated packet loss percentage (Disabled with value of 5 by default)
+		 * -b=number : Average length of the simulated loss bursts (1 by default, independent losses)
+		 * -c=number : Shared media cache size in MB (256 by default, 0 disables it)
+		 * -p=number : Read-ahead window in milliseconds (500 by default, 0 disables it)
+		 * -x=quality:scale,... : Profiles of the renditions transcoded on the fly (disabled by default)
 		 * 
 		 * Example: java Server 1025 -v -f=10 -s=10
 		 * 
-		 * Note: The FEC group size must be between 2 and 16.
+		 * Note: The FEC group size must be between 2 and 48 (groups beyond 16 packets use the long mask).
+		 * Note: Column FEC spans (rows - 1) * group size + 1 packets, which must fit in the 48 packets of the long mask.
+		 * Note: Interleaved groups span (group size - 1) * depth + 1 packets, the depth is reduced to fit in the long mask.
+		 * Note: Interleaving replaces column FEC, as both spread the groups over bursts.
+		 * Note: Reed-Solomon repair packets recover as many lost packets per group, column FEC is not sent with them.
 		 * Note: The simulated packet loss percentage must be between 1 and 100.
 		 * Note: Using 0 for the FEC Group Size or Simulated Packet Loss will disable the feature.
 		 */
 		
 		if (argv.length < 1) {
-			System.out.println("Usage: java Server [RTSP listening port] [-v for verbose mode] [-f=number for FEC group size] [-s=number for simulated packet loss]");
+			System.out.println("Usage: java Server [RTSP listening port] [-v for verbose mode] [-f=number for FEC group size] [-d=number for FEC column rows] [-i=number for FEC interleaving depth] [-r=number for Reed-Solomon repair packets] [-s=number for simulated packet loss] [-b=number for loss burst length] [-c=number for cache size in MB] [-p=number for read-ahead window in ms] [-x=quality:scale,... for transcoded renditions]");
 			System.exit(1);
 		}
 
@@ -306,14 +470,54 @@ public class Server extends JFrame {
 						if (fecGroupSize == 0) {
 							theServer.chkFEC.setSelected(false); // Disable FEC if group size is 0
 							theServer.spnFECGroup.setEnabled(false); // Disable FEC group size spinner
-						} else if(fecGroupSize < 2 || fecGroupSize > 16) {
-							System.out.println("FEC group size must be between 2 and 16. Using default value of "+ DEFAULT_FEC_GROUP_SIZE +".");
+						} else if(fecGroupSize < 2 || fecGroupSize > CommonValues.MAX_FEC_GROUP_SIZE) {
+							System.out.println("FEC group size must be between 2 and " + CommonValues.MAX_FEC_GROUP_SIZE + ". Using default value of "+ DEFAULT_FEC_GROUP_SIZE +".");
 						} else 
 							theServer.spnFECGroup.setValue(fecGroupSize);
 					} catch (NumberFormatException e) {
 						System.out.println("Invalid FEC group size. Using default value of "+ DEFAULT_FEC_GROUP_SIZE +".");
 						theServer.spnFECGroup.setValue(5);
 					}
+				} else if (arg.startsWith("-d=")) {
+					try {
+						int fecRows = Integer.parseInt(arg.substring(3));
+						if (fecRows == 1 || fecRows < 0 || fecRows > MAX_FEC_ROWS)
+							System.out.println("FEC column rows must be between 2 and " + MAX_FEC_ROWS + ". Disabling column FEC.");
+						else
+							theServer.spnFECRows.setValue(fecRows);
+					} catch (NumberFormatException e) {
+						System.out.println("Invalid FEC column rows. Disabling column FEC.");
+					}
+				} else if (arg.startsWith("-i=")) {
+					try {
+						int fecDepth = Integer.parseInt(arg.substring(3));
+						if (fecDepth < 1 || fecDepth > MAX_FEC_DEPTH)
+							System.out.println("FEC interleaving depth must be between 1 and " + MAX_FEC_DEPTH + ". Disabling interleaving.");
+						else
+							theServer.spnFECDepth.setValue(fecDepth);
+					} catch (NumberFormatException e) {
+						System.out.println("Invalid FEC interleaving depth. Disabling interleaving.");
+					}
+				} else if (arg.startsWith("-r=")) {
+					try {
+						int repairPackets = Integer.parseInt(arg.substring(3));
+						if (repairPackets < 0 || repairPackets > RsEncoder.MAX_REPAIR_PACKETS)
+							System.out.println("Reed-Solomon repair packets must be between 1 and " + RsEncoder.MAX_REPAIR_PACKETS + ". Using XOR parity.");
+						else
+							theServer.spnRSRepair.setValue(repairPackets);
+					} catch (NumberFormatException e) {
+						System.out.println("Invalid Reed-Solomon repair packets. Using XOR parity.");
+					}
+				} else if (arg.startsWith("-b=")) {
+					try {
+						int burstLength = Integer.parseInt(arg.substring(3));
+						if (burstLength < 1 || burstLength > 20)
+							System.out.println("Loss burst length must be between 1 and 20. Using independent losses.");
+						else
+							theServer.spnBurstLength.setValue(burstLength);
+					} catch (NumberFormatException e) {
+						System.out.println("Invalid loss burst length. Using independent losses.");
+					}
 				} else if (arg.startsWith("-s=")) {
 					
 					String packetLossStr = arg.substring(3);
@@ -337,6 +541,36 @@ public class Server extends JFrame {
 					} catch (NumberFormatException e) {
 						System.out.println("Invalid simulated packet loss. Disabling by default.");
 					}
+				} else if (arg.startsWith("-c=")) {
+					try {
+						int cacheSize = Integer.parseInt(arg.substring(3));
+						if (cacheSize < 0) {
+							System.out.println("Cache size must be 0 or greater. Using default value of " + DEFAULT_CACHE_SIZE + ".");
+						} else
+							theServer.cacheSize = cacheSize;
+					} catch (NumberFormatException e) {
+						System.out.println("Invalid cache size. Using default value of " + DEFAULT_CACHE_SIZE + ".");
+					}
+				} else if (arg.startsWith("-p=")) {
+					try {
+						int readAheadWindow = Integer.parseInt(arg.substring(3));
+						if (readAheadWindow < 0) {
+							System.out.println("Read-ahead window must be 0 or greater. Using default value of " + DEFAULT_READ_AHEAD + ".");
+						} else
+							theServer.readAheadWindow = readAheadWindow;
+					} catch (NumberFormatException e) {
+						System.out.println("Invalid read-ahead window. Using default value of " + DEFAULT_READ_AHEAD + ".");
+					}
+				} else if (arg.startsWith("-x=")) {
+					try {
+						String[] profiles = arg.substring(3).split(",");
+						theServer.transcodeProfiles = new FrameTranscoder.Profile[profiles.length];
+						for (int p = 0; p < profiles.length; p++)
+							theServer.transcodeProfiles[p] = FrameTranscoder.Profile.parse(profiles[p]);
+					} catch (IllegalArgumentException e) {
+						System.out.println("Invalid transcode profiles (" + e.getMessage() + "). Disabling transcoding.");
+						theServer.transcodeProfiles = null;
+					}
 				} else {
 					System.out.println("Unknown argument: \"" + arg+"\". Ignoring it.");
 				}
@@ -363,8 +597,8 @@ public class Server extends JFrame {
 		BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(theServer.RTSPsocket.getOutputStream()));
 		RTSPBufferedWriter = writer;
 
-		// Initialize buffer
-		theServer.protectedPackets = new LinkedList<RTPpacket>();
+		// Initialize FEC encoder
+		theServer.fecEncoder = new FecEncoder();
 		
 		// Wait for the SETUP message from the client
 		int request_type;
@@ -402,29 +636,104 @@ public class Server extends JFrame {
 				// Send response
 				theServer.send_RTSP_response();
 
-				// Initialize video
-				theServer.videoCodec = new Codec(VideoFileName);
+				if (VideoFileName.startsWith(LiveSource.PREFIX)) {
+					// Initialize live source, each sender gets its own subscription
+					theServer.liveSource = LiveSource.open(VideoFileName.substring(LiveSource.PREFIX.length()), LIVE_QUEUE_SIZE);
+					theServer.liveVideo = theServer.liveSource.subscribe();
+					LiveSource.Subscription liveAudio = theServer.liveSource.subscribe();
+					liveAudio.setAudioTrack(theServer.checkAudioTrack(theServer.liveSource.getHeader()));
+					theServer.videoCodec = theServer.liveVideo;
+					theServer.audioCodec = liveAudio;
+					theServer.VIDEO_LENGTH = Integer.MAX_VALUE; // Until the source ends
+					theServer.liveSource.start();
+					SwingUtilities.invokeLater(() -> theServer.lblLatency.setVisible(true));
+				} else {
+					// Initialize video
+					MappedCodec video = new MappedCodec(VideoFileName);
+					if (theServer.cacheSize > 0) {
+						MediaCache.getInstance().setBudget(theServer.cacheSize * 1024L * 1024L);
+						video.setCache(MediaCache.getInstance());
+					}
+					theServer.videoCodec = video;
+
+					// Lower quality renditions, if any, are switched from the client reports
+					MappedCodec[] renditions = AdaptiveReader.openRenditions(video);
+					if (renditions.length > 1) {
+						if (theServer.cacheSize > 0)
+							for (MappedCodec rendition : renditions)
+								rendition.setCache(MediaCache.getInstance());
+						theServer.adaptiveVideo = new AdaptiveReader(renditions);
+					} else if (theServer.transcodeProfiles != null) {
+						// No pre-built renditions, transcode them from the clip
+						theServer.adaptiveVideo = new AdaptiveReader(video, FrameTranscoder.getInstance(), theServer.transcodeProfiles);
+						SwingUtilities.invokeLater(() -> theServer.lblTranscode.setVisible(true));
+					}
+					if (theServer.adaptiveVideo != null) {
+						theServer.switcher = new RenditionSwitcher(theServer.adaptiveVideo);
+						theServer.videoCodec = theServer.adaptiveVideo;
+						StringBuilder bitrates = new StringBuilder();
+						for (int k = 0; k < theServer.adaptiveVideo.getRenditionCount(); k++)
+							bitrates.append(" r" + k + "=" + theServer.adaptiveVideo.getBitrate(k) + " kbit/s");
+						System.out.println("Adaptive bitrate: " + theServer.adaptiveVideo.getRenditionCount() + " renditions"
+								+ (theServer.adaptiveVideo.isTranscoding() ? " (transcoded)" : "") + bitrates);
+						SwingUtilities.invokeLater(() -> theServer.lblRendition.setVisible(true));
+					}
+
+					// Init video properties
+					theServer.VIDEO_LENGTH = video.getNumFrames();
+
+					// Init audio properties
+					// Use different codec for audio to read audio data separately
+					MappedCodec audio = new MappedCodec(VideoFileName);
+					if (theServer.cacheSize > 0)
+						audio.setCache(MediaCache.getInstance());
+					// Only the selected track is read, the others are skipped through the index
+					audio.setAudioTrack(theServer.checkAudioTrack(audio.getHeader()));
+					theServer.audioCodec = audio;
+
+					// Start loading frames and chunks ahead of the senders
+					if (theServer.readAheadWindow > 0) {
+						// Frames loaded ahead would delay rendition switches, read them when sent instead
+						if (theServer.adaptiveVideo == null)
+							theServer.videoReadAhead = new ReadAhead(video, true, theServer.readAheadWindow);
+						theServer.audioReadAhead = new ReadAhead(audio, false, theServer.readAheadWindow);
+					}
 
-				// Init video properties
-				theServer.VIDEO_LENGTH = theServer.videoCodec.getNumFrames();
-				//theServer.FRAME_PERIOD = (int) (1000 / theServer.videoCodec.getFPS());
+					// Every session sends the same payloads, only the headers change
+					if (theServer.adaptiveVideo == null) {
+						theServer.hintCache = HintCache.getInstance();
+						theServer.hintReader = new MappedCodec(VideoFileName);
+						if (theServer.cacheSize > 0)
+							theServer.hintReader.setCache(MediaCache.getInstance());
+					}
+				}
+				//theServer.FRAME_PERIOD = (int) (1000 / theServer.videoCodec.getHeader().getFPS());
 				theServer.videoThread = new Thread(theServer.new VideoSender());
 				if (theServer.verbose)
-					System.out.println("DEBUG: FPS: " + theServer.videoCodec.getFPS() + " PLAYBACK_FRAME_PERIOD: "
+					System.out.println("DEBUG: FPS: " + theServer.videoCodec.getHeader().getFPS() + " PLAYBACK_FRAME_PERIOD: "
 							+ CommonValues.PLAYBACK_FRAME_PERIOD + " STREAMING_FRAME_PERIOD: " + CommonValues.STREAMING_FRAME_PERIOD);
-
-				// Init audio properties
-				// Use different codec for audio to read audio data separately
-				theServer.audioCodec = new Codec(VideoFileName);
 				theServer.audioThread = new Thread(theServer.new AudioSender());
 				if (theServer.verbose)
 					System.out.println("DEBUG: AUDIO_FRAME_PERIOD: " + CommonValues.PLAYBACK_AUDIO_FRAME_PERIOD 
 							+ " STREAMING_AUDIO_FRAME_PERIOD: " + CommonValues.STREAMING_AUDIO_FRAME_PERIOD);
 
 				// init RTP sockets
-				theServer.VideoSocket = new DatagramSocket();
+				theServer.VideoChannel = DatagramChannel.open();
+				theServer.VideoSocket = theServer.VideoChannel.socket();
 				theServer.AudioSocket = new DatagramSocket();
-				theServer.FecSocket = new DatagramSocket();
+				theServer.FecChannel = DatagramChannel.open();
+				theServer.FecSocket = theServer.FecChannel.socket();
+				if (theServer.hintCache != null) {
+					// Gathering writes need connected channels
+					InetSocketAddress client = new InetSocketAddress(theServer.ClientIPAddr, theServer.RTP_dest_port);
+					theServer.VideoChannel.connect(client);
+					theServer.FecChannel.connect(client);
+				}
+
+				// Client reports are sent back to the video socket
+				theServer.feedbackThread = new Thread(theServer.new FeedbackListener());
+				theServer.feedbackThread.setDaemon(true);
+				theServer.feedbackThread.start();
 			}
 		}
 
@@ -482,7 +791,7 @@ public class Server extends JFrame {
 	class VideoSender implements Runnable {
 		public void run() {
 			// if the current image nb is less than the length of the video keep going
-			while (running && imagenb+videoSkips < VIDEO_LENGTH) {
+			while (running && imagenb < VIDEO_LENGTH) {
 				synchronized (pauseLock) {
 					while (paused && running) {
 						try {
@@ -498,57 +807,99 @@ public class Server extends JFrame {
 					// --- Send video frame ---
 					// update current imagenb
 					imagenb++; // Increment video frame number (Counted separately for GUI purposes)
-					videoSkips += (videoCodec.isNextFrameAudio()) ? 1 : 0; // Count adds if the next frame is not video
-					int video_length = videoCodec.getnextframe(vBuf);
-					RTPpacket video_packet = new RTPpacket(CommonValues.MJPEG_TYPE, (imagenb),
-							(int) (System.currentTimeMillis() % Integer.MAX_VALUE), vBuf, video_length);
-					byte[] video_bits = new byte[video_packet.getSize()];
-					video_bits = video_packet.getPacket();
-					vsenddp = new DatagramPacket(video_bits, video_bits.length, ClientIPAddr, RTP_dest_port);
+					// Slice of the mapped file, no copy
+					ByteBuffer frame = (videoReadAhead != null) ? videoReadAhead.next() : videoCodec.nextFrame();
+					if (frame == null) {
+						// End of file (or of the live source) reached before VIDEO_LENGTH
+						flushOpenFecGroups();
+						break;
+					}
+					int frameStart = frame.position(); // Gathering writes consume the frame
+					int timestamp = (int) (System.currentTimeMillis() % Integer.MAX_VALUE);
+					RTPpacket video_packet = null; // Not built when sending from hints
+					if (hintCache == null) {
+						video_packet = new RTPpacket(CommonValues.MJPEG_TYPE, (imagenb), timestamp, null, sendTimeExtension, frame);
+						byte[] video_bits = new byte[video_packet.getSize()];
+						video_bits = video_packet.getPacket();
+						vsenddp = new DatagramPacket(video_bits, video_bits.length, ClientIPAddr, RTP_dest_port);
+					}
 					
 					// DEBUG: Add random lost packets
-					 if(!chkSimLoss.isSelected() || (Math.random()*100d) > (int) spnPacketLoss.getModel().getValue()) {
-						 SwingUtilities.invokeLater(() -> lblLastFrame.setText("Last video frame: #" + imagenb));
-						 VideoSocket.send(vsenddp);
+					 if(!chkSimLoss.isSelected() || !simulatedLoss().lose()) {
+						 SwingUtilities.invokeLater(() -> {
+							 lblLastFrame.setText("Last video frame: #" + imagenb);
+							 MediaCache cache = MediaCache.getInstance();
+							 lblCache.setText(String.format("Cache hits: %.0f%% (evictions: %d)", cache.getHitRatio() * 100, cache.getEvictions()));
+							 if (videoReadAhead != null)
+								 lblReadAhead.setText("Read-ahead: " + videoReadAhead.getDepth() + " frames (underruns: "
+										 + (videoReadAhead.getUnderruns() + audioReadAhead.getUnderruns()) + ")");
+							 else if (audioReadAhead != null)
+								 lblReadAhead.setText("Read-ahead: audio only (underruns: " + audioReadAhead.getUnderruns() + ")");
+							 if (adaptiveVideo != null && adaptiveVideo.isTranscoding()) {
+								 FrameTranscoder transcoder = FrameTranscoder.getInstance();
+								 lblTranscode.setText(String.format("Transcode: %.1f ms avg, hits %.0f%% (late: %d)",
+										 transcoder.getAverageLatency(), transcoder.getHitRatio() * 100, transcoder.getLateFrames()));
+							 }
+						 });
+						 if (hintCache != null)
+							 sendGathered(VideoChannel, videoHeader.stamp(imagenb, timestamp), frame);
+						 else {
+							 AbsSendTime.stamp(vsenddp.getData(), vsenddp.getLength());
+							 VideoSocket.send(vsenddp);
+						 }
+						 if (liveVideo != null) {
+							 // Time since the whole record was read from the live source
+							 long latency = (System.nanoTime() - liveVideo.getIngestTime()) / 1000000;
+							 liveLatencySum += latency;
+							 liveFramesSent++;
+							 double average = (double) liveLatencySum / liveFramesSent;
+							 SwingUtilities.invokeLater(() -> lblLatency.setText(String.format("Live latency: %d ms (avg %.1f ms)",
+									 latency, average)));
+						 }
 					 } else {
 						 simLostPackets++;
 						 SwingUtilities.invokeLater(() -> lblSimLost.setText("Simulated lost packets: " + simLostPackets));
 					 	 //System.out.println("DEBUG: Video packet lost! Total lost packets: " + lost);
 					 }
 					// print the header bitstream
-					if (verbose)
+					if (verbose && video_packet != null)
 						video_packet.printHeader();
+					else if (verbose)
+						System.out.println("[RTP-Header] PayloadType: " + CommonValues.MJPEG_TYPE + ", SequenceNumber: " + imagenb
+								+ ", TimeStamp: " + timestamp + " (hint)");
 					
 					// FEC Packet sending
-					if(chkFEC.isSelected()) {
-						// Add the current video packet to the protected packets list
-						protectedPackets.add(video_packet);
-						// Send FEC packet when packets list is full or if the video length is reached
-						if (protectedPackets.size() >= (int) spnFECGroup.getModel().getValue() || imagenb+videoSkips == VIDEO_LENGTH && protectedPackets.size() > 0) {	
-							// Create FEC packet
-							FECpacket fecPacket = new FECpacket(protectedPackets.toArray(RTPpacket[]::new));
-							RTPpacket fecRtpPacket = new RTPpacket(CommonValues.FEC_PTYPE, fecnb,
-									(int) (System.currentTimeMillis() % Integer.MAX_VALUE), fecPacket.getFecPacket(),
-									fecPacket.getFecPacketSize());
-							
-							// Send FEC packet
-							byte[] fec_bits = new byte[fecRtpPacket.getSize()];
-							fec_bits = fecRtpPacket.getPacket();
-							fecSendDP = new DatagramPacket(fec_bits, fec_bits.length, ClientIPAddr, RTP_dest_port);
-							try {
-								FecSocket.send(fecSendDP);
-							} catch (IOException e) {
-								System.out.println("[VideoSender] Error sending FEC packet: " + e.getStackTrace());
-							} finally {
-								fecnb++; // Increment FEC packet number						
-								// Clear the protected packets list after sending FEC
-								protectedPackets.clear();
-							}
+					if (chkFEC.isSelected() && (int) spnRSRepair.getModel().getValue() > 0) {
+						addToRsGroup(imagenb, timestamp, frame.position(frameStart));
+					} else if (chkFEC.isSelected() && (int) spnFECDepth.getModel().getValue() > 1) {
+						addToFecInterleaver(imagenb, timestamp, frame.position(frameStart));
+					} else if (chkFEC.isSelected() && hintCache != null) {
+						if (fecGroupCount == 0) {
+							fecGroupStart = imagenb - 1; // Frames are read from 0
+							fecBaseSeq = imagenb;
+							fecTsXor = 0;
 						}
+						fecTsXor ^= timestamp;
+						fecGroupCount++;
+						// Send FEC packet when the group is full or if the video length is reached
+						if (fecGroupCount >= (int) spnFECGroup.getModel().getValue() || imagenb == VIDEO_LENGTH)
+							sendFecHint();
+						addToFecColumns(imagenb, timestamp, frame.position(frameStart));
+					} else if(chkFEC.isSelected()) {
+						// Fold the current video packet into the FEC group, the packet is not retained
+						fecEncoder.add(video_packet);
+						// Send FEC packet when the group is full or if the video length is reached
+						if (fecEncoder.getCount() >= (int) spnFECGroup.getModel().getValue() || imagenb == VIDEO_LENGTH) {	
+							sendFecPacket(fecEncoder.finish(), CommonValues.FEC_PTYPE);
+							// Start the next FEC group
+							fecEncoder.reset();
+						}
+						addToFecColumns(imagenb, timestamp, frame);
 					}
 					
-					// Sleep for the video frame period
-					Thread.sleep(CommonValues.STREAMING_FRAME_PERIOD);
+					// Sleep for the video frame period, live sources are paced by the encoder
+					if (liveSource == null)
+						Thread.sleep(CommonValues.STREAMING_FRAME_PERIOD);
 				} catch (Exception ex) {
 					if (verbose)
 						System.out.println("DEBUG: VIDEOactionPerformed()");
@@ -559,6 +910,195 @@ public class Server extends JFrame {
 		}
 	}
 
+	/**
+	 * Folds a video packet into the column FEC of the 2D parity matrix, if enabled. The matrix
+	 * has one column per packet of a FEC group (L) and a row per FEC group (D): each column
+	 * protects D packets spaced by L, so bursts of up to L lost packets can be recovered.
+	 * A column FEC packet is sent when its column is full, or at the end of the video.
+	 *
+	 * @param seq       sequence number of the packet
+	 * @param timestamp timestamp of the packet
+	 * @param payload   payload of the packet
+	 */
+	private void addToFecColumns(int seq, int timestamp, ByteBuffer payload) {
+		int columns = (int) spnFECGroup.getModel().getValue();
+		// Columns span (rows - 1) * columns + 1 packets, which must fit in the mask
+		int rows = Math.min((int) spnFECRows.getModel().getValue(), InterleavedFecEncoder.maxGroupSize(columns));
+		if (rows < 2) {
+			flushFec(fecColumns);
+			fecColumns = null;
+			return;
+		}
+		if (fecColumns == null || fecColumns.getDepth() != columns || fecColumns.getGroupSize() != rows) {
+			flushFec(fecColumns); // The matrix size changed, start a new matrix
+			fecColumns = new InterleavedFecEncoder(columns, rows);
+		}
+		ByteBuffer fec = fecColumns.add(CommonValues.MJPEG_TYPE, seq, timestamp, payload);
+		if (fec != null)
+			sendFecPacket(fec, CommonValues.FEC_PTYPE);
+		if (imagenb == VIDEO_LENGTH)
+			flushFec(fecColumns);
+	}
+
+	/**
+	 * Folds a video packet into the interleaved FEC groups: packet i belongs to group i mod D,
+	 * so each group protects L packets spaced by D and a burst of up to D lost packets costs
+	 * each group a single packet. A FEC packet is sent when its group is full, or at the end
+	 * of the video. Column FEC is not sent while interleaving.
+	 *
+	 * @param seq       sequence number of the packet
+	 * @param timestamp timestamp of the packet
+	 * @param payload   payload of the packet
+	 */
+	private void addToFecInterleaver(int seq, int timestamp, ByteBuffer payload) {
+		// The settings panel is disabled after SETUP, the groups are created once per session
+		if (fecInterleaver == null) {
+			int groupSize = (int) spnFECGroup.getModel().getValue();
+			// Groups span (groupSize - 1) * depth + 1 packets, which must fit in the mask
+			int depth = Math.min((int) spnFECDepth.getModel().getValue(), InterleavedFecEncoder.maxDepth(groupSize));
+			fecInterleaver = new InterleavedFecEncoder(depth, groupSize);
+		}
+		ByteBuffer fec = fecInterleaver.add(CommonValues.MJPEG_TYPE, seq, timestamp, payload);
+		if (fec != null)
+			sendFecPacket(fec, CommonValues.FEC_PTYPE);
+		if (imagenb == VIDEO_LENGTH)
+			flushFec(fecInterleaver);
+	}
+
+	/**
+	 * Sends the FEC packet of the current group of consecutive frames from the hint cache.
+	 * Only the headers are built, the XOR payload is shared by every session.
+	 *
+	 * @throws IOException if the hint can not be built
+	 */
+	private void sendFecHint() throws IOException {
+		ByteBuffer hint = hintCache.getFecHint(hintReader, fecGroupStart, fecGroupCount);
+		try {
+			sendGathered(FecChannel, fecHeader.stamp(fecnb, (int) (System.currentTimeMillis() % Integer.MAX_VALUE)),
+					HintCache.stampFecHeaders(hint, fecHeaders, fecBaseSeq, fecTsXor), HintCache.payloadOf(hint));
+		} catch (IOException e) {
+			System.out.println("[VideoSender] Error sending FEC packet: " + e);
+		} finally {
+			fecnb++; // Increment FEC packet number
+			fecGroupCount = 0;
+		}
+	}
+
+	/**
+	 * Sends the FEC packets of the interleaved groups or columns that are not full yet.
+	 *
+	 * @param encoder the groups to close (may be null)
+	 */
+	private void flushFec(InterleavedFecEncoder encoder) {
+		if (encoder != null)
+			encoder.flush(fec -> sendFecPacket(fec, CommonValues.FEC_PTYPE));
+	}
+
+	/**
+	 * Folds a video packet into the Reed-Solomon FEC group, and sends the repair packets of the
+	 * group when it is full or at the end of the video.
+	 *
+	 * @param seq       sequence number of the packet
+	 * @param timestamp timestamp of the packet
+	 * @param payload   payload of the packet
+	 */
+	private void addToRsGroup(int seq, int timestamp, ByteBuffer payload) {
+		int repairCount = (int) spnRSRepair.getModel().getValue();
+		if (rsEncoder == null || rsEncoder.getRepairCount() != repairCount)
+			rsEncoder = new RsEncoder(repairCount);
+		rsEncoder.add(CommonValues.MJPEG_TYPE, seq, timestamp, payload);
+		if (rsEncoder.getCount() >= (int) spnFECGroup.getModel().getValue() || imagenb == VIDEO_LENGTH)
+			sendRsGroup();
+	}
+
+	/**
+	 * Sends the repair packets of the current Reed-Solomon FEC group and starts the next one.
+	 */
+	private void sendRsGroup() {
+		for (int i = 0; i < rsEncoder.getRepairCount(); i++)
+			sendFecPacket(rsEncoder.finish(i), CommonValues.RS_FEC_PTYPE);
+		rsEncoder.reset();
+	}
+
+	/**
+	 * Sends the FEC packets of every group that is not full yet, when the video ends before
+	 * VIDEO_LENGTH (e.g. the end of a live source, whose length is unknown).
+	 *
+	 * @throws IOException if the FEC hint of the current group can not be built
+	 */
+	private void flushOpenFecGroups() throws IOException {
+		if (fecGroupCount > 0)
+			sendFecHint();
+		if (fecEncoder.getCount() > 0) {
+			sendFecPacket(fecEncoder.finish(), CommonValues.FEC_PTYPE);
+			fecEncoder.reset();
+		}
+		flushFec(fecColumns);
+		flushFec(fecInterleaver);
+		if (rsEncoder != null && rsEncoder.getCount() > 0)
+			sendRsGroup();
+	}
+
+	/**
+	 * Sends a FEC packet built by a {@link FecEncoder} or a repair packet built by an
+	 * {@link RsEncoder}, as the payload of an RTP packet.
+	 *
+	 * @param fec         FEC packet (headers and XOR or coded payload)
+	 * @param payloadType {@link CommonValues#FEC_PTYPE} or {@link CommonValues#RS_FEC_PTYPE}
+	 */
+	private void sendFecPacket(ByteBuffer fec, int payloadType) {
+		int timestamp = (int) (System.currentTimeMillis() % Integer.MAX_VALUE);
+		try {
+			if (hintCache != null) {
+				RtpHeaderTemplate header = (payloadType == CommonValues.RS_FEC_PTYPE) ? rsHeader : fecHeader;
+				sendGathered(FecChannel, header.stamp(fecnb, timestamp), fec);
+			} else {
+				RTPpacket fecRtpPacket = new RTPpacket(payloadType, fecnb, timestamp, fec);
+				byte[] fec_bits = fecRtpPacket.getPacket();
+				fecSendDP = new DatagramPacket(fec_bits, fec_bits.length, ClientIPAddr, RTP_dest_port);
+				FecSocket.send(fecSendDP);
+			}
+		} catch (IOException e) {
+			System.out.println("[VideoSender] Error sending FEC packet: " + e);
+		} finally {
+			fecnb++; // Increment FEC packet number
+		}
+	}
+
+	/**
+	 * Returns the simulated loss model, rebuilt when its settings change.
+	 *
+	 * @return the loss model of the current settings
+	 */
+	private GilbertElliott simulatedLoss() {
+		int loss = (int) spnPacketLoss.getModel().getValue();
+		int burst = (int) spnBurstLength.getModel().getValue();
+		if (lossModel == null || loss != lossModelLoss || burst != lossModelBurst) {
+			lossModel = GilbertElliott.ofMeanLoss(loss / 100d, burst, new Random());
+			lossModelLoss = loss;
+			lossModelBurst = burst;
+		}
+		return lossModel;
+	}
+
+	/**
+	 * Sends a single datagram gathered from several buffers through a connected channel.
+	 * Port unreachable errors caused by previous datagrams are ignored, as they are when
+	 * sending through an unconnected socket.
+	 *
+	 * @param channel connected channel
+	 * @param buffers parts of the datagram, in order
+	 * @throws IOException if the datagram can not be sent
+	 */
+	private void sendGathered(DatagramChannel channel, ByteBuffer... buffers) throws IOException {
+		try {
+			channel.write(buffers);
+		} catch (PortUnreachableException e) {
+			if (verbose)
+				System.out.println("DEBUG: Client port unreachable");
+		}
+	}
+
 	/**
 	 * Thread to handle audio sending.
 	 * Sends audio chunks to the client at a specified rate.
@@ -566,7 +1106,7 @@ public class Server extends JFrame {
 	class AudioSender implements Runnable {
 		public void run() {
 			// if the current audionb is less than the length of the video keep going
-			while (running && (audionb + audioSkips) < VIDEO_LENGTH) {
+			while (running && audionb < VIDEO_LENGTH) {
 				synchronized (pauseLock) {
 					while (paused && running) {
 						try {
@@ -582,16 +1122,19 @@ public class Server extends JFrame {
 					// --- Send audio chunk ---
 					// update current audionb
 					audionb++; // Increment audio chunk number (Counted separately for GUI purposes)
-					audioSkips += (audioCodec.isNextFrameAudio()) ? 0 : 1; // Count adds if the next frame is not audio
-					int audio_length = audioCodec.getnextchunk(aBuf);
+					// Slice of the mapped file, no copy
+					ByteBuffer chunk = (audioReadAhead != null) ? audioReadAhead.next() : audioCodec.nextChunk();
+					if (chunk == null)
+						break; // End of file reached before VIDEO_LENGTH
 					RTPpacket audio_packet = new RTPpacket(CommonValues.RAW_TYPE, audionb,
-							(int) (System.currentTimeMillis() % Integer.MAX_VALUE), aBuf, audio_length);
+							(int) (System.currentTimeMillis() % Integer.MAX_VALUE), null, sendTimeExtension, chunk);
 					byte[] audio_bits = new byte[audio_packet.getSize()];
 					audio_bits = audio_packet.getPacket();
 					asenddp = new DatagramPacket(audio_bits, audio_bits.length, ClientIPAddr, RTP_dest_port);
 
 					// DEBUG: Add random lost packets
 					// if((Math.random()*100d) < 95)
+					AbsSendTime.stamp(audio_bits, audio_bits.length);
 					AudioSocket.send(asenddp);
 
 					// print the header bitstream
@@ -600,7 +1143,8 @@ public class Server extends JFrame {
 					// update GUI
 					SwingUtilities.invokeLater(() -> lblLastChunk.setText("Last audio chunk: #" + audionb));
 					// Sleep for the audio frame period
-					Thread.sleep(CommonValues.STREAMING_AUDIO_FRAME_PERIOD);
+					if (liveSource == null)
+						Thread.sleep(CommonValues.STREAMING_AUDIO_FRAME_PERIOD);
 				} catch (Exception ex) {
 					if (verbose)
 						System.out.println("DEBUG: AUDIOactionPerformed()");
@@ -611,6 +1155,57 @@ public class Server extends JFrame {
 		}
 	}
 
+	/**
+	 * Thread to receive the reports sent back by the client.
+	 * Switches the rendition of the video when the file has several ones.
+	 */
+	class FeedbackListener implements Runnable {
+		public void run() {
+			byte[] buf = new byte[ReceiverReport.SIZE * 4];
+			DatagramPacket dp = new DatagramPacket(buf, buf.length);
+			while (!VideoSocket.isClosed()) {
+				try {
+					dp.setLength(buf.length);
+					VideoSocket.receive(dp); // Block until a report is received
+					if (!ReceiverReport.isReceiverReport(dp.getData(), dp.getLength()))
+						continue;
+					ReceiverReport report = new ReceiverReport(dp.getData(), dp.getLength());
+					if (verbose)
+						System.out.println("DEBUG: Receiver report: " + report);
+					if (switcher != null && switcher.onReport(report)) {
+						System.out.println("Rendition switched: " + switcher.getLastEvent());
+						int rendition = adaptiveVideo.getRendition();
+						String text = String.format("Rendition: r%d (switches: %d up, %d down)", rendition,
+								switcher.getUpSwitches(), switcher.getDownSwitches());
+						SwingUtilities.invokeLater(() -> lblRendition.setText(text));
+					}
+				} catch (PortUnreachableException e) {
+					// Reported for a previous datagram sent through the connected channel
+				} catch (IOException e) {
+					if (!VideoSocket.isClosed())
+						System.out.println("[FeedbackListener] Exception caught: " + e);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Checks the audio track requested by the client against the tracks of the stream.
+	 *
+	 * @param header container header of the stream
+	 * @return the requested track, or 0 if the stream does not have it
+	 */
+	private int checkAudioTrack(MediaHeader header) {
+		int nTracks = header.getTrackCount();
+		if (audioTrack < 0 || audioTrack >= nTracks) {
+			System.out.println("Audio track " + audioTrack + " not found (" + nTracks + " tracks). Using track 0.");
+			audioTrack = 0;
+		}
+		if (verbose)
+			System.out.println("DEBUG: Audio track: " + audioTrack + " of " + nTracks);
+		return audioTrack;
+	}
+
 	/**
 	 * Parse the RTSP request from the client.
 	 * 
@@ -640,6 +1235,17 @@ public class Server extends JFrame {
 			if (request_type == SETUP) {
 				// extract VideoFileName from RequestLine
 				VideoFileName = tokens.nextToken();
+				// extract the audio track, if any, appended to the file name
+				int trackIndex = VideoFileName.lastIndexOf(CommonValues.TRACK_ID);
+				if (trackIndex >= 0) {
+					try {
+						audioTrack = Integer.parseInt(VideoFileName.substring(trackIndex + CommonValues.TRACK_ID.length()));
+					} catch (NumberFormatException e) {
+						System.out.println("Invalid audio track. Using track 0.");
+						audioTrack = 0;
+					}
+					VideoFileName = VideoFileName.substring(0, trackIndex);
+				}
 			}
 
 			// parse the SeqNumLine and extract CSeq field
@@ -720,6 +1326,16 @@ public class Server extends JFrame {
 						System.out.println("DEBUG: AudioSender interrupted during join.");
 				}
 			}
+			if (switcher != null) {
+				System.out.println("Rendition switches: " + switcher.getUpSwitches() + " up, " + switcher.getDownSwitches()
+						+ " down. Time per rendition: " + switcher.getTimeSummary());
+				if (adaptiveVideo.isTranscoding()) {
+					FrameTranscoder transcoder = FrameTranscoder.getInstance();
+					System.out.println(String.format("Transcoded frames: %d with %d workers, %.1f ms avg, %.1f ms max, %d late, %d failed, cache hits %.0f%%",
+							transcoder.getTranscoded(), transcoder.getWorkers(), transcoder.getAverageLatency(), transcoder.getMaxLatency(),
+							transcoder.getLateFrames(), transcoder.getFailures(), transcoder.getHitRatio() * 100));
+				}
+			}
 			// Close sockets
 			if (RTSPsocket != null) {
 				RTSPsocket.close();
@@ -740,6 +1356,13 @@ public class Server extends JFrame {
 			if (RTSPBufferedWriter != null) {
 				RTSPBufferedWriter.close();
 			}
+			// Stop the read-ahead threads before closing the codecs they read from
+			if (videoReadAhead != null) {
+				videoReadAhead.close();
+			}
+			if (audioReadAhead != null) {
+				audioReadAhead.close();
+			}
 			// Close codecs
 			if (videoCodec != null) {
 				videoCodec.close();
@@ -747,6 +1370,12 @@ public class Server extends JFrame {
 			if (audioCodec != null) {
 				audioCodec.close();
 			}
+			if (hintReader != null) {
+				hintReader.close();
+			}
+			if (liveSource != null) {
+				liveSource.close();
+			}
 		} catch (IOException e) {
 			e.printStackTrace();
 		} finally {
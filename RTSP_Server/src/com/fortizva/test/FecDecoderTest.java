@@ -0,0 +1,285 @@
+package com.fortizva.test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import com.fortizva.packets.CommonValues;
+import com.fortizva.packets.FECpacket;
+import com.fortizva.packets.FecDecoder;
+import com.fortizva.packets.FecEncoder;
+import com.fortizva.packets.InterleavedFecEncoder;
+import com.fortizva.packets.RTPpacket;
+import com.fortizva.rtp.GilbertElliott;
+import com.fortizva.test.FecFixtures.MapWindow;
+
+class FecDecoderTest {
+
+    /**
+     * Builds the FEC packets of a stream in sending order: each one follows the packet that
+     * closes its group, row FEC over columns consecutive packets and, when rows is above 1,
+     * column FEC over rows packets spaced by columns.
+     *
+     * @return the FEC packets, with the index of the packet they follow in fecAfter
+     */
+    private static List<FECpacket> encode(RTPpacket[] packets, int columns, int rows, List<Integer> fecAfter) {
+        List<FECpacket> fec = new ArrayList<>();
+        FecEncoder row = new FecEncoder();
+        FecEncoder[] column = new FecEncoder[columns];
+        for (int c = 0; c < columns; c++)
+            column[c] = new FecEncoder();
+        for (int i = 0; i < packets.length; i++) {
+            row.add(packets[i]);
+            if (row.getCount() == columns) {
+                fec.add(toFec(row));
+                fecAfter.add(i);
+            }
+            if (rows > 1) {
+                FecEncoder col = column[i % columns];
+                col.add(packets[i]);
+                if (col.getCount() == rows) {
+                    fec.add(toFec(col));
+                    fecAfter.add(i);
+                }
+            }
+        }
+        return fec;
+    }
+
+    /**
+     * Builds the FEC packets of depth interleaved groups of groupSize packets, in sending order.
+     *
+     * @return the FEC packets, with the index of the packet they follow in fecAfter
+     */
+    private static List<FECpacket> interleave(RTPpacket[] packets, int depth, int groupSize, List<Integer> fecAfter) {
+        List<FECpacket> fec = new ArrayList<>();
+        InterleavedFecEncoder encoder = new InterleavedFecEncoder(depth, groupSize);
+        for (int i = 0; i < packets.length; i++) {
+            ByteBuffer closed = encoder.add(packets[i]);
+            if (closed != null) {
+                byte[] bytes = new byte[closed.remaining()];
+                closed.get(bytes);
+                fec.add(new FECpacket(bytes));
+                fecAfter.add(i);
+            }
+        }
+        return fec;
+    }
+
+    private static FECpacket toFec(FecEncoder encoder) {
+        byte[] bytes = new byte[encoder.getFecPacketSize()];
+        encoder.finish().get(bytes);
+        encoder.reset();
+        return new FECpacket(bytes);
+    }
+
+    /**
+     * Sends a stream through a loss model and decodes it.
+     *
+     * @return {lost media packets, media packets still missing after decoding, FEC packets sent}
+     */
+    private static int[] simulate(RTPpacket[] packets, int columns, int rows, GilbertElliott loss) {
+        List<Integer> fecAfter = new ArrayList<>();
+        return simulate(packets, encode(packets, columns, rows, fecAfter), fecAfter, loss);
+    }
+
+    private static int[] simulate(RTPpacket[] packets, List<FECpacket> fec, List<Integer> fecAfter, GilbertElliott loss) {
+        MapWindow window = new MapWindow();
+        FecDecoder decoder = new FecDecoder(CommonValues.MAX_FEC_GROUP_SIZE * 2);
+        int lost = 0;
+        int f = 0;
+        for (int i = 0; i < packets.length; i++) {
+            if (loss.lose())
+                lost++;
+            else
+                window.packets.put((long) i, packets[i]);
+            for (; f < fec.size() && fecAfter.get(f) == i; f++) {
+                if (!loss.lose())
+                    decoder.add(fec.get(f), window);
+            }
+        }
+        return new int[] { lost, packets.length - window.packets.size(), fec.size() };
+    }
+
+    /**
+     * Loss model dropping a burst of consecutive media packets, and none of the FEC packets.
+     *
+     * @param first first media packet lost
+     * @param count media packets lost
+     */
+    private static GilbertElliott burst(RTPpacket[] packets, int columns, int rows, int first, int count) {
+        List<Integer> fecAfter = new ArrayList<>();
+        encode(packets, columns, rows, fecAfter);
+        return burst(packets, fecAfter, first, count);
+    }
+
+    private static GilbertElliott burst(RTPpacket[] packets, List<Integer> fecAfter, int first, int count) {
+        // Sending order: each media packet followed by the FEC packets it closes
+        List<Boolean> pattern = new ArrayList<>();
+        for (int i = 0, f = 0; i < packets.length; i++) {
+            pattern.add(i >= first && i < first + count);
+            for (; f < fecAfter.size() && fecAfter.get(f) == i; f++)
+                pattern.add(false);
+        }
+        return new GilbertElliott(0, 1, 0, 0, null) {
+            int next = 0;
+
+            @Override
+            public boolean lose() {
+                return next < pattern.size() && pattern.get(next++);
+            }
+        };
+    }
+
+    @Test
+    void testAdjacentLossesNeedColumns() {
+        Random random = new Random(1);
+        RTPpacket[] packets = FecFixtures.packets(random, 0, FecFixtures.lengths(random, 16, 20, 219));
+        // 4x4 matrix: packets 5 and 6 are lost, both in the second row
+        List<Integer> fecAfter = new ArrayList<>();
+        List<FECpacket> fec = encode(packets, 4, 4, fecAfter);
+        assertEquals(8, fec.size(), "4 row and 4 column FEC packets expected");
+
+        MapWindow window = new MapWindow();
+        for (int i = 0; i < packets.length; i++) {
+            if (i != 5 && i != 6)
+                window.packets.put((long) i, packets[i]);
+        }
+        FecDecoder rowsOnly = new FecDecoder(16);
+        for (FECpacket row : encode(packets, 4, 0, new ArrayList<>()))
+            assertEquals(0, rowsOnly.add(row, window), "Row FEC alone can not recover two adjacent losses");
+        FecDecoder decoder = new FecDecoder(16);
+        int recovered = 0;
+        for (FECpacket packet : fec)
+            recovered += decoder.add(packet, window);
+        assertEquals(2, recovered, "Column FEC should recover both packets");
+        assertArrayEquals(packets[5].getPayload(), window.packets.get(5L).getPayload(), "Recovered payload mismatch");
+        assertArrayEquals(packets[6].getPayload(), window.packets.get(6L).getPayload(), "Recovered payload mismatch");
+    }
+
+    private static int decodeWithout(RTPpacket[] packets, FecDecoder decoder, int... lost) {
+        List<FECpacket> fec = encode(packets, 4, 4, new ArrayList<>());
+        MapWindow window = new MapWindow();
+        for (int i = 0; i < packets.length; i++)
+            window.packets.put((long) i, packets[i]);
+        for (int i : lost)
+            window.packets.remove((long) i);
+        int recovered = 0;
+        for (FECpacket packet : fec)
+            recovered += decoder.add(packet, window);
+        for (int i : lost) {
+            if (window.packets.containsKey((long) i))
+                assertArrayEquals(packets[i].getPayload(), window.packets.get((long) i).getPayload(), "Recovered payload mismatch");
+        }
+        return recovered;
+    }
+
+    @Test
+    void testIterativeRecovery() {
+        Random random = new Random(2);
+        RTPpacket[] packets = FecFixtures.packets(random, 0, FecFixtures.lengths(random, 16, 20, 219));
+        // 4x4 matrix missing 0, 1 and 4: row 0 stays pending until column 0 recovers 0
+        // (after row 1 recovered 4), then row 0 recovers 1
+        FecDecoder decoder = new FecDecoder(16);
+        assertEquals(3, decodeWithout(packets, decoder, 0, 1, 4), "Every packet should be recovered");
+        assertEquals(0, decoder.getPendingCount(), "No FEC packet should stay pending");
+
+        // A 2x2 square (0, 1, 4 and 5) is beyond the reach of 2D parity, 6 is recovered by column 2
+        decoder = new FecDecoder(16);
+        assertEquals(1, decodeWithout(packets, decoder, 0, 1, 4, 5, 6), "Only packet 6 can be recovered");
+        assertEquals(4, decoder.getPendingCount(), "Rows 0 and 1 and columns 0 and 1 should stay pending");
+    }
+
+    @Test
+    void testBurstRecoveredByColumns() {
+        Random random = new Random(3);
+        RTPpacket[] packets = FecFixtures.packets(random, 0, FecFixtures.lengths(random, 64, 20, 219));
+        // A burst of 4 packets (a whole row of the second 4x4 matrix)
+        int[] rowOnly = simulate(packets, 4, 0, burst(packets, 4, 0, 16, 4));
+        int[] twoD = simulate(packets, 4, 4, burst(packets, 4, 4, 16, 4));
+        assertEquals(4, twoD[0], "Burst size mismatch");
+        assertEquals(0, twoD[1], "A burst of L packets should be recovered by the columns");
+        assertEquals(4, rowOnly[1], "Row FEC alone can not recover a burst");
+        // A burst of 5 packets spans two rows: the column holding two of them is recovered by the second row
+        twoD = simulate(packets, 4, 4, burst(packets, 4, 4, 18, 5));
+        assertEquals(0, twoD[1], "Burst across two rows should be recovered");
+    }
+
+    @Test
+    void testGilbertElliottRecovery() {
+        Random random = new Random(4);
+        RTPpacket[] packets = FecFixtures.packets(random, 0, FecFixtures.lengths(random, 20000, 20, 219));
+        // 5% loss in bursts of 2.5 packets on average
+        int[] rowOnly = simulate(packets, 4, 0, GilbertElliott.ofMeanLoss(0.05, 2.5, new Random(5)));
+        int[] twoD = simulate(packets, 4, 4, GilbertElliott.ofMeanLoss(0.05, 2.5, new Random(5)));
+
+        double lossRate = (double) twoD[0] / packets.length;
+        assertTrue(lossRate > 0.04 && lossRate < 0.06, "Simulated loss should be close to 5%: " + lossRate);
+        // Residual loss relative to the packets lost
+        double rowResidual = (double) rowOnly[1] / rowOnly[0];
+        double twoDResidual = (double) twoD[1] / twoD[0];
+        assertTrue(twoDResidual < rowResidual / 2, "2D parity should recover far more bursts: row residual " + rowResidual
+                + ", 2D residual " + twoDResidual);
+        assertEquals(packets.length / 4, rowOnly[2], "Row overhead mismatch");
+        assertEquals(packets.length / 2, twoD[2], "2D overhead mismatch");
+    }
+
+    @Test
+    void testBurstRecoveredByInterleaving() {
+        Random random = new Random(7);
+        RTPpacket[] packets = FecFixtures.packets(random, 0, FecFixtures.lengths(random, 96, 20, 219));
+        // Groups of 4 packets with depth 6 (the same 25% overhead as consecutive groups of 4)
+        List<Integer> fecAfter = new ArrayList<>();
+        List<FECpacket> fec = interleave(packets, 6, 4, fecAfter);
+        assertEquals(packets.length / 4, fec.size(), "Overhead mismatch");
+        assertArrayEquals(new int[] { 26, 32, 38, 44 }, fec.get(8).getProtectedSequenceNumbers(), "Group 2 of the second block");
+        assertEquals(0, simulate(packets, fec, fecAfter, burst(packets, fecAfter, 29, 6))[1],
+                "A burst of D packets should be recovered");
+        int[] seven = simulate(packets, fec, fecAfter, burst(packets, fecAfter, 29, 7));
+        assertEquals(2, seven[1], "Both packets of the group hit twice by a burst of D + 1 packets should be lost");
+        assertEquals(6, simulate(packets, 4, 0, burst(packets, 4, 0, 29, 6))[1], "Consecutive groups should lose the burst");
+    }
+
+    @Test
+    void testGilbertElliottInterleaving() {
+        Random random = new Random(8);
+        RTPpacket[] packets = FecFixtures.packets(random, 0, FecFixtures.lengths(random, 20000, 20, 219));
+        // 5% loss in bursts of 4 packets on average, both with a 25% overhead
+        int[] rowOnly = simulate(packets, 4, 0, GilbertElliott.ofMeanLoss(0.05, 4, new Random(9)));
+        List<Integer> fecAfter = new ArrayList<>();
+        List<FECpacket> fec = interleave(packets, 8, 4, fecAfter);
+        int[] interleaved = simulate(packets, fec, fecAfter, GilbertElliott.ofMeanLoss(0.05, 4, new Random(9)));
+        double rowResidual = (double) rowOnly[1] / rowOnly[0];
+        double interleavedResidual = (double) interleaved[1] / interleaved[0];
+        assertTrue(interleavedResidual < rowResidual * 0.75, "Interleaving should recover more bursts: row residual "
+                + rowResidual + ", interleaved residual " + interleavedResidual);
+        assertEquals(rowOnly[2], interleaved[2], "Overhead mismatch");
+    }
+
+    @Test
+    void testGilbertElliottMeanLoss() {
+        GilbertElliott model = GilbertElliott.ofMeanLoss(0.1, 4, new Random(6));
+        assertEquals(0.1, model.getMeanLoss(), 1e-9);
+        int lost = 0;
+        int bursts = 0;
+        boolean previous = false;
+        for (int i = 0; i < 200000; i++) {
+            boolean current = model.lose();
+            if (current) {
+                lost++;
+                if (!previous)
+                    bursts++;
+            }
+            previous = current;
+        }
+        assertEquals(0.1, lost / 200000.0, 0.01);
+        assertEquals(4.0, (double) lost / bursts, 0.3);
+    }
+}
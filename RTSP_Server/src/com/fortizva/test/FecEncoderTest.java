@@ -0,0 +1,166 @@
+package com.fortizva.test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import com.fortizva.packets.CommonValues;
+import com.fortizva.packets.FECpacket;
+import com.fortizva.packets.FecEncoder;
+import com.fortizva.packets.InterleavedFecEncoder;
+import com.fortizva.packets.RTPpacket;
+
+class FecEncoderTest {
+
+    private static byte[] toArray(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.duplicate().get(bytes);
+        return bytes;
+    }
+
+    @Test
+    void testMatchesFECpacket() {
+        Random random = new Random(3);
+        FecEncoder encoder = new FecEncoder(16); // Grown by the first packets
+        // The second group is smaller than the first one: the accumulator must be cleared by reset()
+        RTPpacket[][] groups = { FecFixtures.packets(random, 1000, 40, 4000, 17, 3999, 1), FecFixtures.packets(random, 1005, 8, 9),
+                FecFixtures.packets(random, 65534, 100, 200, 300, 50) };
+        for (RTPpacket[] packets : groups) {
+            for (RTPpacket packet : packets)
+                encoder.add(packet);
+            assertEquals(packets.length, encoder.getCount(), "Group size mismatch");
+            FECpacket expected = new FECpacket(packets);
+            assertEquals(expected.getFecPacketSize(), encoder.getFecPacketSize(), "FEC packet size mismatch");
+            assertArrayEquals(expected.getFecPacket(), toArray(encoder.finish()), "FEC packet mismatch");
+            encoder.reset();
+        }
+    }
+
+    @Test
+    void testLongMask() {
+        Random random = new Random(11);
+        int[] lengths = FecFixtures.lengths(random, 30, 1, 500);
+        RTPpacket[] packets = FecFixtures.packets(random, 65530, lengths); // Crosses the sequence number wraparound
+        FecEncoder encoder = new FecEncoder();
+        for (RTPpacket packet : packets)
+            encoder.add(packet);
+        FECpacket expected = new FECpacket(packets);
+        byte[] bytes = toArray(encoder.finish());
+        assertArrayEquals(expected.getFecPacket(), bytes, "FEC packet mismatch");
+        assertEquals(0x40, bytes[0] & 0x40, "Groups beyond 16 packets need the long mask");
+        assertEquals(CommonValues.FEC_HEADER_SIZE + CommonValues.FEC_LONG_LEVEL_HEADER_SIZE + expected.getXorPayload().length,
+                bytes.length, "FEC packet size mismatch");
+
+        FECpacket fec = new FECpacket(bytes);
+        assertEquals(30, fec.getMaskLength(), "Protected packet count mismatch");
+        int[] protectedSequenceNb = fec.getProtectedSequenceNumbers();
+        for (int i = 0; i < packets.length; i++)
+            assertEquals(packets[i].getSequenceNumber(), protectedSequenceNb[i], "Protected sequence number mismatch");
+
+        // Packet 25 (beyond the short mask) is lost
+        RTPpacket[] received = new RTPpacket[packets.length - 1];
+        for (int i = 0, j = 0; i < packets.length; i++) {
+            if (i != 25)
+                received[j++] = packets[i];
+        }
+        RTPpacket recovered = fec.recoverPacket(received, 25);
+        assertEquals(packets[25].getSequenceNumber(), recovered.getSequenceNumber(), "Recovered sequence number mismatch");
+        assertEquals(packets[25].getTimeStamp(), recovered.getTimeStamp(), "Recovered timestamp mismatch");
+        assertArrayEquals(packets[25].getPayload(), recovered.getPayload(), "Recovered payload mismatch");
+    }
+
+    @Test
+    void testSparseLongMask() {
+        Random random = new Random(12);
+        int[] lengths = FecFixtures.lengths(random, 48, 1, 200);
+        RTPpacket[] stream = FecFixtures.packets(random, 3000, lengths);
+        // Column of a 2D FEC matrix with 16 packets per row
+        RTPpacket[] column = { stream[0], stream[16], stream[32] };
+        FecEncoder encoder = new FecEncoder();
+        for (RTPpacket packet : column)
+            encoder.add(packet);
+        FECpacket expected = new FECpacket(column);
+        assertArrayEquals(expected.getFecPacket(), toArray(encoder.finish()), "FEC packet mismatch");
+        assertArrayEquals(new int[] { 3000, 3016, 3032 }, new FECpacket(expected.getFecPacket()).getProtectedSequenceNumbers(),
+                "Protected sequence numbers mismatch");
+
+        // The last bit of the long mask
+        encoder.reset();
+        encoder.add(stream[0]);
+        encoder.add(stream[47]);
+        assertArrayEquals(new FECpacket(new RTPpacket[] { stream[0], stream[47] }).getFecPacket(), toArray(encoder.finish()),
+                "FEC packet mismatch");
+        assertThrows(IllegalArgumentException.class, () -> new FECpacket(new RTPpacket[] { stream[0], stream[0] }),
+                "Duplicate packets should be rejected");
+    }
+
+    @Test
+    void testInterleavedGroups() {
+        Random random = new Random(13);
+        int[] lengths = FecFixtures.lengths(random, 14, 1, 300);
+        RTPpacket[] packets = FecFixtures.packets(random, 65530, lengths); // Crosses the sequence number wraparound
+        InterleavedFecEncoder encoder = new InterleavedFecEncoder(3, 4);
+        List<byte[]> fec = new ArrayList<>();
+        for (int i = 0; i < packets.length; i++) {
+            ByteBuffer closed = encoder.add(packets[i]);
+            // Group i mod 3 closes with its fourth packet: 9, 10 and 11
+            assertEquals(i >= 9 && i <= 11, closed != null, "Group closed by packet " + i);
+            if (closed != null)
+                fec.add(toArray(closed));
+        }
+        encoder.flush(closed -> fec.add(toArray(closed))); // Packets 12 and 13 start the next block
+        assertEquals(5, fec.size(), "FEC packet count mismatch");
+        for (int g = 0; g < 3; g++) {
+            RTPpacket[] expected = { packets[g], packets[g + 3], packets[g + 6], packets[g + 9] };
+            assertArrayEquals(new FECpacket(expected).getFecPacket(), fec.get(g), "FEC packet of group " + g + " mismatch");
+        }
+        assertArrayEquals(new FECpacket(new RTPpacket[] { packets[12] }).getFecPacket(), fec.get(3), "Flushed group mismatch");
+        assertArrayEquals(new FECpacket(new RTPpacket[] { packets[13] }).getFecPacket(), fec.get(4), "Flushed group mismatch");
+
+        assertEquals(2, InterleavedFecEncoder.maxDepth(17), "Groups of 17 packets span 16 * depth + 1 packets");
+        assertEquals(16, InterleavedFecEncoder.maxGroupSize(3));
+        new InterleavedFecEncoder(3, 16);
+        assertThrows(IllegalArgumentException.class, () -> new InterleavedFecEncoder(3, 17), "Group beyond the mask");
+        assertThrows(IllegalArgumentException.class, () -> new InterleavedFecEncoder(0, 4));
+    }
+
+    @Test
+    void testNonConsecutivePackets() {
+        Random random = new Random(5);
+        RTPpacket[] packets = FecFixtures.packets(random, 200, 30, 31, 32, 33, 34);
+        FecEncoder encoder = new FecEncoder();
+        // Protect 200, 202 and 204 only
+        encoder.add(packets[0]);
+        encoder.add(packets[2]);
+        encoder.add(packets[4]);
+        FECpacket fec = new FECpacket(toArray(encoder.finish()));
+        assertEquals(3, fec.getMaskLength(), "Protected packet count mismatch");
+        assertArrayEquals(new int[] { 200, 202, 204 }, fec.getProtectedSequenceNumbers(), "Protected sequence numbers mismatch");
+
+        // 202 is lost
+        RTPpacket recovered = fec.recoverPacket(new RTPpacket[] { packets[0], packets[4] }, 2);
+        assertEquals(202, recovered.getSequenceNumber(), "Recovered sequence number mismatch");
+        assertEquals(packets[2].getTimeStamp(), recovered.getTimeStamp(), "Recovered timestamp mismatch");
+        assertArrayEquals(packets[2].getPayload(), recovered.getPayload(), "Recovered payload mismatch");
+    }
+
+    @Test
+    void testPacketOutsideTheMask() {
+        Random random = new Random(9);
+        RTPpacket[] packets = FecFixtures.packets(random, 10, 5, 5);
+        FecEncoder encoder = new FecEncoder();
+        encoder.add(packets[0]);
+        assertThrows(IllegalArgumentException.class, () -> encoder.add(packets[0]), "Duplicate packet should be rejected");
+        RTPpacket far = new RTPpacket(CommonValues.MJPEG_TYPE, 10 + FecEncoder.MASK_BITS, 0, new byte[1], 1);
+        assertThrows(IllegalArgumentException.class, () -> encoder.add(far), "Packet beyond the mask should be rejected");
+        encoder.reset();
+        assertThrows(IllegalStateException.class, () -> encoder.finish(), "Empty group should be rejected");
+    }
+}
@@ -0,0 +1,66 @@
+package com.fortizva.test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import com.fortizva.packets.FecDecoder;
+import com.fortizva.packets.RTPpacket;
+
+/**
+ * Fixtures shared by the FEC tests.
+ */
+final class FecFixtures {
+
+    private FecFixtures() {
+    }
+
+    /**
+     * Received packets of a simulated stream.
+     */
+    static class MapWindow implements FecDecoder.PacketWindow {
+        final Map<Long, RTPpacket> packets = new HashMap<>();
+
+        @Override
+        public RTPpacket acquire(long extendedSequenceNumber) {
+            return packets.get(extendedSequenceNumber);
+        }
+
+        @Override
+        public void release(RTPpacket packet) {
+        }
+
+        @Override
+        public void recovered(RTPpacket packet) {
+            packets.put(packet.getExtendedSequenceNumber(), packet);
+        }
+    }
+
+    /**
+     * Builds consecutive packets with random payloads, payload types and timestamps.
+     *
+     * @param firstSeq extended sequence number of the first packet, wrapped to 16 bits in the header
+     * @param lengths  payload size of each packet
+     */
+    static RTPpacket[] packets(Random random, long firstSeq, int... lengths) {
+        RTPpacket[] packets = new RTPpacket[lengths.length];
+        for (int i = 0; i < lengths.length; i++) {
+            byte[] payload = new byte[lengths[i]];
+            random.nextBytes(payload);
+            packets[i] = new RTPpacket(random.nextInt(128), (int) ((firstSeq + i) & 0xFFFF), random.nextInt(), payload,
+                    payload.length);
+            packets[i].setExtendedSequenceNumber(firstSeq + i);
+        }
+        return packets;
+    }
+
+    /**
+     * @return count random payload sizes between min and max (inclusive)
+     */
+    static int[] lengths(Random random, int count, int min, int max) {
+        int[] lengths = new int[count];
+        for (int i = 0; i < count; i++)
+            lengths[i] = min + random.nextInt(max - min + 1);
+        return lengths;
+    }
+}
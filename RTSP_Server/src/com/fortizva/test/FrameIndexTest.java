@@ -0,0 +1,261 @@
+package com.fortizva.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+
+import com.fortizva.media.FrameIndex;
+import com.fortizva.media.MediaHeader;
+
+class FrameIndexTest {
+
+    private static final int FPS = 25;
+    private static final int SAMPLING_RATE = 8000;
+    private static final int AUDIO_CHUNK = SAMPLING_RATE / FPS; // 8 bits, 1 channel
+    private static final int ALIGNMENT = 16;
+    private static final int[] LENGTHS = { 100, 7, 250 };
+    private static final long[] TIMESTAMPS = { 0, 45, 77 };
+
+    @Test
+    void testBuildV1() throws IOException {
+        Path dir = Files.createTempDirectory("frameindex");
+        try {
+            Path media = dir.resolve("clip.mjpeg");
+            Files.write(media, containerV1(LENGTHS));
+            FrameIndex index = open(media);
+
+            assertEquals(LENGTHS.length, index.getFrameCount(), "Frame count mismatch");
+            long offset = MediaHeader.HEADER_SIZE;
+            for (int i = 0; i < LENGTHS.length; i++) {
+                assertEquals(offset + 5, index.getVideoOffset(i), "Video offset mismatch at frame " + i);
+                assertEquals(LENGTHS[i], index.getVideoLength(i), "Video length mismatch at frame " + i);
+                assertEquals(offset + 5 + LENGTHS[i], index.getAudioOffset(i), "Audio offset mismatch at frame " + i);
+                assertEquals(i * 1000L / FPS, index.getTimestamp(i), "Timestamp mismatch at frame " + i);
+                offset += 5 + LENGTHS[i] + AUDIO_CHUNK;
+            }
+            assertEquals(Files.size(media), index.getFileSize(), "File size mismatch");
+            assertTrue(Files.isRegularFile(sidecar(media)), "Sidecar not written");
+        } finally {
+            delete(dir);
+        }
+    }
+
+    @Test
+    void testSidecarReused() throws IOException {
+        Path dir = Files.createTempDirectory("frameindex");
+        try {
+            Path media = dir.resolve("clip.mjpeg");
+            Files.write(media, containerV1(LENGTHS));
+            open(media);
+            tamperTimestamp(sidecar(media), 1, 12345);
+
+            // Same size and mtime, the sidecar is loaded instead of scanning the file again
+            assertEquals(12345, open(media).getTimestamp(1), "Sidecar not reused");
+        } finally {
+            delete(dir);
+        }
+    }
+
+    @Test
+    void testSidecarInvalidatedOnSizeChange() throws IOException {
+        Path dir = Files.createTempDirectory("frameindex");
+        try {
+            Path media = dir.resolve("clip.mjpeg");
+            Files.write(media, containerV1(LENGTHS));
+            FileTime mtime = Files.getLastModifiedTime(media);
+            open(media);
+            tamperTimestamp(sidecar(media), 1, 12345);
+
+            Files.write(media, containerV1(LENGTHS[0], LENGTHS[1], LENGTHS[2], 60));
+            Files.setLastModifiedTime(media, mtime); // Only the size tells the files apart
+            FrameIndex index = open(media);
+            assertEquals(4, index.getFrameCount(), "Index not rebuilt");
+            assertEquals(1000L / FPS, index.getTimestamp(1), "Index not rebuilt");
+            assertEquals(60, index.getVideoLength(3), "Video length mismatch");
+        } finally {
+            delete(dir);
+        }
+    }
+
+    @Test
+    void testSidecarInvalidatedOnMtimeChange() throws IOException {
+        Path dir = Files.createTempDirectory("frameindex");
+        try {
+            Path media = dir.resolve("clip.mjpeg");
+            Files.write(media, containerV1(LENGTHS));
+            open(media);
+            tamperTimestamp(sidecar(media), 1, 12345);
+
+            FileTime mtime = Files.getLastModifiedTime(media);
+            Files.setLastModifiedTime(media, FileTime.fromMillis(mtime.toMillis() + 10000));
+            assertEquals(1000L / FPS, open(media).getTimestamp(1), "Index not rebuilt");
+            // The rebuilt index replaced the stale sidecar
+            assertEquals(1000L / FPS, open(media).getTimestamp(1), "Sidecar not rewritten");
+        } finally {
+            delete(dir);
+        }
+    }
+
+    @Test
+    void testFailedSidecarWriteLeavesNoTemporaryFile() throws IOException {
+        Path dir = Files.createTempDirectory("frameindex");
+        try {
+            Path media = dir.resolve("clip.mjpeg");
+            Files.write(media, containerV1(LENGTHS));
+            // A non-empty directory where the sidecar should go makes the final move fail
+            Files.createDirectory(sidecar(media));
+            Files.write(sidecar(media).resolve("keep"), new byte[1]);
+
+            assertEquals(LENGTHS.length, open(media).getFrameCount(), "Frame count mismatch");
+            try (Stream<Path> files = Files.list(dir)) {
+                assertFalse(files.anyMatch(p -> p.toString().endsWith(".tmp")), "Temporary sidecar left behind");
+            }
+        } finally {
+            delete(dir);
+        }
+    }
+
+    @Test
+    void testEmbeddedIndexV2() throws IOException {
+        Path dir = Files.createTempDirectory("frameindex");
+        try {
+            Path media = dir.resolve("clip.mjpeg");
+            Files.write(media, containerV2(true));
+            FrameIndex index = open(media);
+
+            assertEquals(LENGTHS.length, index.getFrameCount(), "Frame count mismatch");
+            checkV2(index);
+            assertFalse(Files.exists(sidecar(media)), "Sidecar written for an embedded index");
+        } finally {
+            delete(dir);
+        }
+    }
+
+    @Test
+    void testBuildV2WithoutIndex() throws IOException {
+        Path dir = Files.createTempDirectory("frameindex");
+        try {
+            Path media = dir.resolve("clip.mjpeg");
+            Files.write(media, containerV2(false));
+            FrameIndex index = open(media);
+
+            assertEquals(LENGTHS.length, index.getFrameCount(), "Frame count mismatch");
+            checkV2(index);
+        } finally {
+            delete(dir);
+        }
+    }
+
+    private static void checkV2(FrameIndex index) {
+        long offset = MediaHeader.align(MediaHeader.HEADER_SIZE + MediaHeader.V2_EXTENSION_SIZE, ALIGNMENT);
+        for (int i = 0; i < LENGTHS.length; i++) {
+            long video = offset + MediaHeader.V2_RECORD_HEADER_SIZE;
+            assertEquals(video, index.getVideoOffset(i), "Video offset mismatch at frame " + i);
+            assertEquals(LENGTHS[i], index.getVideoLength(i), "Video length mismatch at frame " + i);
+            assertEquals(video + LENGTHS[i], index.getAudioOffset(i), "Audio offset mismatch at frame " + i);
+            assertEquals(TIMESTAMPS[i], index.getTimestamp(i), "Timestamp mismatch at frame " + i);
+            offset = MediaHeader.align(video + LENGTHS[i] + AUDIO_CHUNK, ALIGNMENT);
+        }
+    }
+
+    private static FrameIndex open(Path media) throws IOException {
+        MediaHeader header = MediaHeader.read(ByteBuffer.wrap(Files.readAllBytes(media)));
+        return FrameIndex.open(media.toString(), header);
+    }
+
+    private static Path sidecar(Path media) {
+        return media.resolveSibling(media.getFileName() + FrameIndex.SIDECAR_SUFFIX);
+    }
+
+    /**
+     * Overwrites the timestamp of a frame in a sidecar file, keeping its size and header.
+     */
+    private static void tamperTimestamp(Path sidecar, int frame, long timestamp) throws IOException {
+        try (FileChannel ch = FileChannel.open(sidecar, StandardOpenOption.WRITE)) {
+            ByteBuffer bb = ByteBuffer.allocate(Long.BYTES).putLong(0, timestamp);
+            ch.write(bb, 32 + (frame * 4 + 3) * Long.BYTES);
+        }
+    }
+
+    private static ByteBuffer header(int version, int numFrames, long indexOffset) {
+        ByteBuffer bb = ByteBuffer.allocate(MediaHeader.HEADER_SIZE + MediaHeader.V2_EXTENSION_SIZE);
+        bb.put((byte) version).put((byte) FPS).putInt(numFrames).putInt(320).putInt(240);
+        bb.put((byte) 1).putInt(SAMPLING_RATE).put((byte) 8).put((byte) 1);
+        if (version >= MediaHeader.VERSION_2)
+            bb.putLong(indexOffset).putInt(ALIGNMENT);
+        return bb.flip();
+    }
+
+    /**
+     * Version 1 container whose frames are filled with their index.
+     */
+    private static byte[] containerV1(int... lengths) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteBuffer header = header(MediaHeader.VERSION_1, lengths.length, 0);
+        out.write(header.array(), 0, header.limit());
+        for (int i = 0; i < lengths.length; i++) {
+            out.writeBytes(String.format("%05d", lengths[i]).getBytes());
+            out.writeBytes(filled(lengths[i], i));
+            out.writeBytes(new byte[AUDIO_CHUNK]);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Version 2 container of {@link #LENGTHS} and {@link #TIMESTAMPS}.
+     *
+     * @param embedded whether the index is appended and its offset patched in the header
+     */
+    private static byte[] containerV2(boolean embedded) {
+        long first = MediaHeader.align(MediaHeader.HEADER_SIZE + MediaHeader.V2_EXTENSION_SIZE, ALIGNMENT);
+        long[] entries = new long[4 * LENGTHS.length];
+        ByteBuffer records = ByteBuffer.allocate(4096);
+        records.position((int) first);
+        for (int i = 0; i < LENGTHS.length; i++) {
+            entries[4 * i] = records.position() + MediaHeader.V2_RECORD_HEADER_SIZE;
+            entries[4 * i + 1] = LENGTHS[i];
+            entries[4 * i + 2] = entries[4 * i] + LENGTHS[i];
+            entries[4 * i + 3] = TIMESTAMPS[i];
+            records.putInt(LENGTHS[i]).putLong(TIMESTAMPS[i]).put(filled(LENGTHS[i], i)).put(new byte[AUDIO_CHUNK]);
+            records.position((int) MediaHeader.align(records.position(), ALIGNMENT));
+        }
+        long indexOffset = records.position();
+        if (embedded) {
+            records.putInt(LENGTHS.length).putInt(0);
+            for (long e : entries)
+                records.putLong(e);
+        }
+        records.put(0, header(MediaHeader.VERSION_2, LENGTHS.length, embedded ? indexOffset : 0), 0,
+                MediaHeader.HEADER_SIZE + MediaHeader.V2_EXTENSION_SIZE);
+        byte[] file = new byte[records.position()];
+        records.get(0, file);
+        return file;
+    }
+
+    private static byte[] filled(int length, int value) {
+        byte[] data = new byte[length];
+        Arrays.fill(data, (byte) value);
+        return data;
+    }
+
+    private static void delete(Path dir) throws IOException {
+        try (Stream<Path> files = Files.walk(dir)) {
+            for (Path p : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator)
+                Files.delete(p);
+        }
+    }
+}
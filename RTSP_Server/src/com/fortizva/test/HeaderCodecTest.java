@@ -0,0 +1,142 @@
+package com.fortizva.test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+
+import com.fortizva.packets.BinaryField;
+import com.fortizva.packets.FECpacket;
+import com.fortizva.packets.HeaderCodec;
+import com.fortizva.packets.RTPpacket;
+import com.fortizva.packets.RtpHeaderTemplate;
+
+@SuppressWarnings("deprecation")
+class HeaderCodecTest {
+
+    // Values covering zero, small values, byte boundaries and the sign bit
+    private static final int[] SEQUENCE_NUMBERS = { 0, 1, 255, 256, 0x7FFF, 0x8000, 0xFFFF };
+    private static final int[] TIMESTAMPS = { 0, 1, 255, 0x10000, 0x12345678, 0x7FFFFFFF, 0x80000000, 0xFFFFFFFF };
+
+    /**
+     * Builds an RTP header the way RTPpacket did before HeaderCodec, with BinaryField.
+     */
+    private static byte[] binaryFieldRtpHeader(int marker, int ptype, int seq, int ts, int ssrc) {
+        byte[] header = new byte[12];
+        header[0] = BinaryField.binaryBuilder(header[0], new BinaryField(2, 2), new BinaryField(0, 1),
+                new BinaryField(0, 1), new BinaryField(0, 4));
+        header[1] = BinaryField.binaryBuilder(header[1], new BinaryField(marker, 1), new BinaryField(ptype, 7));
+        splitInto(header, 2, 2, seq);
+        splitInto(header, 4, 4, ts);
+        splitInto(header, 8, 4, ssrc);
+        return header;
+    }
+
+    private static void splitInto(byte[] dst, int off, int size, int value) {
+        byte[] bytes = BinaryField.binarySplitter(value);
+        for (int i = 0; i < Math.min(bytes.length, size); i++)
+            dst[off + size - 1 - i] = bytes[(bytes.length - 1) - i];
+    }
+
+    @Test
+    void testRtpHeaderMatchesBinaryField() {
+        for (int seq : SEQUENCE_NUMBERS) {
+            for (int ts : TIMESTAMPS) {
+                for (int ptype : new int[] { 0, 26, 96, 116, 127 }) {
+                    byte[] expected = binaryFieldRtpHeader(0, ptype, seq, ts, ts ^ seq);
+                    byte[] actual = new byte[12];
+                    HeaderCodec.writeRtpHeader(actual, 0, ptype, seq, ts, ts ^ seq);
+                    assertArrayEquals(expected, actual, "seq " + seq + ", ts " + ts + ", pt " + ptype);
+
+                    // Marker set
+                    expected = binaryFieldRtpHeader(1, ptype, seq, ts, 0);
+                    HeaderCodec.writeRtpHeader(actual, 0, 0, 0, 0, 1, ptype, seq, ts, 0);
+                    assertArrayEquals(expected, actual, "marker, seq " + seq + ", ts " + ts + ", pt " + ptype);
+                }
+            }
+        }
+    }
+
+    @Test
+    void testRtpHeaderRoundTrip() {
+        byte[] b = new byte[16];
+        ByteBuffer buf = ByteBuffer.allocateDirect(16);
+        for (int seq : SEQUENCE_NUMBERS) {
+            for (int ts : TIMESTAMPS) {
+                HeaderCodec.writeRtpHeader(b, 4, 1, 0, 5, 1, 96, seq, ts, ~ts);
+                assertEquals(2, HeaderCodec.rtpVersion(b, 4), "Version mismatch");
+                assertEquals(1, HeaderCodec.rtpPadding(b, 4), "Padding mismatch");
+                assertEquals(0, HeaderCodec.rtpExtension(b, 4), "Extension mismatch");
+                assertEquals(5, HeaderCodec.rtpCC(b, 4), "CC mismatch");
+                assertEquals(1, HeaderCodec.rtpMarker(b, 4), "Marker mismatch");
+                assertEquals(96, HeaderCodec.rtpPayloadType(b, 4), "Payload type mismatch");
+                assertEquals(seq, HeaderCodec.rtpSequenceNumber(b, 4), "Sequence number mismatch");
+                assertEquals(ts, HeaderCodec.rtpTimestamp(b, 4), "Timestamp mismatch");
+                assertEquals(~ts, HeaderCodec.rtpSsrc(b, 4), "SSRC mismatch");
+
+                // ByteBuffer writer produces the same bytes as the array writer
+                HeaderCodec.writeRtpHeader(b, 4, 26, seq, ts, 0);
+                HeaderCodec.writeRtpHeader(buf, 4, 26, seq, ts, 0);
+                byte[] fromBuffer = new byte[16];
+                buf.get(0, fromBuffer);
+                assertArrayEquals(Arrays.copyOfRange(b, 4, 16), Arrays.copyOfRange(fromBuffer, 4, 16),
+                        "ByteBuffer header mismatch");
+            }
+        }
+    }
+
+    @Test
+    void testRtpPacketRoundTrip() {
+        byte[] payload = { 0x01, 0x02, 0x03 };
+        for (int seq : SEQUENCE_NUMBERS) {
+            for (int ts : TIMESTAMPS) {
+                RTPpacket sent = new RTPpacket(26, seq, ts, payload, payload.length);
+                assertArrayEquals(binaryFieldRtpHeader(0, 26, seq, ts, 0), sent.header, "Header mismatch");
+                RTPpacket received = new RTPpacket(sent.getPacket(), sent.getSize());
+                assertEquals(seq, received.getSequenceNumber(), "Sequence number mismatch");
+                assertEquals(ts, received.getTimeStamp(), "Timestamp mismatch");
+                assertEquals(26, received.getPayloadType(), "Payload type mismatch");
+                assertArrayEquals(payload, received.getPayload(), "Payload mismatch");
+
+                // The template stamps the same header
+                ByteBuffer stamped = new RtpHeaderTemplate(26).stamp(seq, ts);
+                byte[] header = new byte[12];
+                stamped.get(header);
+                assertArrayEquals(sent.header, header, "Template header mismatch");
+            }
+        }
+    }
+
+    @Test
+    void testFecHeadersMatchBinaryField() {
+        byte[] payload1 = { 0x01, 0x02, 0x03, 0x04, 0x05 };
+        byte[] payload2 = { 0x06, 0x07 };
+        for (int seq : SEQUENCE_NUMBERS) {
+            for (int ts : TIMESTAMPS) {
+                RTPpacket[] group = { new RTPpacket(26, seq, ts, payload1, payload1.length),
+                        new RTPpacket(26, seq + 1, ts + 3600, payload2, payload2.length) };
+                byte[] fec = new FECpacket(group).getFecPacket();
+
+                // Headers as built with BinaryField
+                byte[] expected = new byte[14];
+                expected[1] = 0; // 26 ^ 26
+                splitInto(expected, 2, 2, seq);
+                splitInto(expected, 4, 4, ts ^ (ts + 3600));
+                splitInto(expected, 8, 2, payload1.length ^ payload2.length);
+                splitInto(expected, 10, 2, payload1.length);
+                expected[12] = (byte) 0xC0;
+                assertArrayEquals(expected, Arrays.copyOf(fec, 14), "seq " + seq + ", ts " + ts);
+
+                assertEquals(seq, HeaderCodec.fecBaseSequenceNumber(fec, 0), "SN base mismatch");
+                assertEquals(ts ^ (ts + 3600), HeaderCodec.fecTimestampRecovery(fec, 0), "TS recovery mismatch");
+                assertEquals(payload1.length ^ payload2.length, HeaderCodec.fecLengthRecovery(fec, 0), "Length recovery mismatch");
+                assertEquals(payload1.length, HeaderCodec.fecProtectionLength(fec, 0), "Protection length mismatch");
+                assertEquals(0xC000, HeaderCodec.fecMask(fec, 0), "Mask mismatch");
+                assertEquals(0, HeaderCodec.fecPtRecovery(fec, 0), "PT recovery mismatch");
+            }
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.fortizva.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+
+import com.fortizva.media.FrameIndex;
+import com.fortizva.media.MappedCodec;
+import com.fortizva.media.MediaHeader;
+
+class MappedCodecTest {
+
+    @Test
+    void testTruncatedHeader() throws IOException {
+        byte[] v1 = header(MediaHeader.VERSION_1, 25);
+        byte[] v2 = header(MediaHeader.VERSION_2, 25);
+        assertTruncated(new byte[0]);
+        assertTruncated(Arrays.copyOf(v1, MediaHeader.HEADER_SIZE - 1));
+        // A version 2 file must hold the extension too
+        assertTruncated(Arrays.copyOf(v2, MediaHeader.HEADER_SIZE));
+        assertTruncated(Arrays.copyOf(v2, MediaHeader.HEADER_SIZE + MediaHeader.V2_EXTENSION_SIZE - 1));
+    }
+
+    @Test
+    void testZeroFps() throws IOException {
+        Path media = Files.createTempFile("mappedcodec", ".mjpeg");
+        try {
+            // Without audio, so the chunk size does not depend on the fps either
+            ByteBuffer file = ByteBuffer.allocate(MediaHeader.HEADER_SIZE + 3 * 9);
+            file.put(header(MediaHeader.VERSION_1, 0), 0, MediaHeader.HEADER_SIZE);
+            for (int i = 0; i < 3; i++)
+                file.put("00004".getBytes()).putInt(i);
+            Files.write(media, file.array());
+
+            try (MappedCodec codec = new MappedCodec(media.toString())) {
+                assertEquals(3, codec.getIndex().getFrameCount(), "Frame count mismatch");
+                for (int i = 0; i < 3; i++) {
+                    // Clamped to 1 fps like the readers, instead of dividing by zero
+                    assertEquals(i * 1000L, codec.getIndex().getTimestamp(i), "Timestamp mismatch at frame " + i);
+                    assertEquals(i, codec.nextFrame().getInt(), "Frame mismatch at frame " + i);
+                    codec.nextChunk();
+                }
+            }
+        } finally {
+            Files.deleteIfExists(media);
+            Files.deleteIfExists(Path.of(media + FrameIndex.SIDECAR_SUFFIX));
+        }
+    }
+
+    private static void assertTruncated(byte[] bytes) throws IOException {
+        Path media = Files.createTempFile("mappedcodec", ".mjpeg");
+        try {
+            Files.write(media, bytes);
+            IOException e = assertThrows(IOException.class, () -> new MappedCodec(media.toString()),
+                    bytes.length + " bytes file accepted");
+            assertEquals("Truncated header", e.getMessage(), "Message mismatch");
+        } finally {
+            Files.deleteIfExists(media);
+        }
+    }
+
+    /**
+     * @return a header without audio (and the version 2 fields, if any)
+     */
+    private static byte[] header(byte version, int fps) {
+        ByteBuffer bb = ByteBuffer.allocate(MediaHeader.HEADER_SIZE + MediaHeader.V2_EXTENSION_SIZE);
+        bb.put(version).put((byte) fps).putInt(0).putInt(320).putInt(240);
+        bb.put((byte) 0).putInt(0).put((byte) 16).put((byte) 1);
+        if (version >= MediaHeader.VERSION_2)
+            bb.putLong(0).putInt(1);
+        return Arrays.copyOf(bb.array(), bb.position());
+    }
+}
@@ -0,0 +1,171 @@
+package com.fortizva.test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import com.fortizva.packets.CommonValues;
+import com.fortizva.packets.GF256;
+import com.fortizva.packets.RTPpacket;
+import com.fortizva.packets.RsDecoder;
+import com.fortizva.packets.RsEncoder;
+import com.fortizva.packets.RsRepairPacket;
+import com.fortizva.test.FecFixtures.MapWindow;
+
+class ReedSolomonTest {
+
+    private static List<RsRepairPacket> encode(RsEncoder encoder, RTPpacket[] packets, long extendedBase) {
+        for (RTPpacket packet : packets)
+            encoder.add(packet);
+        List<RsRepairPacket> repairs = new ArrayList<>();
+        for (int i = 0; i < encoder.getRepairCount(); i++) {
+            ByteBuffer fec = encoder.finish(i);
+            byte[] bytes = new byte[fec.remaining()];
+            fec.get(bytes);
+            RsRepairPacket repair = new RsRepairPacket(bytes);
+            repair.setExtendedBaseSequenceNumber(extendedBase);
+            repairs.add(repair);
+        }
+        encoder.reset();
+        return repairs;
+    }
+
+    private static void assertRecovered(RTPpacket expected, RTPpacket actual) {
+        assertEquals(expected.getPayloadType(), actual.getPayloadType(), "Payload type mismatch");
+        assertEquals(expected.getSequenceNumber(), actual.getSequenceNumber(), "Sequence number mismatch");
+        assertEquals(expected.getTimeStamp(), actual.getTimeStamp(), "Timestamp mismatch");
+        assertArrayEquals(expected.getPayload(), actual.getPayload(), "Payload mismatch");
+    }
+
+    @Test
+    void testFieldArithmetic() {
+        for (int a = 1; a < 256; a++) {
+            assertEquals(1, GF256.mul(a, GF256.inv(a)), "a * 1/a should be 1");
+            for (int b = 1; b < 256; b++)
+                assertEquals(a, GF256.div(GF256.mul(a, b), b), "(a * b) / b should be a");
+        }
+        assertEquals(0, GF256.mul(0, 77));
+        assertThrows(ArithmeticException.class, () -> GF256.inv(0));
+
+        // A matrix times its inverse is the identity
+        Random random = new Random(1);
+        int[][] matrix = new int[5][5];
+        for (int[] row : matrix) {
+            for (int j = 0; j < row.length; j++)
+                row[j] = random.nextInt(256);
+        }
+        int[][] inverse = GF256.invert(matrix);
+        for (int i = 0; i < 5; i++) {
+            for (int j = 0; j < 5; j++) {
+                int sum = 0;
+                for (int k = 0; k < 5; k++)
+                    sum ^= GF256.mul(matrix[i][k], inverse[k][j]);
+                assertEquals(i == j ? 1 : 0, sum, "Product should be the identity");
+            }
+        }
+    }
+
+    @Test
+    void testRecoversUpToRepairCountLosses() {
+        Random random = new Random(2);
+        RTPpacket[] packets = FecFixtures.packets(random, 65530, FecFixtures.lengths(random, 10, 1, 300)); // Crosses the sequence number wraparound
+        RsEncoder encoder = new RsEncoder(4);
+        List<RsRepairPacket> repairs = encode(encoder, packets, 65530);
+
+        // Every combination of 1 to 4 losses out of 10
+        for (int lostMask = 1; lostMask < 1 << packets.length; lostMask++) {
+            int lost = Integer.bitCount(lostMask);
+            if (lost > repairs.size())
+                continue;
+            MapWindow window = new MapWindow();
+            for (int i = 0; i < packets.length; i++) {
+                if ((lostMask & 1 << i) == 0)
+                    window.packets.put(65530L + i, packets[i]);
+            }
+            RsDecoder decoder = new RsDecoder(8);
+            int recovered = 0;
+            // Receive the last repair packets only, so other rows of the matrix are used
+            for (int r = repairs.size() - lost; r < repairs.size(); r++)
+                recovered += decoder.add(repairs.get(r), window);
+            assertEquals(lost, recovered, "Every lost packet should be recovered, lost mask " + Integer.toBinaryString(lostMask));
+            for (int i = 0; i < packets.length; i++)
+                assertRecovered(packets[i], window.packets.get(65530L + i));
+        }
+    }
+
+    @Test
+    void testTooManyLosses() {
+        Random random = new Random(3);
+        RTPpacket[] packets = FecFixtures.packets(random, 100, FecFixtures.lengths(random, 8, 1, 300));
+        List<RsRepairPacket> repairs = encode(new RsEncoder(3), packets, 100);
+        MapWindow window = new MapWindow();
+        for (int i = 3; i < packets.length; i++)
+            window.packets.put(100L + i, packets[i]);
+        RsDecoder decoder = new RsDecoder(8);
+        assertEquals(0, decoder.add(repairs.get(0), window), "3 losses can not be recovered with 1 repair packet");
+        assertEquals(0, decoder.add(repairs.get(1), window), "3 losses can not be recovered with 2 repair packets");
+        assertEquals(0, decoder.add(repairs.get(1), window), "Duplicate repair packets are ignored");
+        assertEquals(1, decoder.getPendingCount(), "The group should wait for more packets");
+
+        // One of the lost packets arrives late, the next repair packet recovers the other two
+        window.packets.put(100L, packets[0]);
+        assertEquals(2, decoder.add(repairs.get(2), window));
+        assertEquals(0, decoder.getPendingCount(), "Recovered groups are done");
+        for (int i = 0; i < packets.length; i++)
+            assertRecovered(packets[i], window.packets.get(100L + i));
+    }
+
+    @Test
+    void testLongMask() {
+        Random random = new Random(5);
+        RTPpacket[] packets = FecFixtures.packets(random, 500, FecFixtures.lengths(random, 40, 1, 300));
+        List<RsRepairPacket> repairs = encode(new RsEncoder(4), packets, 500);
+        assertEquals(40, repairs.get(0).getMaskLength(), "Protected packet count mismatch");
+        MapWindow window = new MapWindow();
+        int[] lost = { 3, 17, 30, 39 }; // Beyond the short mask
+        for (int i = 0; i < packets.length; i++)
+            window.packets.put(500L + i, packets[i]);
+        for (int i : lost)
+            window.packets.remove(500L + i);
+        RsDecoder decoder = new RsDecoder(8);
+        int recovered = 0;
+        for (RsRepairPacket repair : repairs)
+            recovered += decoder.add(repair, window);
+        assertEquals(lost.length, recovered, "Every lost packet should be recovered");
+        for (int i = 0; i < packets.length; i++)
+            assertRecovered(packets[i], window.packets.get(500L + i));
+    }
+
+    @Test
+    void testBufferMatchesArray() {
+        Random random = new Random(4);
+        RTPpacket[] packets = FecFixtures.packets(random, 7, FecFixtures.lengths(random, 5, 1, 300));
+        RsEncoder fromArrays = new RsEncoder(3, 16); // Grown by the first packets
+        RsEncoder fromBuffers = new RsEncoder(3);
+        for (RTPpacket packet : packets) {
+            fromArrays.add(packet);
+            ByteBuffer direct = ByteBuffer.allocateDirect(packet.getPayloadLength());
+            direct.put(packet.getPayload()).flip();
+            fromBuffers.add(packet.getPayloadType(), packet.getSequenceNumber(), packet.getTimeStamp(), direct);
+        }
+        assertEquals(fromArrays.getFecPacketSize(), fromBuffers.getFecPacketSize(), "Repair packet size mismatch");
+        for (int i = 0; i < 3; i++)
+            assertEquals(fromArrays.finish(i), fromBuffers.finish(i), "Repair packet mismatch");
+
+        assertThrows(IllegalArgumentException.class, () -> new RsEncoder(0));
+        assertThrows(IllegalArgumentException.class, () -> new RsEncoder(RsEncoder.MAX_REPAIR_PACKETS + 1));
+        assertThrows(IllegalStateException.class, () -> new RsEncoder(1).finish(0));
+        RsEncoder encoder = new RsEncoder(1);
+        encoder.add(packets[0]);
+        assertThrows(IllegalArgumentException.class, () -> encoder.add(packets[0]), "Duplicate packets should be rejected");
+        assertEquals(CommonValues.RS_HEADER_SIZE + CommonValues.FEC_HEADER_SIZE + CommonValues.FEC_LEVEL_HEADER_SIZE
+                + packets[0].getPayloadLength(), encoder.getFecPacketSize());
+    }
+}
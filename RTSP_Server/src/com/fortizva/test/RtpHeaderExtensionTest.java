@@ -0,0 +1,129 @@
+package com.fortizva.test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.ByteBuffer;
+
+import org.junit.jupiter.api.Test;
+
+import com.fortizva.packets.AbsSendTime;
+import com.fortizva.packets.CommonValues;
+import com.fortizva.packets.HeaderCodec;
+import com.fortizva.packets.RTPpacket;
+import com.fortizva.packets.RtpHeaderExtension;
+import com.fortizva.packets.RtpView;
+
+class RtpHeaderExtensionTest {
+
+    private static final byte[] PAYLOAD = { 0x11, 0x22, 0x33, 0x44, 0x55 };
+
+    @Test
+    void testOneByteExtensionRoundTrip() {
+        RtpHeaderExtension ext = new RtpHeaderExtension().add(1, new byte[] { 0x0A }).add(14,
+                new byte[] { 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16 });
+        assertFalse(ext.isTwoByte(), "One-byte form expected");
+        // 4 bytes of header + (1 + 1) + (1 + 16) bytes of elements, padded to 20
+        assertEquals(24, ext.getSize(), "Extension size mismatch");
+
+        int[] csrc = { 0x01020304, 0xCAFEBABE };
+        RTPpacket sent = new RTPpacket(96, 1234, 0x55667788, csrc, ext, ByteBuffer.wrap(PAYLOAD));
+        assertEquals(12 + 8 + 24, sent.getHeaderLength(), "Header length mismatch");
+        byte[] bits = sent.getPacket();
+        assertEquals(0xBE, bits[20] & 0xFF, "Profile mismatch");
+        assertEquals(0xDE, bits[21] & 0xFF, "Profile mismatch");
+
+        RTPpacket received = new RTPpacket(bits, bits.length);
+        assertEquals(1, received.Extension, "X bit mismatch");
+        assertEquals(2, received.CC, "CC mismatch");
+        assertEquals(csrc[0], received.getCsrc(0), "CSRC mismatch");
+        assertEquals(csrc[1], received.getCsrc(1), "CSRC mismatch");
+        assertEquals(1234, received.getSequenceNumber(), "Sequence number mismatch");
+        assertArrayEquals(PAYLOAD, received.getPayload(), "Payload mismatch");
+        RtpHeaderExtension parsed = received.getHeaderExtension();
+        assertEquals(2, parsed.getCount(), "Element count mismatch");
+        assertArrayEquals(ext.get(1), parsed.get(1), "Element 1 mismatch");
+        assertArrayEquals(ext.get(14), parsed.get(14), "Element 14 mismatch");
+
+        // The view finds the same payload and elements without copying
+        RtpView view = new RtpView(ByteBuffer.wrap(bits));
+        assertTrue(view.isValid(), "View should be valid");
+        assertEquals(sent.getHeaderLength(), view.getHeaderLength(), "View header length mismatch");
+        assertEquals(csrc[1], view.getCsrc(1), "View CSRC mismatch");
+        assertEquals(PAYLOAD.length, view.getPayloadLength(), "View payload length mismatch");
+        int at = view.getExtensionElementOffset(14);
+        assertEquals(1, bits[at], "Element 14 data offset mismatch");
+        assertEquals(-1, view.getExtensionElementOffset(2), "Missing element found");
+    }
+
+    @Test
+    void testTwoByteExtensionRoundTrip() {
+        // An ID above 14, an empty element and an element longer than 16 bytes need the two-byte form
+        byte[] big = new byte[40];
+        for (int i = 0; i < big.length; i++)
+            big[i] = (byte) i;
+        RtpHeaderExtension ext = new RtpHeaderExtension().add(200, big).add(3, new byte[0]);
+        assertTrue(ext.isTwoByte(), "Two-byte form expected");
+
+        RTPpacket sent = new RTPpacket(26, 7, 0, null, ext, ByteBuffer.wrap(PAYLOAD));
+        byte[] bits = sent.getPacket();
+        assertEquals(0x10, bits[12] & 0xFF, "Profile mismatch");
+        assertEquals(0x00, bits[13] & 0xFF, "Profile mismatch");
+
+        RTPpacket received = new RTPpacket(bits, bits.length);
+        RtpHeaderExtension parsed = received.getHeaderExtension();
+        assertArrayEquals(big, parsed.get(200), "Element 200 mismatch");
+        assertArrayEquals(new byte[0], parsed.get(3), "Empty element mismatch");
+        assertArrayEquals(PAYLOAD, received.getPayload(), "Payload mismatch");
+
+        // Pooled packets refilled from a view keep the whole header
+        RtpView view = new RtpView(ByteBuffer.wrap(bits));
+        RTPpacket copy = new RTPpacket(view);
+        assertArrayEquals(bits, copy.getPacket(), "Packet copied from the view mismatch");
+    }
+
+    @Test
+    void testPacketWithoutExtension() {
+        RTPpacket sent = new RTPpacket(26, 7, 0, PAYLOAD, PAYLOAD.length);
+        RTPpacket received = new RTPpacket(sent.getPacket(), sent.getSize());
+        assertNull(received.getHeaderExtension(), "No extension expected");
+        assertEquals(12, received.getHeaderLength(), "Header length mismatch");
+        assertFalse(AbsSendTime.stamp(sent.getPacket(), sent.getSize()), "No abs-send-time element expected");
+    }
+
+    @Test
+    void testTruncatedExtensionHeader() {
+        // X bit set, but only 2 bytes follow the fixed header: no room for the extension header
+        RTPpacket sent = new RTPpacket(26, 7, 0, new byte[2], 2);
+        byte[] bits = sent.getPacket();
+        bits[0] |= 0x10;
+        assertEquals(14, bits.length, "Packet size mismatch");
+        assertEquals(-1, HeaderCodec.rtpHeaderLength(bits, 0, bits.length), "HeaderCodec should reject the packet");
+        assertFalse(new RtpView(ByteBuffer.wrap(bits)).isValid(), "RtpView should reject the packet");
+    }
+
+    @Test
+    void testAbsSendTime() {
+        // 6.18 fixed point seconds
+        assertEquals(1 << 18, AbsSendTime.fromNanos(1_000_000_000L), "One second mismatch");
+        assertEquals(0, AbsSendTime.fromNanos(64_000_000_000L), "Values should wrap every 64 s");
+        int earlier = AbsSendTime.fromNanos(63_990_000_000L);
+        int later = AbsSendTime.fromNanos(64_010_000_000L);
+        assertEquals(20_000_000L, AbsSendTime.deltaNanos(later, earlier), 4_000L);
+        assertEquals(-20_000_000L, AbsSendTime.deltaNanos(earlier, later), 4_000L);
+
+        RTPpacket sent = new RTPpacket(26, 7, 0, null, AbsSendTime.newExtension(), ByteBuffer.wrap(PAYLOAD));
+        byte[] bits = sent.getPacket();
+        assertEquals(12 + 8, sent.getHeaderLength(), "Header length mismatch");
+        assertTrue(AbsSendTime.stamp(bits, bits.length), "abs-send-time element expected");
+        RtpView view = new RtpView(ByteBuffer.wrap(bits));
+        int at = view.getExtensionElementOffset(CommonValues.ABS_SEND_TIME_ID);
+        assertEquals(12 + 4 + 1, at, "abs-send-time offset mismatch");
+        long now = System.nanoTime();
+        long elapsed = AbsSendTime.deltaNanos(AbsSendTime.fromNanos(now), AbsSendTime.get(ByteBuffer.wrap(bits), at));
+        assertTrue(elapsed >= 0 && elapsed < 1_000_000_000L, "Stamped time should be just before now: " + elapsed);
+    }
+}
@@ -0,0 +1,103 @@
+package com.fortizva.test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.PriorityQueue;
+
+import org.junit.jupiter.api.Test;
+
+import com.fortizva.packets.FECpacket;
+import com.fortizva.packets.RTPpacket;
+import com.fortizva.packets.SequenceTracker;
+
+class SequenceTrackerTest {
+
+    @Test
+    void testWraparound() {
+        SequenceTracker tracker = new SequenceTracker();
+        // Start near the end of the 16-bit range and run through two wraparounds
+        long expected = 65530;
+        for (int i = 0; i < 2 * 65536; i++) {
+            int wire = (int) (expected & 0xFFFF);
+            assertEquals(expected, tracker.extend(wire), "Extended sequence number mismatch at packet " + i);
+            expected++;
+        }
+        assertEquals(2, tracker.getCycles(), "Cycle count mismatch");
+        assertEquals(expected - 1, tracker.getHighest(), "Highest sequence number mismatch");
+    }
+
+    @Test
+    void testReorderAndLossAcrossWraparound() {
+        SequenceTracker tracker = new SequenceTracker();
+        assertEquals(65534, tracker.extend(65534));
+        assertEquals(65536 + 1, tracker.extend(1), "Gap across the wraparound should be accepted");
+        // Late packets from the previous cycle keep their place
+        assertEquals(65535, tracker.extend(65535), "Reordered packet mismatch");
+        assertEquals(65536, tracker.extend(0), "Reordered packet mismatch");
+        assertEquals(65536 + 1, tracker.extend(1), "Duplicate packet mismatch");
+        assertEquals(65536 + 1, tracker.getHighest(), "Reordered packets should not move the highest");
+        // SN base of a FEC packet started before the wraparound
+        assertEquals(65530, tracker.unwrap(65530), "Unwrapped FEC base mismatch");
+        assertEquals(65536 + 2, tracker.unwrap(2), "Unwrapped FEC base mismatch");
+    }
+
+    @Test
+    void testLargeJumpNeedsConfirmation() {
+        SequenceTracker tracker = new SequenceTracker();
+        tracker.extend(100);
+        tracker.extend(101);
+        assertEquals(-1, tracker.extend(30000), "Unconfirmed jump should be dropped");
+        assertEquals(102, tracker.extend(102), "Stream should continue after a stray packet");
+        assertEquals(-1, tracker.extend(20000), "Unconfirmed jump should be dropped");
+        // The sender restarted its numbering: extended numbers keep growing
+        long restarted = tracker.extend(20001);
+        assertEquals(20001, restarted, "Confirmed jump mismatch");
+        assertEquals(-1, tracker.extend(5), "Unconfirmed jump should be dropped");
+        assertEquals(65536 + 6, tracker.extend(6), "Jump back should start a new cycle");
+    }
+
+    @Test
+    void testPacketOrderAcrossWraparound() {
+        SequenceTracker tracker = new SequenceTracker();
+        PriorityQueue<RTPpacket> buffer = new PriorityQueue<>();
+        byte[] payload = { 0x01 };
+        int[] arrival = { 65533, 65535, 0, 65534, 2, 1 };
+        for (int seq : arrival) {
+            RTPpacket packet = new RTPpacket(26, seq, 0, payload, payload.length);
+            packet.setExtendedSequenceNumber(tracker.extend(seq));
+            buffer.offer(packet);
+        }
+        int[] played = new int[arrival.length];
+        for (int i = 0; i < played.length; i++)
+            played[i] = buffer.poll().getSequenceNumber();
+        assertArrayEquals(new int[] { 65533, 65534, 65535, 0, 1, 2 }, played, "Playback order mismatch");
+    }
+
+    @Test
+    void testFecRecoveryAcrossWraparound() {
+        byte[][] payloads = { { 1, 2, 3 }, { 4, 5 }, { 6, 7, 8, 9 } };
+        int[] seqs = { 65535, 0, 1 };
+        RTPpacket[] group = new RTPpacket[seqs.length];
+        for (int i = 0; i < group.length; i++)
+            group[i] = new RTPpacket(26, seqs[i], 3000 * i, payloads[i], payloads[i].length);
+        FECpacket sent = new FECpacket(group);
+        assertArrayEquals(new int[] { 65535, 0, 1 }, sent.getProtectedSequenceNumbers(), "Wire sequence numbers mismatch");
+
+        // Receiver side: the tracker has seen the packets around the FEC group
+        SequenceTracker tracker = new SequenceTracker();
+        tracker.extend(65534);
+        tracker.extend(65535);
+        tracker.extend(1);
+        FECpacket received = new FECpacket(sent.getFecPacket());
+        received.setExtendedBaseSequenceNumber(tracker.unwrap(received.getBaseSequenceNumber()));
+        assertArrayEquals(new long[] { 65535, 65536, 65537 }, received.getExtendedProtectedSequenceNumbers(),
+                "Extended sequence numbers mismatch");
+
+        // Packet 0 was lost
+        RTPpacket recovered = received.recoverPacket(new RTPpacket[] { group[0], group[2] }, 1);
+        assertEquals(0, recovered.getSequenceNumber(), "Recovered sequence number mismatch");
+        assertEquals(65536, recovered.getExtendedSequenceNumber(), "Recovered extended sequence number mismatch");
+        assertArrayEquals(payloads[1], recovered.getPayload(), "Recovered payload mismatch");
+    }
+}
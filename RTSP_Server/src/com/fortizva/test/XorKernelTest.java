@@ -0,0 +1,68 @@
+package com.fortizva.test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import com.fortizva.packets.CommonValues;
+import com.fortizva.packets.FECpacket;
+import com.fortizva.packets.RTPpacket;
+import com.fortizva.packets.XorKernel;
+
+class XorKernelTest {
+
+    @Test
+    void testMatchesByteLoop() {
+        Random random = new Random(42);
+        // Every length around the word size, at aligned and unaligned offsets
+        for (int length = 0; length <= 70; length++) {
+            for (int dstOff = 0; dstOff < 3; dstOff++) {
+                int srcOff = (dstOff * 5) % 8;
+                byte[] src = new byte[srcOff + length + 4];
+                byte[] expected = new byte[dstOff + length + 4];
+                random.nextBytes(src);
+                random.nextBytes(expected);
+                byte[] actual = expected.clone();
+
+                XorKernel.xorBytes(expected, dstOff, src, srcOff, length);
+                XorKernel.xorInto(actual, dstOff, src, srcOff, length);
+                assertArrayEquals(expected, actual, "XOR mismatch for " + length + " bytes at " + dstOff + "/" + srcOff);
+            }
+        }
+    }
+
+    @Test
+    void testFecPayloadMatchesByteLoop() {
+        Random random = new Random(7);
+        int[] lengths = { 1, 1000, 1024, 999, 1500, 7, 64 * 1024 - 14 };
+        RTPpacket[] group = new RTPpacket[lengths.length];
+        int largest = 0;
+        for (int i = 0; i < group.length; i++) {
+            byte[] payload = new byte[lengths[i]];
+            random.nextBytes(payload);
+            group[i] = new RTPpacket(CommonValues.MJPEG_TYPE, 100 + i, 3000 * i, payload, payload.length);
+            largest = Math.max(largest, lengths[i]);
+        }
+        // Shorter payloads are zero padded: only their own bytes are XORed
+        byte[] expected = new byte[largest];
+        for (RTPpacket packet : group)
+            XorKernel.xorBytes(expected, 0, packet.getPayload(), 0, packet.getPayloadLength());
+
+        FECpacket fec = new FECpacket(group);
+        assertArrayEquals(expected, fec.getXorPayload(), "FEC payload mismatch");
+
+        // Every packet of the group can be recovered from the others
+        FECpacket received = new FECpacket(fec.getFecPacket());
+        for (int lost = 0; lost < group.length; lost++) {
+            RTPpacket[] others = new RTPpacket[group.length - 1];
+            for (int i = 0, j = 0; i < group.length; i++) {
+                if (i != lost)
+                    others[j++] = group[i];
+            }
+            RTPpacket recovered = received.recoverPacket(others, lost);
+            assertArrayEquals(group[lost].getPayload(), recovered.getPayload(), "Recovered payload mismatch for packet " + lost);
+        }
+    }
+}
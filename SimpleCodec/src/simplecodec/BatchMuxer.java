@@ -0,0 +1,314 @@
+package simplecodec;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.Semaphore;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Muxes every clip of a directory tree in parallel.
+ * <br>
+ * Video inputs are the .5mjpeg (length prefixed) and .mjpeg/.mjpg (raw MJPEG) files found
+ * under the input directory. The audio of a clip is the .pcm file with the same base name,
+ * clips without one get silence. Each output is written to the same relative path under the
+ * output directory with the .mjpeg extension. The containers use the same extension, so
+ * .mjpeg files starting with a container header instead of a JPEG marker are already muxed
+ * and are left out. Clips that would be written to the same output (clip.5mjpeg and
+ * clip.mjpeg) fail instead of overwriting each other.
+ * <br>
+ * Clips are muxed on a {@link ForkJoinPool}, while a {@link Semaphore} bounds the number of
+ * files being read and written at the same time (the workers wait for it through
+ * {@link ForkJoinPool#managedBlock}). Outputs newer than their inputs are skipped.
+ * A manifest with the stats of every clip is written to {@link #MANIFEST} in the output directory.
+ * <br>
+ * Usage: java simplecodec.BatchMuxer &ltinput dir&gt &ltoutput dir&gt [-j=threads] [-io=concurrent files]
+ * [muxer options]
+ */
+public class BatchMuxer {
+
+    static final String MANIFEST = "manifest.csv";
+    static final int DEFAULT_IO_PERMITS = 4; // Files muxed at the same time by default
+
+    /**
+     * Result of a clip.
+     */
+    static class Entry {
+        final Path video;
+        final Path audio; // null if the clip has no audio file
+        final Path output;
+        String status = "pending"; // muxed, skipped or failed
+        int frames;
+        long inputBytes;
+        long outputBytes;
+        long millis;
+        String error = "";
+
+        Entry(Path video, Path audio, Path output) {
+            this.video = video;
+            this.audio = audio;
+            this.output = output;
+        }
+    }
+
+    private final Muxer.Options options;
+    private final Semaphore io;
+
+    BatchMuxer(Muxer.Options options, int ioPermits) {
+        this.options = options;
+        this.io = new Semaphore(Math.max(ioPermits, 1));
+    }
+
+    /**
+     * Lists the clips of the input directory. Clips whose output is already taken by an
+     * earlier clip are marked as failed.
+     */
+    static List<Entry> scan(Path inDir, Path outDir) throws IOException {
+        try (Stream<Path> files = Files.walk(inDir)) {
+            List<Entry> entries = new ArrayList<>();
+            Map<Path, Entry> outputs = new HashMap<>();
+            for (Path video : files.filter(BatchMuxer::isVideo).sorted().collect(Collectors.toList())) {
+                if (isRaw(video) && isContainer(video))
+                    continue; // Already muxed
+                Path audio = video.resolveSibling(baseName(video) + ".pcm");
+                Path rel = inDir.relativize(video);
+                Path output = outDir.resolve(rel).resolveSibling(baseName(video) + ".mjpeg");
+                Entry entry = new Entry(video, Files.isRegularFile(audio) ? audio : null, output);
+                Entry previous = outputs.putIfAbsent(output, entry);
+                if (previous != null) {
+                    entry.status = "failed";
+                    entry.error = "same output as " + previous.video;
+                }
+                entries.add(entry);
+            }
+            return entries;
+        }
+    }
+
+    static boolean isVideo(Path p) {
+        String name = p.getFileName().toString().toLowerCase();
+        return Files.isRegularFile(p) && (name.endsWith(".5mjpeg") || name.endsWith(".mjpeg") || name.endsWith(".mjpg"));
+    }
+
+    /**
+     * A raw MJPEG stream starts with a JPEG marker (0xFF), a container with its version.
+     *
+     * @return true if the file starts with a container header
+     */
+    static boolean isContainer(Path p) throws IOException {
+        if (Files.size(p) < Muxer.HEADER_SIZE)
+            return false;
+        try (InputStream in = Files.newInputStream(p)) {
+            int version = in.read();
+            return version == Muxer.VERSION_1 || version == Muxer.VERSION_2;
+        }
+    }
+
+    static boolean isRaw(Path p) {
+        return !p.getFileName().toString().toLowerCase().endsWith(".5mjpeg");
+    }
+
+    static String baseName(Path p) {
+        String name = p.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        return (dot > 0) ? name.substring(0, dot) : name;
+    }
+
+    /**
+     * @return true if the output exists and is newer than all of its inputs
+     */
+    static boolean isUpToDate(Entry e) throws IOException {
+        if (!Files.isRegularFile(e.output))
+            return false;
+        long out = Files.getLastModifiedTime(e.output).toMillis();
+        if (Files.getLastModifiedTime(e.video).toMillis() > out)
+            return false;
+        return e.audio == null || Files.getLastModifiedTime(e.audio).toMillis() <= out;
+    }
+
+    /**
+     * Muxes a single clip, recording the result in its entry.
+     */
+    void process(Entry e) {
+        try {
+            if (isUpToDate(e)) {
+                e.status = "skipped";
+                return;
+            }
+            Files.createDirectories(e.output.getParent());
+            acquireIo();
+            long start = System.nanoTime();
+            try (VideoSource video = Muxer.Options.openVideo(e.video.toString(), isRaw(e.video))) {
+                Path[] audio = (e.audio == null) ? new Path[0] : new Path[] { e.audio };
+                Muxer muxer = options.create(e.output, audio.length);
+                try {
+                    Muxer.mux(video, audio, muxer);
+                } finally {
+                    muxer.close();
+                }
+                e.frames = muxer.getNumFrames();
+                e.inputBytes = muxer.getInputBytes();
+                e.outputBytes = muxer.getOutputBytes();
+                if (e.frames == 0)
+                    throw new IOException("No frames found");
+            } finally {
+                io.release();
+                e.millis = (System.nanoTime() - start) / 1000000;
+            }
+            e.status = "muxed";
+        } catch (IOException ex) {
+            e.status = "failed";
+            e.error = ex.toString();
+            try {
+                Files.deleteIfExists(e.output); // Do not leave a broken output that looks up to date
+            } catch (IOException ignored) {
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            e.status = "failed";
+            e.error = "interrupted";
+        }
+    }
+
+    /**
+     * Takes an I/O permit. The wait is managed, so the pool can start another worker while
+     * this one is blocked.
+     */
+    private void acquireIo() throws InterruptedException {
+        ForkJoinPool.managedBlock(new ForkJoinPool.ManagedBlocker() {
+            private boolean acquired = false;
+
+            @Override
+            public boolean block() throws InterruptedException {
+                if (!acquired) {
+                    io.acquire();
+                    acquired = true;
+                }
+                return true;
+            }
+
+            @Override
+            public boolean isReleasable() {
+                if (!acquired)
+                    acquired = io.tryAcquire();
+                return acquired;
+            }
+        });
+    }
+
+    /**
+     * Splits the list of clips until each task muxes a single one.
+     */
+    class MuxTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final List<Entry> entries;
+
+        MuxTask(List<Entry> entries) {
+            this.entries = entries;
+        }
+
+        @Override
+        protected void compute() {
+            if (entries.size() == 1) {
+                process(entries.get(0));
+                return;
+            }
+            int mid = entries.size() / 2;
+            invokeAll(new MuxTask(entries.subList(0, mid)), new MuxTask(entries.subList(mid, entries.size())));
+        }
+    }
+
+    /**
+     * Writes the manifest of the batch.
+     */
+    static void writeManifest(Path file, List<Entry> entries) throws IOException {
+        try (PrintWriter w = new PrintWriter(Files.newBufferedWriter(file))) {
+            w.println("input,audio,output,status,frames,input_bytes,output_bytes,millis,mb_per_s,error");
+            for (Entry e : entries) {
+                double mbps = (e.millis > 0) ? e.inputBytes / 1e3 / e.millis : 0;
+                w.println(String.format("%s,%s,%s,%s,%d,%d,%d,%d,%.1f,%s", csv(e.video), csv(e.audio), csv(e.output),
+                        e.status, e.frames, e.inputBytes, e.outputBytes, e.millis, mbps, csv(e.error)));
+            }
+        }
+    }
+
+    static String csv(Object o) {
+        String s = (o == null) ? "" : o.toString();
+        return (s.contains(",") || s.contains("\"")) ? "\"" + s.replace("\"", "\"\"") + "\"" : s;
+    }
+
+    /**
+     * @param args &ltinput dir&gt &ltoutput dir&gt [-j=threads] [-io=concurrent files] [muxer options]
+     */
+    public static void main(String[] args) {
+        if (args.length < 2) {
+            System.out.println("Usage: java simplecodec.BatchMuxer <input dir> <output dir> [-j=threads] [-io=concurrent files] "
+                    + Muxer.Options.usage());
+            System.exit(1);
+        }
+        Path inDir = Paths.get(args[0]).toAbsolutePath().normalize();
+        Path outDir = Paths.get(args[1]).toAbsolutePath().normalize();
+        if (outDir.startsWith(inDir) || inDir.startsWith(outDir)) {
+            System.out.println("The input and output directories must not contain each other");
+            System.exit(1);
+        }
+        Muxer.Options options = new Muxer.Options();
+        int threads = Runtime.getRuntime().availableProcessors();
+        int ioPermits = DEFAULT_IO_PERMITS;
+        try {
+            for (int i = 2; i < args.length; i++) {
+                String arg = args[i];
+                if (arg.startsWith("-j="))
+                    threads = Math.max(Integer.parseInt(arg.substring(3)), 1);
+                else if (arg.startsWith("-io="))
+                    ioPermits = Integer.parseInt(arg.substring(4));
+                else if (!options.parse(arg))
+                    System.out.println("Unknown argument: \"" + arg + "\". Ignoring it.");
+            }
+        } catch (NumberFormatException e) {
+            System.out.println("Invalid argument: " + e.getMessage());
+            System.exit(1);
+        }
+
+        try {
+            List<Entry> entries = scan(inDir, outDir);
+            List<Entry> pending = entries.stream().filter(e -> e.status.equals("pending")).collect(Collectors.toList());
+            long start = System.nanoTime();
+            if (!pending.isEmpty()) {
+                BatchMuxer batch = new BatchMuxer(options, ioPermits);
+                ForkJoinPool pool = new ForkJoinPool(threads);
+                try {
+                    pool.invoke(batch.new MuxTask(pending));
+                } finally {
+                    pool.shutdown();
+                }
+            }
+            double seconds = Math.max(System.nanoTime() - start, 1) / 1e9;
+            Files.createDirectories(outDir);
+            writeManifest(outDir.resolve(MANIFEST), entries);
+
+            long muxed = entries.stream().filter(e -> e.status.equals("muxed")).count();
+            long skipped = entries.stream().filter(e -> e.status.equals("skipped")).count();
+            long failed = entries.stream().filter(e -> e.status.equals("failed")).count();
+            long bytes = entries.stream().mapToLong(e -> e.inputBytes).sum();
+            System.out.println(String.format("%d clips: %d muxed, %d up to date, %d failed. %.1f MB in %.2f s (%.1f MB/s) with %d threads",
+                    entries.size(), muxed, skipped, failed, bytes / 1e6, seconds, bytes / 1e6 / seconds, threads));
+            for (Entry e : entries)
+                if (e.status.equals("failed"))
+                    System.out.println("Failed: " + e.video + ": " + e.error);
+        } catch (IOException e) {
+            System.out.println("Error reading " + inDir + ": " + e);
+            System.exit(1);
+        }
+    }
+}
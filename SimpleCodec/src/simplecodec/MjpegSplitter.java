@@ -0,0 +1,205 @@
+package simplecodec;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Splits a raw MJPEG stream (as written by "ffmpeg -f mjpeg") into JPEG frames.
+ * <br>
+ * A frame goes from a start of image marker (0xFFD8) to the next end of image marker
+ * (0xFFD9), both included. The stream is read in large blocks and searched 8 bytes at a
+ * time for 0xFF bytes, only the words holding one are checked byte by byte. Frames are
+ * returned as slices of the read buffer, which grows if a frame does not fit in it.
+ * <br>
+ * It can feed {@link Muxer} directly, or be run on its own to write the 5 digits length
+ * prefixed (.5mjpeg) files used by {@link SimpleCodec}:
+ * <br>
+ * Usage: java simplecodec.MjpegSplitter &ltinput.mjpeg | -&gt &ltoutput.5mjpeg&gt
+ */
+public class MjpegSplitter implements VideoSource {
+
+    static final int BUFFER_SIZE = 4 << 20; // Initial size of the read buffer
+    static final byte MARKER = (byte) 0xFF;
+    static final byte SOI = (byte) 0xD8; // Start of image
+    static final byte EOI = (byte) 0xD9; // End of image
+    static final int MAX_V1_FRAME_SIZE = 99999; // Largest frame a 5 digits length can hold
+
+    private static final VarHandle LONGS = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final long ONES = 0x0101010101010101L;
+    private static final long HIGHS = 0x8080808080808080L;
+
+    private final ReadableByteChannel in;
+    private byte[] buf;
+    private int limit; // end of the valid data in buf
+    private int pos; // next byte to search
+    private int frameStart = -1; // start of the current frame, -1 outside a frame
+    private long bytesRead;
+
+    /**
+     * @param in raw MJPEG stream
+     */
+    public MjpegSplitter(ReadableByteChannel in) {
+        this(in, BUFFER_SIZE);
+    }
+
+    /**
+     * @param in         raw MJPEG stream
+     * @param bufferSize initial size of the read buffer
+     */
+    MjpegSplitter(ReadableByteChannel in, int bufferSize) {
+        this.in = in;
+        buf = new byte[bufferSize];
+    }
+
+    /**
+     * Opens a raw MJPEG file, or the standard input for "-".
+     *
+     * @param name path of the file or "-"
+     * @return the splitter
+     * @throws IOException if the file can not be opened
+     */
+    public static MjpegSplitter open(String name) throws IOException {
+        if (name.equals("-"))
+            return new MjpegSplitter(Channels.newChannel(System.in));
+        return new MjpegSplitter(FileChannel.open(Paths.get(name), StandardOpenOption.READ));
+    }
+
+    @Override
+    public ByteBuffer nextFrame() throws IOException {
+        while (true) {
+            int m = findMarker();
+            if (m < 0) {
+                if (!refill())
+                    return null; // A frame cut by the end of the stream is dropped
+                continue;
+            }
+            pos = m + 2;
+            if (buf[m + 1] == SOI && frameStart < 0) {
+                frameStart = m;
+            } else if (buf[m + 1] == EOI && frameStart >= 0) {
+                ByteBuffer frame = ByteBuffer.wrap(buf, frameStart, pos - frameStart);
+                frameStart = -1;
+                return frame;
+            }
+        }
+    }
+
+    /**
+     * Finds the next 0xFF byte followed by a start or end of image marker.
+     *
+     * @return the offset of the 0xFF byte, -1 if the buffer holds no more markers
+     */
+    private int findMarker() {
+        int i = pos;
+        int end = limit - 1; // The second byte of the marker must be in the buffer too
+        while (i < end) {
+            if (i + Long.BYTES <= end) {
+                // The word has a 0xFF byte if its complement has a zero byte
+                long x = ~(long) LONGS.get(buf, i);
+                if (((x - ONES) & ~x & HIGHS) == 0) {
+                    i += Long.BYTES;
+                    continue;
+                }
+            }
+            int stop = Math.min(i + Long.BYTES, end);
+            for (; i < stop; i++) {
+                if (buf[i] == MARKER && (buf[i + 1] == SOI || buf[i + 1] == EOI))
+                    return i;
+            }
+        }
+        pos = Math.max(pos, end); // The last byte may be the first half of a marker
+        return -1;
+    }
+
+    /**
+     * Drops the bytes that are no longer needed and reads the next block.
+     *
+     * @return false at the end of the stream
+     */
+    private boolean refill() throws IOException {
+        int keep = (frameStart >= 0) ? frameStart : pos;
+        System.arraycopy(buf, keep, buf, 0, limit - keep);
+        limit -= keep;
+        pos -= keep;
+        if (frameStart >= 0)
+            frameStart = 0;
+        if (limit == buf.length) {
+            // The frame does not fit in the buffer
+            byte[] bigger = new byte[buf.length * 2];
+            System.arraycopy(buf, 0, bigger, 0, limit);
+            buf = bigger;
+        }
+        int n = in.read(ByteBuffer.wrap(buf, limit, buf.length - limit));
+        if (n < 0)
+            return false;
+        limit += n;
+        bytesRead += n;
+        return true;
+    }
+
+    /**
+     * @return bytes read from the stream so far
+     */
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    /**
+     * Converts a raw MJPEG stream into a 5 digits length prefixed file, replacing
+     * converter_mjpeg_to_5_length.go. Frames too big for the 5 digits prefix are skipped.
+     *
+     * @param args &ltinput.mjpeg | -&gt &ltoutput.5mjpeg&gt
+     */
+    public static void main(String[] args) {
+        if (args.length < 2) {
+            System.out.println("Usage: java simplecodec.MjpegSplitter <input.mjpeg | - for stdin> <output.5mjpeg>");
+            System.exit(1);
+        }
+        long start = System.nanoTime();
+        int frames = 0, skipped = 0;
+        try (MjpegSplitter splitter = open(args[0]);
+                FileChannel out = FileChannel.open(Paths.get(args[1]), StandardOpenOption.CREATE,
+                        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer outBuf = ByteBuffer.allocateDirect(BUFFER_SIZE);
+            ByteBuffer frame;
+            while ((frame = splitter.nextFrame()) != null) {
+                int length = frame.remaining();
+                if (length > MAX_V1_FRAME_SIZE) {
+                    skipped++;
+                    continue;
+                }
+                if (outBuf.remaining() < Muxer.FRAME_LENGTH_DIGITS + length) {
+                    outBuf.flip();
+                    while (outBuf.hasRemaining())
+                        out.write(outBuf);
+                    outBuf.clear();
+                }
+                outBuf.put(String.format("%05d", length).getBytes()).put(frame);
+                frames++;
+            }
+            outBuf.flip();
+            while (outBuf.hasRemaining())
+                out.write(outBuf);
+
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.println(String.format("%d frames (%d skipped, too big), %.1f MB in %.2f s (%.1f MB/s)",
+                    frames, skipped, splitter.getBytesRead() / 1e6, seconds, splitter.getBytesRead() / 1e6 / seconds));
+        } catch (IOException e) {
+            System.out.println("Error splitting " + args[0] + ": " + e);
+            System.exit(1);
+        }
+    }
+}
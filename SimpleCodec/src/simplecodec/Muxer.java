@@ -0,0 +1,467 @@
+package simplecodec;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Headless muxer of SimpleCodec container files.
+ * <br>
+ * It needs no display, every parameter is given as an argument. It is the only writer of the
+ * format: the {@link SimpleCodec} GUI, {@link BatchMuxer} and {@link RenditionLadder} all go
+ * through it.
+ * Video frames and audio chunks are streamed in a single pass through buffered NIO channels,
+ * the frame count (and the index offset of version 2 files) is patched into the header with
+ * a positioned write once the last record has been written.
+ * <br>
+ * Usage: java simplecodec.Muxer &ltvideo.5mjpeg&gt &ltoutput&gt [-a=audio.pcm]... [-fps=25]
+ * [-w=380] [-h=280] [-r=44100] [-b=16] [-c=1] [-v2] [-align=4096] [-raw]
+ * <br>
+ * With -raw, or "-" as video, the video is a raw MJPEG stream split by {@link MjpegSplitter},
+ * so the output of ffmpeg can be piped straight into the muxer.
+ */
+public class Muxer {
+
+    static final byte VERSION_1 = 1; // 5 digits ASCII frame lengths
+    static final byte VERSION_2 = 2; // Binary lengths, timestamps, embedded index and alignment
+    static final int HEADER_SIZE = 21; // Version 1 header size
+    static final int NUM_FRAMES_OFFSET = 2; // Offset of numFrames in the header
+    static final int FRAME_LENGTH_DIGITS = 5; // Version 1 frame lengths are 5 ASCII digits
+    static final int V2_EXTENSION_SIZE = 12; // indexOffset and alignment
+    static final int V2_RECORD_HEADER_SIZE = 12; // length and timestamp
+    static final int INDEX_ENTRY_LONGS = 4; // video offset, video length, audio offset, timestamp
+
+    static final int BUFFER_SIZE = 1 << 20; // Size of the input and output buffers
+
+    private final FileChannel out;
+    private final ByteBuffer outBuf = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private final byte version;
+    private final int alignment;
+    private final byte fps;
+    private final int nAudioTracks;
+    private final int chunkSize;
+    private long position; // bytes written to the output
+    private int numFrames; // records written so far
+    private long[] index = new long[0]; // [v2] embedded index entries
+
+    // Metrics
+    private long startTime;
+    private long inputBytes;
+
+    /**
+     * Creates the output file and writes its header.
+     *
+     * @param output       path of the container file
+     * @param version      container version (1 or 2)
+     * @param alignment    [v2] record alignment in bytes (1 for no padding)
+     * @param fps          frames per second
+     * @param width        frame width
+     * @param heigh        frame height
+     * @param nAudioTracks number of audio tracks (version 1 files hold a single one)
+     * @param SamplingRate audio sampling rate
+     * @param bitDepth     audio bit depth
+     * @param channelCount audio channel count
+     * @throws IOException if the file can not be created
+     */
+    public Muxer(Path output, byte version, int alignment, byte fps, int width, int heigh,
+            int nAudioTracks, int SamplingRate, byte bitDepth, byte channelCount) throws IOException {
+        this.version = version;
+        this.alignment = (version >= VERSION_2) ? Math.max(alignment, 1) : 1;
+        this.fps = fps;
+        this.nAudioTracks = (version >= VERSION_2) ? Math.max(nAudioTracks, 1) : 1;
+        this.chunkSize = SamplingRate * (bitDepth / 8) * channelCount / fps;
+        this.startTime = System.nanoTime();
+        out = FileChannel.open(output, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+
+        // numFrames (and indexOffset) are patched by close()
+        outBuf.put(version).put(fps).putInt(0).putInt(width).putInt(heigh).put((byte) this.nAudioTracks)
+                .putInt(SamplingRate).put(bitDepth).put(channelCount);
+        position = HEADER_SIZE;
+        if (version >= VERSION_2) {
+            outBuf.putLong(0).putInt(this.alignment);
+            position += V2_EXTENSION_SIZE;
+            pad();
+        }
+    }
+
+    /**
+     * @return size in bytes of the audio chunk of each track
+     */
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    /**
+     * @return number of audio tracks of each record
+     */
+    public int getTrackCount() {
+        return nAudioTracks;
+    }
+
+    /**
+     * Writes a record. Missing audio chunks, or chunks shorter than the chunk size, are
+     * completed with silence.
+     *
+     * @param video frame data
+     * @param audio one chunk per track
+     * @throws IOException if an error occurs while writing the file
+     */
+    public void writeFrame(ByteBuffer video, ByteBuffer[] audio) throws IOException {
+        int length = video.remaining();
+        inputBytes += length;
+        if (version >= VERSION_2) {
+            long timestamp = numFrames * 1000L / fps;
+            if (INDEX_ENTRY_LONGS * (numFrames + 1) > index.length)
+                index = Arrays.copyOf(index, Math.max(64, index.length * 2));
+            int e = INDEX_ENTRY_LONGS * numFrames;
+            ensure(V2_RECORD_HEADER_SIZE);
+            outBuf.putInt(length).putLong(timestamp);
+            position += V2_RECORD_HEADER_SIZE;
+            index[e] = position;
+            index[e + 1] = length;
+            index[e + 2] = position + length;
+            index[e + 3] = timestamp;
+        } else {
+            if (length >= 100000)
+                throw new IOException("Frame " + numFrames + " too big for a version 1 file (" + length + " bytes)");
+            ensure(FRAME_LENGTH_DIGITS);
+            outBuf.put(String.format("%05d", length).getBytes());
+            position += FRAME_LENGTH_DIGITS;
+        }
+        write(video);
+        for (int t = 0; t < nAudioTracks; t++) {
+            ByteBuffer chunk = (audio != null && t < audio.length) ? audio[t] : null;
+            int n = (chunk == null) ? 0 : Math.min(chunk.remaining(), chunkSize);
+            if (n > 0) {
+                inputBytes += n;
+                write(chunk.duplicate().limit(chunk.position() + n));
+            }
+            zeros(chunkSize - n);
+        }
+        pad();
+        numFrames++;
+    }
+
+    /**
+     * Copies the given data into the output buffer, bypassing it for large blocks.
+     */
+    private void write(ByteBuffer src) throws IOException {
+        int n = src.remaining();
+        if (n > outBuf.remaining()) {
+            flush();
+            if (n >= outBuf.capacity()) {
+                while (src.hasRemaining())
+                    out.write(src);
+                position += n;
+                return;
+            }
+        }
+        outBuf.put(src);
+        position += n;
+    }
+
+    private void zeros(int n) throws IOException {
+        while (n > 0) {
+            ensure(1);
+            int k = Math.min(n, outBuf.remaining());
+            for (int i = 0; i < k; i++)
+                outBuf.put((byte) 0);
+            position += k;
+            n -= k;
+        }
+    }
+
+    /**
+     * Writes zeroes up to the next multiple of the record alignment.
+     */
+    private void pad() throws IOException {
+        zeros((int) ((alignment - position % alignment) % alignment));
+    }
+
+    private void ensure(int n) throws IOException {
+        if (outBuf.remaining() < n)
+            flush();
+    }
+
+    private void flush() throws IOException {
+        outBuf.flip();
+        while (outBuf.hasRemaining())
+            out.write(outBuf);
+        outBuf.clear();
+    }
+
+    /**
+     * Writes the embedded index of version 2 files, patches the header and closes the file.
+     *
+     * @throws IOException if an error occurs while writing the file
+     */
+    public void close() throws IOException {
+        try {
+            if (version >= VERSION_2) {
+                long indexOffset = position;
+                ensure(8);
+                outBuf.putInt(numFrames).putInt(0);
+                position += 8;
+                ByteBuffer bb = ByteBuffer.allocate(INDEX_ENTRY_LONGS * 8 * numFrames);
+                bb.asLongBuffer().put(index, 0, INDEX_ENTRY_LONGS * numFrames);
+                write(bb);
+                flush();
+                out.write(ByteBuffer.allocate(8).putLong(0, indexOffset), HEADER_SIZE);
+            } else {
+                flush();
+            }
+            out.write(ByteBuffer.allocate(4).putInt(0, numFrames), NUM_FRAMES_OFFSET);
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * @return number of records written
+     */
+    public int getNumFrames() {
+        return numFrames;
+    }
+
+    /**
+     * @return bytes written to the output
+     */
+    public long getOutputBytes() {
+        return position;
+    }
+
+    /**
+     * @return media bytes (video and audio) taken from the inputs
+     */
+    public long getInputBytes() {
+        return inputBytes;
+    }
+
+    /**
+     * @return summary of the work done and the throughput
+     */
+    public String report() {
+        double seconds = Math.max(System.nanoTime() - startTime, 1) / 1e9;
+        return String.format("%d frames, %.1f MB in, %.1f MB out in %.2f s (%.1f MB/s, %.0f fps)",
+                numFrames, inputBytes / 1e6, position / 1e6, seconds, inputBytes / 1e6 / seconds, numFrames / seconds);
+    }
+
+    /**
+     * Reads the frames of a file with 5 digits ASCII length prefixes (.5mjpeg) through a
+     * buffered channel. The returned frames are slices of the read buffer.
+     */
+    public static class LengthPrefixedSource implements VideoSource {
+
+        private final FileChannel in;
+        private final ByteBuffer buf = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+        public LengthPrefixedSource(Path file) throws IOException {
+            in = FileChannel.open(file, StandardOpenOption.READ);
+            buf.flip();
+        }
+
+        /**
+         * Makes sure the buffer holds at least n bytes.
+         *
+         * @return false if the input ends before
+         */
+        private boolean fill(int n) throws IOException {
+            if (buf.remaining() >= n)
+                return true;
+            buf.compact();
+            while (buf.position() < n) {
+                if (in.read(buf) < 0)
+                    break;
+            }
+            buf.flip();
+            return buf.remaining() >= n;
+        }
+
+        @Override
+        public ByteBuffer nextFrame() throws IOException {
+            if (!fill(FRAME_LENGTH_DIGITS))
+                return null;
+            int length = 0;
+            for (int i = 0; i < FRAME_LENGTH_DIGITS; i++) {
+                int d = buf.get() - '0';
+                if (d < 0 || d > 9)
+                    throw new IOException("Invalid frame length");
+                length = length * 10 + d;
+            }
+            if (!fill(length))
+                return null; // Truncated last frame
+            ByteBuffer frame = buf.slice(buf.position(), length);
+            buf.position(buf.position() + length);
+            return frame;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+
+    /**
+     * Reads fixed size chunks of a raw PCM file through a channel.
+     */
+    static class ChunkSource {
+
+        private final FileChannel in;
+        private final ByteBuffer chunk;
+
+        ChunkSource(Path file, int chunkSize) throws IOException {
+            in = FileChannel.open(file, StandardOpenOption.READ);
+            chunk = ByteBuffer.allocate(chunkSize);
+        }
+
+        /**
+         * @return the next chunk, shorter than the chunk size at the end of the file
+         */
+        ByteBuffer next() throws IOException {
+            chunk.clear();
+            while (chunk.hasRemaining() && in.read(chunk) >= 0)
+                ;
+            return chunk.flip();
+        }
+
+        void close() throws IOException {
+            in.close();
+        }
+    }
+
+    /**
+     * Muxes a video source and raw PCM audio files into a container file.
+     *
+     * @param video  video frames
+     * @param audio  one raw PCM file per audio track
+     * @param muxer  output file
+     * @throws IOException if an error occurs while reading or writing
+     */
+    public static void mux(VideoSource video, Path[] audio, Muxer muxer) throws IOException {
+        ChunkSource[] tracks = new ChunkSource[audio.length];
+        ByteBuffer[] chunks = new ByteBuffer[audio.length];
+        try {
+            for (int t = 0; t < audio.length; t++)
+                tracks[t] = new ChunkSource(audio[t], muxer.getChunkSize());
+            ByteBuffer frame;
+            while ((frame = video.nextFrame()) != null) {
+                for (int t = 0; t < tracks.length; t++)
+                    chunks[t] = tracks[t].next();
+                muxer.writeFrame(frame, chunks);
+            }
+        } finally {
+            for (ChunkSource t : tracks)
+                if (t != null)
+                    t.close();
+        }
+    }
+
+    /**
+     * Header parameters and input options given on the command line.
+     */
+    static class Options {
+        byte version = VERSION_1;
+        int alignment = 4096, fps = 25, width = 380, heigh = 280, rate = 44100, bits = 16, channels = 1;
+        boolean raw = false; // The video is a raw MJPEG stream
+
+        /**
+         * Parses a muxer option.
+         *
+         * @param arg command line argument
+         * @return false if the argument is not a muxer option
+         * @throws NumberFormatException if the option value is not a number
+         */
+        boolean parse(String arg) {
+            String value = arg.substring(arg.indexOf('=') + 1);
+            if (arg.equals("-v2"))
+                version = VERSION_2;
+            else if (arg.equals("-raw"))
+                raw = true;
+            else if (arg.startsWith("-fps="))
+                fps = Integer.parseInt(value);
+            else if (arg.startsWith("-w="))
+                width = Integer.parseInt(value);
+            else if (arg.startsWith("-h="))
+                heigh = Integer.parseInt(value);
+            else if (arg.startsWith("-r="))
+                rate = Integer.parseInt(value);
+            else if (arg.startsWith("-b="))
+                bits = Integer.parseInt(value);
+            else if (arg.startsWith("-c="))
+                channels = Integer.parseInt(value);
+            else if (arg.startsWith("-align="))
+                alignment = Integer.parseInt(value);
+            else
+                return false;
+            return true;
+        }
+
+        /**
+         * Opens the video input, splitting it if it is a raw MJPEG stream.
+         *
+         * @param name path of the video file, "-" for a raw stream on stdin
+         * @param raw  true if the video is a raw MJPEG stream
+         */
+        static VideoSource openVideo(String name, boolean raw) throws IOException {
+            return (raw || name.equals("-")) ? MjpegSplitter.open(name) : new LengthPrefixedSource(Paths.get(name));
+        }
+
+        /**
+         * Creates a muxer writing to the given file with these options.
+         */
+        Muxer create(Path output, int nAudioTracks) throws IOException {
+            return new Muxer(output, version, alignment, (byte) fps, width, heigh, nAudioTracks, rate, (byte) bits, (byte) channels);
+        }
+
+        static String usage() {
+            return "[-fps=25] [-w=380] [-h=280] [-r=44100 sampling rate] [-b=16 bit depth] [-c=1 channels] [-v2] [-align=4096 (v2 only)]";
+        }
+    }
+
+    /**
+     * @param args &ltvideo.5mjpeg&gt &ltoutput&gt [-a=audio.pcm]... [-fps=25] [-w=380] [-h=280]
+     *             [-r=44100] [-b=16] [-c=1] [-v2] [-align=4096] [-raw]
+     */
+    public static void main(String[] args) {
+        if (args.length < 2) {
+            System.out.println("Usage: java simplecodec.Muxer <video.5mjpeg | raw.mjpeg -raw | - for raw stdin> <output> [-a=audio.pcm]... "
+                    + Options.usage());
+            System.exit(1);
+        }
+        Options options = new Options();
+        ArrayList<Path> audio = new ArrayList<>();
+        try {
+            for (int i = 2; i < args.length; i++) {
+                String arg = args[i];
+                if (arg.startsWith("-a="))
+                    audio.add(Paths.get(arg.substring(3)));
+                else if (!options.parse(arg))
+                    System.out.println("Unknown argument: \"" + arg + "\". Ignoring it.");
+            }
+        } catch (NumberFormatException e) {
+            System.out.println("Invalid argument: " + e.getMessage());
+            System.exit(1);
+        }
+        if (options.version < VERSION_2 && audio.size() > 1)
+            System.out.println("Version 1 files hold a single audio track, only the first one is written");
+
+        try (VideoSource video = Options.openVideo(args[0], options.raw)) {
+            Muxer muxer = options.create(Paths.get(args[1]), audio.size());
+            try {
+                mux(video, audio.toArray(new Path[0]), muxer);
+            } finally {
+                muxer.close();
+            }
+            System.out.println(args[1] + ": " + muxer.report());
+        } catch (IOException e) {
+            System.out.println("Error muxing " + args[0] + ": " + e);
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,244 @@
+package simplecodec;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+
+/**
+ * Writes a ladder of renditions of a clip at decreasing quality and resolution.
+ * <br>
+ * Rendition 0 holds the source frames untouched, every other rendition k is written to
+ * {@link #renditionName(Path, int)} with each JPEG decoded and re-encoded at its own quality
+ * and scale. All renditions are version 2 files with the same frame count, timestamps and
+ * audio, so the server can switch between them at any frame boundary using their indexes.
+ * Frames are transcoded in parallel, in batches of {@link #BATCH_SIZE} frames.
+ * <br>
+ * Usage: java simplecodec.RenditionLadder &ltvideo.5mjpeg&gt &ltoutput&gt [-a=audio.pcm]
+ * [-l=quality:scale]... [muxer options]
+ */
+public class RenditionLadder {
+
+    static final int BATCH_SIZE = 64; // Frames transcoded in parallel before they are written
+    static final float[][] DEFAULT_LEVELS = { { 0.75f, 0.75f }, { 0.5f, 0.5f } }; // quality, scale
+
+    private static final ThreadLocal<ImageWriter> WRITER = ThreadLocal
+            .withInitial(() -> ImageIO.getImageWritersByFormatName("jpeg").next());
+
+    private final float[] quality; // JPEG quality of each rendition (index 0 unused)
+    private final float[] scale; // Scale of each rendition (index 0 unused)
+    private final AtomicInteger failed = new AtomicInteger(); // Frames copied because they could not be decoded
+
+    /**
+     * @param levels quality (0 to 1) and scale (0 to 1] of renditions 1 and above
+     */
+    public RenditionLadder(float[][] levels) {
+        quality = new float[levels.length + 1];
+        scale = new float[levels.length + 1];
+        quality[0] = scale[0] = 1;
+        for (int k = 0; k < levels.length; k++) {
+            quality[k + 1] = levels[k][0];
+            scale[k + 1] = levels[k][1];
+        }
+    }
+
+    /**
+     * Name of the file of rendition k, ".r&ltk&gt" is inserted before the extension of the
+     * base name. Rendition 0 is the base name itself.
+     *
+     * @param base path of the clip
+     * @param k    rendition number
+     * @return the path of the rendition
+     */
+    public static Path renditionName(Path base, int k) {
+        if (k == 0)
+            return base;
+        String name = base.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        String renamed = (dot > 0) ? name.substring(0, dot) + ".r" + k + name.substring(dot) : name + ".r" + k;
+        return base.resolveSibling(renamed);
+    }
+
+    /**
+     * @return number of renditions, including the source one
+     */
+    public int getRenditionCount() {
+        return quality.length;
+    }
+
+    /**
+     * @return number of frames that could not be decoded and were copied as they are
+     */
+    public int getFailedFrames() {
+        return failed.get();
+    }
+
+    /**
+     * Decodes a frame and encodes it at the quality and scale of rendition k.
+     *
+     * @return the encoded frame, or the source frame if it can not be decoded
+     */
+    byte[] transcode(byte[] jpeg, int k) {
+        try {
+            BufferedImage src = ImageIO.read(new ByteArrayInputStream(jpeg));
+            if (src == null) {
+                failed.incrementAndGet();
+                return jpeg;
+            }
+            int w = Math.max(1, Math.round(src.getWidth() * scale[k]));
+            int h = Math.max(1, Math.round(src.getHeight() * scale[k]));
+            BufferedImage dst = new BufferedImage(w, h, BufferedImage.TYPE_3BYTE_BGR);
+            Graphics2D g = dst.createGraphics();
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.drawImage(src, 0, 0, w, h, null);
+            g.dispose();
+
+            ImageWriter writer = WRITER.get();
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(quality[k]);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(jpeg.length);
+            try (MemoryCacheImageOutputStream ios = new MemoryCacheImageOutputStream(out)) {
+                writer.setOutput(ios);
+                writer.write(null, new IIOImage(dst, null, null), param);
+            } finally {
+                writer.reset();
+            }
+            return out.toByteArray();
+        } catch (IOException e) {
+            failed.incrementAndGet();
+            return jpeg;
+        }
+    }
+
+    /**
+     * Writes every rendition of a clip.
+     *
+     * @param video   video frames
+     * @param audio   one raw PCM file per audio track
+     * @param options header options, the version is always 2
+     * @param output  path of rendition 0
+     * @return the muxers of the renditions, already closed
+     * @throws IOException if an error occurs while reading or writing
+     */
+    public Muxer[] write(VideoSource video, Path[] audio, Muxer.Options options, Path output) throws IOException {
+        int n = getRenditionCount();
+        options.version = Muxer.VERSION_2;
+        int width = options.width, heigh = options.heigh;
+        Muxer[] muxers = new Muxer[n];
+        Muxer.ChunkSource[] tracks = new Muxer.ChunkSource[audio.length];
+        try {
+            for (int k = 0; k < n; k++) {
+                options.width = Math.round(width * scale[k]);
+                options.heigh = Math.round(heigh * scale[k]);
+                muxers[k] = options.create(renditionName(output, k), audio.length);
+            }
+            for (int t = 0; t < audio.length; t++)
+                tracks[t] = new Muxer.ChunkSource(audio[t], muxers[0].getChunkSize());
+
+            byte[][] frames = new byte[BATCH_SIZE][];
+            byte[][][] encoded = new byte[BATCH_SIZE][n][];
+            ByteBuffer[] chunks = new ByteBuffer[audio.length];
+            boolean end = false;
+            while (!end) {
+                // Copy a batch of frames, the source reuses its buffer
+                int count = 0;
+                ByteBuffer frame;
+                while (count < BATCH_SIZE && (frame = video.nextFrame()) != null) {
+                    frames[count] = new byte[frame.remaining()];
+                    frame.get(frames[count]);
+                    count++;
+                }
+                end = count < BATCH_SIZE;
+
+                // Every (frame, rendition) pair is independent
+                IntStream.range(0, count * (n - 1)).parallel()
+                        .forEach(i -> encoded[i / (n - 1)][i % (n - 1) + 1] = transcode(frames[i / (n - 1)], i % (n - 1) + 1));
+
+                for (int f = 0; f < count; f++) {
+                    encoded[f][0] = frames[f];
+                    for (int t = 0; t < tracks.length; t++)
+                        chunks[t] = tracks[t].next();
+                    for (int k = 0; k < n; k++) {
+                        for (ByteBuffer c : chunks)
+                            c.rewind();
+                        muxers[k].writeFrame(ByteBuffer.wrap(encoded[f][k]), chunks);
+                    }
+                }
+            }
+        } finally {
+            options.width = width;
+            options.heigh = heigh;
+            for (Muxer.ChunkSource t : tracks)
+                if (t != null)
+                    t.close();
+            for (Muxer m : muxers)
+                if (m != null)
+                    m.close();
+        }
+        return muxers;
+    }
+
+    /**
+     * @param args &ltvideo.5mjpeg&gt &ltoutput&gt [-a=audio.pcm]... [-l=quality:scale]... [muxer options]
+     */
+    public static void main(String[] args) {
+        if (args.length < 2) {
+            System.out.println("Usage: java simplecodec.RenditionLadder <video.5mjpeg | raw.mjpeg -raw | - for raw stdin> <output>"
+                    + " [-a=audio.pcm]... [-l=quality:scale (e.g. -l=0.5:0.5)]... " + Muxer.Options.usage());
+            System.exit(1);
+        }
+        Muxer.Options options = new Muxer.Options();
+        ArrayList<Path> audio = new ArrayList<>();
+        ArrayList<float[]> levels = new ArrayList<>();
+        try {
+            for (int i = 2; i < args.length; i++) {
+                String arg = args[i];
+                if (arg.startsWith("-a=")) {
+                    audio.add(Paths.get(arg.substring(3)));
+                } else if (arg.startsWith("-l=")) {
+                    String[] level = arg.substring(3).split(":");
+                    float q = Float.parseFloat(level[0]);
+                    float s = (level.length > 1) ? Float.parseFloat(level[1]) : 1;
+                    if (q < 0 || q > 1 || s <= 0 || s > 1)
+                        throw new NumberFormatException("Quality must be in [0, 1] and scale in (0, 1]: " + arg);
+                    levels.add(new float[] { q, s });
+                } else if (!options.parse(arg)) {
+                    System.out.println("Unknown argument: \"" + arg + "\". Ignoring it.");
+                }
+            }
+        } catch (NumberFormatException e) {
+            System.out.println("Invalid argument: " + e.getMessage());
+            System.exit(1);
+        }
+
+        RenditionLadder ladder = new RenditionLadder(levels.isEmpty() ? DEFAULT_LEVELS : levels.toArray(new float[0][]));
+        long start = System.nanoTime();
+        try (VideoSource video = Muxer.Options.openVideo(args[0], options.raw)) {
+            Muxer[] muxers = ladder.write(video, audio.toArray(new Path[0]), options, Paths.get(args[1]));
+            double seconds = (System.nanoTime() - start) / 1e9;
+            for (int k = 0; k < muxers.length; k++)
+                System.out.println(String.format("%s: %d frames, %.1f MB", renditionName(Paths.get(args[1]), k),
+                        muxers[k].getNumFrames(), muxers[k].getOutputBytes() / 1e6));
+            System.out.println(String.format("%d renditions in %.2f s (%.0f fps), %d frames could not be decoded",
+                    muxers.length, seconds, muxers[0].getNumFrames() / seconds, ladder.getFailedFrames()));
+        } catch (IOException e) {
+            System.out.println("Error writing the renditions of " + args[0] + ": " + e);
+            System.exit(1);
+        }
+    }
+}
@@ -6,8 +6,8 @@ package simplecodec;
 
 import java.awt.FileDialog;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
 
 import javax.swing.JFrame;
 
@@ -18,6 +18,9 @@ import javax.swing.JFrame;
 public class SimpleCodec extends JFrame {
     
     private static final long serialVersionUID = 1L;
+
+    static final byte VERSION_1 = Muxer.VERSION_1;
+    static final byte VERSION_2 = Muxer.VERSION_2;
     
 	byte Version;   
     byte fps;
@@ -30,8 +33,9 @@ public class SimpleCodec extends JFrame {
     byte channelCount;
     VideoStream fvideo; //video file
     int frame_nb; //current frame nb
-    AudioStream faudio; //Buffer to read file
-    FileOutputStream foutput; //Buffer to read file
+    ArrayList<AudioStream> faudio = new ArrayList<>(); //Buffers to read files, one per audio track
+    Muxer muxer; //Writer of the output file
+    int alignment = 1; // [v2] record alignment in bytes
 
     
        
@@ -47,46 +51,41 @@ public class SimpleCodec extends JFrame {
     public void mixFiles(){
         int fin=0;
         byte [] frame_video = new byte[150000]; 
-        byte [] frame_audio = new byte[150000]; 
+        byte [][] frame_audio = new byte[Math.max(nAudioTracks,1)][150000]; //One chunk per audio track
+        ByteBuffer [] chunks = new ByteBuffer[frame_audio.length];
         byte[] byte_size=new byte[5];
-        int frame=0;
         
         while (fin!=-1){
             try{
-             fin=fvideo.getnextframe(frame_video, byte_size);             
-             foutput.write(byte_size,0,5);             
-             String length_string = new String(byte_size);
-             int length = Integer.parseInt(length_string);
-             foutput.write(frame_video, 0, length);
-             faudio.getnextchunk(frame_audio);
-                                        
-             foutput.write(frame_audio, 0,(int)(this.SamplingRate*(this.bitDepth/8)*this.channelCount/(int)this.fps));
-             frame++;
-             System.out.println(frame);
+             fin=fvideo.getnextframe(frame_video, byte_size);
+             if (fin==-1)
+                 break;
+             for (int t=0;t<chunks.length;t++){
+                 int count=(t<faudio.size()) ? faudio.get(t).getnextchunk(frame_audio[t]) : 0;
+                 chunks[t]=ByteBuffer.wrap(frame_audio[t],0,Math.max(count,0)); //Tracks without a file stay silent
+             }
+             muxer.writeFrame(ByteBuffer.wrap(frame_video,0,fin), chunks);
 
             }catch (Exception e){
                 e.printStackTrace();
+                break;
             }
                                                             
         }
+        numFrames=muxer.getNumFrames();
+        System.out.println(numFrames+" frames muxed");
     }
+
      public void closeFile(){
         try{
-            foutput.flush();
-            foutput.close();
+            // Muxer writes the embedded index of version 2 files and patches the header
+            muxer.close();
         
         }catch(Exception e){
             e.printStackTrace();
         }
             
     }
-
-    
-    private byte [] bigInttoByteArray (final int i){
-        ByteBuffer bb = ByteBuffer.allocate(4);
-        bb.putInt(i);
-        return bb.array();
-    }
            
     public void videoFile(){
         String nombreArchivo;
@@ -119,7 +118,7 @@ public class SimpleCodec extends JFrame {
                 nombreArchivo = new String(fd.getDirectory() + fd.getFile()); //Se obtiene su ruta completa
                 //System.out.println(nombreArchivo);
                 try{
-                    faudio= new AudioStream(nombreArchivo);
+                    faudio.add(new AudioStream(nombreArchivo));
                 }catch(Exception e){
                     e.printStackTrace();
                 }
@@ -131,47 +130,48 @@ public class SimpleCodec extends JFrame {
             
     public void createHeader(String filename, byte _fps, int _width, int _heigh,
             byte _nAudioTracks, int _SamplingRate, byte _bitDepth, byte _channelCount){
+        createHeader(filename, _fps, _width, _heigh, _nAudioTracks, _SamplingRate, _bitDepth, _channelCount, VERSION_1, 1);
+    }
+
+    /**
+     * Writes the container header.
+     * @param _version container version (1 or 2)
+     * @param _alignment [v2] record alignment in bytes (1 for no padding, 4096 for direct I/O)
+     */
+    public void createHeader(String filename, byte _fps, int _width, int _heigh,
+            byte _nAudioTracks, int _SamplingRate, byte _bitDepth, byte _channelCount,
+            byte _version, int _alignment){
         
-        Version=1;
+        Version=_version;
+        alignment=Math.max(_alignment, 1);
         fps=_fps;
         int intfps=(int)fps;
-        faudio.setFPS(intfps);
         numFrames=fvideo.getFrames();
         width=_width;
         heigh=_heigh;
         nAudioTracks=_nAudioTracks;
+        if (Version<VERSION_2 && nAudioTracks>1){
+            System.out.println("Version 1 files hold a single audio track, only the first one is written");
+            nAudioTracks=1;
+        }
         SamplingRate=_SamplingRate;
         bitDepth=_bitDepth;
         channelCount=_channelCount;
-        faudio.setChannelCount(_channelCount);
-        faudio.setbitDepth(bitDepth);
-        faudio.setSampleRate(SamplingRate);
+        for (AudioStream track : faudio){
+            track.setFPS(intfps);
+            track.setChannelCount(_channelCount);
+            track.setbitDepth(bitDepth);
+            track.setSampleRate(SamplingRate);
+        }
         
         File file = new File (filename);  
         if (file.exists() == false || file.isFile() == false)
                 System.out.println("Error: No file to read");
         try{
-            foutput= new  FileOutputStream(file);
-            if (!file.exists()){
-                file.createNewFile();                
-            }
-            
-            foutput.write(Version);
-            foutput.write(fps);
-            foutput.write(this.bigInttoByteArray(numFrames));
-            foutput.write(this.bigInttoByteArray(width));
-            foutput.write(this.bigInttoByteArray(heigh));
-            foutput.write(nAudioTracks);
-            foutput.write(this.bigInttoByteArray(SamplingRate));
-            foutput.write(bitDepth);
-            foutput.write(channelCount);
+            muxer=new Muxer(file.toPath(), Version, alignment, fps, width, heigh, nAudioTracks, SamplingRate, bitDepth, channelCount);
         }catch(Exception e){
             e.printStackTrace();
         }
-
-
-        
-        
         
     }
     
@@ -183,8 +183,20 @@ public class SimpleCodec extends JFrame {
         
        SimpleCodec c=new SimpleCodec();
        c.videoFile();
-       c.audioFile();
-       c.createHeader("matrix.mjpeg",(byte)25,380,280,(byte)1, 44100, (byte)16,(byte)1);
+       boolean v2=false;
+       int tracks=1;
+       for (String arg : args){
+           if (arg.equals("-v2"))
+               v2=true;
+           else if (arg.startsWith("-a="))
+               tracks=Integer.parseInt(arg.substring(3)); //Number of audio tracks (version 2 only)
+       }
+       for (int t=0;t<tracks;t++)
+           c.audioFile();
+       if (v2)
+           c.createHeader("matrix.mjpeg",(byte)25,380,280,(byte)tracks, 44100, (byte)16,(byte)1, VERSION_2, 4096);
+       else
+           c.createHeader("matrix.mjpeg",(byte)25,380,280,(byte)1, 44100, (byte)16,(byte)1);
        
       // c.audioFile();     
        c.mixFiles();
@@ -0,0 +1,20 @@
+package simplecodec;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Source of the video frames muxed by {@link Muxer}.
+ */
+public interface VideoSource extends Closeable {
+
+    /**
+     * Returns the next video frame. The buffer may be reused by the source, so it is only
+     * valid until the next call.
+     *
+     * @return buffer holding the frame data, or null at the end of the input
+     * @throws IOException if an error occurs while reading the input
+     */
+    ByteBuffer nextFrame() throws IOException;
+}
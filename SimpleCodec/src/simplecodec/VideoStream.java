@@ -16,29 +16,12 @@ public class VideoStream {
   public VideoStream(String filename) throws Exception{
 
     //init variables
-    int end=0;           
+    //frames are counted while they are read, the muxer patches the header at the end
     fis = new FileInputStream(filename);
     frame_nb = 0;
-    byte [] frame =new byte [150000];
-    while (end!=-1){
-          //read current frame length
-        byte [] frame_length=new byte [5];
-        end=fis.read(frame_length,0,5);
-
-        if (end!=-1){
-        //transform frame_length to integer
-            String length_string = new String(frame_length);
-            int length = Integer.parseInt(length_string);
-
-            frame_nb++;
-            end=fis.read(frame,0,length);
-        }
-        
-    }
-    fis.close();
-    fis = new FileInputStream(filename);
   }
   
+  //frames read so far
   public int getFrames(){
       return frame_nb;
   }
@@ -54,18 +37,19 @@ public class VideoStream {
     //frame_length = new byte[5];
 
     //read current frame length
-    fis.read(frame_length,0,5);
+    if (fis.readNBytes(frame_length,0,5)<5)
+        return(-1);
 
 	
     //transform frame_length to integer
     length_string = new String(frame_length);
     length = Integer.parseInt(length_string);
 	
-    int fin=fis.read(frame,0,length);
-    if (fin==-1)
-        return(fin);
-    else
-        return (length);
+    int fin=fis.readNBytes(frame,0,length);
+    if (fin<length)
+        return(-1);
+    frame_nb++;
+    return (length);
   }
   
 }
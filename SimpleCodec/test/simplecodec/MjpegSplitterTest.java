@@ -0,0 +1,143 @@
+package simplecodec;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class MjpegSplitterTest {
+
+    private static final byte[] SOI = { (byte) 0xFF, (byte) 0xD8 };
+    private static final byte[] EOI = { (byte) 0xFF, (byte) 0xD9 };
+
+    /**
+     * Channel returning at most a few bytes per read, so markers fall across refills.
+     */
+    private static class TrickleChannel implements ReadableByteChannel {
+        private final ByteBuffer data;
+        private final int chunk;
+
+        TrickleChannel(byte[] data, int chunk) {
+            this.data = ByteBuffer.wrap(data);
+            this.chunk = chunk;
+        }
+
+        @Override
+        public int read(ByteBuffer dst) {
+            if (!data.hasRemaining())
+                return -1;
+            int n = Math.min(Math.min(chunk, dst.remaining()), data.remaining());
+            dst.put(data.slice(data.position(), n));
+            data.position(data.position() + n);
+            return n;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    @Test
+    void testMarkerSplitAcrossRefill() throws IOException {
+        Random random = new Random(1);
+        byte[][] frames = { frame(random, 30), frame(random, 5), frame(random, 47) };
+        byte[] stream = concat(frames);
+        // Every chunk size puts the boundary of some read between the two bytes of a marker
+        for (int chunk = 1; chunk <= 17; chunk++)
+            assertFrames(frames, split(stream, 16, chunk), "chunk " + chunk);
+    }
+
+    @Test
+    void testStuffedBytes() throws IOException {
+        Random random = new Random(2);
+        // Stuffed 0xFF00 and restart markers are not frame boundaries
+        byte[] body = concat(new byte[][] { body(random, 10), { (byte) 0xFF, 0x00 }, body(random, 3),
+                { (byte) 0xFF, (byte) 0xD3 }, { (byte) 0xFF, (byte) 0xFF, 0x00 }, body(random, 9) });
+        byte[][] frames = { concat(new byte[][] { SOI, body, EOI }), frame(random, 20) };
+        assertFrames(frames, split(concat(frames), 16, 3), "stuffed");
+    }
+
+    @Test
+    void testJunkBetweenFrames() throws IOException {
+        Random random = new Random(3);
+        byte[][] frames = { frame(random, 12), frame(random, 25), frame(random, 8) };
+        byte[] junk = concat(new byte[][] { body(random, 7), { (byte) 0xFF, 0x00 }, EOI, { (byte) 0xFF } });
+        byte[] stream = concat(new byte[][] { junk, frames[0], junk, frames[1], frames[2], junk });
+        assertFrames(frames, split(stream, 16, 5), "junk");
+    }
+
+    @Test
+    void testFrameLargerThanBuffer() throws IOException {
+        Random random = new Random(4);
+        byte[][] frames = { frame(random, 10), frame(random, 200), frame(random, 1000), frame(random, 3) };
+        assertFrames(frames, split(concat(frames), 16, 7), "large frame");
+        assertFrames(frames, split(concat(frames), 16, 4096), "large frame, single read");
+    }
+
+    @Test
+    void testTruncatedFrameDropped() throws IOException {
+        Random random = new Random(5);
+        byte[][] frames = { frame(random, 10) };
+        byte[] cut = frame(random, 30);
+        byte[] stream = concat(new byte[][] { frames[0], Arrays.copyOf(cut, 20) });
+        assertFrames(frames, split(stream, 16, 3), "truncated");
+    }
+
+    private static List<byte[]> split(byte[] stream, int bufferSize, int chunk) throws IOException {
+        List<byte[]> frames = new ArrayList<>();
+        try (MjpegSplitter splitter = new MjpegSplitter(new TrickleChannel(stream, chunk), bufferSize)) {
+            ByteBuffer frame;
+            while ((frame = splitter.nextFrame()) != null) {
+                byte[] copy = new byte[frame.remaining()]; // Frames are valid until the next call
+                frame.get(copy);
+                frames.add(copy);
+            }
+            assertEquals(stream.length, splitter.getBytesRead(), "Bytes read mismatch");
+        }
+        return frames;
+    }
+
+    private static void assertFrames(byte[][] expected, List<byte[]> frames, String message) {
+        assertEquals(expected.length, frames.size(), message + ": frame count mismatch");
+        for (int i = 0; i < expected.length; i++)
+            assertArrayEquals(expected[i], frames.get(i), message + ": frame " + i + " mismatch");
+    }
+
+    /**
+     * @return a frame from SOI to EOI with a body of the given size and no markers
+     */
+    private static byte[] frame(Random random, int bodySize) {
+        return concat(new byte[][] { SOI, body(random, bodySize), EOI });
+    }
+
+    /**
+     * @return random bytes without 0xFF
+     */
+    private static byte[] body(Random random, int size) {
+        byte[] body = new byte[size];
+        for (int i = 0; i < size; i++)
+            body[i] = (byte) random.nextInt(0xFF);
+        return body;
+    }
+
+    private static byte[] concat(byte[][] parts) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] part : parts)
+            out.writeBytes(part);
+        return out.toByteArray();
+    }
+}